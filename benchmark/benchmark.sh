@@ -146,3 +146,30 @@ prepare.min_network_size=10000 \
 measurement.json=true \
 measurement.count=5000 \
 measurement.use_measurement_time_as_ref_time=${USE_MEASUREMENT_TIME_AS_REF_TIME}
+
+echo "5 - small map, without sorting the graph along a Hilbert curve: node-based CH + slow routing"
+echo "compare with 1 to see the effect of the node and edge ordering"
+java -cp tools/target/graphhopper-tools-*-jar-with-dependencies.jar \
+-XX:+UseParallelGC -Xmx20g -Xms20g \
+com.graphhopper.tools.Measurement \
+datareader.file=${SMALL_OSM_MAP} \
+datareader.date_range_parser_day=2019-11-01 \
+measurement.name=small_map_unsorted \
+measurement.folder=${RESULTS_DIR} \
+measurement.clean=true \
+measurement.stop_on_error=true \
+measurement.summaryfile=${SUMMARY_DIR}summary_small_unsorted.dat \
+measurement.repeats=1 \
+measurement.run_slow_routing=true \
+measurement.ch.node=true \
+measurement.ch.edge=false \
+measurement.lm=false \
+measurement.vehicle=car \
+import.osm.ignored_highways=footway,cycleway,path,pedestrian,bridleway \
+measurement.turn_costs=true \
+graph.sort=false \
+graph.location=${GRAPH_DIR}measurement-small-unsorted-gh \
+prepare.min_network_size=10000 \
+measurement.json=true \
+measurement.count=5000 \
+measurement.use_measurement_time_as_ref_time=${USE_MEASUREMENT_TIME_AS_REF_TIME}
@@ -26,13 +26,17 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.config.Profile;
+import com.graphhopper.isochrone.algorithm.CHShortestPathTree;
 import com.graphhopper.jackson.Jackson;
 import com.graphhopper.reader.dem.*;
+import com.graphhopper.reader.osm.OSMChangeApplier;
 import com.graphhopper.reader.osm.OSMReader;
 import com.graphhopper.reader.osm.RestrictionTagParser;
 import com.graphhopper.routing.*;
 import com.graphhopper.routing.ch.CHPreparationHandler;
+import com.graphhopper.routing.ch.CustomizableCH;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.ch.PrepareCustomizableCH;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.lm.LMConfig;
 import com.graphhopper.routing.lm.LMPreparationHandler;
@@ -46,7 +50,10 @@ import com.graphhopper.routing.util.parsers.OSMBikeNetworkTagParser;
 import com.graphhopper.routing.util.parsers.OSMFootNetworkTagParser;
 import com.graphhopper.routing.util.parsers.OSMMtbNetworkTagParser;
 import com.graphhopper.routing.util.parsers.TagParser;
+import com.graphhopper.routing.weighting.MaterializedWeighting;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.routing.weighting.custom.AreaEdgeCache;
+import com.graphhopper.routing.weighting.custom.CustomModelClassStore;
 import com.graphhopper.routing.weighting.custom.CustomModelParser;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
 import com.graphhopper.routing.weighting.custom.NameValidator;
@@ -60,6 +67,7 @@ import com.graphhopper.util.details.PathDetailsBuilderFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.xml.stream.XMLStreamException;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
@@ -68,6 +76,12 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -105,6 +119,8 @@ public class GraphHopper {
     private DAType dataAccessDefaultType = DAType.RAM_STORE;
     private final LinkedHashMap<String, String> dataAccessConfig = new LinkedHashMap<>();
     private boolean sortGraph = true;
+    private boolean csrAdjacency = false;
+    private boolean compressedGeometry = false;
     private boolean elevation = false;
     private LockFactory lockFactory = new NativeFSLockFactory();
     private boolean allowWrites = true;
@@ -130,7 +146,26 @@ public class GraphHopper {
     private final LMPreparationHandler lmPreparationHandler = new LMPreparationHandler();
     private final CHPreparationHandler chPreparationHandler = new CHPreparationHandler();
     private Map<String, RoutingCHGraph> chGraphs = Collections.emptyMap();
+    private final Map<String, int[]> chLevelOrders = new ConcurrentHashMap<>();
     private Map<String, LandmarkStorage> landmarks = Collections.emptyMap();
+    // customizable CH
+    private boolean cchEnabled = false;
+    private int cchThreads = Runtime.getRuntime().availableProcessors();
+    private int cchCacheSize = 10;
+    private CustomizableCH customizableCH;
+    // materialized edge weights
+    private int weightCacheSizeMB = 0;
+    private int weightCacheMinRequests = 3;
+    private ExecutorService weightCacheExecutor;
+    // the routing requests must not read the edges while applyOSMChange changes them
+    private final ReadWriteLock graphLock = new ReentrantReadWriteLock();
+    // compiled custom models
+    private boolean customModelClassStoreEnabled = false;
+    private int customModelCompileThreads = 0;
+    private CustomModelClassStore customModelClassStore;
+    // precomputed edges of the custom model areas
+    private boolean areaEdgeCacheEnabled = false;
+    private AreaEdgeCache areaEdgeCache;
 
     // for data reader
     private String osmFile;
@@ -366,6 +401,25 @@ public class GraphHopper {
         return this;
     }
 
+    /**
+     * Enables the CSR adjacency for faster edge iteration after the import or loading, see
+     * {@link BaseGraph#createCSRAdjacency()}. This freezes the base graph.
+     */
+    public GraphHopper setCSRAdjacency(boolean csrAdjacency) {
+        this.csrAdjacency = csrAdjacency;
+        return this;
+    }
+
+    /**
+     * Stores the pillar nodes of newly imported graphs as delta encoded variable length integers, see
+     * {@link BaseGraph.Builder#withCompressedGeometry(boolean)}. Existing graphs are loaded with the encoding they
+     * were created with.
+     */
+    public GraphHopper setCompressedGeometry(boolean compressedGeometry) {
+        this.compressedGeometry = compressedGeometry;
+        return this;
+    }
+
     /**
      * The underlying graph used in algorithms.
      *
@@ -395,6 +449,39 @@ public class GraphHopper {
         return chGraphs;
     }
 
+    /**
+     * @return the nodes of the CH graph of the given profile sorted by descending level, which is needed for the
+     * {@link CHShortestPathTree}. This is only calculated once per CH graph.
+     */
+    public int[] getCHLevelOrder(String profile) {
+        RoutingCHGraph chGraph = chGraphs.get(profile);
+        if (chGraph == null)
+            throw new IllegalArgumentException("Cannot find CH preparation for the requested profile: '" + profile + "'");
+        return chLevelOrders.computeIfAbsent(profile, p -> CHShortestPathTree.sortNodesByLevel(chGraph));
+    }
+
+    /**
+     * @return the customizable CH used for requests with a custom model or null if it is not enabled or before loading
+     * or import.
+     */
+    public CustomizableCH getCustomizableCH() {
+        return customizableCH;
+    }
+
+    /**
+     * Enables customizable contraction hierarchies (CCH): During the import a metric-independent contraction is
+     * calculated that can later be customized for the custom model of a request within a short time.
+     */
+    public GraphHopper setCCHEnabled(boolean cchEnabled) {
+        ensureNotLoaded();
+        this.cchEnabled = cchEnabled;
+        return this;
+    }
+
+    public boolean isCCHEnabled() {
+        return cchEnabled;
+    }
+
     /**
      * @return a mapping between profile names and according landmark preparations. The map will be empty before loading
      * or import.
@@ -515,6 +602,8 @@ public class GraphHopper {
         }
 
         sortGraph = ghConfig.getBool("graph.sort", sortGraph);
+        csrAdjacency = ghConfig.getBool("graph.csr_adjacency", csrAdjacency);
+        compressedGeometry = ghConfig.getBool("graph.compress_geometry", compressedGeometry);
         if (ghConfig.getBool("max_speed_calculator.enabled", false))
             maxSpeedCalculator = new MaxSpeedCalculator(MaxSpeedCalculator.createLegalDefaultSpeeds());
 
@@ -568,6 +657,14 @@ public class GraphHopper {
         // prepare CH&LM
         chPreparationHandler.init(ghConfig);
         lmPreparationHandler.init(ghConfig);
+        cchEnabled = ghConfig.getBool("prepare.cch.enabled", cchEnabled);
+        cchThreads = ghConfig.getInt("routing.cch.threads", cchThreads);
+        cchCacheSize = ghConfig.getInt("routing.cch.cache_size", cchCacheSize);
+        weightCacheSizeMB = ghConfig.getInt("routing.weight_cache.size_mb", weightCacheSizeMB);
+        weightCacheMinRequests = ghConfig.getInt("routing.weight_cache.min_requests", weightCacheMinRequests);
+        customModelClassStoreEnabled = ghConfig.getBool("routing.custom_model_classes.store", customModelClassStoreEnabled);
+        customModelCompileThreads = ghConfig.getInt("routing.custom_model_classes.compile_threads", customModelCompileThreads);
+        areaEdgeCacheEnabled = ghConfig.getBool("routing.area_edge_cache.enabled", areaEdgeCacheEnabled);
 
         // osm import
         // We do a few checks for import.osm.ignored_highways to prevent configuration errors when migrating from an older
@@ -586,6 +683,8 @@ public class GraphHopper {
         osmReaderConfig.setPreferredLanguage(ghConfig.getString("datareader.preferred_language", osmReaderConfig.getPreferredLanguage()));
         osmReaderConfig.setMaxWayPointDistance(ghConfig.getDouble(Routing.INIT_WAY_POINT_MAX_DISTANCE, osmReaderConfig.getMaxWayPointDistance()));
         osmReaderConfig.setWorkerThreads(ghConfig.getInt("datareader.worker_threads", osmReaderConfig.getWorkerThreads()));
+        osmReaderConfig.setSinglePass(ghConfig.getBool("datareader.single_pass", osmReaderConfig.isSinglePass()));
+        osmReaderConfig.setTagParserThreads(ghConfig.getInt("datareader.tag_parser_threads", osmReaderConfig.getTagParserThreads()));
 
         // index
         preciseIndexResolution = ghConfig.getInt("index.high_resolution", preciseIndexResolution);
@@ -609,6 +708,10 @@ public class GraphHopper {
             throw new IllegalArgumentException("Default value for active landmarks " + activeLandmarkCount
                     + " should be less or equal to landmark count of " + lmPreparationHandler.getLandmarks());
         routerConfig.setActiveLandmarkCount(activeLandmarkCount);
+        int searchStatePoolSize = ghConfig.getInt("routing.search_state_pool_size", Runtime.getRuntime().availableProcessors());
+        routerConfig.setSearchStatePool(searchStatePoolSize > 0 ? new BidirSearchState.Pool(searchStatePoolSize) : null);
+        int legThreads = ghConfig.getInt("routing.leg_threads", 0);
+        routerConfig.setLegExecutor(legThreads > 0 ? new ForkJoinPool(legThreads) : null);
 
         calcChecksums = ghConfig.getBool("graph.calc_checksums", false);
 
@@ -828,6 +931,7 @@ public class GraphHopper {
                 .set3D(hasElevation())
                 .withTurnCosts(encodingManager.needsTurnCostsSupport())
                 .setSegmentSize(defaultSegmentSize)
+                .withCompressedGeometry(compressedGeometry)
                 .build();
         properties = new StorableProperties(directory);
         checkProfilesConsistency();
@@ -933,15 +1037,7 @@ public class GraphHopper {
             throw new IllegalStateException("Couldn't load from existing folder: " + ghLocation
                     + " but also cannot use file for DataReader as it wasn't specified!");
 
-        List<CustomArea> customAreas = readCountries();
-        if (isEmpty(customAreasDirectory)) {
-            logger.info("No custom areas are used, custom_areas.directory not given");
-        } else {
-            logger.info("Creating custom area index, reading custom areas from: '" + customAreasDirectory + "'");
-            customAreas.addAll(readCustomAreas());
-        }
-
-        AreaIndex<CustomArea> areaIndex = new AreaIndex<>(customAreas);
+        AreaIndex<CustomArea> areaIndex = createAreaIndex();
         if (countryRuleFactory == null || countryRuleFactory.getCountryToRuleMap().isEmpty()) {
             logger.info("No country rules available");
         } else {
@@ -968,6 +1064,106 @@ public class GraphHopper {
             properties.put("datareader.data.date", f.format(reader.getDataDate()));
     }
 
+    private AreaIndex<CustomArea> createAreaIndex() {
+        List<CustomArea> customAreas = readCountries();
+        if (isEmpty(customAreasDirectory)) {
+            logger.info("No custom areas are used, custom_areas.directory not given");
+        } else {
+            logger.info("Creating custom area index, reading custom areas from: '" + customAreasDirectory + "'");
+            customAreas.addAll(readCustomAreas());
+        }
+        return new AreaIndex<>(customAreas);
+    }
+
+    /**
+     * Same as {@link #applyOSMChange(File, boolean)}, but rejects change files that create ways.
+     */
+    public void applyOSMChange(File changeFile) {
+        applyOSMChange(changeFile, false);
+    }
+
+    /**
+     * Applies the given OSM change file (.osc or .osc.gz) to the loaded graph, recalculates the subnetworks and
+     * flushes the graph. Only modified and deleted ways are applied, see {@link OSMChangeApplier} for the details. This
+     * requires the encoded value osm_way_id and is not possible if CH or LM preparations are used, because they would
+     * be outdated afterwards. The customizable CH only depends on the graph topology, so it stays valid, but its
+     * customized graphs and the cached edge weights are dropped.
+     * <p>
+     * The subnetworks are calculated again for the entire graph and all profiles, which takes about as long as the
+     * subnetwork step of the import. This is skipped if the change file does not change any edge.
+     * <p>
+     * The edges are changed in place. Calls of {@link #route} wait until the changes are applied, but other code that
+     * reads the graph directly, e.g. the isochrone or the map matching, must not run at the same time.
+     *
+     * @param ignoreCreatedWays the created ways cannot be added to the graph, so a change file that creates ways is
+     *                          rejected unless this is true
+     */
+    public void applyOSMChange(File changeFile, boolean ignoreCreatedWays) {
+        graphLock.writeLock().lock();
+        try {
+            applyOSMChange_(changeFile, ignoreCreatedWays);
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+    }
+
+    private void applyOSMChange_(File changeFile, boolean ignoreCreatedWays) {
+        if (!fullyLoaded)
+            throw new IllegalStateException("Load or import the graph before applying OSM changes");
+        ensureWriteAccess();
+        if (chPreparationHandler.isEnabled() || lmPreparationHandler.isEnabled())
+            throw new IllegalStateException("OSM changes cannot be applied when CH or LM profiles are used, run a new import instead");
+        if (maxSpeedCalculator != null)
+            throw new IllegalStateException("OSM changes cannot be applied when the max_speed_calculator is enabled, run a new import instead");
+
+        if (osmParsers == null) {
+            // the tag parsers are only created for the import, so we create them like for a new import and make sure
+            // they use the same encoded values as the loaded graph
+            EncodingManager loadedEncodingManager = encodingManager;
+            prepareImport();
+            // we cannot compare the serialized encoded values, because they include the maximum values of the import
+            boolean sameEncodedValues = encodingManager.getBytesForFlags() == loadedEncodingManager.getBytesForFlags()
+                    && encodingManager.getEncodedValues().stream().map(EncodedValue::getName).toList()
+                    .equals(loadedEncodingManager.getEncodedValues().stream().map(EncodedValue::getName).toList());
+            encodingManager = loadedEncodingManager;
+            if (!sameEncodedValues) {
+                osmParsers = null;
+                throw new IllegalStateException("The encoded values of the configuration do not match the encoded values of the graph in " + ghLocation);
+            }
+        }
+
+        // the values of these encoded values are not derived from the way tags, see OSMChangeApplier
+        List<String> preservedEncodedValues = encodingManager.getEncodedValues().stream()
+                .map(EncodedValue::getName)
+                .filter(name -> {
+                    ImportUnit importUnit = importRegistry.createImportUnit(name);
+                    // crossings are derived from the node tags, which are not available anymore
+                    return importUnit == null || importUnit.getCreateTagParser() == null || Crossing.KEY.equals(name);
+                })
+                .toList();
+        OSMChangeApplier applier = new OSMChangeApplier(baseGraph.getBaseGraph(), encodingManager, osmParsers, osmReaderConfig).
+                setAreaIndex(createAreaIndex()).
+                setCountryRuleFactory(countryRuleFactory).
+                setPreservedEncodedValues(preservedEncodedValues).
+                setIgnoreCreatedWays(ignoreCreatedWays);
+        int changedEdges;
+        try {
+            changedEdges = applier.apply(changeFile);
+        } catch (IOException | XMLStreamException ex) {
+            throw new RuntimeException("Cannot read change file " + changeFile, ex);
+        }
+        if (changedEdges == 0)
+            return;
+        // todo: the subnetworks are calculated for the entire graph, even though only the components around the
+        //  changed edges can change
+        cleanUp();
+        if (routerConfig.getWeightCache() != null)
+            routerConfig.getWeightCache().clear();
+        if (customizableCH != null)
+            customizableCH.clear();
+        flush();
+    }
+
     protected void createBaseGraphAndProperties() {
         baseGraph.getDirectory().create();
         baseGraph.create(100);
@@ -1279,6 +1475,14 @@ public class GraphHopper {
         initLocationIndex();
         importPublicTransit();
 
+        if (areaEdgeCacheEnabled) {
+            // the profiles include the global areas
+            areaEdgeCache = new AreaEdgeCache(baseGraph);
+            profilesByName.values().stream().filter(p -> p.getCustomModel() != null).
+                    forEach(p -> areaEdgeCache.addAreas(p.getCustomModel().getAreas().getFeatures()));
+            logger.info("Precomputed the edges of " + areaEdgeCache.size() + " areas, " + getMemInfo());
+        }
+
         if (closeEarly) {
             boolean includesCustomProfiles = profilesByName.values().stream().anyMatch(p -> CustomWeighting.NAME.equals(p.getWeighting()));
             if (!includesCustomProfiles)
@@ -1296,6 +1500,33 @@ public class GraphHopper {
 
         if (chPreparationHandler.isEnabled())
             loadOrPrepareCH(closeEarly);
+
+        if (cchEnabled)
+            loadOrPrepareCCH(closeEarly);
+
+        if (csrAdjacency && !closeEarly) {
+            if (!baseGraph.isFrozen())
+                baseGraph.freeze();
+            StopWatch sw = new StopWatch().start();
+            baseGraph.createCSRAdjacency();
+            logger.info("Created CSR adjacency, took: " + sw.stop().getSeconds() + "s, " + getMemInfo());
+        }
+
+        if (weightCacheSizeMB > 0 && !closeEarly) {
+            // the weights are calculated in the background so the requests that trigger the calculation are not slowed down
+            weightCacheExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "weight-cache");
+                thread.setDaemon(true);
+                return thread;
+            });
+            routerConfig.setWeightCache(new MaterializedWeighting.Cache(baseGraph, weightCacheSizeMB * MB, weightCacheMinRequests, weightCacheExecutor));
+        }
+
+        if (customModelClassStoreEnabled && !closeEarly) {
+            customModelClassStore = new CustomModelClassStore(new File(ghLocation, "custom_model_classes"), customModelCompileThreads);
+            customModelClassStore.warmUp(profilesByName.values().stream().map(Profile::getCustomModel).
+                    filter(Objects::nonNull).collect(Collectors.toList()), encodingManager);
+        }
     }
 
     protected void importPublicTransit() {
@@ -1327,11 +1558,30 @@ public class GraphHopper {
     }
 
     protected WeightingFactory createWeightingFactory() {
-        return new DefaultWeightingFactory(baseGraph.getBaseGraph(), getEncodingManager());
+        return new DefaultWeightingFactory(baseGraph.getBaseGraph(), getEncodingManager()).setAreaEdgeCache(areaEdgeCache).
+                setCustomModelClassStore(customModelClassStore);
     }
 
     public GHResponse route(GHRequest request) {
-        return createRouter().route(request);
+        graphLock.readLock().lock();
+        try {
+            return createRouter().route(request);
+        } finally {
+            graphLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Like {@link #route(GHRequest)}, but the snapping results are shared with all other requests using the same
+     * cache, which is useful when many requests contain the same points.
+     */
+    public GHResponse route(GHRequest request, SnapCache snapCache) {
+        graphLock.readLock().lock();
+        try {
+            return createRouter().setSnapCache(snapCache).route(request);
+        } finally {
+            graphLock.readLock().unlock();
+        }
     }
 
     private Router createRouter() {
@@ -1350,7 +1600,7 @@ public class GraphHopper {
                                     PathDetailsBuilderFactory pathBuilderFactory, TranslationMap trMap, RouterConfig routerConfig,
                                     WeightingFactory weightingFactory, Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks) {
         return new Router(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory,
-                trMap, routerConfig, weightingFactory, chGraphs, landmarks
+                trMap, routerConfig, weightingFactory, chGraphs, landmarks, customizableCH
         );
     }
 
@@ -1459,6 +1709,34 @@ public class GraphHopper {
         return chPreparationHandler.prepare(baseGraph, properties, configsToPrepare, closeEarly);
     }
 
+    /**
+     * Loads the metric-independent CCH or prepares it if it does not exist yet. The customization happens later,
+     * when the first request for a certain custom model arrives.
+     */
+    protected void loadOrPrepareCCH(boolean closeEarly) {
+        CCHStorage cchStorage = new CCHStorage(baseGraph.getDirectory(), baseGraph.getSegmentSize());
+        if (!cchStorage.loadExisting()) {
+            cchStorage.close();
+            // the storage registered its data accesses in the directory already, so we remove them (and the files of an
+            // incomplete preparation) before the preparation creates them again
+            baseGraph.getDirectory().remove("cch_nodes");
+            baseGraph.getDirectory().remove("cch_arcs");
+            baseGraph.getDirectory().remove("cch_downs");
+            ensureWriteAccess();
+            if (!baseGraph.isFrozen())
+                baseGraph.freeze();
+            PrepareCustomizableCH prepare = new PrepareCustomizableCH(baseGraph.getBaseGraph());
+            cchStorage = prepare.doWork();
+            prepare.flush();
+            properties.put("prepare.cch.date", createFormatter().format(new Date()));
+            if (closeEarly) {
+                prepare.close();
+                return;
+            }
+        }
+        customizableCH = new CustomizableCH(baseGraph.getBaseGraph(), cchStorage, cchThreads, cchCacheSize);
+    }
+
     /**
      * For landmarks it is required to always call this method: either it creates the landmark data or it loads it.
      */
@@ -1542,10 +1820,20 @@ public class GraphHopper {
 
         chGraphs.values().forEach(RoutingCHGraph::close);
         landmarks.values().forEach(LandmarkStorage::close);
+        if (customizableCH != null)
+            customizableCH.close();
 
         if (locationIndex != null)
             locationIndex.close();
 
+        if (routerConfig.getLegExecutor() != null)
+            routerConfig.getLegExecutor().shutdown();
+        if (weightCacheExecutor != null)
+            weightCacheExecutor.shutdownNow();
+
+        if (customModelClassStore != null)
+            customModelClassStore.close();
+
         try {
             lockFactory.forceRemove(fileLockName, true);
         } catch (Exception ex) {
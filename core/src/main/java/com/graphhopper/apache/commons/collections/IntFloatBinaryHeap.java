@@ -15,6 +15,8 @@
  */
 package com.graphhopper.apache.commons.collections;
 
+import com.graphhopper.coll.IntFloatHeap;
+
 import java.util.Arrays;
 import java.util.NoSuchElementException;
 
@@ -24,7 +26,7 @@ import java.util.NoSuchElementException;
  * <p>
  * The library can be found here: https://commons.apache.org/proper/commons-collections/
  */
-public class IntFloatBinaryHeap {
+public class IntFloatBinaryHeap implements IntFloatHeap {
     private static final int GROW_FACTOR = 2;
     private int size;
     private int[] elements;
@@ -0,0 +1,211 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.coll;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.util.Helper;
+
+/**
+ * A {@link LongLongMap} for keys that are (mostly) added in ascending order, like the OSM node ids of a file that is
+ * sorted by id. The keys and values are appended to a {@link DataAccess}, so they can be stored off-heap or in a
+ * memory-mapped file, and only the first key of every block of {@link #BLOCK_SIZE} entries is kept on the heap. A
+ * lookup is a binary search over these block keys followed by a binary search within a single block.
+ * <p>
+ * Keys that are smaller than the largest key added so far cannot be appended anymore and are stored in a
+ * {@link GHLongLongBTree} instead. Use {@link #reserve} to add keys in ascending order before their values are known,
+ * e.g. while reading the OSM nodes, so the values can be updated in place later. Reserved keys that still have the
+ * empty value are not counted by {@link #getSize()}.
+ */
+public class GHSortedLongLongMap implements LongLongMap {
+    static final int BLOCK_SIZE = 1 << 10;
+    private static final int ENTRY_BYTES = 16;
+    private final DataAccess entries;
+    private final long emptyValue;
+    private final LongArrayList blockKeys = new LongArrayList();
+    private final GHLongLongBTree unsortedEntries;
+    private long entryCount;
+    private long lastKey;
+    private long size;
+
+    /**
+     * @param entries    used to store the sorted keys and their values, must be created already
+     * @param emptyValue the value returned for keys that are not contained in the map
+     */
+    public GHSortedLongLongMap(DataAccess entries, long emptyValue) {
+        this(entries, emptyValue, new GHLongLongBTree(200, 8, emptyValue));
+    }
+
+    private GHSortedLongLongMap(DataAccess entries, long emptyValue, GHLongLongBTree unsortedEntries) {
+        this.entries = entries;
+        this.emptyValue = emptyValue;
+        this.unsortedEntries = unsortedEntries;
+    }
+
+    /**
+     * Appends the given key with the empty value if it is larger than all keys added so far, otherwise does nothing.
+     *
+     * @return true if the key was appended
+     */
+    public boolean reserve(long key) {
+        if (!canAppend(key))
+            return false;
+        append(key, emptyValue);
+        return true;
+    }
+
+    /**
+     * Copies the keys with a non-empty value to the given {@link DataAccess} and drops the keys that were reserved but
+     * never got a value. The returned map contains the same entries as this one, which must not be used afterwards.
+     *
+     * @param target used to store the remaining sorted keys and their values, must be created already
+     */
+    public GHSortedLongLongMap removeReserved(DataAccess target) {
+        GHSortedLongLongMap result = new GHSortedLongLongMap(target, emptyValue, unsortedEntries);
+        for (long index = 0; index < entryCount; index++) {
+            long value = getLong(index * ENTRY_BYTES + 8);
+            if (value != emptyValue)
+                result.append(getLong(index * ENTRY_BYTES), value);
+        }
+        result.size = result.entryCount;
+        // keep the last key even if it was only reserved, so keys that are in the b-tree already are not appended
+        result.lastKey = lastKey;
+        return result;
+    }
+
+    @Override
+    public long put(long key, long value) {
+        long index = indexOf(key);
+        if (index >= 0) {
+            long prev = getLong(index * ENTRY_BYTES + 8);
+            setLong(index * ENTRY_BYTES + 8, value);
+            if (prev == emptyValue && value != emptyValue)
+                size++;
+            else if (prev != emptyValue && value == emptyValue)
+                size--;
+            return prev;
+        }
+        if (canAppend(key)) {
+            append(key, value);
+            if (value != emptyValue)
+                size++;
+            return emptyValue;
+        }
+        return unsortedEntries.put(key, value);
+    }
+
+    @Override
+    public long get(long key) {
+        long index = indexOf(key);
+        if (index >= 0)
+            return getLong(index * ENTRY_BYTES + 8);
+        return unsortedEntries.get(key);
+    }
+
+    /**
+     * @return the number of keys with a non-empty value
+     */
+    @Override
+    public long getSize() {
+        return size + unsortedEntries.getSize();
+    }
+
+    /**
+     * @return the number of keys that were not added in ascending order
+     */
+    public long getUnsortedSize() {
+        return unsortedEntries.getSize();
+    }
+
+    @Override
+    public long getMaxValue() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public void optimize() {
+        unsortedEntries.optimize();
+    }
+
+    @Override
+    public int getMemoryUsage() {
+        return Math.round((entries.getCapacity() + 8L * blockKeys.buffer.length) / Helper.MB) + unsortedEntries.getMemoryUsage();
+    }
+
+    @Override
+    public void clear() {
+        entryCount = 0;
+        lastKey = 0;
+        size = 0;
+        blockKeys.release();
+        unsortedEntries.clear();
+    }
+
+    private boolean canAppend(long key) {
+        // an empty map without b-tree entries accepts any key, otherwise the key must be larger than all previous keys
+        return entryCount == 0 && unsortedEntries.getSize() == 0 || key > lastKey;
+    }
+
+    private void append(long key, long value) {
+        if (entryCount % BLOCK_SIZE == 0)
+            blockKeys.add(key);
+        long pointer = entryCount * ENTRY_BYTES;
+        entries.ensureCapacity(pointer + ENTRY_BYTES);
+        setLong(pointer, key);
+        setLong(pointer + 8, value);
+        lastKey = key;
+        entryCount++;
+    }
+
+    private long indexOf(long key) {
+        if (entryCount == 0 || key < blockKeys.get(0) || key > lastKey)
+            return -1;
+        // find the last block that starts with a key <= the given key
+        int low = 0, high = blockKeys.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (blockKeys.get(mid) <= key)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        long lowIndex = (long) low * BLOCK_SIZE;
+        long highIndex = Math.min(lowIndex + BLOCK_SIZE, entryCount) - 1;
+        while (lowIndex <= highIndex) {
+            long mid = (lowIndex + highIndex) >>> 1;
+            long midKey = getLong(mid * ENTRY_BYTES);
+            if (midKey < key)
+                lowIndex = mid + 1;
+            else if (midKey > key)
+                highIndex = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    private void setLong(long pointer, long value) {
+        entries.setInt(pointer, (int) value);
+        entries.setInt(pointer + 4, (int) (value >>> 32));
+    }
+
+    private long getLong(long pointer) {
+        return (entries.getInt(pointer) & 0xFFFF_FFFFL) | ((long) entries.getInt(pointer + 4) << 32);
+    }
+}
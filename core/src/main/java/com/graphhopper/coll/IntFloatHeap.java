@@ -0,0 +1,52 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.coll;
+
+import com.graphhopper.apache.commons.collections.IntFloatBinaryHeap;
+
+/**
+ * A minimum priority queue of int elements with float keys as it is used by the Dijkstra-like searches that keep their
+ * shortest path tree in arrays, like the witness searches of the CH preparation.
+ *
+ * @see IntFloatBinaryHeap
+ * @see IntFloatRadixHeap
+ */
+public interface IntFloatHeap {
+
+    void insert(double key, int element);
+
+    /**
+     * Changes the key of the given element. Does nothing if the element is not contained in the heap.
+     */
+    void update(double key, int element);
+
+    int peekElement();
+
+    float peekKey();
+
+    int poll();
+
+    boolean isEmpty();
+
+    int getSize();
+
+    void clear();
+
+    long getMemoryUsage();
+}
@@ -0,0 +1,213 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.coll;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A monotone priority queue (radix heap, see Ahuja et al., Faster algorithms for the shortest path problem, 1990).
+ * It can be used instead of a binary heap for searches where the key of an inserted or updated element is never smaller
+ * than the key of the last element that was retrieved from the heap, which is the case for Dijkstra's algorithm with
+ * non-negative edge weights.
+ * <p>
+ * The keys are non-negative floats and for those the order of the keys is the same as the order of their bit patterns.
+ * The elements are put into 32 buckets according to the highest bit in which their key differs from the last
+ * retrieved key. Only when the bucket containing the keys equal to the last key is empty the next non-empty bucket is
+ * distributed into the lower buckets. Every element can only move down a limited number of times, so compared to a
+ * binary heap there is much less work per insert and poll, especially for large heaps.
+ * <p>
+ * Similar to {@link MinHeapWithUpdate} this heap keeps track of the positions of the elements, which allows an
+ * efficient update operation, but also means the elements have to be (small) non-negative ids and every element can
+ * only be contained once. The memory required for the positions grows with the largest element that was inserted.
+ */
+public class IntFloatRadixHeap implements IntFloatHeap {
+    private static final int NOT_PRESENT = -1;
+    private static final int BUCKETS = 32;
+    // the buckets and the number of elements in each of them
+    private final int[][] buckets = new int[BUCKETS][];
+    private final int[] bucketSizes = new int[BUCKETS];
+    // the key bits, the bucket and the position within the bucket for every element
+    private int[] keyBits;
+    private int[] elementBuckets;
+    private int[] positions;
+    private int size;
+    // the bits of the key of the last retrieved element
+    private int last;
+
+    public IntFloatRadixHeap() {
+        this(1000);
+    }
+
+    /**
+     * @param initialCapacity the initial range of elements, the heap grows when a larger element is inserted
+     */
+    public IntFloatRadixHeap(int initialCapacity) {
+        initialCapacity = Math.max(1, initialCapacity);
+        keyBits = new int[initialCapacity];
+        elementBuckets = new int[initialCapacity];
+        Arrays.fill(elementBuckets, NOT_PRESENT);
+        positions = new int[initialCapacity];
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i] = new int[8];
+    }
+
+    @Override
+    public void insert(double key, int element) {
+        int bits = toBits(key);
+        ensureCapacity(element);
+        if (elementBuckets[element] != NOT_PRESENT)
+            throw new IllegalArgumentException("Element " + element + " is already contained in the heap");
+        keyBits[element] = bits;
+        add(element);
+        size++;
+    }
+
+    @Override
+    public void update(double key, int element) {
+        if (element >= elementBuckets.length || elementBuckets[element] == NOT_PRESENT)
+            return;
+        int bits = toBits(key);
+        remove(element);
+        keyBits[element] = bits;
+        add(element);
+    }
+
+    @Override
+    public int peekElement() {
+        if (isEmpty())
+            throw new NoSuchElementException("Heap is empty. Cannot peek element.");
+        pullMinimum();
+        return buckets[0][bucketSizes[0] - 1];
+    }
+
+    @Override
+    public float peekKey() {
+        if (isEmpty())
+            throw new NoSuchElementException("Heap is empty. Cannot peek key.");
+        pullMinimum();
+        return Float.intBitsToFloat(last);
+    }
+
+    @Override
+    public int poll() {
+        int element = peekElement();
+        remove(element);
+        size--;
+        return element;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (int b = 0; b < BUCKETS; b++) {
+            for (int i = 0; i < bucketSizes[b]; i++)
+                elementBuckets[buckets[b][i]] = NOT_PRESENT;
+            bucketSizes[b] = 0;
+        }
+        size = 0;
+        last = 0;
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        long bytes = 4L * (keyBits.length + elementBuckets.length + positions.length);
+        for (int[] bucket : buckets)
+            bytes += 4L * bucket.length;
+        return bytes;
+    }
+
+    private int toBits(double key) {
+        float floatKey = (float) key;
+        if (!(floatKey >= 0))
+            throw new IllegalArgumentException("The key must be non-negative, but was: " + key);
+        // -0 and 0 have different bit patterns
+        int bits = floatKey == 0 ? 0 : Float.floatToRawIntBits(floatKey);
+        if (bits < last)
+            throw new IllegalArgumentException("The key must not be smaller than the key of the last retrieved element: "
+                    + key + " < " + Float.intBitsToFloat(last));
+        return bits;
+    }
+
+    private int bucketOf(int bits) {
+        return bits == last ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(bits ^ last);
+    }
+
+    private void add(int element) {
+        int b = bucketOf(keyBits[element]);
+        if (bucketSizes[b] == buckets[b].length)
+            buckets[b] = Arrays.copyOf(buckets[b], 2 * buckets[b].length);
+        buckets[b][bucketSizes[b]] = element;
+        elementBuckets[element] = b;
+        positions[element] = bucketSizes[b];
+        bucketSizes[b]++;
+    }
+
+    private void remove(int element) {
+        int b = elementBuckets[element];
+        int lastPosition = --bucketSizes[b];
+        int moved = buckets[b][lastPosition];
+        buckets[b][positions[element]] = moved;
+        positions[moved] = positions[element];
+        elementBuckets[element] = NOT_PRESENT;
+    }
+
+    /**
+     * Makes sure the first bucket contains the elements with the smallest key, unless the heap is empty.
+     */
+    private void pullMinimum() {
+        if (bucketSizes[0] > 0)
+            return;
+        int b = 1;
+        while (bucketSizes[b] == 0)
+            b++;
+        int[] bucket = buckets[b];
+        int bucketSize = bucketSizes[b];
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < bucketSize; i++)
+            min = Math.min(min, keyBits[bucket[i]]);
+        last = min;
+        // all elements of this bucket move to lower buckets, so we do not overwrite the array we are iterating
+        bucketSizes[b] = 0;
+        for (int i = 0; i < bucketSize; i++)
+            add(bucket[i]);
+    }
+
+    private void ensureCapacity(int element) {
+        if (element < 0)
+            throw new IllegalArgumentException("Illegal element: " + element);
+        if (element < elementBuckets.length)
+            return;
+        int oldLength = elementBuckets.length;
+        int newLength = Math.max(element + 1, 2 * oldLength);
+        keyBits = Arrays.copyOf(keyBits, newLength);
+        positions = Arrays.copyOf(positions, newLength);
+        elementBuckets = Arrays.copyOf(elementBuckets, newLength);
+        Arrays.fill(elementBuckets, oldLength, newLength, NOT_PRESENT);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import com.graphhopper.routing.ch.ShortcutUnpacker;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.EdgeIterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+import static java.util.Comparator.comparingDouble;
+
+/**
+ * Computes a shortest path tree on a node-based {@link RoutingCHGraph} using the approach described in 'PHAST:
+ * Hardware-Accelerated Shortest Path Trees' by Delling et al.: First we run an upward search from the start node. Then
+ * we sweep over all nodes in descending CH level order and relax the edges coming from their higher level neighbors.
+ * The weights of these neighbors are already final at this point, so no priority queue is needed for the second phase.
+ * Both phases calculate the minimum weight of every node, because the limit applies to the time or distance, which
+ * need not be proportional to the weight. The limit only decides which shortcuts are unpacked and which labels are
+ * passed to the consumer.
+ * This is much faster than {@link ShortestPathTree} for large limits, but since the sweep always iterates over all
+ * nodes of the graph and every search allocates an array with a label for every node the plain Dijkstra is faster for
+ * small limits. The order of the nodes only depends on the CH graph, so it should be calculated only once with
+ * {@link #sortNodesByLevel(RoutingCHGraph)}.
+ * <p>
+ * The labels passed to the consumer look the same as those of {@link ShortestPathTree}: their edges are original edges
+ * and their parents are the labels of the previous nodes in the base graph. To achieve this the shortcuts leading to
+ * the nodes within the limit are unpacked. The graph may contain at most one virtual node, i.e. the query graph should
+ * only be created for the snap of the start node.
+ */
+public class CHShortestPathTree extends ShortestPathTree {
+    private final RoutingCHGraph chGraph;
+    private final RoutingCHEdgeExplorer upwardExplorer;
+    private final RoutingCHEdgeExplorer downwardExplorer;
+    private final ShortcutUnpacker shortcutUnpacker;
+    private final boolean reverseFlow;
+    private final int baseNodes;
+    private final int[] levelOrder;
+    private final List<IsoLabel> finishedLabels = new ArrayList<>();
+    private int visitedNodes;
+    // the label of the last original edge visited by the shortcut unpacker
+    private IsoLabel unpackedLabel;
+
+    public CHShortestPathTree(RoutingCHGraph chGraph, boolean reverseFlow) {
+        this(chGraph, sortNodesByLevel(chGraph), reverseFlow);
+    }
+
+    /**
+     * @param levelOrder the nodes of the base graph sorted by descending level, see {@link #sortNodesByLevel}
+     */
+    public CHShortestPathTree(RoutingCHGraph chGraph, int[] levelOrder, boolean reverseFlow) {
+        super(chGraph.getBaseGraph(), chGraph.getWeighting(), reverseFlow, TraversalMode.NODE_BASED);
+        if (chGraph.isEdgeBased())
+            throw new IllegalArgumentException("Shortest path trees are only supported for node-based CH, " +
+                    "but the CH graph for " + chGraph.getWeighting() + " is edge-based");
+        this.chGraph = chGraph;
+        this.reverseFlow = reverseFlow;
+        this.baseNodes = chGraph.getBaseGraph().getBaseGraph().getNodes();
+        if (levelOrder.length != baseNodes)
+            throw new IllegalArgumentException("The level order must contain all " + baseNodes + " nodes of the base graph, but has: " + levelOrder.length);
+        this.levelOrder = levelOrder;
+        if (chGraph.getNodes() - baseNodes > 1)
+            throw new IllegalArgumentException("The CH graph must not contain more than one virtual node, but has: " + (chGraph.getNodes() - baseNodes));
+        this.upwardExplorer = reverseFlow ? chGraph.createInEdgeExplorer() : chGraph.createOutEdgeExplorer();
+        this.downwardExplorer = reverseFlow ? chGraph.createOutEdgeExplorer() : chGraph.createInEdgeExplorer();
+        this.shortcutUnpacker = new ShortcutUnpacker(chGraph, (edge, reverse, prevOrNextEdgeId) -> {
+            IsoLabel prev = unpackedLabel;
+            unpackedLabel = new IsoLabel(edge.getAdjNode(), edge.getEdge(),
+                    prev.weight + weighting.calcEdgeWeight(edge, reverseFlow),
+                    prev.time + weighting.calcEdgeMillis(edge, reverseFlow),
+                    prev.distance + edge.getDistance(), prev);
+        }, false);
+    }
+
+    @Override
+    public void search(int from, final Consumer<IsoLabel> consumer) {
+        checkAlreadyRun();
+        Label[] labels = new Label[chGraph.getNodes()];
+        Label startLabel = new Label(from, EdgeIterator.NO_EDGE, 0, null);
+        startLabel.isoLabel = new IsoLabel(from, -1, 0, 0, 0, null);
+        labels[from] = startLabel;
+        runUpwardSearch(labels, startLabel);
+
+        for (int i = baseNodes - chGraph.getNodes(); i < baseNodes; i++) {
+            // there is at most one virtual node and it comes first since it has the highest level
+            int node = i < 0 ? baseNodes : levelOrder[i];
+            // all nodes with a higher level were processed already, so we can pull the final weight of this node from
+            // its higher level neighbors. this is also necessary because the shortcuts are only stored at the lower
+            // level node
+            Label currLabel = labels[node];
+            int level = chGraph.getLevel(node);
+            RoutingCHEdgeIterator iter = downwardExplorer.setBaseNode(node);
+            while (iter.next()) {
+                if (chGraph.getLevel(iter.getAdjNode()) <= level)
+                    continue;
+                Label prevLabel = labels[iter.getAdjNode()];
+                if (prevLabel == null)
+                    continue;
+                double weight = prevLabel.weight + iter.getWeight(!reverseFlow);
+                if (currLabel == null || currLabel.weight > weight)
+                    currLabel = new Label(node, iter.getEdge(), weight, prevLabel);
+            }
+            if (currLabel == null || Double.isInfinite(currLabel.weight))
+                continue;
+            labels[node] = currLabel;
+            visitedNodes++;
+            finish(currLabel);
+            if (currLabel.isoLabel == null)
+                continue;
+            finishedLabels.add(currLabel.isoLabel);
+            if (getExploreValue(currLabel.isoLabel) <= limit)
+                consumer.accept(currLabel.isoLabel);
+        }
+    }
+
+    /**
+     * Runs a Dijkstra search that only follows edges leading to nodes with a higher level. We cannot stop at the limit,
+     * because it applies to the time or distance, but the labels need to have the minimum weight. The nodes are counted
+     * in the sweep, which visits them again.
+     */
+    private void runUpwardSearch(Label[] labels, Label startLabel) {
+        PriorityQueue<Label> queue = new PriorityQueue<>(1000, comparingDouble(l -> l.weight));
+        queue.add(startLabel);
+        while (!queue.isEmpty()) {
+            Label currLabel = queue.poll();
+            if (currLabel.deleted)
+                continue;
+            finish(currLabel);
+            RoutingCHEdgeIterator iter = upwardExplorer.setBaseNode(currLabel.node);
+            while (iter.next()) {
+                if (iter.getEdge() == currLabel.edge || !acceptUpward(iter.getBaseNode(), iter.getAdjNode()))
+                    continue;
+                double weight = currLabel.weight + iter.getWeight(reverseFlow);
+                if (Double.isInfinite(weight))
+                    continue;
+                Label label = labels[iter.getAdjNode()];
+                if (label == null || label.weight > weight) {
+                    if (label != null)
+                        label.deleted = true;
+                    label = new Label(iter.getAdjNode(), iter.getEdge(), weight, currLabel);
+                    labels[label.node] = label;
+                    queue.add(label);
+                }
+            }
+        }
+    }
+
+    private boolean acceptUpward(int base, int adj) {
+        // always accept virtual edges, see #288
+        if (base >= baseNodes || adj >= baseNodes)
+            return true;
+        return chGraph.getLevel(base) <= chGraph.getLevel(adj);
+    }
+
+    /**
+     * @return the nodes of the base graph of the given CH graph sorted by descending level
+     */
+    public static int[] sortNodesByLevel(RoutingCHGraph chGraph) {
+        int baseNodes = chGraph.getBaseGraph().getBaseGraph().getNodes();
+        int[] levels = new int[baseNodes];
+        int maxLevel = 0;
+        for (int node = 0; node < baseNodes; node++) {
+            levels[node] = chGraph.getLevel(node);
+            maxLevel = Math.max(maxLevel, levels[node]);
+        }
+        // counting sort, there can be multiple nodes with the same level if not all nodes were contracted
+        int[] offsets = new int[maxLevel + 2];
+        for (int node = 0; node < baseNodes; node++)
+            offsets[maxLevel - levels[node] + 1]++;
+        for (int i = 1; i < offsets.length; i++)
+            offsets[i] += offsets[i - 1];
+        int[] order = new int[baseNodes];
+        for (int node = 0; node < baseNodes; node++)
+            order[offsets[maxLevel - levels[node]]++] = node;
+        return order;
+    }
+
+    /**
+     * Creates the label that is passed to the consumer by unpacking the edge leading to the given node. The parent
+     * node must have been finished already. If the parent exceeds the limit (or was not unpacked for this reason)
+     * there is no need to unpack the edge, because the time and distance only increase along the path.
+     */
+    private void finish(Label label) {
+        if (label.isoLabel != null || label.parent.isoLabel == null || getExploreValue(label.parent.isoLabel) > limit)
+            return;
+        unpackedLabel = label.parent.isoLabel;
+        shortcutUnpacker.visitOriginalEdgesFwd(label.edge, label.node, false, EdgeIterator.NO_EDGE);
+        label.isoLabel = unpackedLabel;
+    }
+
+    @Override
+    public ArrayList<IsoLabel> getIsochroneEdges(double z) {
+        ArrayList<IsoLabel> result = new ArrayList<>();
+        for (IsoLabel label : finishedLabels) {
+            if (label.parent != null && (getExploreValue(label) > z ^ getExploreValue(label.parent) > z))
+                result.add(label);
+        }
+        return result;
+    }
+
+    @Override
+    public String getName() {
+        return "reachability_ch";
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    private static class Label {
+        final int node;
+        final int edge;
+        final double weight;
+        final Label parent;
+        boolean deleted;
+        IsoLabel isoLabel;
+
+        Label(int node, int edge, double weight, Label parent) {
+            this.node = node;
+            this.edge = edge;
+            this.weight = weight;
+            this.parent = parent;
+        }
+    }
+}
@@ -89,7 +89,7 @@ public class ShortestPathTree extends AbstractRoutingAlgorithm {
     private final PriorityQueue<IsoLabel> queueByWeighting; // a.k.a. the Dijkstra queue
     private PriorityQueue<IsoLabel> queueByZ; // so we know when we are finished
     private int visitedNodes;
-    private double limit = -1;
+    protected double limit = -1;
     private ExploreType exploreType = TIME;
     private final boolean reverseFlow;
 
@@ -194,7 +194,7 @@ public class ShortestPathTree extends AbstractRoutingAlgorithm {
         return result;
     }
 
-    private double getExploreValue(IsoLabel label) {
+    protected double getExploreValue(IsoLabel label) {
         if (exploreType == TIME)
             return label.time;
         if (exploreType == WEIGHT)
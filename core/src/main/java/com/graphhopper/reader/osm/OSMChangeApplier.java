@@ -0,0 +1,279 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.reader.osm;
+
+import com.carrotsearch.hppc.LongHashSet;
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.routing.OSMReaderConfig;
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.AreaIndex;
+import com.graphhopper.routing.util.CustomArea;
+import com.graphhopper.routing.util.OSMParsers;
+import com.graphhopper.routing.util.countryrules.CountryRuleFactory;
+import com.graphhopper.routing.util.parsers.TagParser;
+import com.graphhopper.search.KVStorage.KValue;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.IntsRef;
+import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Applies an OSM change file (.osc or .osc.gz) to a graph that was imported before, without reading the entire OSM
+ * file again. The edges are found via their {@link OSMWayID}, so this encoded value must be enabled:
+ * <pre>
+ * - For every modified way the tag parsers run again for all edges of this way and the flags and key values of the
+ *   edges are replaced.
+ * - The edges of deleted ways (and of modified ways that are no longer accepted) get empty flags (except for their
+ *   OSM way id) so they are no longer accessible for any vehicle.
+ * </pre>
+ * The graph does not store the OSM node ids, so changed nodes and the geometry of modified ways cannot be applied and
+ * new ways cannot be added. Such changes are counted and need a new import. A change file with new ways is rejected
+ * unless they are explicitly ignored, see {@link #setIgnoreCreatedWays}. The same is true for changed relations: the
+ * encoded values that are derived from relations and the other encoded values that are set after the import are not
+ * parsed again, but kept for the modified edges, see {@link #setPreservedEncodedValues}. The tags of the OSM nodes are
+ * not available either, so the barrier edges of modified ways keep their flags.
+ * <p>
+ * Only the flags of existing edges are changed, so the location index stays valid, but the subnetworks need to be
+ * calculated again. A change can split or merge components anywhere in the graph, so GraphHopper currently runs the
+ * subnetwork detection for the entire graph again instead of only for the components around the changed edges.
+ */
+public class OSMChangeApplier {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OSMChangeApplier.class);
+    private final BaseGraph baseGraph;
+    private final EdgeIntAccess edgeIntAccess;
+    private final IntEncodedValue osmWayIdEnc;
+    private final EncodedValueLookup lookup;
+    private final OSMParsers osmParsers;
+    private final OSMReader osmReader;
+    private final int intsPerEdge;
+    private final List<IntEncodedValue> preservedEncodedValues = new ArrayList<>();
+    private final Map<Long, ReaderWay> modifiedWays = new HashMap<>();
+    private final LongHashSet deletedWays = new LongHashSet();
+    private boolean ignoreCreatedWays;
+    private long firstCreatedWay = -1;
+    private int createdWays;
+    private int changedNodes;
+    private int changedRelations;
+
+    public OSMChangeApplier(BaseGraph baseGraph, EncodedValueLookup lookup, OSMParsers osmParsers, OSMReaderConfig config) {
+        if (!lookup.hasEncodedValue(OSMWayID.KEY))
+            throw new IllegalStateException("Applying OSM changes requires the encoded value " + OSMWayID.KEY);
+        this.baseGraph = baseGraph;
+        this.edgeIntAccess = baseGraph.getEdgeAccess();
+        this.osmWayIdEnc = lookup.getIntEncodedValue(OSMWayID.KEY);
+        this.lookup = lookup;
+        this.osmParsers = osmParsers;
+        this.osmReader = new OSMReader(baseGraph, osmParsers, config);
+        this.intsPerEdge = (int) Math.ceil((double) baseGraph.getBytesForFlags() / 4);
+    }
+
+    public OSMChangeApplier setAreaIndex(AreaIndex<CustomArea> areaIndex) {
+        osmReader.setAreaIndex(areaIndex);
+        return this;
+    }
+
+    public OSMChangeApplier setCountryRuleFactory(CountryRuleFactory countryRuleFactory) {
+        osmReader.setCountryRuleFactory(countryRuleFactory);
+        return this;
+    }
+
+    /**
+     * Sets the encoded values that cannot be derived from the way tags, e.g. because they are set by the relation tag
+     * parsers or after the import. The values of the modified edges are kept for these encoded values.
+     */
+    public OSMChangeApplier setPreservedEncodedValues(Collection<String> names) {
+        preservedEncodedValues.clear();
+        for (String name : names)
+            preservedEncodedValues.add(lookup.getEncodedValue(name, IntEncodedValue.class));
+        return this;
+    }
+
+    /**
+     * By default a change file with created ways is rejected, because the new ways would be missing in the graph.
+     * Set this to true to apply the other changes nevertheless.
+     */
+    public OSMChangeApplier setIgnoreCreatedWays(boolean ignoreCreatedWays) {
+        this.ignoreCreatedWays = ignoreCreatedWays;
+        return this;
+    }
+
+    /**
+     * Reads the given change file and updates the edges of the modified and deleted ways. The graph is not changed if
+     * the change file is rejected.
+     *
+     * @return the number of changed edges
+     * @throws IllegalArgumentException if the change file creates ways and these are not ignored
+     */
+    public int apply(File changeFile) throws IOException, XMLStreamException {
+        StopWatch sw = StopWatch.started();
+        readChanges(changeFile);
+        if (createdWays > 0 && !ignoreCreatedWays)
+            throw new IllegalArgumentException(changeFile.getName() + " creates " + createdWays + " ways, e.g. " + firstCreatedWay
+                    + ", which requires a new import. Set ignoreCreatedWays to apply the other changes nevertheless");
+        int changedEdges = applyChanges();
+        LOGGER.info("applied {} in {}s, modified ways: {}, deleted ways: {}, changed edges: {}", changeFile.getName(),
+                sw.stop().getSeconds(), modifiedWays.size(), deletedWays.size(), changedEdges);
+        if (createdWays > 0 || changedNodes > 0 || changedRelations > 0)
+            LOGGER.warn("ignored changes that require a new import, created ways: {}, changed nodes: {}, changed relations: {}",
+                    createdWays, changedNodes, changedRelations);
+        return changedEdges;
+    }
+
+    /**
+     * @return the number of created ways of the last applied change file, which are not added to the graph
+     */
+    public int getCreatedWays() {
+        return createdWays;
+    }
+
+    private void readChanges(File changeFile) throws IOException, XMLStreamException {
+        try (InputStream is = openChangeFile(changeFile)) {
+            XMLStreamReader parser = XMLInputFactory.newInstance().createXMLStreamReader(is, "UTF-8");
+            try {
+                String action = null;
+                while (parser.hasNext()) {
+                    int event = parser.next();
+                    if (event == XMLStreamConstants.END_ELEMENT && parser.getLocalName().equals(action)) {
+                        action = null;
+                    } else if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = parser.getLocalName();
+                        if ("create".equals(name) || "modify".equals(name) || "delete".equals(name))
+                            action = name;
+                        else if (action != null && "node".equals(name))
+                            changedNodes++;
+                        else if (action != null && "relation".equals(name))
+                            changedRelations++;
+                        else if (action != null && "way".equals(name))
+                            handleWay(action, OSMXMLHelper.createWay(Long.parseLong(parser.getAttributeValue(null, "id")), parser));
+                    }
+                }
+            } finally {
+                parser.close();
+            }
+        }
+    }
+
+    private static InputStream openChangeFile(File changeFile) throws IOException {
+        InputStream is = new BufferedInputStream(new FileInputStream(changeFile), 50_000);
+        return changeFile.getName().endsWith(".gz") ? new GZIPInputStream(is, 50_000) : is;
+    }
+
+    private void handleWay(String action, ReaderWay way) {
+        // the changes are ordered, so a later change of the same way replaces an earlier one
+        switch (action) {
+            case "create":
+                if (createdWays == 0)
+                    firstCreatedWay = way.getId();
+                createdWays++;
+                break;
+            case "modify":
+                deletedWays.remove(way.getId());
+                if (osmReader.acceptWay(way))
+                    modifiedWays.put(way.getId(), way);
+                else {
+                    modifiedWays.remove(way.getId());
+                    deletedWays.add(way.getId());
+                }
+                break;
+            case "delete":
+                modifiedWays.remove(way.getId());
+                deletedWays.add(way.getId());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown action: " + action);
+        }
+    }
+
+    private int applyChanges() {
+        if (modifiedWays.isEmpty() && deletedWays.isEmpty())
+            return 0;
+
+        // the suppliers return nothing, because we do not know the OSM nodes anymore
+        for (ReaderWay way : modifiedWays.values())
+            osmReader.preprocessWay(way, osmNodeId -> null, osmNodeId -> Collections.emptyMap());
+
+        IntsRef flags = new IntsRef(intsPerEdge);
+        EdgeIntAccess tmpEdgeIntAccess = new IntsRefEdgeIntAccess(flags);
+        IntsRef relationFlags = osmParsers.createRelationFlags();
+        int changedEdges = 0;
+        AllEdgesIterator iter = baseGraph.getAllEdges();
+        while (iter.next()) {
+            int edge = iter.getEdge();
+            long wayId = iter.get(osmWayIdEnc);
+            if (deletedWays.contains(wayId)) {
+                for (int i = 0; i < intsPerEdge; i++)
+                    edgeIntAccess.setInt(edge, i, 0);
+                // keep the way id so a later change can restore the edge
+                osmWayIdEnc.setInt(false, edge, edgeIntAccess, (int) wayId);
+                changedEdges++;
+                continue;
+            }
+            ReaderWay way = modifiedWays.get(wayId);
+            if (way == null)
+                continue;
+            PointList pointList = iter.fetchWayGeometry(FetchMode.ALL);
+            if (isBarrierEdge(pointList))
+                // without the node tags we would lose the barrier
+                continue;
+
+            Arrays.fill(flags.ints, 0);
+            for (IntEncodedValue ev : preservedEncodedValues) {
+                ev.setInt(false, edge, tmpEdgeIntAccess, ev.getInt(false, edge, edgeIntAccess));
+                if (ev.isStoreTwoDirections())
+                    ev.setInt(true, edge, tmpEdgeIntAccess, ev.getInt(true, edge, edgeIntAccess));
+            }
+            List<Map<String, Object>> nodeTags = new ArrayList<>(pointList.size());
+            for (int i = 0; i < pointList.size(); i++)
+                nodeTags.add(Collections.emptyMap());
+            osmReader.setArtificialWayTags(pointList, way, iter.getDistance(), nodeTags);
+            // the relation tag parsers are skipped, because they would reset the preserved route networks
+            for (TagParser parser : osmParsers.getWayTagParsers())
+                parser.handleWayTags(edge, tmpEdgeIntAccess, way, relationFlags);
+            for (int i = 0; i < intsPerEdge; i++)
+                edgeIntAccess.setInt(edge, i, flags.ints[i]);
+
+            Map<String, KValue> keyValues = way.getTag("key_values", Collections.emptyMap());
+            // the key values are appended to the storage, so we only set them if they actually changed
+            if (!keyValues.equals(iter.getKeyValues()))
+                iter.setKeyValues(keyValues);
+            changedEdges++;
+        }
+        return changedEdges;
+    }
+
+    /**
+     * The barrier edges are the artificial edges that OSMReader creates for barrier nodes. Both of their nodes are
+     * located at the barrier node.
+     */
+    private static boolean isBarrierEdge(PointList pointList) {
+        return pointList.size() == 2 && pointList.getLat(0) == pointList.getLat(1) && pointList.getLon(0) == pointList.getLon(1);
+    }
+}
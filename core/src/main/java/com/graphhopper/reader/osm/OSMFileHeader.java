@@ -30,10 +30,22 @@ import javax.xml.stream.XMLStreamReader;
  * @author ratrun
  */
 public class OSMFileHeader extends ReaderElement {
+    /**
+     * The PBF feature that declares the elements are sorted by type (nodes, ways, relations) and then by id
+     */
+    public static final String SORT_TYPE_THEN_ID = "Sort.Type_then_ID";
+
     public OSMFileHeader() {
         super(0, Type.FILEHEADER);
     }
 
+    /**
+     * @return true if the file declares that its elements are sorted by type and then by id
+     */
+    public boolean isSortedByTypeThenId() {
+        return hasTag("sort", SORT_TYPE_THEN_ID);
+    }
+
     /**
      * Constructor for XML Parser
      */
@@ -21,9 +21,12 @@ package com.graphhopper.reader.osm;
 import com.carrotsearch.hppc.LongScatterSet;
 import com.carrotsearch.hppc.LongSet;
 import com.graphhopper.coll.GHLongLongBTree;
+import com.graphhopper.coll.GHSortedLongLongMap;
 import com.graphhopper.coll.LongLongMap;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.search.KVStorage;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.util.PointAccess;
 import com.graphhopper.util.PointList;
@@ -60,7 +63,11 @@ class OSMNodeData {
     static final long CONNECTION_NODE = 2;
 
     // this map stores our internal node id for each OSM node
-    private final LongLongMap idsByOsmNodeIds;
+    private LongLongMap idsByOsmNodeIds;
+    // only used if the OSM node ids are added in ascending order, see useSortedIds
+    private GHSortedLongLongMap sortedIdsByOsmNodeIds;
+    private String sortedIdsName;
+    private final Directory directory;
 
     // here we store node coordinates, separated for pillar and tower nodes
     private final PillarInfo pillarNodes;
@@ -84,6 +91,7 @@ class OSMNodeData {
         // memory efficient, because there is no waste for empty entries, and it also avoids
         // allocating big arrays when growing the size.
         idsByOsmNodeIds = new GHLongLongBTree(200, 5, EMPTY_NODE);
+        this.directory = directory;
         towerNodes = nodeAccess;
         pillarNodes = new PillarInfo(towerNodes.is3D(), directory);
 
@@ -92,6 +100,58 @@ class OSMNodeData {
         nodeKVStorage = new KVStorage(directory, false).create(100);
     }
 
+    /**
+     * Replaces the b-tree that maps the OSM node ids to our internal ids with a {@link GHSortedLongLongMap}, which
+     * requires much less memory and keeps its data outside the heap. This only pays off if all OSM node ids are
+     * passed to {@link #reserveSortedId} in ascending order before the node types are set, e.g. when the nodes of an
+     * id-sorted file are read before the ways. Must be called before any ids were added.
+     */
+    public void useSortedIds() {
+        if (idsByOsmNodeIds.getSize() > 0)
+            throw new IllegalStateException("The sorted ids must be used before any ids are added");
+        sortedIdsName = "tmp_osm_node_ids";
+        sortedIdsByOsmNodeIds = new GHSortedLongLongMap(createSortedIdsDataAccess(sortedIdsName), EMPTY_NODE);
+        idsByOsmNodeIds = sortedIdsByOsmNodeIds;
+    }
+
+    /**
+     * Every node of the file is reserved in the sorted ids, but only the nodes of the accepted ways get a node type.
+     * This method moves the sorted ids that got a node type to a new, smaller storage and removes the old one, so the
+     * ids of e.g. the building nodes do not occupy space while the graph is created. Must be called after the node
+     * types were set and before the coordinates are added. Does nothing if the sorted ids are not used.
+     */
+    public void removeReservedSortedIds() {
+        if (sortedIdsByOsmNodeIds == null)
+            return;
+        String prevName = sortedIdsName;
+        sortedIdsName = "tmp_osm_node_ids_used";
+        sortedIdsByOsmNodeIds = sortedIdsByOsmNodeIds.removeReserved(createSortedIdsDataAccess(sortedIdsName));
+        idsByOsmNodeIds = sortedIdsByOsmNodeIds;
+        directory.remove(prevName);
+    }
+
+    private DataAccess createSortedIdsDataAccess(String name) {
+        DAType type = directory.getDefaultType().isStoring() ? DAType.MMAP : DAType.OFF_HEAP;
+        return directory.create(name, type).create(1000);
+    }
+
+    /**
+     * Adds the given OSM node id to the sorted ids without assigning a node type yet. Does nothing if the sorted ids
+     * are not used or the id is not larger than the previous one, in which case the id will be mapped in a separate
+     * b-tree once it gets a node type.
+     */
+    public void reserveSortedId(long osmNodeId) {
+        if (sortedIdsByOsmNodeIds != null)
+            sortedIdsByOsmNodeIds.reserve(osmNodeId);
+    }
+
+    /**
+     * @return the number of OSM node ids that were not added in ascending order, or -1 if the sorted ids are not used
+     */
+    public long getUnsortedIdCount() {
+        return sortedIdsByOsmNodeIds == null ? -1 : sortedIdsByOsmNodeIds.getUnsortedSize();
+    }
+
     public boolean is3D() {
         return towerNodes.is3D();
     }
@@ -272,6 +332,8 @@ class OSMNodeData {
 
     public void release() {
         idsByOsmNodeIds.clear();
+        if (sortedIdsByOsmNodeIds != null)
+            directory.remove(sortedIdsName);
         pillarNodes.clear();
         nodeTagIndicesByOsmNodeIds.clear();
         nodeKVStorage.clear();
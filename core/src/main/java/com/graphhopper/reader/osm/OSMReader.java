@@ -94,6 +94,7 @@ public class OSMReader {
     private final IntsRef tempRelFlags;
     private Date osmDataDate;
     private long zeroCounter = 0;
+    private WayTagPipeline wayTagPipeline;
 
     private GHLongLongHashMap osmWayIdToRelationFlagsMap = new GHLongLongHashMap(200, .5f);
     private WayToEdgesMap restrictedWaysToEdgesMap = new WayToEdgesMap();
@@ -171,8 +172,20 @@ public class OSMReader {
                 .setRelationProcessor(this::processRelation)
                 .setEdgeHandler(this::addEdge)
                 .setWorkerThreads(config.getWorkerThreads())
+                .setSinglePass(config.isSinglePass())
                 .build();
-        waySegmentParser.readOSM(osmFile);
+        if (config.getTagParserThreads() > 1)
+            wayTagPipeline = new WayTagPipeline(osmParsers, baseGraph, config.getTagParserThreads());
+        try {
+            waySegmentParser.readOSM(osmFile);
+            if (wayTagPipeline != null)
+                wayTagPipeline.flush();
+        } finally {
+            if (wayTagPipeline != null) {
+                wayTagPipeline.close();
+                wayTagPipeline = null;
+            }
+        }
         osmDataDate = waySegmentParser.getTimestamp();
         if (baseGraph.getNodes() == 0)
             throw new RuntimeException("Graph after reading OSM must not be empty");
@@ -375,7 +388,11 @@ public class OSMReader {
         setArtificialWayTags(pointList, way, distance, nodeTags);
         IntsRef relationFlags = getRelFlagsMap(way.getId());
         EdgeIteratorState edge = baseGraph.edge(fromIndex, toIndex).setDistance(distance);
-        osmParsers.handleWayTags(edge.getEdge(), edgeIntAccess, way, relationFlags);
+        if (wayTagPipeline == null)
+            osmParsers.handleWayTags(edge.getEdge(), edgeIntAccess, way, relationFlags);
+        else
+            // the flags of this edge will be set once the pipeline is flushed
+            wayTagPipeline.add(edge.getEdge(), way, relationFlags);
         Map<String, KValue> map = way.getTag("key_values", Collections.emptyMap());
         if (!map.isEmpty())
             edge.setKeyValues(map);
@@ -0,0 +1,312 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.reader.osm;
+
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.ReaderNode;
+import com.graphhopper.reader.ReaderRelation;
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.Helper;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Stores the OSM elements that {@link WaySegmentParser} needs after reading the OSM file once (single pass mode) so it
+ * can process them later without reading the file again:
+ * <pre>
+ * - The coordinates of all OSM nodes are stored in a flat array in the order they appear in the file (which is sorted
+ *   by id for PBF files). Every entry takes 16 bytes: the OSM node id, latitude and longitude. The coordinates are
+ *   stored with the same precision as in the graph.
+ * - The tags are only stored for the nodes that need them later, i.e. potential barrier nodes and nodes with tags we
+ *   keep for the edge handler.
+ * - The accepted ways and all relations are serialized as they were read.
+ * </pre>
+ * The data is kept in {@link DataAccess} objects that are memory-mapped if the directory stores its data on disk, so
+ * even the nodes of large files do not need to fit into the heap.
+ */
+class OSMSpill {
+    private static final int NODE_BYTES = 16;
+    private final Directory directory;
+    private final DataAccess nodes;
+    private final ElementStream nodeTags;
+    private final ElementStream ways;
+    private final ElementStream relations;
+    private long nodeCount;
+    private long taggedNodeCount;
+    private long wayCount;
+    private long relationCount;
+
+    OSMSpill(Directory directory) {
+        this.directory = directory;
+        DAType type = directory.getDefaultType().isStoring() ? DAType.MMAP : DAType.RAM;
+        nodes = directory.create("tmp_osm_nodes", type).create(1000);
+        nodeTags = new ElementStream(directory.create("tmp_osm_node_tags", type).create(1000));
+        ways = new ElementStream(directory.create("tmp_osm_ways", type).create(1000));
+        relations = new ElementStream(directory.create("tmp_osm_relations", type).create(1000));
+    }
+
+    /**
+     * @param keepTags true if the tags of this node shall be available when the nodes are replayed
+     */
+    void addNode(ReaderNode node, boolean keepTags) {
+        long pointer = nodeCount * NODE_BYTES;
+        nodes.ensureCapacity(pointer + NODE_BYTES);
+        nodes.setInt(pointer, (int) node.getId());
+        nodes.setInt(pointer + 4, (int) (node.getId() >>> 32));
+        nodes.setInt(pointer + 8, Helper.degreeToInt(node.getLat()));
+        nodes.setInt(pointer + 12, Helper.degreeToInt(node.getLon()));
+        nodeCount++;
+        if (keepTags) {
+            nodeTags.write(out -> {
+                out.writeLong(node.getId());
+                writeTags(out, node.getTags());
+            });
+            taggedNodeCount++;
+        }
+    }
+
+    void addWay(ReaderWay way) {
+        ways.write(out -> {
+            out.writeLong(way.getId());
+            out.writeInt(way.getNodes().size());
+            for (int i = 0; i < way.getNodes().size(); i++)
+                out.writeLong(way.getNodes().get(i));
+            writeTags(out, way.getTags());
+        });
+        wayCount++;
+    }
+
+    void addRelation(ReaderRelation relation) {
+        relations.write(out -> {
+            out.writeLong(relation.getId());
+            out.writeInt(relation.getMembers().size());
+            for (ReaderRelation.Member member : relation.getMembers()) {
+                out.writeByte(member.getType().ordinal());
+                out.writeLong(member.getRef());
+                // the role is optional, e.g. for the relations of OSM XML files without a role attribute
+                out.writeBoolean(member.getRole() != null);
+                if (member.getRole() != null)
+                    out.writeUTF(member.getRole());
+            }
+            writeTags(out, relation.getTags());
+        });
+        relationCount++;
+    }
+
+    /**
+     * Passes all nodes to the given consumer in the order they were added. Only the nodes added with keepTags=true
+     * have tags.
+     */
+    void replayNodes(Consumer<ReaderNode> consumer) {
+        ElementStream.Reader tagReader = nodeTags.reader(taggedNodeCount);
+        DataInput taggedNode = tagReader.next();
+        long taggedNodeId = taggedNode == null ? 0 : readLong(taggedNode);
+        for (long i = 0; i < nodeCount; i++) {
+            long pointer = i * NODE_BYTES;
+            long id = (nodes.getInt(pointer) & 0xFFFF_FFFFL) | ((long) nodes.getInt(pointer + 4) << 32);
+            ReaderNode node = new ReaderNode(id,
+                    Helper.intToDegree(nodes.getInt(pointer + 8)), Helper.intToDegree(nodes.getInt(pointer + 12)));
+            // the tagged nodes were added in the same order, so we only need to compare with the next one
+            if (taggedNode != null && taggedNodeId == id) {
+                node.setTags(readTags(taggedNode));
+                taggedNode = tagReader.next();
+                taggedNodeId = taggedNode == null ? 0 : readLong(taggedNode);
+            }
+            consumer.accept(node);
+        }
+    }
+
+    void replayWays(Consumer<ReaderWay> consumer) {
+        ElementStream.Reader reader = ways.reader(wayCount);
+        DataInput in;
+        while ((in = reader.next()) != null) {
+            try {
+                ReaderWay way = new ReaderWay(in.readLong());
+                int size = in.readInt();
+                for (int i = 0; i < size; i++)
+                    way.getNodes().add(in.readLong());
+                way.setTags(readTags(in));
+                consumer.accept(way);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    void replayRelations(Consumer<ReaderRelation> consumer) {
+        ElementStream.Reader reader = relations.reader(relationCount);
+        DataInput in;
+        while ((in = reader.next()) != null) {
+            try {
+                ReaderRelation relation = new ReaderRelation(in.readLong());
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    ReaderElement.Type type = ReaderElement.Type.values()[in.readByte()];
+                    long ref = in.readLong();
+                    relation.add(new ReaderRelation.Member(type, ref, in.readBoolean() ? in.readUTF() : null));
+                }
+                relation.setTags(readTags(in));
+                consumer.accept(relation);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    long getNodeCount() {
+        return nodeCount;
+    }
+
+    long getTaggedNodeCount() {
+        return taggedNodeCount;
+    }
+
+    long getWayCount() {
+        return wayCount;
+    }
+
+    long getRelationCount() {
+        return relationCount;
+    }
+
+    long getCapacity() {
+        return nodes.getCapacity() + nodeTags.da.getCapacity() + ways.da.getCapacity() + relations.da.getCapacity();
+    }
+
+    void release() {
+        directory.remove(nodes.getName());
+        directory.remove(nodeTags.da.getName());
+        directory.remove(ways.da.getName());
+        directory.remove(relations.da.getName());
+    }
+
+    private static void writeTags(DataOutput out, Map<String, Object> tags) throws IOException {
+        out.writeInt(tags.size());
+        for (Map.Entry<String, Object> tag : tags.entrySet()) {
+            out.writeUTF(tag.getKey());
+            // the readers only create string values
+            out.writeUTF(tag.getValue().toString());
+        }
+    }
+
+    private static Map<String, Object> readTags(DataInput in) {
+        try {
+            int size = in.readInt();
+            Map<String, Object> tags = new LinkedHashMap<>(size);
+            for (int i = 0; i < size; i++)
+                tags.put(in.readUTF(), in.readUTF());
+            return tags;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long readLong(DataInput in) {
+        try {
+            return in.readLong();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface ElementWriter {
+        void write(DataOutput out) throws IOException;
+    }
+
+    /**
+     * A sequence of length-prefixed byte records stored in a {@link DataAccess}
+     */
+    private static class ElementStream {
+        private final DataAccess da;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(buffer);
+        private long pointer;
+
+        ElementStream(DataAccess da) {
+            this.da = da;
+        }
+
+        void write(ElementWriter writer) {
+            buffer.reset();
+            try {
+                writer.write(out);
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            byte[] bytes = buffer.toByteArray();
+            da.ensureCapacity(pointer + 4 + bytes.length);
+            da.setInt(pointer, bytes.length);
+            pointer += 4;
+            // a single call to setBytes must not span more than two segments
+            for (int offset = 0; offset < bytes.length; ) {
+                int length = Math.min(bytes.length - offset, da.getSegmentSize());
+                da.setBytes(pointer, offset == 0 ? bytes : Arrays.copyOfRange(bytes, offset, offset + length), length);
+                offset += length;
+                pointer += length;
+            }
+        }
+
+        Reader reader(long count) {
+            return new Reader(count);
+        }
+
+        class Reader {
+            private final long count;
+            private long index;
+            private long readPointer;
+
+            Reader(long count) {
+                this.count = count;
+            }
+
+            /**
+             * @return the next record or null if all records were read
+             */
+            DataInput next() {
+                if (index >= count)
+                    return null;
+                index++;
+                int size = da.getInt(readPointer);
+                readPointer += 4;
+                byte[] bytes = new byte[size];
+                for (int offset = 0; offset < size; ) {
+                    int length = Math.min(size - offset, da.getSegmentSize());
+                    if (offset == 0) {
+                        da.getBytes(readPointer, bytes, length);
+                    } else {
+                        byte[] chunk = new byte[length];
+                        da.getBytes(readPointer, chunk, length);
+                        System.arraycopy(chunk, 0, bytes, offset, length);
+                    }
+                    offset += length;
+                    readPointer += length;
+                }
+                return new DataInputStream(new ByteArrayInputStream(bytes));
+            }
+        }
+    }
+}
@@ -52,6 +52,12 @@ import static com.graphhopper.util.Helper.nf;
  * ways are intersecting. During the second pass we split the OSM ways at intersections, introduce the artificial
  * segments and pass the way information along with the corresponding nodes to a given callback.
  * <p>
+ * Alternatively, the file can be read only once ({@link Builder#setSinglePass}). In this case the first pass is done
+ * while reading the file, and the nodes, accepted ways and relations are stored in an {@link OSMSpill} at the same
+ * time. The second pass then reads them from there, which saves decompressing and parsing the file a second time at
+ * the cost of temporary (memory-mapped) storage for all node coordinates. If the file declares that it is sorted by
+ * id, the OSM node ids are also mapped using a sorted array instead of a b-tree, see {@link OSMNodeData#useSortedIds}.
+ * <p>
  * We assume a strict order of the OSM file: nodes, ways, then relations.
  * <p>
  * The main difficulty is that the OSM ID range is very large (64bit integers) and to be able to provide the full
@@ -74,12 +80,15 @@ public class WaySegmentParser {
     private EdgeHandler edgeHandler = (from, to, pointList, way, nodeTags) ->
             System.out.println("edge " + from + "->" + to + " (" + pointList.size() + " points)");
     private int workerThreads = 2;
+    private boolean singlePass = false;
 
     private final OSMNodeData nodeData;
+    private final Directory directory;
     private Date timestamp;
 
-    private WaySegmentParser(OSMNodeData nodeData) {
+    private WaySegmentParser(OSMNodeData nodeData, Directory directory) {
         this.nodeData = nodeData;
+        this.directory = directory;
     }
 
     /**
@@ -88,6 +97,10 @@ public class WaySegmentParser {
     public void readOSM(File osmFile) {
         if (nodeData.getNodeCount() > 0)
             throw new IllegalStateException("You can only run way segment parser once");
+        if (singlePass) {
+            readOSMSinglePass(osmFile);
+            return;
+        }
 
         LOGGER.info("Start reading OSM file: '" + osmFile + "'");
         LOGGER.info("pass1 - start");
@@ -112,6 +125,40 @@ public class WaySegmentParser {
                 " total: " + (int) (sw1.getSeconds() + sw2.getSeconds()) + "s");
     }
 
+    private void readOSMSinglePass(File osmFile) {
+        LOGGER.info("Start reading OSM file in single pass mode: '" + osmFile + "'");
+        OSMSpill spill = new OSMSpill(directory);
+        StopWatch sw1 = StopWatch.started();
+        readOSM(osmFile, new SinglePassHandler(spill), SkipOptions.none());
+        LOGGER.info("pass1 - finished, took: {}, stored nodes: {}, nodes with tags: {}, ways: {}, relations: {}, storage: {}MB",
+                sw1.stop().getTimeString(), nf(spill.getNodeCount()), nf(spill.getTaggedNodeCount()), nf(spill.getWayCount()),
+                nf(spill.getRelationCount()), spill.getCapacity() / Helper.MB);
+        if (nodeData.getUnsortedIdCount() >= 0) {
+            LOGGER.info("sorted node ids were used, way nodes that were missing or not sorted: {}", nf(nodeData.getUnsortedIdCount()));
+            // all nodes of the file were reserved, but we only need to keep the ids of the way nodes
+            nodeData.removeReservedSortedIds();
+        }
+
+        LOGGER.info("Creating graph. Node count (pillar+tower): " + nodeData.getNodeCount() + ", " + Helper.getMemInfo());
+
+        LOGGER.info("pass2 - start, reading the stored OSM data");
+        StopWatch sw2 = StopWatch.started();
+        Pass2Handler pass2Handler = new Pass2Handler();
+        spill.replayNodes(pass2Handler::handleNode);
+        spill.replayWays(pass2Handler::handleWay);
+        spill.replayRelations(pass2Handler::handleRelation);
+        pass2Handler.onFinish();
+        LOGGER.info("pass2 - finished, took: {}", sw2.stop().getTimeString());
+
+        spill.release();
+        nodeData.release();
+
+        LOGGER.info("Finished reading OSM file." +
+                " pass1: " + (int) sw1.getSeconds() + "s, " +
+                " pass2: " + (int) sw2.getSeconds() + "s, " +
+                " total: " + (int) (sw1.getSeconds() + sw2.getSeconds()) + "s");
+    }
+
     /**
      * @return the timestamp read from the OSM file, or null if nothing was read yet
      */
@@ -120,8 +167,8 @@ public class WaySegmentParser {
     }
 
     private class Pass1Handler implements ReaderElementHandler {
-        private boolean handledWays;
-        private boolean handledRelations;
+        boolean handledWays;
+        boolean handledRelations;
         private long wayCounter = 0;
         private long acceptedWays = 0;
         private long relationsCounter = 0;
@@ -142,6 +189,7 @@ public class WaySegmentParser {
             if (!wayFilter.test(way))
                 return;
             acceptedWays++;
+            onAcceptedWay(way);
 
             for (LongCursor node : way.getNodes()) {
                 final boolean isEnd = node.index == 0 || node.index == way.getNodes().size() - 1;
@@ -153,6 +201,9 @@ public class WaySegmentParser {
             }
         }
 
+        void onAcceptedWay(ReaderWay way) {
+        }
+
         @Override
         public void handleRelation(ReaderRelation relation) {
             if (!handledRelations) {
@@ -179,6 +230,54 @@ public class WaySegmentParser {
         }
     }
 
+    /**
+     * Does the work of the first pass and additionally stores everything the second pass needs
+     */
+    private class SinglePassHandler extends Pass1Handler {
+        private final OSMSpill spill;
+
+        SinglePassHandler(OSMSpill spill) {
+            this.spill = spill;
+        }
+
+        @Override
+        public void handleNode(ReaderNode node) {
+            if (handledWays)
+                throw new IllegalStateException("OSM node elements must be located before way elements in OSM file");
+            if (handledRelations)
+                throw new IllegalStateException("OSM node elements must be located before relation elements in OSM file");
+            // we only keep the tags the second pass is going to look at
+            spill.addNode(node, splitNodeFilter.test(node) || hasIncludedTag(node));
+            nodeData.reserveSortedId(node.getId());
+        }
+
+        @Override
+        public void handleFileHeader(OSMFileHeader fileHeader) throws ParseException {
+            super.handleFileHeader(fileHeader);
+            // we read all nodes before the ways, so for sorted files we can use a sorted array to map the node ids
+            if (fileHeader.isSortedByTypeThenId())
+                nodeData.useSortedIds();
+        }
+
+        @Override
+        void onAcceptedWay(ReaderWay way) {
+            spill.addWay(way);
+        }
+
+        @Override
+        public void handleRelation(ReaderRelation relation) {
+            spill.addRelation(relation);
+            super.handleRelation(relation);
+        }
+    }
+
+    private static boolean hasIncludedTag(ReaderNode node) {
+        for (String key : node.getTags().keySet())
+            if (INCLUDE_IF_NODE_TAGS.contains(key))
+                return true;
+        return false;
+    }
+
     private class Pass2Handler implements ReaderElementHandler {
         private boolean handledNodes;
         private boolean handledWays;
@@ -220,15 +319,12 @@ public class WaySegmentParser {
             }
 
             // store node tags if at least one important tag is included and make this available for the edge handler
-            for (Map.Entry<String, Object> e : node.getTags().entrySet()) {
-                if (INCLUDE_IF_NODE_TAGS.contains(e.getKey())) {
-                    node.removeTag("created_by");
-                    node.removeTag("source");
-                    node.removeTag("note");
-                    node.removeTag("fixme");
-                    nodeData.setTags(node);
-                    break;
-                }
+            if (hasIncludedTag(node)) {
+                node.removeTag("created_by");
+                node.removeTag("source");
+                node.removeTag("note");
+                node.removeTag("fixme");
+                nodeData.setTags(node);
             }
         }
 
@@ -416,7 +512,7 @@ public class WaySegmentParser {
          * @param directory   the directory to be used to store temporary data
          */
         public Builder(PointAccess pointAccess, Directory directory) {
-            waySegmentParser = new WaySegmentParser(new OSMNodeData(pointAccess, directory));
+            waySegmentParser = new WaySegmentParser(new OSMNodeData(pointAccess, directory), directory);
         }
 
         /**
@@ -483,6 +579,15 @@ public class WaySegmentParser {
             return this;
         }
 
+        /**
+         * @param singlePass true if the OSM file shall be read only once. The data needed for the second pass is
+         *                   stored temporarily in the directory instead.
+         */
+        public Builder setSinglePass(boolean singlePass) {
+            waySegmentParser.singlePass = singlePass;
+            return this;
+        }
+
         public WaySegmentParser build() {
             return waySegmentParser;
         }
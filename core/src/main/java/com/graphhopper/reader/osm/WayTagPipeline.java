@@ -0,0 +1,177 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.reader.osm;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.routing.ev.EdgeIntAccess;
+import com.graphhopper.routing.util.OSMParsers;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.IntsRef;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the tag parsers for the edges that {@link OSMReader} creates on several threads. The edges are still created
+ * one by one on the reading thread, so the edge ids do not change, but their tags are not parsed right away. Instead,
+ * the edges are collected in batches together with a copy of their way. Once a batch is full the worker threads parse
+ * the tags of its edges into a temporary array, while the reading thread continues with the next batch. Before the
+ * next batch is submitted the reading thread copies the flags of the finished batch into the graph. Therefore the flags
+ * of the added edges are only complete after {@link #flush()} was called, but they are the same as if the tags were
+ * parsed on a single thread.
+ * <p>
+ * This requires that all tag parsers are thread-safe.
+ */
+class WayTagPipeline {
+    private static final int BATCH_SIZE = 2_000;
+    private final OSMParsers osmParsers;
+    private final EdgeIntAccess edgeIntAccess;
+    private final int intsPerEdge;
+    private final int threads;
+    private final ExecutorService executorService;
+    private Batch currentBatch;
+    private Batch submittedBatch;
+
+    WayTagPipeline(OSMParsers osmParsers, BaseGraph baseGraph, int threads) {
+        this.osmParsers = osmParsers;
+        this.edgeIntAccess = baseGraph.getEdgeAccess();
+        this.intsPerEdge = (int) Math.ceil((double) baseGraph.getBytesForFlags() / 4);
+        this.threads = threads;
+        this.executorService = Executors.newFixedThreadPool(threads);
+        this.currentBatch = new Batch();
+        this.submittedBatch = new Batch();
+    }
+
+    /**
+     * Adds the given edge so its tags are parsed later. The edges must be added in the order they were created.
+     */
+    void add(int edge, ReaderWay way, IntsRef relationFlags) {
+        // the way is modified for every edge, see OSMReader#setArtificialWayTags
+        ReaderWay copy = new ReaderWay(way.getId());
+        copy.getNodes().addAll(way.getNodes());
+        copy.setTags(way.getTags());
+        currentBatch.add(edge, copy, ((long) relationFlags.ints[1] << 32) | (relationFlags.ints[0] & 0xFFFFFFFFL));
+        if (currentBatch.size() == BATCH_SIZE)
+            submitCurrentBatch();
+    }
+
+    /**
+     * Parses the tags of all edges that were added so far and writes their flags into the graph
+     */
+    void flush() {
+        submitCurrentBatch();
+        writeSubmittedBatch();
+    }
+
+    void close() {
+        executorService.shutdownNow();
+    }
+
+    private void submitCurrentBatch() {
+        // the previous batch needs to be written first so we can reuse it
+        writeSubmittedBatch();
+        Batch batch = currentBatch;
+        int size = batch.size();
+        int edgesPerTask = Math.max(1, (size + threads - 1) / threads);
+        for (int start = 0; start < size; start += edgesPerTask) {
+            int from = start, to = Math.min(start + edgesPerTask, size);
+            batch.futures.add(executorService.submit(() -> parseTags(batch, from, to)));
+        }
+        currentBatch = submittedBatch;
+        submittedBatch = batch;
+    }
+
+    private void parseTags(Batch batch, int from, int to) {
+        IntsRef relationFlags = new IntsRef(2);
+        for (int i = from; i < to; i++) {
+            long flags = batch.relationFlags.get(i);
+            relationFlags.ints[0] = (int) flags;
+            relationFlags.ints[1] = (int) (flags >> 32);
+            osmParsers.handleWayTags(batch.firstEdge + i, batch, batch.ways.get(i), relationFlags);
+        }
+    }
+
+    private void writeSubmittedBatch() {
+        Batch batch = submittedBatch;
+        for (Future<?> future : batch.futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        for (int i = 0; i < batch.size(); i++)
+            for (int index = 0; index < intsPerEdge; index++)
+                edgeIntAccess.setInt(batch.firstEdge + i, index, batch.flags[i * intsPerEdge + index]);
+        batch.clear();
+    }
+
+    /**
+     * A sequence of consecutive edges. The flags of the edges are stored in an array.
+     */
+    private class Batch implements EdgeIntAccess {
+        private final int[] flags = new int[BATCH_SIZE * intsPerEdge];
+        private final List<ReaderWay> ways = new ArrayList<>(BATCH_SIZE);
+        private final LongArrayList relationFlags = new LongArrayList(BATCH_SIZE);
+        private final List<Future<?>> futures = new ArrayList<>(threads);
+        private int firstEdge;
+
+        void add(int edge, ReaderWay way, long relationFlags) {
+            if (ways.isEmpty())
+                firstEdge = edge;
+            else if (edge != firstEdge + ways.size())
+                throw new IllegalStateException("Edges must be added in the order they were created, expected: "
+                        + (firstEdge + ways.size()) + ", got: " + edge);
+            ways.add(way);
+            this.relationFlags.add(relationFlags);
+        }
+
+        int size() {
+            return ways.size();
+        }
+
+        void clear() {
+            Arrays.fill(flags, 0, ways.size() * intsPerEdge, 0);
+            ways.clear();
+            relationFlags.clear();
+            futures.clear();
+        }
+
+        @Override
+        public int getInt(int edgeId, int index) {
+            return flags[(edgeId - firstEdge) * intsPerEdge + index];
+        }
+
+        @Override
+        public void setInt(int edgeId, int index, int value) {
+            flags[(edgeId - firstEdge) * intsPerEdge + index] = value;
+        }
+    }
+}
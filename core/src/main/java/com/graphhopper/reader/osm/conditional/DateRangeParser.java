@@ -62,7 +62,8 @@ public class DateRangeParser implements ConditionalValueParser {
         return Calendar.getInstance(Helper.UTC, Locale.US);
     }
 
-    static ParsedCalendar parseDateString(String dateString) throws ParseException {
+    // synchronized, because the date formats are not thread-safe and the tag parsers might run concurrently
+    static synchronized ParsedCalendar parseDateString(String dateString) throws ParseException {
         // Replace occurrences of public holidays
         dateString = dateString.replaceAll("(,( )*)?(PH|SH)", "");
         dateString = dateString.trim();
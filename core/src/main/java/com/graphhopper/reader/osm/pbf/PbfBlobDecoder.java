@@ -1,8 +1,8 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package com.graphhopper.reader.osm.pbf;
 
-import com.carrotsearch.hppc.LongIndexedContainer;
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.carrotsearch.hppc.LongArrayList;
+import com.google.protobuf.CodedInputStream;
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.reader.ReaderRelation;
@@ -17,6 +17,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.function.IntUnaryOperator;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
@@ -24,11 +25,16 @@ import java.util.zip.Inflater;
  * Converts PBF block data into decoded entities ready to be passed into an Osmosis pipeline. This
  * class is designed to be passed into a pool of worker threads to allow multi-threaded decoding.
  * <p>
+ * Every decoder thread reuses its inflater and the buffer for the decompressed data. This is safe because the protobuf
+ * parser copies the byte fields it keeps. The repeated fields are read by index to avoid boxing every id, coordinate
+ * and string table index.
+ * <p>
  *
  * @author Brett Henderson
  */
 public class PbfBlobDecoder implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(PbfBlobDecoder.class);
+    private static final ThreadLocal<InflateBuffers> inflateBuffers = ThreadLocal.withInitial(InflateBuffers::new);
     private final boolean checkData = false;
     private final String blobType;
     private final byte[] rawBlob;
@@ -51,33 +57,34 @@ public class PbfBlobDecoder implements Runnable {
         this.skipOptions = skipOptions;
     }
 
-    private byte[] readBlobContent() throws IOException {
+    private CodedInputStream readBlobContent() throws IOException {
         Fileformat.Blob blob = Fileformat.Blob.parseFrom(rawBlob);
-        byte[] blobData;
 
         if (blob.hasRaw()) {
-            blobData = blob.getRaw().toByteArray();
+            return blob.getRaw().newCodedInput();
         } else if (blob.hasZlibData()) {
-            Inflater inflater = new Inflater();
-            inflater.setInput(blob.getZlibData().toByteArray());
-            blobData = new byte[blob.getRawSize()];
+            InflateBuffers buffers = inflateBuffers.get();
+            Inflater inflater = buffers.inflater;
+            inflater.reset();
+            inflater.setInput(blob.getZlibData().asReadOnlyByteBuffer());
+            int rawSize = blob.getRawSize();
+            if (buffers.data.length < rawSize)
+                buffers.data = new byte[rawSize];
             try {
-                inflater.inflate(blobData);
+                inflater.inflate(buffers.data, 0, rawSize);
             } catch (DataFormatException e) {
                 throw new RuntimeException("Unable to decompress PBF blob.", e);
             }
             if (!inflater.finished()) {
                 throw new RuntimeException("PBF blob contains incomplete compressed data.");
             }
-            inflater.end();
+            return CodedInputStream.newInstance(buffers.data, 0, rawSize);
         } else {
             throw new RuntimeException("PBF blob uses unsupported compression, only raw or zlib may be used.");
         }
-
-        return blobData;
     }
 
-    private void processOsmHeader(byte[] data) throws InvalidProtocolBufferException {
+    private void processOsmHeader(CodedInputStream data) throws IOException {
         Osmformat.HeaderBlock header = Osmformat.HeaderBlock.parseFrom(data);
 
         // Build the list of active and unsupported features in the file.
@@ -100,6 +107,8 @@ public class PbfBlobDecoder implements Runnable {
         OSMFileHeader fileheader = new OSMFileHeader();
         long milliSecondDate = header.getOsmosisReplicationTimestamp();
         fileheader.setTag("timestamp", Helper.createFormatter().format(new Date(milliSecondDate * 1000)));
+        if (header.getOptionalFeaturesList().contains(OSMFileHeader.SORT_TYPE_THEN_ID))
+            fileheader.setTag("sort", OSMFileHeader.SORT_TYPE_THEN_ID);
         decodedEntities.add(fileheader);
 
         // Build a new bound object which corresponds to the header.
@@ -119,23 +128,22 @@ public class PbfBlobDecoder implements Runnable {
          */
     }
 
-    private Map<String, Object> buildTags(List<Integer> keys, List<Integer> values, PbfFieldDecoder fieldDecoder) {
+    private Map<String, Object> buildTags(int keysCount, IntUnaryOperator keys, int valuesCount, IntUnaryOperator values,
+                                          PbfFieldDecoder fieldDecoder) {
 
         // Ensure parallel lists are of equal size.
         if (checkData) {
-            if (keys.size() != values.size()) {
-                throw new RuntimeException("Number of tag keys (" + keys.size() + ") and tag values ("
-                        + values.size() + ") don't match");
+            if (keysCount != valuesCount) {
+                throw new RuntimeException("Number of tag keys (" + keysCount + ") and tag values ("
+                        + valuesCount + ") don't match");
             }
         }
 
-        Iterator<Integer> keyIterator = keys.iterator();
-        Iterator<Integer> valueIterator = values.iterator();
-        if (keyIterator.hasNext()) {
-            Map<String, Object> tags = new HashMap<>(keys.size());
-            while (keyIterator.hasNext()) {
-                String key = fieldDecoder.decodeString(keyIterator.next());
-                String value = fieldDecoder.decodeString(valueIterator.next());
+        if (keysCount > 0) {
+            Map<String, Object> tags = new HashMap<>(keysCount);
+            for (int i = 0; i < keysCount; i++) {
+                String key = fieldDecoder.decodeString(keys.applyAsInt(i));
+                String value = fieldDecoder.decodeString(values.applyAsInt(i));
                 tags.put(key, value);
             }
             return tags;
@@ -145,7 +153,7 @@ public class PbfBlobDecoder implements Runnable {
 
     private void processNodes(List<Osmformat.Node> nodes, PbfFieldDecoder fieldDecoder) {
         for (Osmformat.Node node : nodes) {
-            Map<String, Object> tags = buildTags(node.getKeysList(), node.getValsList(), fieldDecoder);
+            Map<String, Object> tags = buildTags(node.getKeysCount(), node::getKeys, node.getValsCount(), node::getVals, fieldDecoder);
 
             ReaderNode osmNode = new ReaderNode(node.getId(), fieldDecoder.decodeLatitude(node
                     .getLat()), fieldDecoder.decodeLatitude(node.getLon()));
@@ -157,19 +165,18 @@ public class PbfBlobDecoder implements Runnable {
     }
 
     private void processNodes(Osmformat.DenseNodes nodes, PbfFieldDecoder fieldDecoder) {
-        List<Long> idList = nodes.getIdList();
-        List<Long> latList = nodes.getLatList();
-        List<Long> lonList = nodes.getLonList();
+        int nodeCount = nodes.getIdCount();
 
         // Ensure parallel lists are of equal size.
         if (checkData) {
-            if ((idList.size() != latList.size()) || (idList.size() != lonList.size())) {
-                throw new RuntimeException("Number of ids (" + idList.size() + "), latitudes (" + latList.size()
-                        + "), and longitudes (" + lonList.size() + ") don't match");
+            if ((nodeCount != nodes.getLatCount()) || (nodeCount != nodes.getLonCount())) {
+                throw new RuntimeException("Number of ids (" + nodeCount + "), latitudes (" + nodes.getLatCount()
+                        + "), and longitudes (" + nodes.getLonCount() + ") don't match");
             }
         }
 
-        Iterator<Integer> keysValuesIterator = nodes.getKeysValsList().iterator();
+        int keysValuesCount = nodes.getKeysValsCount();
+        int keysValuesIndex = 0;
 
         /*
          Osmformat.DenseInfo denseInfo;
@@ -186,11 +193,11 @@ public class PbfBlobDecoder implements Runnable {
 //		int userSid = 0;
 //		long timestamp = 0;
 //		long changesetId = 0;
-        for (int i = 0; i < idList.size(); i++) {
+        for (int i = 0; i < nodeCount; i++) {
             // Delta decode node fields.
-            nodeId += idList.get(i);
-            latitude += latList.get(i);
-            longitude += lonList.get(i);
+            nodeId += nodes.getId(i);
+            latitude += nodes.getLat(i);
+            longitude += nodes.getLon(i);
 
             /*
              if (denseInfo != null) {
@@ -219,22 +226,22 @@ public class PbfBlobDecoder implements Runnable {
             // in the same PBF array. Each set of tags is delimited by an index
             // with a value of 0.
             Map<String, Object> tags = null;
-            while (keysValuesIterator.hasNext()) {
-                int keyIndex = keysValuesIterator.next();
+            while (keysValuesIndex < keysValuesCount) {
+                int keyIndex = nodes.getKeysVals(keysValuesIndex++);
                 if (keyIndex == 0) {
                     break;
                 }
                 if (checkData) {
-                    if (!keysValuesIterator.hasNext()) {
+                    if (keysValuesIndex >= keysValuesCount) {
                         throw new RuntimeException(
                                 "The PBF DenseInfo keys/values list contains a key with no corresponding value.");
                     }
                 }
-                int valueIndex = keysValuesIterator.next();
+                int valueIndex = nodes.getKeysVals(keysValuesIndex++);
 
                 if (tags == null) {
                     // divide by 2 as key&value, multiple by 2 because of the better approximation
-                    tags = new HashMap<>(Math.max(3, 2 * (nodes.getKeysValsList().size() / 2) / idList.size()));
+                    tags = new HashMap<>(Math.max(3, 2 * (keysValuesCount / 2) / nodeCount));
                 }
 
                 tags.put(fieldDecoder.decodeString(keyIndex), fieldDecoder.decodeString(valueIndex));
@@ -250,7 +257,7 @@ public class PbfBlobDecoder implements Runnable {
 
     private void processWays(List<Osmformat.Way> ways, PbfFieldDecoder fieldDecoder) {
         for (Osmformat.Way way : ways) {
-            Map<String, Object> tags = buildTags(way.getKeysList(), way.getValsList(), fieldDecoder);
+            Map<String, Object> tags = buildTags(way.getKeysCount(), way::getKeys, way.getValsCount(), way::getVals, fieldDecoder);
             ReaderWay osmWay = new ReaderWay(way.getId());
             osmWay.setTags(tags);
 
@@ -258,9 +265,10 @@ public class PbfBlobDecoder implements Runnable {
             // delta encoded meaning that each id is stored as a delta against
             // the previous one.
             long nodeId = 0;
-            LongIndexedContainer wayNodes = osmWay.getNodes();
-            for (long nodeIdOffset : way.getRefsList()) {
-                nodeId += nodeIdOffset;
+            LongArrayList wayNodes = osmWay.getNodes();
+            wayNodes.ensureCapacity(way.getRefsCount());
+            for (int i = 0; i < way.getRefsCount(); i++) {
+                nodeId += way.getRefs(i);
                 wayNodes.add(nodeId);
             }
 
@@ -268,29 +276,24 @@ public class PbfBlobDecoder implements Runnable {
         }
     }
 
-    private void buildRelationMembers(ReaderRelation relation,
-                                      List<Long> memberIds, List<Integer> memberRoles, List<Osmformat.Relation.MemberType> memberTypes,
-                                      PbfFieldDecoder fieldDecoder) {
+    private void buildRelationMembers(ReaderRelation relation, Osmformat.Relation pbfRelation, PbfFieldDecoder fieldDecoder) {
+        int memberCount = pbfRelation.getMemidsCount();
 
         // Ensure parallel lists are of equal size.
         if (checkData) {
-            if ((memberIds.size() != memberRoles.size()) || (memberIds.size() != memberTypes.size())) {
-                throw new RuntimeException("Number of member ids (" + memberIds.size() + "), member roles ("
-                        + memberRoles.size() + "), and member types (" + memberTypes.size() + ") don't match");
+            if ((memberCount != pbfRelation.getRolesSidCount()) || (memberCount != pbfRelation.getTypesCount())) {
+                throw new RuntimeException("Number of member ids (" + memberCount + "), member roles ("
+                        + pbfRelation.getRolesSidCount() + "), and member types (" + pbfRelation.getTypesCount() + ") don't match");
             }
         }
 
-        Iterator<Long> memberIdIterator = memberIds.iterator();
-        Iterator<Integer> memberRoleIterator = memberRoles.iterator();
-        Iterator<Osmformat.Relation.MemberType> memberTypeIterator = memberTypes.iterator();
-
         // Build up the list of relation members for the way. The member ids are
         // delta encoded meaning that each id is stored as a delta against
         // the previous one.
         long refId = 0;
-        while (memberIdIterator.hasNext()) {
-            Osmformat.Relation.MemberType memberType = memberTypeIterator.next();
-            refId += memberIdIterator.next();
+        for (int i = 0; i < memberCount; i++) {
+            Osmformat.Relation.MemberType memberType = pbfRelation.getTypes(i);
+            refId += pbfRelation.getMemids(i);
 
             ReaderElement.Type entityType = ReaderElement.Type.NODE;
             if (memberType == Osmformat.Relation.MemberType.WAY) {
@@ -304,27 +307,26 @@ public class PbfBlobDecoder implements Runnable {
                 }
             }
 
-            ReaderRelation.Member member = new ReaderRelation.Member(entityType, refId, fieldDecoder.decodeString(memberRoleIterator.next()));
+            ReaderRelation.Member member = new ReaderRelation.Member(entityType, refId, fieldDecoder.decodeString(pbfRelation.getRolesSid(i)));
             relation.add(member);
         }
     }
 
     private void processRelations(List<Osmformat.Relation> relations, PbfFieldDecoder fieldDecoder) {
         for (Osmformat.Relation relation : relations) {
-            Map<String, Object> tags = buildTags(relation.getKeysList(), relation.getValsList(), fieldDecoder);
+            Map<String, Object> tags = buildTags(relation.getKeysCount(), relation::getKeys, relation.getValsCount(), relation::getVals, fieldDecoder);
 
             ReaderRelation osmRelation = new ReaderRelation(relation.getId());
             osmRelation.setTags(tags);
 
-            buildRelationMembers(osmRelation, relation.getMemidsList(), relation.getRolesSidList(),
-                    relation.getTypesList(), fieldDecoder);
+            buildRelationMembers(osmRelation, relation, fieldDecoder);
 
             // Add the bound object to the results.
             decodedEntities.add(osmRelation);
         }
     }
 
-    private void processOsmPrimitives(byte[] data) throws InvalidProtocolBufferException {
+    private void processOsmPrimitives(CodedInputStream data) throws IOException {
         Osmformat.PrimitiveBlock block = Osmformat.PrimitiveBlock.parseFrom(data);
         PbfFieldDecoder fieldDecoder = new PbfFieldDecoder(block);
 
@@ -367,4 +369,9 @@ public class PbfBlobDecoder implements Runnable {
             listener.error(e);
         }
     }
+
+    private static class InflateBuffers {
+        final Inflater inflater = new Inflater();
+        byte[] data = new byte[0];
+    }
 }
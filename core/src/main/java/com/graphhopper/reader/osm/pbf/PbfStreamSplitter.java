@@ -1,6 +1,7 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package com.graphhopper.reader.osm.pbf;
 
+import com.google.protobuf.CodedInputStream;
 import org.openstreetmap.osmosis.osmbinary.Fileformat;
 
 import java.io.DataInputStream;
@@ -23,6 +24,8 @@ public class PbfStreamSplitter implements Iterator<PbfRawBlob> {
     private int dataBlockCount;
     private boolean eof;
     private PbfRawBlob nextBlob;
+    // the headers are parsed right away, so unlike the blobs, which are decoded on other threads, we can reuse the buffer
+    private byte[] headerBuffer = new byte[0];
 
     /**
      * Creates a new instance.
@@ -37,10 +40,11 @@ public class PbfStreamSplitter implements Iterator<PbfRawBlob> {
     }
 
     private Fileformat.BlobHeader readHeader(int headerLength) throws IOException {
-        byte[] headerBuffer = new byte[headerLength];
-        dis.readFully(headerBuffer);
+        if (headerBuffer.length < headerLength)
+            headerBuffer = new byte[headerLength];
+        dis.readFully(headerBuffer, 0, headerLength);
 
-        Fileformat.BlobHeader blobHeader = Fileformat.BlobHeader.parseFrom(headerBuffer);
+        Fileformat.BlobHeader blobHeader = Fileformat.BlobHeader.parseFrom(CodedInputStream.newInstance(headerBuffer, 0, headerLength));
 
         return blobHeader;
     }
@@ -53,6 +53,8 @@ public abstract class AbstractBidirAlgo implements EdgeToEdgeRoutingAlgorithm {
     int visitedCountFrom;
     int visitedCountTo;
     private boolean alreadyRun;
+    private int collectionSize;
+    private BidirSearchState searchState;
 
     public AbstractBidirAlgo(TraversalMode traversalMode) {
         this.traversalMode = traversalMode;
@@ -61,11 +63,37 @@ public abstract class AbstractBidirAlgo implements EdgeToEdgeRoutingAlgorithm {
     }
 
     protected void initCollections(int size) {
-        pqOpenSetFrom = new PriorityQueue<>(size);
-        bestWeightMapFrom = new GHIntObjectHashMap<>(size);
+        // the collections are only created once the search starts, so we do not allocate them if a search state is
+        // set afterwards
+        collectionSize = size;
+    }
+
+    /**
+     * Makes this algorithm use the collections of the given search state instead of allocating new ones. The search
+     * state is cleared when the search starts and must not be used by another algorithm until this one is done.
+     */
+    public void setSearchState(BidirSearchState searchState) {
+        if (pqOpenSetFrom != null || pqOpenSetTo != null)
+            throw new IllegalStateException("The search state must be set before the search starts");
+        this.searchState = searchState;
+    }
+
+    private void createCollections() {
+        if (pqOpenSetFrom != null || pqOpenSetTo != null)
+            return;
+        if (searchState != null) {
+            searchState.clear(collectionSize);
+            pqOpenSetFrom = searchState.pqOpenSetFrom;
+            bestWeightMapFrom = searchState.bestWeightMapFrom;
+            pqOpenSetTo = searchState.pqOpenSetTo;
+            bestWeightMapTo = searchState.bestWeightMapTo;
+            return;
+        }
+        pqOpenSetFrom = new PriorityQueue<>(collectionSize);
+        bestWeightMapFrom = new GHIntObjectHashMap<>(collectionSize);
 
-        pqOpenSetTo = new PriorityQueue<>(size);
-        bestWeightMapTo = new GHIntObjectHashMap<>(size);
+        pqOpenSetTo = new PriorityQueue<>(collectionSize);
+        bestWeightMapTo = new GHIntObjectHashMap<>(collectionSize);
     }
 
     /**
@@ -104,6 +132,7 @@ public abstract class AbstractBidirAlgo implements EdgeToEdgeRoutingAlgorithm {
     }
 
     protected void initFrom(int from, double weight) {
+        createCollections();
         this.from = from;
         currFrom = createStartEntry(from, weight, false);
         pqOpenSetFrom.add(currFrom);
@@ -113,6 +142,7 @@ public abstract class AbstractBidirAlgo implements EdgeToEdgeRoutingAlgorithm {
     }
 
     protected void initTo(int to, double weight) {
+        createCollections();
         this.to = to;
         currTo = createStartEntry(to, weight, true);
         pqOpenSetTo.add(currTo);
@@ -0,0 +1,116 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.coll.GHIntObjectHashMap;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * The priority queues and shortest path tree maps of the forward and backward search of a bidirectional algorithm.
+ * For non-CH algorithms these collections are created with a capacity of up to 150k entries, so allocating them for
+ * every query produces a lot of garbage. A search state can instead be reused by many subsequent (but not concurrent)
+ * queries, see {@link AbstractBidirAlgo#setSearchState(BidirSearchState)}. It is cleared when a search starts.
+ *
+ * @see Pool
+ */
+public class BidirSearchState {
+    // we do not keep the collections of very big searches, because they would hold a lot of memory until the next
+    // big search comes along
+    private static final int MAX_RETAINED_SIZE = 150_000;
+    SearchQueue pqOpenSetFrom;
+    SearchQueue pqOpenSetTo;
+    GHIntObjectHashMap<SPTEntry> bestWeightMapFrom;
+    GHIntObjectHashMap<SPTEntry> bestWeightMapTo;
+
+    /**
+     * Prepares the collections for a new search.
+     *
+     * @param size the initial capacity the algorithm would use for newly allocated collections
+     */
+    void clear(int size) {
+        pqOpenSetFrom = clear(pqOpenSetFrom, size);
+        pqOpenSetTo = clear(pqOpenSetTo, size);
+        bestWeightMapFrom = clear(bestWeightMapFrom, size);
+        bestWeightMapTo = clear(bestWeightMapTo, size);
+    }
+
+    private static SearchQueue clear(SearchQueue pq, int size) {
+        // the array of a priority queue never shrinks, so we use the peak size of the previous search and do not keep
+        // the queue of e.g. a long non-CH query for CH queries
+        if (pq == null || pq.peakSize > MAX_RETAINED_SIZE || pq.peakSize > 8 * Math.max(size, 1000))
+            return new SearchQueue(size);
+        pq.clear();
+        pq.peakSize = 0;
+        return pq;
+    }
+
+    private static GHIntObjectHashMap<SPTEntry> clear(GHIntObjectHashMap<SPTEntry> map, int size) {
+        // clearing a hash map is linear in its capacity, so e.g. for a CH query we do not want to keep the big map
+        // of a previous non-CH query
+        if (map == null || map.size() > MAX_RETAINED_SIZE || map.keys.length > 8 * Math.max(size, 1000))
+            return new GHIntObjectHashMap<>(size);
+        map.clear();
+        return map;
+    }
+
+    /**
+     * A priority queue that remembers the maximum number of entries it contained, which is a lower bound of the
+     * capacity of its array.
+     */
+    static class SearchQueue extends PriorityQueue<SPTEntry> {
+        int peakSize;
+
+        SearchQueue(int size) {
+            super(size);
+        }
+
+        @Override
+        public boolean offer(SPTEntry entry) {
+            super.offer(entry);
+            peakSize = Math.max(peakSize, size());
+            return true;
+        }
+    }
+
+    /**
+     * A bounded pool of search states shared by the request threads. A thread takes a search state before it runs
+     * an algorithm and returns it afterwards. If the pool is empty a new search state is created, and if the pool is
+     * full a returned search state is dropped, so the memory held by the pool is bounded.
+     */
+    public static class Pool {
+        private final ArrayBlockingQueue<BidirSearchState> states;
+
+        /**
+         * @param maxStates the maximum number of retained search states, e.g. the number of concurrent requests
+         */
+        public Pool(int maxStates) {
+            this.states = new ArrayBlockingQueue<>(maxStates);
+        }
+
+        public BidirSearchState acquire() {
+            BidirSearchState state = states.poll();
+            return state == null ? new BidirSearchState() : state;
+        }
+
+        public void release(BidirSearchState state) {
+            states.offer(state);
+        }
+    }
+}
@@ -32,6 +32,7 @@ import static com.graphhopper.util.Parameters.Routing.MAX_VISITED_NODES;
 public class CHPathCalculator implements PathCalculator {
     private final CHRoutingAlgorithmFactory algoFactory;
     private final PMap algoOpts;
+    private BidirSearchState.Pool searchStatePool;
     private String debug;
     private int visitedNodes;
 
@@ -40,12 +41,28 @@ public class CHPathCalculator implements PathCalculator {
         this.algoOpts = algoOpts;
     }
 
+    /**
+     * @param searchStatePool the pool the bidirectional algorithms take their collections from, can be null
+     */
+    public CHPathCalculator setSearchStatePool(BidirSearchState.Pool searchStatePool) {
+        this.searchStatePool = searchStatePool;
+        return this;
+    }
+
     @Override
     public List<Path> calcPaths(int from, int to, EdgeRestrictions edgeRestrictions) {
         if (!edgeRestrictions.getUnfavoredEdges().isEmpty())
             throw new IllegalArgumentException("Using unfavored edges is currently not supported for CH");
         EdgeToEdgeRoutingAlgorithm algo = createAlgo();
-        return calcPaths(from, to, edgeRestrictions, algo);
+        if (searchStatePool == null || !(algo instanceof AbstractBidirAlgo))
+            return calcPaths(from, to, edgeRestrictions, algo);
+        BidirSearchState searchState = searchStatePool.acquire();
+        try {
+            ((AbstractBidirAlgo) algo).setSearchState(searchState);
+            return calcPaths(from, to, edgeRestrictions, algo);
+        } finally {
+            searchStatePool.release(searchState);
+        }
     }
 
     private EdgeToEdgeRoutingAlgorithm createAlgo() {
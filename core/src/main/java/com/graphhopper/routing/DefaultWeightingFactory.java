@@ -27,6 +27,8 @@ import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.weighting.DefaultTurnCostProvider;
 import com.graphhopper.routing.weighting.TurnCostProvider;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.routing.weighting.custom.AreaEdgeCache;
+import com.graphhopper.routing.weighting.custom.CustomModelClassStore;
 import com.graphhopper.routing.weighting.custom.CustomModelParser;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
 import com.graphhopper.storage.BaseGraph;
@@ -42,12 +44,30 @@ public class DefaultWeightingFactory implements WeightingFactory {
 
     private final BaseGraph graph;
     private final EncodingManager encodingManager;
+    private AreaEdgeCache areaEdgeCache;
+    private CustomModelClassStore classStore;
 
     public DefaultWeightingFactory(BaseGraph graph, EncodingManager encodingManager) {
         this.graph = graph;
         this.encodingManager = encodingManager;
     }
 
+    /**
+     * Sets the precomputed edges of the areas that the custom weightings use instead of the polygons. Can be null.
+     */
+    public DefaultWeightingFactory setAreaEdgeCache(AreaEdgeCache areaEdgeCache) {
+        this.areaEdgeCache = areaEdgeCache;
+        return this;
+    }
+
+    /**
+     * Sets the store that keeps the classes compiled for the custom models in a directory. Can be null.
+     */
+    public DefaultWeightingFactory setCustomModelClassStore(CustomModelClassStore classStore) {
+        this.classStore = classStore;
+        return this;
+    }
+
     @Override
     public Weighting createWeighting(Profile profile, PMap requestHints, boolean disableTurnCosts) {
         // Merge profile hints with request hints, the request hints take precedence.
@@ -85,9 +105,9 @@ public class DefaultWeightingFactory implements WeightingFactory {
             if (hints.has("cm_version")) {
                 if (!hints.getString("cm_version", "").equals("2"))
                     throw new IllegalArgumentException("cm_version: \"2\" is required");
-                weighting = CustomModelParser.createWeighting2(encodingManager, turnCostProvider, mergedCustomModel);
+                weighting = CustomModelParser.createWeighting2(encodingManager, turnCostProvider, mergedCustomModel, areaEdgeCache, classStore);
             } else
-                weighting = CustomModelParser.createWeighting(encodingManager, turnCostProvider, mergedCustomModel);
+                weighting = CustomModelParser.createWeighting(encodingManager, turnCostProvider, mergedCustomModel, areaEdgeCache, classStore);
 
         } else if ("shortest".equalsIgnoreCase(weightingStr)) {
             throw new IllegalArgumentException("Instead of weighting=shortest use weighting=custom with a high distance_influence");
@@ -19,6 +19,7 @@ package com.graphhopper.routing;
 
 import com.carrotsearch.hppc.IntArrayList;
 import com.graphhopper.apache.commons.collections.IntFloatBinaryHeap;
+import com.graphhopper.coll.IntFloatHeap;
 import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
@@ -41,7 +42,7 @@ public class DijkstraOneToMany extends AbstractRoutingAlgorithm {
     protected double[] weights;
     private int[] parents;
     private int[] edgeIds;
-    private IntFloatBinaryHeap heap;
+    private IntFloatHeap heap;
     private int visitedNodes;
     private boolean doClear = true;
     private int endNode;
@@ -49,6 +50,13 @@ public class DijkstraOneToMany extends AbstractRoutingAlgorithm {
     private double weightLimit = Double.MAX_VALUE;
 
     public DijkstraOneToMany(Graph graph, Weighting weighting, TraversalMode tMode) {
+        this(graph, weighting, tMode, new IntFloatBinaryHeap(1000));
+    }
+
+    /**
+     * @param heap the (empty) priority queue used for the search, e.g. an {@link com.graphhopper.coll.IntFloatRadixHeap}
+     */
+    public DijkstraOneToMany(Graph graph, Weighting weighting, TraversalMode tMode, IntFloatHeap heap) {
         super(graph, weighting, tMode);
 
         parents = new int[graph.getNodes()];
@@ -61,7 +69,7 @@ public class DijkstraOneToMany extends AbstractRoutingAlgorithm {
 
         Arrays.fill(weights, Double.MAX_VALUE);
 
-        heap = new IntFloatBinaryHeap(1000);
+        this.heap = heap;
         changedNodes = new IntArrayListWithCap();
     }
 
@@ -138,6 +146,9 @@ public class DijkstraOneToMany extends AbstractRoutingAlgorithm {
             }
         } else {
             // Cached! Re-use existing data structures
+            // the start node has no parent and is not in the heap anymore
+            if (to == from)
+                return to;
             int parentNode = parents[to];
             if (parentNode != EMPTY_PARENT && weights[to] <= weights[currNode])
                 return to;
@@ -236,7 +247,7 @@ public class DijkstraOneToMany extends AbstractRoutingAlgorithm {
         long len = weights.length;
         return ((8L + 4L + 4L) * len
                 + changedNodes.getCapacity() * 4L
-                + heap.getCapacity() * (4L + 4L)) / Helper.MB
+                + heap.getMemoryUsage()) / Helper.MB
                 + "MB";
     }
 
@@ -35,6 +35,7 @@ public class FlexiblePathCalculator implements PathCalculator {
     private final RoutingAlgorithmFactory algoFactory;
     private Weighting weighting;
     private final AlgorithmOptions algoOpts;
+    private BidirSearchState.Pool searchStatePool;
     private String debug;
     private int visitedNodes;
 
@@ -45,10 +46,26 @@ public class FlexiblePathCalculator implements PathCalculator {
         this.algoOpts = algoOpts;
     }
 
+    /**
+     * @param searchStatePool the pool the bidirectional algorithms take their collections from, can be null
+     */
+    public FlexiblePathCalculator setSearchStatePool(BidirSearchState.Pool searchStatePool) {
+        this.searchStatePool = searchStatePool;
+        return this;
+    }
+
     @Override
     public List<Path> calcPaths(int from, int to, EdgeRestrictions edgeRestrictions) {
         RoutingAlgorithm algo = createAlgo();
-        return calcPaths(from, to, edgeRestrictions, algo);
+        if (searchStatePool == null || !(algo instanceof AbstractBidirAlgo))
+            return calcPaths(from, to, edgeRestrictions, algo);
+        BidirSearchState searchState = searchStatePool.acquire();
+        try {
+            ((AbstractBidirAlgo) algo).setSearchState(searchState);
+            return calcPaths(from, to, edgeRestrictions, algo);
+        } finally {
+            searchStatePool.release(searchState);
+        }
     }
 
     private RoutingAlgorithm createAlgo() {
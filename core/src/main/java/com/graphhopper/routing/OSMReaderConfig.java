@@ -33,6 +33,8 @@ public class OSMReaderConfig {
     private int ramerElevationSmoothingMax = 5;
     private double longEdgeSamplingDistance = Double.MAX_VALUE;
     private int workerThreads = 2;
+    private boolean singlePass = false;
+    private int tagParserThreads = 1;
     private double defaultElevation = 0;
 
     public List<String> getIgnoredHighways() {
@@ -157,6 +159,33 @@ public class OSMReaderConfig {
         return this;
     }
 
+    public boolean isSinglePass() {
+        return singlePass;
+    }
+
+    /**
+     * Reads the OSM file only once and stores the node coordinates, ways and relations temporarily instead of reading
+     * the file a second time. This is faster for large files, but requires temporary disk space for all nodes.
+     */
+    public OSMReaderConfig setSinglePass(boolean singlePass) {
+        this.singlePass = singlePass;
+        return this;
+    }
+
+    public int getTagParserThreads() {
+        return tagParserThreads;
+    }
+
+    /**
+     * Sets the number of threads that run the tag parsers for the edges created during the import. The edges are
+     * still created by a single thread, so the resulting graph does not depend on this setting. All tag parsers must be
+     * thread-safe if this is larger than 1.
+     */
+    public OSMReaderConfig setTagParserThreads(int tagParserThreads) {
+        this.tagParserThreads = tagParserThreads;
+        return this;
+    }
+
     public double getDefaultElevation() {
         return defaultElevation;
     }
@@ -24,6 +24,7 @@ import com.graphhopper.GHResponse;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.config.Profile;
 import com.graphhopper.routing.ch.CHRoutingAlgorithmFactory;
+import com.graphhopper.routing.ch.CustomizableCH;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.EncodedValueLookup;
 import com.graphhopper.routing.ev.Subnetwork;
@@ -31,10 +32,12 @@ import com.graphhopper.routing.lm.LMRoutingAlgorithmFactory;
 import com.graphhopper.routing.lm.LandmarkStorage;
 import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.routing.util.*;
+import com.graphhopper.routing.weighting.MaterializedWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
 import com.graphhopper.routing.weighting.custom.FindMinMax;
 import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.storage.index.LocationIndex;
@@ -66,13 +69,26 @@ public class Router {
     protected final WeightingFactory weightingFactory;
     protected final Map<String, RoutingCHGraph> chGraphs;
     protected final Map<String, LandmarkStorage> landmarks;
+    protected final CustomizableCH customizableCH;
     protected final boolean chEnabled;
     protected final boolean lmEnabled;
+    protected SnapCache snapCache;
 
     public Router(BaseGraph graph, EncodingManager encodingManager, LocationIndex locationIndex,
                   Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
                   TranslationMap translationMap, RouterConfig routerConfig, WeightingFactory weightingFactory,
                   Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks) {
+        this(graph, encodingManager, locationIndex, profilesByName, pathDetailsBuilderFactory, translationMap, routerConfig,
+                weightingFactory, chGraphs, landmarks, null);
+    }
+
+    /**
+     * @param customizableCH used for requests with a custom model unless CH is disabled, can be null
+     */
+    public Router(BaseGraph graph, EncodingManager encodingManager, LocationIndex locationIndex,
+                  Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
+                  TranslationMap translationMap, RouterConfig routerConfig, WeightingFactory weightingFactory,
+                  Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks, CustomizableCH customizableCH) {
         this.graph = graph;
         this.encodingManager = encodingManager;
         this.locationIndex = locationIndex;
@@ -83,6 +99,7 @@ public class Router {
         this.weightingFactory = weightingFactory;
         this.chGraphs = chGraphs;
         this.landmarks = landmarks;
+        this.customizableCH = customizableCH;
         // note that his is not the same as !ghStorage.getCHConfigs().isEmpty(), because the GHStorage might have some
         // CHGraphs that were not built yet (and possibly no CH profiles were configured).
         this.chEnabled = !chGraphs.isEmpty();
@@ -94,6 +111,14 @@ public class Router {
         }
     }
 
+    /**
+     * Shares the snapping results with other routers using the same cache, e.g. for the requests of a batch.
+     */
+    public Router setSnapCache(SnapCache snapCache) {
+        this.snapCache = snapCache;
+        return this;
+    }
+
     public GHResponse route(GHRequest request) {
         try {
             checkNoLegacyParameters(request);
@@ -190,7 +215,9 @@ public class Router {
     protected Solver createSolver(GHRequest request) {
         final boolean disableCH = getDisableCH(request.getHints());
         final boolean disableLM = getDisableLM(request.getHints());
-        if (chEnabled && !disableCH) {
+        if (!disableCH && useCustomizableCH(request)) {
+            return createCCHSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, customizableCH);
+        } else if (chEnabled && !disableCH) {
             return createCHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs);
         } else if (lmEnabled && !disableLM) {
             return createLMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex, landmarks);
@@ -199,6 +226,23 @@ public class Router {
         }
     }
 
+    /**
+     * Requests with a custom model use the customizable CH if it is available and the request does not use any of
+     * the features that are not supported by CH. Otherwise, we keep the usual solvers (and error messages).
+     */
+    private boolean useCustomizableCH(GHRequest request) {
+        if (customizableCH == null || request.getCustomModel() == null)
+            return false;
+        Profile profile = profilesByName.get(request.getProfile());
+        return profile != null && !profile.hasTurnCosts() && request.getHeadings().isEmpty()
+                && !getPassThrough(request.getHints()) && !ROUND_TRIP.equalsIgnoreCase(request.getAlgorithm());
+    }
+
+    protected Solver createCCHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
+                                     EncodingManager encodingManager, WeightingFactory weightingFactory, CustomizableCH customizableCH) {
+        return new CCHSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, customizableCH);
+    }
+
     protected Solver createCHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
                                     EncodingManager encodingManager, Map<String, RoutingCHGraph> chGraphs) {
         return new CHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs);
@@ -244,8 +288,7 @@ public class Router {
         GHResponse ghRsp = new GHResponse();
         StopWatch sw = new StopWatch().start();
         DirectedEdgeFilter directedEdgeFilter = solver.createDirectedEdgeFilter();
-        List<Snap> snaps = ViaRouting.lookup(encodingManager, request.getPoints(), solver.createSnapFilter(), locationIndex,
-                request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings());
+        List<Snap> snaps = lookup(request, solver, directedEdgeFilter);
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
         QueryGraph queryGraph = QueryGraph.create(graph, snaps);
         PathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
@@ -277,17 +320,16 @@ public class Router {
         GHResponse ghRsp = new GHResponse();
         StopWatch sw = new StopWatch().start();
         DirectedEdgeFilter directedEdgeFilter = solver.createDirectedEdgeFilter();
-        List<Snap> snaps = ViaRouting.lookup(encodingManager, request.getPoints(), solver.createSnapFilter(), locationIndex,
-                request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings());
+        List<Snap> snaps = lookup(request, solver, directedEdgeFilter);
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
         // (base) query graph used to resolve headings, curbsides etc. this is not necessarily the same thing as
         // the (possibly implementation specific) query graph used by PathCalculator
         QueryGraph queryGraph = QueryGraph.create(graph, snaps);
-        PathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
         boolean passThrough = getPassThrough(request.getHints());
         String curbsideStrictness = getCurbsideStrictness(request.getHints());
         ViaRouting.Result result = ViaRouting.calcPaths(request.getPoints(), queryGraph, snaps, directedEdgeFilter,
-                pathCalculator, request.getCurbsides(), curbsideStrictness, request.getHeadings(), passThrough);
+                () -> solver.createPathCalculator(queryGraph), routerConfig.getLegExecutor(),
+                request.getCurbsides(), curbsideStrictness, request.getHeadings(), passThrough);
 
         if (request.getPoints().size() != result.paths.size() + 1)
             throw new RuntimeException("There should be exactly one more point than paths. points:" + request.getPoints().size() + ", paths:" + result.paths.size());
@@ -301,6 +343,14 @@ public class Router {
         return ghRsp;
     }
 
+    private List<Snap> lookup(GHRequest request, Solver solver, DirectedEdgeFilter directedEdgeFilter) {
+        // with a custom model the snap filter can be different for every request
+        SnapCache cache = request.getCustomModel() == null ? snapCache : null;
+        return ViaRouting.lookup(encodingManager, request.getPoints(), solver.createSnapFilter(), locationIndex,
+                request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings(),
+                cache, request.getProfile());
+    }
+
     private PathMerger createPathMerger(GHRequest request, Weighting weighting, Graph graph) {
         boolean enableInstructions = request.getHints().getBool(Parameters.Routing.INSTRUCTIONS, routerConfig.isInstructionsEnabled());
         boolean calcPoints = request.getHints().getBool(Parameters.Routing.CALC_POINTS, routerConfig.isCalcPoints());
@@ -369,6 +419,10 @@ public class Router {
             this.lookup = lookup;
         }
 
+        protected BidirSearchState.Pool getSearchStatePool() {
+            return routerConfig.getSearchStatePool();
+        }
+
         protected void checkRequest() {
             checkProfileSpecified();
             checkMaxVisitedNodes();
@@ -486,7 +540,8 @@ public class Router {
             opts.putObject(ALGORITHM, request.getAlgorithm());
             opts.putObject(MAX_VISITED_NODES, getMaxVisitedNodes(request.getHints()));
             opts.putObject(TIMEOUT_MS, getTimeoutMillis(request.getHints()));
-            return new CHPathCalculator(new CHRoutingAlgorithmFactory(getRoutingCHGraph(profile.getName()), queryGraph), opts);
+            return new CHPathCalculator(new CHRoutingAlgorithmFactory(getRoutingCHGraph(profile.getName()), queryGraph), opts)
+                    .setSearchStatePool(getSearchStatePool());
         }
 
         private RoutingCHGraph getRoutingCHGraph(String profileName) {
@@ -499,6 +554,39 @@ public class Router {
         }
     }
 
+    private static class CCHSolver extends Solver {
+        private final WeightingFactory weightingFactory;
+        private final CustomizableCH customizableCH;
+
+        CCHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig, EncodedValueLookup lookup,
+                  WeightingFactory weightingFactory, CustomizableCH customizableCH) {
+            super(request, profilesByName, routerConfig, lookup);
+            this.weightingFactory = weightingFactory;
+            this.customizableCH = customizableCH;
+        }
+
+        @Override
+        protected Weighting createWeighting() {
+            PMap requestHints = new PMap(request.getHints());
+            requestHints.putObject(CustomModel.KEY, request.getCustomModel());
+            return weightingFactory.createWeighting(profile, requestHints, false);
+        }
+
+        @Override
+        protected PathCalculator createPathCalculator(QueryGraph queryGraph) {
+            PMap opts = new PMap(request.getHints());
+            opts.putObject(ALGORITHM, request.getAlgorithm());
+            opts.putObject(MAX_VISITED_NODES, getMaxVisitedNodes(request.getHints()));
+            opts.putObject(TIMEOUT_MS, getTimeoutMillis(request.getHints()));
+            // the custom model's string representation includes all its statements and areas, so we can use it to
+            // identify the weighting
+            String cacheKey = profile.getName() + "|" + request.getCustomModel();
+            RoutingCHGraph chGraph = customizableCH.getRoutingCHGraph(cacheKey, CHConfig.nodeBased(profile.getName(), weighting));
+            return new CHPathCalculator(new CHRoutingAlgorithmFactory(chGraph, queryGraph), opts)
+                    .setSearchStatePool(getSearchStatePool());
+        }
+    }
+
     public static class FlexSolver extends Solver {
         protected final RouterConfig routerConfig;
         private final WeightingFactory weightingFactory;
@@ -524,13 +612,20 @@ public class Router {
         protected Weighting createWeighting() {
             PMap requestHints = new PMap(request.getHints());
             requestHints.putObject(CustomModel.KEY, request.getCustomModel());
-            return weightingFactory.createWeighting(profile, requestHints, false);
+            Weighting weighting = weightingFactory.createWeighting(profile, requestHints, false);
+            MaterializedWeighting.Cache weightCache = routerConfig.getWeightCache();
+            if (weightCache == null)
+                return weighting;
+            // the request hints only change the turn costs and the weights of virtual edges, so like for CCH the
+            // profile and the custom model identify the edge weights
+            return weightCache.get(profile.getName() + "|" + request.getCustomModel(), weighting);
         }
 
         @Override
         protected FlexiblePathCalculator createPathCalculator(QueryGraph queryGraph) {
             RoutingAlgorithmFactory algorithmFactory = new RoutingAlgorithmFactorySimple();
-            return new FlexiblePathCalculator(queryGraph, algorithmFactory, weighting, getAlgoOpts());
+            return new FlexiblePathCalculator(queryGraph, algorithmFactory, weighting, getAlgoOpts())
+                    .setSearchStatePool(getSearchStatePool());
         }
 
         protected AlgorithmOptions getAlgoOpts() {
@@ -590,7 +685,8 @@ public class Router {
             if (request.getCustomModel() != null)
                 FindMinMax.checkLMConstraints(profile.getCustomModel(), request.getCustomModel(), lookup);
             RoutingAlgorithmFactory routingAlgorithmFactory = new LMRoutingAlgorithmFactory(landmarkStorage).setDefaultActiveLandmarks(routerConfig.getActiveLandmarkCount());
-            return new FlexiblePathCalculator(queryGraph, routingAlgorithmFactory, weighting, getAlgoOpts());
+            return new FlexiblePathCalculator(queryGraph, routingAlgorithmFactory, weighting, getAlgoOpts())
+                    .setSearchStatePool(getSearchStatePool());
         }
     }
 }
@@ -18,6 +18,10 @@
 
 package com.graphhopper.routing;
 
+import com.graphhopper.routing.weighting.MaterializedWeighting;
+
+import java.util.concurrent.ExecutorService;
+
 /**
  * This class contains various parameters that control the behavior of {@link Router}.
  */
@@ -31,6 +35,9 @@ public class RouterConfig {
     private boolean simplifyResponse = true;
     private double elevationWayPointMaxDistance = Double.MAX_VALUE;
     private int activeLandmarkCount = 8;
+    private BidirSearchState.Pool searchStatePool;
+    private ExecutorService legExecutor;
+    private MaterializedWeighting.Cache weightCache;
 
     public int getMaxVisitedNodes() {
         return maxVisitedNodes;
@@ -119,4 +126,40 @@ public class RouterConfig {
     public void setElevationWayPointMaxDistance(double elevationWayPointMaxDistance) {
         this.elevationWayPointMaxDistance = elevationWayPointMaxDistance;
     }
+
+    public BidirSearchState.Pool getSearchStatePool() {
+        return searchStatePool;
+    }
+
+    /**
+     * The bidirectional algorithms take their priority queues and maps from this pool instead of allocating them
+     * for every request. Use null to disable this.
+     */
+    public void setSearchStatePool(BidirSearchState.Pool searchStatePool) {
+        this.searchStatePool = searchStatePool;
+    }
+
+    public ExecutorService getLegExecutor() {
+        return legExecutor;
+    }
+
+    /**
+     * The legs of via-routes are calculated concurrently using this executor, unless they depend on each other because
+     * of pass_through or headings. Use null to calculate them one after another.
+     */
+    public void setLegExecutor(ExecutorService legExecutor) {
+        this.legExecutor = legExecutor;
+    }
+
+    public MaterializedWeighting.Cache getWeightCache() {
+        return weightCache;
+    }
+
+    /**
+     * The flexible and hybrid mode requests look up the edge weights of frequently used weightings in this cache
+     * instead of calculating them. Use null to disable this.
+     */
+    public void setWeightCache(MaterializedWeighting.Cache weightCache) {
+        this.weightCache = weightCache;
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Shares the snapping results between (possibly concurrent) requests, e.g. the requests of a batch that often contain
+ * the same depot or customer locations. Only points without heading and point hint are cached, and only for requests
+ * without a custom model, because the result of the snapping depends on the profile and the snap preventions only.
+ *
+ * @see Router#setSnapCache(SnapCache)
+ */
+public class SnapCache {
+    private final Map<Key, Snap> snaps = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    /**
+     * @param maxSize the maximum number of cached snaps, further points are still snapped but not cached
+     */
+    public SnapCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param finder used to snap the point if it is not contained in the cache yet
+     * @return a copy of the cached snap that can be used to create a query graph
+     */
+    Snap get(String profile, List<String> snapPreventions, GHPoint point, Supplier<Snap> finder) {
+        Key key = new Key(profile, snapPreventions, point.lat, point.lon);
+        Snap snap = snaps.get(key);
+        if (snap == null) {
+            snap = finder.get();
+            if (snaps.size() < maxSize)
+                snaps.putIfAbsent(key, snap);
+        }
+        // the query graph modifies the snaps, so we never hand out the cached instance
+        return copy(snap);
+    }
+
+    public int size() {
+        return snaps.size();
+    }
+
+    private static Snap copy(Snap snap) {
+        Snap copy = new Snap(snap.getQueryPoint().lat, snap.getQueryPoint().lon);
+        if (!snap.isValid())
+            return copy;
+        copy.setClosestNode(snap.getClosestNode());
+        copy.setClosestEdge(snap.getClosestEdge());
+        copy.setQueryDistance(snap.getQueryDistance());
+        copy.setWayIndex(snap.getWayIndex());
+        copy.setSnappedPosition(snap.getSnappedPosition());
+        copy.setSnappedPoint(snap.getSnappedPoint());
+        return copy;
+    }
+
+    private static class Key {
+        private final String profile;
+        private final List<String> snapPreventions;
+        private final double lat;
+        private final double lon;
+
+        Key(String profile, List<String> snapPreventions, double lat, double lon) {
+            this.profile = profile;
+            this.snapPreventions = snapPreventions;
+            this.lat = lat;
+            this.lon = lon;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Double.compare(key.lat, lat) == 0 && Double.compare(key.lon, lon) == 0
+                    && profile.equals(key.profile) && snapPreventions.equals(key.snapPreventions);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(profile, snapPreventions, lat, lon);
+        }
+    }
+}
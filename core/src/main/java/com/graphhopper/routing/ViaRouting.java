@@ -34,6 +34,10 @@ import com.graphhopper.util.shapes.GHPoint;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
 import static com.graphhopper.util.EdgeIterator.NO_EDGE;
@@ -55,6 +59,18 @@ public class ViaRouting {
     public static List<Snap> lookup(EncodedValueLookup lookup, List<GHPoint> points, EdgeFilter snapFilter,
                                     LocationIndex locationIndex, List<String> snapPreventions, List<String> pointHints,
                                     DirectedEdgeFilter directedSnapFilter, List<Double> headings) {
+        return lookup(lookup, points, snapFilter, locationIndex, snapPreventions, pointHints, directedSnapFilter, headings, null, null);
+    }
+
+    /**
+     * Like {@link #lookup(EncodedValueLookup, List, EdgeFilter, LocationIndex, List, List, DirectedEdgeFilter, List)},
+     * but the snaps of the points without heading and point hint are taken from the given cache if it is not null.
+     * The snap filter must be the default snap filter of the given profile.
+     */
+    public static List<Snap> lookup(EncodedValueLookup lookup, List<GHPoint> points, EdgeFilter snapFilter,
+                                    LocationIndex locationIndex, List<String> snapPreventions, List<String> pointHints,
+                                    DirectedEdgeFilter directedSnapFilter, List<Double> headings,
+                                    SnapCache snapCache, String profile) {
         if (points.size() < 2)
             throw new IllegalArgumentException("At least 2 points have to be specified, but was:" + points.size());
 
@@ -67,21 +83,24 @@ public class ViaRouting {
         IntArrayList pointsNotFound = new IntArrayList();
         for (int placeIndex = 0; placeIndex < points.size(); placeIndex++) {
             GHPoint point = points.get(placeIndex);
-            Snap snap = null;
+            Snap snap;
             if (placeIndex < headings.size() && !Double.isNaN(headings.get(placeIndex))) {
                 if (!pointHints.isEmpty() && !Helper.isEmpty(pointHints.get(placeIndex)))
                     throw new IllegalArgumentException("Cannot specify heading and point_hint at the same time. " +
                             "Make sure you specify either an empty point_hint (String) or a NaN heading (double) for point " + placeIndex);
                 snap = locationIndex.findClosest(point.lat, point.lon, new HeadingEdgeFilter(directedSnapFilter, headings.get(placeIndex), point));
+                if (!snap.isValid())
+                    snap = locationIndex.findClosest(point.lat, point.lon, snapFilter);
             } else if (!pointHints.isEmpty()) {
                 snap = locationIndex.findClosest(point.lat, point.lon, new NameSimilarityEdgeFilter(strictEdgeFilter,
                         pointHints.get(placeIndex), point, 170));
-            } else if (!snapPreventions.isEmpty()) {
-                snap = locationIndex.findClosest(point.lat, point.lon, strictEdgeFilter);
+                if (!snap.isValid())
+                    snap = locationIndex.findClosest(point.lat, point.lon, snapFilter);
+            } else if (snapCache != null) {
+                snap = snapCache.get(profile, snapPreventions, point, () -> findClosest(locationIndex, point, snapPreventions, strictEdgeFilter, snapFilter));
+            } else {
+                snap = findClosest(locationIndex, point, snapPreventions, strictEdgeFilter, snapFilter);
             }
-
-            if (snap == null || !snap.isValid())
-                snap = locationIndex.findClosest(point.lat, point.lon, snapFilter);
             if (!snap.isValid())
                 pointsNotFound.add(placeIndex);
 
@@ -94,28 +113,54 @@ public class ViaRouting {
         return snaps;
     }
 
+    private static Snap findClosest(LocationIndex locationIndex, GHPoint point, List<String> snapPreventions,
+                                    EdgeFilter strictEdgeFilter, EdgeFilter snapFilter) {
+        if (!snapPreventions.isEmpty()) {
+            Snap snap = locationIndex.findClosest(point.lat, point.lon, strictEdgeFilter);
+            if (snap.isValid())
+                return snap;
+        }
+        return locationIndex.findClosest(point.lat, point.lon, snapFilter);
+    }
+
     public static Result calcPaths(List<GHPoint> points, QueryGraph queryGraph, List<Snap> snaps,
                                    DirectedEdgeFilter directedEdgeFilter, PathCalculator pathCalculator,
                                    List<String> curbsides, String curbsideStrictness, List<Double> headings, boolean passThrough) {
+        return calcPaths(points, queryGraph, snaps, directedEdgeFilter, () -> pathCalculator, null,
+                curbsides, curbsideStrictness, headings, passThrough);
+    }
+
+    /**
+     * Like {@link #calcPaths(List, QueryGraph, List, DirectedEdgeFilter, PathCalculator, List, String, List, boolean)},
+     * but the legs are calculated concurrently using the given executor if it is not null and the legs are independent
+     * of each other, i.e. if pass_through is off and no edges need to be unfavored on the query graph because of
+     * headings. Every concurrent leg uses its own path calculator, so the calculators must not share any mutable state
+     * other than the (read-only) query graph.
+     *
+     * @param pathCalculators creates the path calculators, always called from the calling thread
+     */
+    public static Result calcPaths(List<GHPoint> points, QueryGraph queryGraph, List<Snap> snaps,
+                                   DirectedEdgeFilter directedEdgeFilter, Supplier<PathCalculator> pathCalculators,
+                                   ExecutorService legExecutor, List<String> curbsides, String curbsideStrictness,
+                                   List<Double> headings, boolean passThrough) {
         if (!curbsides.isEmpty() && curbsides.size() != points.size())
             throw new IllegalArgumentException("If you pass " + CURBSIDE + ", you need to pass exactly one curbside for every point, empty curbsides will be ignored");
         if (!curbsides.isEmpty() && !headings.isEmpty())
             throw new IllegalArgumentException("You cannot use curbsides and headings or pass_through at the same time");
 
         final int legs = snaps.size() - 1;
+        if (legExecutor != null && legs > 1 && !passThrough) {
+            List<EdgeRestrictions> legRestrictions = new ArrayList<>(legs);
+            for (int leg = 0; leg < legs; ++leg)
+                legRestrictions.add(buildLegRestrictions(queryGraph, snaps, leg, NO_EDGE, directedEdgeFilter,
+                        curbsides, curbsideStrictness, headings, false));
+            if (legRestrictions.stream().allMatch(r -> r.getUnfavoredEdges().isEmpty()))
+                return calcLegsConcurrently(snaps, pathCalculators, legExecutor, legRestrictions);
+        }
+
+        PathCalculator pathCalculator = pathCalculators.get();
         Result result = new Result(legs);
         for (int leg = 0; leg < legs; ++leg) {
-            Snap fromSnap = snaps.get(leg);
-            Snap toSnap = snaps.get(leg + 1);
-
-            // enforce headings
-            // at via-nodes and the target node the heading parameter is interpreted as the direction we want
-            // to enforce for arriving (not starting) at this node. the starting direction is not enforced at
-            // all for these points (unless using pass through). see this forum discussion:
-            // https://discuss.graphhopper.com/t/meaning-of-heading-parameter-for-via-routing/5643/6
-            double fromHeading = (leg == 0 && !headings.isEmpty()) ? headings.get(0) : Double.NaN;
-            double toHeading = (snaps.size() == headings.size() && !Double.isNaN(headings.get(leg + 1))) ? headings.get(leg + 1) : Double.NaN;
-
             // enforce pass-through
             int incomingEdge = NO_EDGE;
             if (leg != 0) {
@@ -124,39 +169,113 @@ public class ViaRouting {
                 if (prevRoute.getEdgeCount() > 0)
                     incomingEdge = prevRoute.getFinalEdge().getEdge();
             }
+            EdgeRestrictions edgeRestrictions = buildLegRestrictions(queryGraph, snaps, leg, incomingEdge,
+                    directedEdgeFilter, curbsides, curbsideStrictness, headings, passThrough);
 
-            // enforce curbsides
-            final String fromCurbside = curbsides.isEmpty() ? CURBSIDE_ANY : curbsides.get(leg);
-            final String toCurbside = curbsides.isEmpty() ? CURBSIDE_ANY : curbsides.get(leg + 1);
-
-            EdgeRestrictions edgeRestrictions = buildEdgeRestrictions(queryGraph, fromSnap, toSnap,
-                    fromHeading, toHeading, incomingEdge, passThrough,
-                    fromCurbside, toCurbside, directedEdgeFilter);
+            // calculate paths
+            List<Path> paths = pathCalculator.calcPaths(snaps.get(leg).getClosestNode(), snaps.get(leg + 1).getClosestNode(), edgeRestrictions);
+            addLeg(result, paths, pathCalculator.getDebugString(), pathCalculator.getVisitedNodes());
+        }
 
-            edgeRestrictions.setSourceOutEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getSourceOutEdge(), leg, curbsideStrictness));
-            edgeRestrictions.setTargetInEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getTargetInEdge(), leg + 1, curbsideStrictness));
+        return result;
+    }
 
-            // calculate paths
-            List<Path> paths = pathCalculator.calcPaths(fromSnap.getClosestNode(), toSnap.getClosestNode(), edgeRestrictions);
-            result.debug += pathCalculator.getDebugString();
-
-            // for alternative routing we get multiple paths and add all of them (which is ok, because we do not allow
-            // via-points for alternatives at the moment). otherwise we would have to return a list<list<path>> and find
-            // a good method to decide how to combine the different legs
-            for (int i = 0; i < paths.size(); i++) {
-                Path path = paths.get(i);
-                if (path.getTime() < 0)
-                    throw new RuntimeException("Time was negative " + path.getTime() + " for index " + i);
-
-                result.paths.add(path);
-                result.debug += ", " + path.getDebugInfo();
+    private static Result calcLegsConcurrently(List<Snap> snaps, Supplier<PathCalculator> pathCalculators,
+                                               ExecutorService legExecutor, List<EdgeRestrictions> legRestrictions) {
+        final int legs = legRestrictions.size();
+        List<Future<LegResult>> futures = new ArrayList<>(legs);
+        try {
+            for (int leg = 0; leg < legs; ++leg) {
+                PathCalculator pathCalculator = pathCalculators.get();
+                int from = snaps.get(leg).getClosestNode();
+                int to = snaps.get(leg + 1).getClosestNode();
+                EdgeRestrictions edgeRestrictions = legRestrictions.get(leg);
+                futures.add(legExecutor.submit(() -> new LegResult(pathCalculator.calcPaths(from, to, edgeRestrictions),
+                        pathCalculator.getDebugString(), pathCalculator.getVisitedNodes())));
+            }
+            // the legs are stitched in order, and if several legs fail we throw the error of the first one, just like
+            // the sequential calculation would do
+            Result result = new Result(legs);
+            for (Future<LegResult> future : futures) {
+                LegResult legResult = getLegResult(future);
+                addLeg(result, legResult.paths, legResult.debug, legResult.visitedNodes);
             }
+            return result;
+        } finally {
+            for (Future<LegResult> future : futures)
+                future.cancel(true);
+        }
+    }
 
-            result.visitedNodes += pathCalculator.getVisitedNodes();
-            result.debug += ", visited nodes sum: " + result.visitedNodes;
+    private static LegResult getLegResult(Future<LegResult> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the calculation of a leg", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
         }
+    }
 
-        return result;
+    private static EdgeRestrictions buildLegRestrictions(QueryGraph queryGraph, List<Snap> snaps, int leg, int incomingEdge,
+                                                         DirectedEdgeFilter directedEdgeFilter, List<String> curbsides,
+                                                         String curbsideStrictness, List<Double> headings, boolean passThrough) {
+        Snap fromSnap = snaps.get(leg);
+        Snap toSnap = snaps.get(leg + 1);
+
+        // enforce headings
+        // at via-nodes and the target node the heading parameter is interpreted as the direction we want
+        // to enforce for arriving (not starting) at this node. the starting direction is not enforced at
+        // all for these points (unless using pass through). see this forum discussion:
+        // https://discuss.graphhopper.com/t/meaning-of-heading-parameter-for-via-routing/5643/6
+        double fromHeading = (leg == 0 && !headings.isEmpty()) ? headings.get(0) : Double.NaN;
+        double toHeading = (snaps.size() == headings.size() && !Double.isNaN(headings.get(leg + 1))) ? headings.get(leg + 1) : Double.NaN;
+
+        // enforce curbsides
+        final String fromCurbside = curbsides.isEmpty() ? CURBSIDE_ANY : curbsides.get(leg);
+        final String toCurbside = curbsides.isEmpty() ? CURBSIDE_ANY : curbsides.get(leg + 1);
+
+        EdgeRestrictions edgeRestrictions = buildEdgeRestrictions(queryGraph, fromSnap, toSnap,
+                fromHeading, toHeading, incomingEdge, passThrough,
+                fromCurbside, toCurbside, directedEdgeFilter);
+
+        edgeRestrictions.setSourceOutEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getSourceOutEdge(), leg, curbsideStrictness));
+        edgeRestrictions.setTargetInEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getTargetInEdge(), leg + 1, curbsideStrictness));
+        return edgeRestrictions;
+    }
+
+    private static void addLeg(Result result, List<Path> paths, String debug, int visitedNodes) {
+        result.debug += debug;
+
+        // for alternative routing we get multiple paths and add all of them (which is ok, because we do not allow
+        // via-points for alternatives at the moment). otherwise we would have to return a list<list<path>> and find
+        // a good method to decide how to combine the different legs
+        for (int i = 0; i < paths.size(); i++) {
+            Path path = paths.get(i);
+            if (path.getTime() < 0)
+                throw new RuntimeException("Time was negative " + path.getTime() + " for index " + i);
+
+            result.paths.add(path);
+            result.debug += ", " + path.getDebugInfo();
+        }
+
+        result.visitedNodes += visitedNodes;
+        result.debug += ", visited nodes sum: " + result.visitedNodes;
+    }
+
+    private static class LegResult {
+        final List<Path> paths;
+        final String debug;
+        final int visitedNodes;
+
+        LegResult(List<Path> paths, String debug, int visitedNodes) {
+            this.paths = paths;
+            this.debug = debug;
+            this.visitedNodes = visitedNodes;
+        }
     }
 
     public static class Result {
@@ -0,0 +1,299 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static com.graphhopper.util.Helper.nf;
+
+/**
+ * Calculates the weights of the arcs of a {@link CCHStorage} for a given weighting ('customization') and turns the
+ * result into a node-based {@link RoutingCHGraph} that can be used with the usual CH algorithms.
+ * <p>
+ * We use the basic customization: The weight of an arc (u,w) is the minimum of the weights of the original edges
+ * between u and w and the weights of all paths u-v-w where v is ranked lower than u and w ('lower triangles'). We
+ * process the ranks level by level such that all arcs of the lower triangles are final when we process an arc. The
+ * ranks of the same level do not depend on each other and are processed in parallel. Only the arcs that are shorter
+ * than the original edges end up as shortcuts in the resulting {@link CHStorage}.
+ */
+public class CCHCustomizer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CCHCustomizer.class);
+    private final BaseGraph graph;
+    private final CCHStorage cch;
+    private final int threads;
+    // shared by all customizations, so the number of threads stays bounded even if many requests customize at once
+    private final ForkJoinPool pool;
+    // levels with fewer ranks are processed by the calling thread
+    private final int minParallelRanks;
+    private final int chunkSize;
+    // the ranks sorted by their customization level and the index of the first rank of each level
+    private final int[] ranksByLevel;
+    private final int[] levelOffsets;
+
+    public CCHCustomizer(BaseGraph graph, CCHStorage cch, int threads) {
+        this(graph, cch, threads, 1024, 256);
+    }
+
+    /**
+     * @param minParallelRanks the minimum number of ranks of a level that are processed in parallel
+     * @param chunkSize        the number of ranks that a thread processes at once
+     */
+    CCHCustomizer(BaseGraph graph, CCHStorage cch, int threads, int minParallelRanks, int chunkSize) {
+        if (graph.getNodes() != cch.getNodes())
+            throw new IllegalArgumentException("The CCH storage does not match the graph, nodes: " + cch.getNodes() + " vs. " + graph.getNodes());
+        this.graph = graph;
+        this.cch = cch;
+        this.threads = threads;
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        this.minParallelRanks = minParallelRanks;
+        this.chunkSize = chunkSize;
+        int nodes = cch.getNodes();
+        // the level of a rank is one more than the maximum level of the ranks below it
+        int[] levels = new int[nodes];
+        int maxLevel = 0;
+        for (int rank = 0; rank < nodes; rank++) {
+            maxLevel = Math.max(maxLevel, levels[rank]);
+            for (int arc = cch.getFirstUpArc(rank); arc < cch.getFirstUpArc(rank + 1); arc++) {
+                int head = cch.getHead(arc);
+                levels[head] = Math.max(levels[head], levels[rank] + 1);
+            }
+        }
+        levelOffsets = new int[maxLevel + 2];
+        for (int rank = 0; rank < nodes; rank++)
+            levelOffsets[levels[rank] + 1]++;
+        for (int i = 1; i < levelOffsets.length; i++)
+            levelOffsets[i] += levelOffsets[i - 1];
+        ranksByLevel = new int[nodes];
+        int[] next = Arrays.copyOf(levelOffsets, levelOffsets.length);
+        for (int rank = 0; rank < nodes; rank++)
+            ranksByLevel[next[levels[rank]]++] = rank;
+    }
+
+    /**
+     * Customizes the CCH for the weighting of the given (node-based) CH config. The resulting graph is only kept in
+     * memory.
+     */
+    public RoutingCHGraph customize(CHConfig chConfig) {
+        if (chConfig.isEdgeBased())
+            throw new IllegalArgumentException("Customizable CH only supports node-based CH configs");
+        StopWatch sw = StopWatch.started();
+        Arcs arcs = new Arcs(cch.getArcs());
+        Weighting weighting = chConfig.getWeighting();
+        forEachChunk(0, cch.getNodes(), (from, to) -> {
+            EdgeExplorer explorer = graph.createEdgeExplorer();
+            for (int rank = from; rank < to; rank++)
+                initArcs(arcs, weighting, explorer, rank);
+        });
+        // the ranks of the first level have no lower triangles
+        for (int level = 1; level < levelOffsets.length - 1; level++) {
+            forEachChunk(levelOffsets[level], levelOffsets[level + 1], (from, to) -> {
+                for (int i = from; i < to; i++)
+                    relaxLowerTriangles(arcs, ranksByLevel[i]);
+            });
+        }
+        float customizationSeconds = sw.stop().getCurrentSeconds();
+        sw = StopWatch.started();
+        CHStorage chStorage = new CHStorage(new RAMDirectory(), chConfig.getName(), -1, false);
+        int shortcuts = buildShortcuts(arcs, chStorage);
+        LOGGER.info("Customized CCH for " + chConfig.getName() + ", shortcuts: " + nf(shortcuts) + ", customization: "
+                + customizationSeconds + "s, building shortcuts: " + sw.stop().getCurrentSeconds() + "s");
+        return RoutingCHGraphImpl.fromGraph(graph, chStorage, chConfig);
+    }
+
+    private void initArcs(Arcs arcs, Weighting weighting, EdgeExplorer explorer, int rank) {
+        EdgeIterator iter = explorer.setBaseNode(cch.getNode(rank));
+        while (iter.next()) {
+            int adjRank = cch.getRank(iter.getAdjNode());
+            // the arcs are owned by their tail, so we skip the edges leading to lower ranks (and loops)
+            if (adjRank <= rank)
+                continue;
+            int arc = cch.findArc(rank, adjRank);
+            double fwdWeight = weighting.calcEdgeWeight(iter, false);
+            if (fwdWeight < arcs.fwdWeights[arc]) {
+                arcs.fwdWeights[arc] = fwdWeight;
+                arcs.fwdEdges[arc] = iter.getEdge();
+            }
+            double bwdWeight = weighting.calcEdgeWeight(iter, true);
+            if (bwdWeight < arcs.bwdWeights[arc]) {
+                arcs.bwdWeights[arc] = bwdWeight;
+                arcs.bwdEdges[arc] = iter.getEdge();
+            }
+        }
+    }
+
+    /**
+     * Updates the weights of the arcs leaving the given rank using all lower triangles. The lower triangles of the arc
+     * (u,w) are the ranks v that have arcs to both u and w, so we find them by intersecting the down entries of u and w.
+     */
+    private void relaxLowerTriangles(Arcs arcs, int u) {
+        int downStartU = cch.getFirstDown(u);
+        int downEndU = cch.getFirstDown(u + 1);
+        if (downStartU == downEndU)
+            return;
+        for (int arc = cch.getFirstUpArc(u); arc < cch.getFirstUpArc(u + 1); arc++) {
+            int w = cch.getHead(arc);
+            int i = downStartU;
+            int j = cch.getFirstDown(w);
+            int downEndW = cch.getFirstDown(w + 1);
+            while (i < downEndU && j < downEndW) {
+                int vu = cch.getDownTail(i);
+                int vw = cch.getDownTail(j);
+                if (vu < vw) {
+                    i++;
+                } else if (vu > vw) {
+                    j++;
+                } else {
+                    int arcVU = cch.getDownArc(i);
+                    int arcVW = cch.getDownArc(j);
+                    // u->v->w
+                    double fwdWeight = arcs.bwdWeights[arcVU] + arcs.fwdWeights[arcVW];
+                    if (fwdWeight < arcs.fwdWeights[arc]) {
+                        arcs.fwdWeights[arc] = fwdWeight;
+                        arcs.fwdEdges[arc] = EdgeIterator.NO_EDGE;
+                        arcs.fwdVias[arc] = vu;
+                    }
+                    // w->v->u
+                    double bwdWeight = arcs.bwdWeights[arcVW] + arcs.fwdWeights[arcVU];
+                    if (bwdWeight < arcs.bwdWeights[arc]) {
+                        arcs.bwdWeights[arc] = bwdWeight;
+                        arcs.bwdEdges[arc] = EdgeIterator.NO_EDGE;
+                        arcs.bwdVias[arc] = vu;
+                    }
+                    i++;
+                    j++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the shortcuts to the given storage and sets the CH levels to the CCH ranks. We iterate the arcs in the
+     * order of their tails, so the shortcuts are sorted by the level of their lower node like the {@link CHStorageBuilder}
+     * requires it, and the shortcuts of the lower triangles already exist when we need them as skipped edges.
+     *
+     * @return the number of shortcuts
+     */
+    private int buildShortcuts(Arcs arcs, CHStorage chStorage) {
+        int nodes = cch.getNodes();
+        // the CH edges that correspond to each arc and direction, either the original edge or a shortcut
+        int[] fwdCHEdges = arcs.fwdEdges;
+        int[] bwdCHEdges = arcs.bwdEdges;
+        int baseEdges = graph.getEdges();
+        chStorage.create(nodes, cch.getArcs() / 4);
+        CHStorageBuilder builder = new CHStorageBuilder(chStorage);
+        for (int rank = 0; rank < nodes; rank++)
+            builder.setLevel(cch.getNode(rank), rank);
+        for (int u = 0; u < nodes; u++) {
+            int nodeU = cch.getNode(u);
+            for (int arc = cch.getFirstUpArc(u); arc < cch.getFirstUpArc(u + 1); arc++) {
+                int w = cch.getHead(arc);
+                int nodeW = cch.getNode(w);
+                boolean fwdShortcut = arcs.fwdVias[arc] >= 0 && Double.isFinite(arcs.fwdWeights[arc]);
+                boolean bwdShortcut = arcs.bwdVias[arc] >= 0 && Double.isFinite(arcs.bwdWeights[arc]);
+                int fwdSkip1 = -1, fwdSkip2 = -1, bwdSkip1 = -1, bwdSkip2 = -1;
+                if (fwdShortcut) {
+                    int v = arcs.fwdVias[arc];
+                    fwdSkip1 = bwdCHEdges[cch.findArc(v, u)];
+                    fwdSkip2 = fwdCHEdges[cch.findArc(v, w)];
+                }
+                if (bwdShortcut) {
+                    int v = arcs.bwdVias[arc];
+                    bwdSkip1 = fwdCHEdges[cch.findArc(v, u)];
+                    bwdSkip2 = bwdCHEdges[cch.findArc(v, w)];
+                }
+                if (fwdShortcut && bwdShortcut && fwdSkip1 == bwdSkip1 && fwdSkip2 == bwdSkip2
+                        && arcs.fwdWeights[arc] == arcs.bwdWeights[arc]) {
+                    // both directions use the same path, so we can use a single shortcut
+                    int shortcut = builder.addShortcutNodeBased(nodeU, nodeW, PrepareEncoder.getScDirMask(), arcs.fwdWeights[arc], fwdSkip1, fwdSkip2);
+                    fwdCHEdges[arc] = bwdCHEdges[arc] = baseEdges + shortcut;
+                    continue;
+                }
+                if (fwdShortcut)
+                    fwdCHEdges[arc] = baseEdges + builder.addShortcutNodeBased(nodeU, nodeW, PrepareEncoder.getScFwdDir(), arcs.fwdWeights[arc], fwdSkip1, fwdSkip2);
+                if (bwdShortcut)
+                    bwdCHEdges[arc] = baseEdges + builder.addShortcutNodeBased(nodeU, nodeW, PrepareEncoder.getScBwdDir(), arcs.bwdWeights[arc], bwdSkip1, bwdSkip2);
+            }
+        }
+        return chStorage.getShortcuts();
+    }
+
+    private void forEachChunk(int from, int to, ChunkConsumer consumer) {
+        if (to - from < minParallelRanks || pool == null) {
+            consumer.accept(from, to);
+            return;
+        }
+        int chunks = (to - from + chunkSize - 1) / chunkSize;
+        try {
+            pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(c ->
+                    consumer.accept(from + c * chunkSize, Math.min(to, from + (c + 1) * chunkSize)))).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Stops the threads of the customization. This must not be called while a customization is running.
+     */
+    public void close() {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    private interface ChunkConsumer {
+        void accept(int from, int to);
+    }
+
+    /**
+     * The weights of all arcs for both directions. For every arc and direction we either store the original edge
+     * with the smallest weight or the middle rank of the best lower triangle.
+     */
+    private static class Arcs {
+        final double[] fwdWeights;
+        final double[] bwdWeights;
+        final int[] fwdEdges;
+        final int[] bwdEdges;
+        final int[] fwdVias;
+        final int[] bwdVias;
+
+        Arcs(int arcs) {
+            fwdWeights = new double[arcs];
+            bwdWeights = new double[arcs];
+            Arrays.fill(fwdWeights, Double.POSITIVE_INFINITY);
+            Arrays.fill(bwdWeights, Double.POSITIVE_INFINITY);
+            fwdEdges = new int[arcs];
+            bwdEdges = new int[arcs];
+            Arrays.fill(fwdEdges, EdgeIterator.NO_EDGE);
+            Arrays.fill(bwdEdges, EdgeIterator.NO_EDGE);
+            fwdVias = new int[arcs];
+            bwdVias = new int[arcs];
+            Arrays.fill(fwdVias, -1);
+            Arrays.fill(bwdVias, -1);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CCHStorage;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Gives access to customizable contraction hierarchies: The metric-independent {@link CCHStorage} is customized
+ * for the weighting of a request and the resulting CH graphs are cached, so subsequent requests with the same
+ * weighting, e.g. the same custom model, can use them right away. Concurrent requests with the same weighting wait for
+ * a single customization.
+ */
+public class CustomizableCH {
+    private final CCHStorage cchStorage;
+    private final CCHCustomizer customizer;
+    private final Map<String, RoutingCHGraph> cache;
+    // the customizations that are currently running, guarded by the cache lock
+    private final Map<String, CompletableFuture<RoutingCHGraph>> customizing = new HashMap<>();
+
+    /**
+     * @param threads   the number of threads used to customize a single weighting
+     * @param cacheSize the maximum number of customized CH graphs that are kept in memory
+     */
+    public CustomizableCH(BaseGraph graph, CCHStorage cchStorage, int threads, int cacheSize) {
+        this.cchStorage = cchStorage;
+        this.customizer = new CCHCustomizer(graph, cchStorage, threads);
+        // the least recently used graphs are removed first. we do not close them, because they might still be used
+        // by other requests, but they only live in memory anyway
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RoutingCHGraph> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @param cacheKey  must be equal for two calls if and only if the weightings of the two CH configs are equal
+     * @param chConfig  the node-based CH config containing the weighting we customize the CCH for
+     * @return the customized CH graph, either from the cache or freshly customized
+     */
+    public RoutingCHGraph getRoutingCHGraph(String cacheKey, CHConfig chConfig) {
+        CompletableFuture<RoutingCHGraph> future = new CompletableFuture<>();
+        CompletableFuture<RoutingCHGraph> running;
+        synchronized (cache) {
+            RoutingCHGraph chGraph = cache.get(cacheKey);
+            if (chGraph != null)
+                return chGraph;
+            running = customizing.putIfAbsent(cacheKey, future);
+        }
+        // another request is customizing the same weighting already
+        if (running != null)
+            return await(running);
+        // we do not hold the lock during the customization so the cached graphs remain accessible
+        try {
+            RoutingCHGraph chGraph = customizer.customize(chConfig);
+            synchronized (cache) {
+                // the cache might have been cleared in the meantime
+                if (customizing.remove(cacheKey, future))
+                    cache.put(cacheKey, chGraph);
+            }
+            future.complete(chGraph);
+            return chGraph;
+        } catch (RuntimeException | Error e) {
+            synchronized (cache) {
+                customizing.remove(cacheKey, future);
+            }
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static RoutingCHGraph await(CompletableFuture<RoutingCHGraph> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Removes all customized CH graphs, e.g. because the edge flags changed and the weights are outdated. The CCH
+     * itself does not depend on the weights and can still be used.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+            customizing.clear();
+        }
+    }
+
+    public CCHStorage getCCHStorage() {
+        return cchStorage;
+    }
+
+    public void close() {
+        clear();
+        customizer.close();
+        cchStorage.close();
+    }
+}
@@ -20,6 +20,9 @@ package com.graphhopper.routing.ch;
 import com.carrotsearch.hppc.*;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.graphhopper.apache.commons.collections.IntFloatBinaryHeap;
+import com.graphhopper.coll.IntFloatHeap;
+import com.graphhopper.coll.IntFloatRadixHeap;
 import com.graphhopper.storage.CHStorageBuilder;
 import com.graphhopper.util.BitUtil;
 import com.graphhopper.util.EdgeIterator;
@@ -28,6 +31,8 @@ import com.graphhopper.util.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 import static com.graphhopper.routing.ch.CHParameters.*;
@@ -54,7 +59,9 @@ class EdgeBasedNodeContractor implements NodeContractor {
     private PrepareGraphEdgeExplorer existingShortcutExplorer;
     private PrepareGraphOrigEdgeExplorer sourceNodeOrigInEdgeExplorer;
     private CHStorageBuilder chBuilder;
-    private final Params params = new Params();
+    private final Params params;
+    // the contractor this one was forked from, or null
+    private final EdgeBasedNodeContractor original;
     private final StopWatch dijkstraSW = new StopWatch();
     // temporary data used during node contraction
     private final IntSet sourceNodes = new IntHashSet(10);
@@ -85,15 +92,36 @@ class EdgeBasedNodeContractor implements NodeContractor {
     public EdgeBasedNodeContractor(CHPreparationGraph prepareGraph, CHStorageBuilder chBuilder, PMap pMap) {
         this.prepareGraph = prepareGraph;
         this.chBuilder = chBuilder;
+        this.params = new Params();
+        this.original = null;
         extractParams(pMap);
     }
 
+    private EdgeBasedNodeContractor(EdgeBasedNodeContractor original) {
+        this.prepareGraph = original.prepareGraph;
+        this.params = original.params;
+        this.original = original;
+        inEdgeExplorer = prepareGraph.createInEdgeExplorer();
+        outEdgeExplorer = prepareGraph.createOutEdgeExplorer();
+        existingShortcutExplorer = prepareGraph.createOutEdgeExplorer();
+        sourceNodeOrigInEdgeExplorer = prepareGraph.createInOrigEdgeExplorer();
+        // the hierarchy depths are only changed when a node is contracted, so we can share them
+        hierarchyDepths = original.hierarchyDepths;
+        witnessPathSearcher = new EdgeBasedWitnessPathSearcher(prepareGraph, createHeap());
+        bridgePathFinder = new BridgePathFinder(prepareGraph);
+    }
+
     private void extractParams(PMap pMap) {
         params.edgeQuotientWeight = pMap.getFloat(EDGE_QUOTIENT_WEIGHT, params.edgeQuotientWeight);
         params.originalEdgeQuotientWeight = pMap.getFloat(ORIGINAL_EDGE_QUOTIENT_WEIGHT, params.originalEdgeQuotientWeight);
         params.hierarchyDepthWeight = pMap.getFloat(HIERARCHY_DEPTH_WEIGHT, params.hierarchyDepthWeight);
         params.maxPollFactorHeuristic = pMap.getDouble(MAX_POLL_FACTOR_HEURISTIC_EDGE, params.maxPollFactorHeuristic);
         params.maxPollFactorContraction = pMap.getDouble(MAX_POLL_FACTOR_CONTRACTION_EDGE, params.maxPollFactorContraction);
+        params.radixHeap = pMap.getBool(RADIX_HEAP, params.radixHeap);
+    }
+
+    private IntFloatHeap createHeap() {
+        return params.radixHeap ? new IntFloatRadixHeap(2 * prepareGraph.getOriginalEdges()) : new IntFloatBinaryHeap(1000);
     }
 
     @Override
@@ -103,7 +131,7 @@ class EdgeBasedNodeContractor implements NodeContractor {
         existingShortcutExplorer = prepareGraph.createOutEdgeExplorer();
         sourceNodeOrigInEdgeExplorer = prepareGraph.createInOrigEdgeExplorer();
         hierarchyDepths = new int[prepareGraph.getNodes()];
-        witnessPathSearcher = new EdgeBasedWitnessPathSearcher(prepareGraph);
+        witnessPathSearcher = new EdgeBasedWitnessPathSearcher(prepareGraph, createHeap());
         bridgePathFinder = new BridgePathFinder(prepareGraph);
         meanDegree = prepareGraph.getOriginalEdges() * 1.0 / prepareGraph.getNodes();
     }
@@ -118,7 +146,7 @@ class EdgeBasedNodeContractor implements NodeContractor {
             // no shortcuts will be introduced
             return Float.NEGATIVE_INFINITY;
         stats().stopWatch.start();
-        findAndHandlePrepareShortcuts(node, this::countShortcuts, (int) (meanDegree * params.maxPollFactorHeuristic), wpsStatsHeur);
+        findAndHandlePrepareShortcuts(node, this::countShortcuts, (int) (getMeanDegree() * params.maxPollFactorHeuristic), null, wpsStatsHeur);
         stats().stopWatch.stop();
         // the higher the priority the later (!) this node will be contracted
         float edgeQuotient = numShortcuts / (float) (prepareGraph.getDegree(node));
@@ -140,7 +168,38 @@ class EdgeBasedNodeContractor implements NodeContractor {
     public IntContainer contractNode(int node) {
         activeStats = addingStats;
         stats().stopWatch.start();
-        findAndHandlePrepareShortcuts(node, this::addShortcutsToPrepareGraph, (int) (meanDegree * params.maxPollFactorContraction), wpsStatsContr);
+        findAndHandlePrepareShortcuts(node, this::addShortcutsToPrepareGraph, (int) (meanDegree * params.maxPollFactorContraction), null, wpsStatsContr);
+        return insertShortcutsAndDisconnect(node);
+    }
+
+    @Override
+    public NodeContractor fork() {
+        return new EdgeBasedNodeContractor(this);
+    }
+
+    @Override
+    public PendingShortcuts findShortcuts(int node, boolean[] ignoredNodes) {
+        activeStats = addingStats;
+        stats().stopWatch.start();
+        FoundShortcuts shortcuts = new FoundShortcuts();
+        findAndHandlePrepareShortcuts(node, shortcuts, (int) (getMeanDegree() * params.maxPollFactorContraction), ignoredNodes, wpsStatsContr);
+        stats().stopWatch.stop();
+        return shortcuts;
+    }
+
+    @Override
+    public IntContainer contractNode(int node, PendingShortcuts pendingShortcuts) {
+        if (original != null)
+            throw new IllegalStateException("Nodes must be contracted using the original contractor");
+        activeStats = addingStats;
+        stats().stopWatch.start();
+        FoundShortcuts shortcuts = (FoundShortcuts) pendingShortcuts;
+        for (int i = 0; i < shortcuts.edgesTo.size(); i++)
+            addShortcutsToPrepareGraph(shortcuts.edgesFrom.get(i), shortcuts.edgesTo.get(i), shortcuts.origEdgeCounts.get(i));
+        return insertShortcutsAndDisconnect(node);
+    }
+
+    private IntContainer insertShortcutsAndDisconnect(int node) {
         insertShortcuts(node);
         IntContainer neighbors = prepareGraph.disconnect(node);
         // We maintain an approximation of the mean degree which we update after every contracted node.
@@ -175,7 +234,7 @@ class EdgeBasedNodeContractor implements NodeContractor {
      * This method performs witness searches between all nodes adjacent to the given node and calls the
      * given handler for all required shortcuts.
      */
-    private void findAndHandlePrepareShortcuts(int node, PrepareShortcutHandler shortcutHandler, int maxPolls, EdgeBasedWitnessPathSearcher.Stats wpsStats) {
+    private void findAndHandlePrepareShortcuts(int node, PrepareShortcutHandler shortcutHandler, int maxPolls, boolean[] ignoredNodes, EdgeBasedWitnessPathSearcher.Stats wpsStats) {
         stats().nodes++;
         addedShortcuts.clear();
         sourceNodes.clear();
@@ -197,7 +256,7 @@ class EdgeBasedNodeContractor implements NodeContractor {
                 IntObjectMap<BridgePathFinder.BridePathEntry> bridgePaths = bridgePathFinder.find(origInKey, sourceNode, node);
                 if (bridgePaths.isEmpty())
                     continue;
-                witnessPathSearcher.initSearch(origInKey, sourceNode, node, wpsStats);
+                witnessPathSearcher.initSearch(origInKey, sourceNode, node, ignoredNodes, wpsStats);
                 for (IntObjectCursor<BridgePathFinder.BridePathEntry> bridgePath : bridgePaths) {
                     if (!Double.isFinite(bridgePath.value.weight))
                         throw new IllegalStateException("Bridge entry weights should always be finite");
@@ -384,6 +443,11 @@ class EdgeBasedNodeContractor implements NodeContractor {
         return activeStats;
     }
 
+    private double getMeanDegree() {
+        // forked contractors use the mean degree of the original one, which is updated whenever a node is contracted
+        return original == null ? meanDegree : original.meanDegree;
+    }
+
     @FunctionalInterface
     private interface PrepareShortcutHandler {
         void handleShortcut(PrepareCHEntry edgeFrom, PrepareCHEntry edgeTo, int origEdgeCount);
@@ -413,6 +477,22 @@ class EdgeBasedNodeContractor implements NodeContractor {
         numOrigEdges += origEdgeCount;
     }
 
+    /**
+     * Stores the arguments of all {@link PrepareShortcutHandler#handleShortcut} calls for a node
+     */
+    private static class FoundShortcuts implements PendingShortcuts, PrepareShortcutHandler {
+        private final List<PrepareCHEntry> edgesFrom = new ArrayList<>();
+        private final List<PrepareCHEntry> edgesTo = new ArrayList<>();
+        private final IntArrayList origEdgeCounts = new IntArrayList();
+
+        @Override
+        public void handleShortcut(PrepareCHEntry edgeFrom, PrepareCHEntry edgeTo, int origEdgeCount) {
+            edgesFrom.add(edgeFrom);
+            edgesTo.add(edgeTo);
+            origEdgeCounts.add(origEdgeCount);
+        }
+    }
+
     long getNumPolledEdges() {
         return wpsStatsContr.numPolls + wpsStatsHeur.numPolls;
     }
@@ -425,6 +505,7 @@ class EdgeBasedNodeContractor implements NodeContractor {
         // shortcuts and possibly (slightly) faster queries.
         private double maxPollFactorHeuristic = 5;
         private double maxPollFactorContraction = 200;
+        private boolean radixHeap = false;
     }
 
     private static class Stats {
@@ -19,6 +19,7 @@ package com.graphhopper.routing.ch;
 
 import com.carrotsearch.hppc.IntArrayList;
 import com.graphhopper.apache.commons.collections.IntFloatBinaryHeap;
+import com.graphhopper.coll.IntFloatHeap;
 import com.graphhopper.util.GHUtility;
 
 import java.util.Arrays;
@@ -59,6 +60,7 @@ public class EdgeBasedWitnessPathSearcher {
 
     private int sourceNode;
     private int centerNode;
+    private boolean[] ignoredNodes;
 
     // various counters
     private int numPolls;
@@ -70,13 +72,22 @@ public class EdgeBasedWitnessPathSearcher {
     private int[] parents;
     private int[] adjNodesAndIsPathToCenters;
     private IntArrayList changedEdgeKeys;
-    private IntFloatBinaryHeap dijkstraHeap;
+    private IntFloatHeap dijkstraHeap;
 
     // statistics to analyze performance
     private Stats stats;
 
     public EdgeBasedWitnessPathSearcher(CHPreparationGraph prepareGraph) {
+        this(prepareGraph, new IntFloatBinaryHeap(1000));
+    }
+
+    /**
+     * @param dijkstraHeap the (empty) priority queue used for the searches, e.g. an
+     *                     {@link com.graphhopper.coll.IntFloatRadixHeap}
+     */
+    public EdgeBasedWitnessPathSearcher(CHPreparationGraph prepareGraph, IntFloatHeap dijkstraHeap) {
         this.prepareGraph = prepareGraph;
+        this.dijkstraHeap = dijkstraHeap;
 
         outEdgeExplorer = prepareGraph.createOutEdgeExplorer();
         origInEdgeExplorer = prepareGraph.createInOrigEdgeExplorer();
@@ -94,10 +105,19 @@ public class EdgeBasedWitnessPathSearcher {
      * @param centerNode    the node to be contracted (x)
      */
     public void initSearch(int sourceEdgeKey, int sourceNode, int centerNode, Stats stats) {
+        initSearch(sourceEdgeKey, sourceNode, centerNode, null, stats);
+    }
+
+    /**
+     * Like {@link #initSearch(int, int, int, Stats)}, but witness paths must not visit any of the nodes for which
+     * ignoredNodes is set (if not null), except the center node.
+     */
+    public void initSearch(int sourceEdgeKey, int sourceNode, int centerNode, boolean[] ignoredNodes, Stats stats) {
         this.stats = stats;
         stats.numTrees++;
         this.sourceNode = sourceNode;
         this.centerNode = centerNode;
+        this.ignoredNodes = ignoredNodes;
 
         // set start entry
         weights[sourceEdgeKey] = 0;
@@ -151,6 +171,8 @@ public class EdgeBasedWitnessPathSearcher {
                 // being recognized as witnesses when there are double zero weight loops at the source node
                 if (currNode == sourceNode && iter.getAdjNode() == sourceNode && iter.getWeight() < MAX_ZERO_WEIGHT_LOOP)
                     continue;
+                if (ignoredNodes != null && ignoredNodes[iter.getAdjNode()] && iter.getAdjNode() != centerNode)
+                    continue;
                 final double weight = weights[currKey] + calcTurnWeight(currKey, currNode, iter.getOrigEdgeKeyFirst()) + iter.getWeight();
                 if (Double.isInfinite(weight))
                     continue;
@@ -235,12 +257,12 @@ public class EdgeBasedWitnessPathSearcher {
 
     private void initCollections() {
         changedEdgeKeys = new IntArrayList(1000);
-        dijkstraHeap = new IntFloatBinaryHeap(1000);
     }
 
     private void reset() {
         numPolls = 0;
         numUpdates = 0;
+        ignoredNodes = null;
         resetShortestPathTree();
     }
 
@@ -0,0 +1,275 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.EdgeIterator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Calculates a many-to-many matrix of shortest path weights (and optionally times and distances) on a node-based
+ * {@link RoutingCHGraph} using the bucket-based approach described in 'Computing Many-to-Many Shortest Paths Using
+ * Highway Hierarchies' by Knopp et al.: First we run an upward backward search for every target and store the settled
+ * nodes together with their weights in buckets. Then we run an upward forward search for every source and scan the
+ * buckets of every settled node. This way we need only N + M upward searches instead of N x M bidirectional queries.
+ * <p>
+ * Times and distances are not stored in the CH graph, so they are calculated lazily by unpacking the shortcuts of the
+ * search trees, but only for the nodes where the shortest paths meet.
+ * <p>
+ * To use virtual nodes/snapped coordinates wrap the CH graph into a
+ * {@link com.graphhopper.routing.querygraph.QueryRoutingCHGraph}.
+ */
+public class ManyToManyCH {
+    private final RoutingCHGraph graph;
+    private final Weighting weighting;
+    private final RoutingCHEdgeExplorer inEdgeExplorer;
+    private final RoutingCHEdgeExplorer outEdgeExplorer;
+    private final ShortcutUnpacker shortcutUnpacker;
+    private final int maxNodes;
+    private boolean calcTimesAndDistances = true;
+    private int visitedNodes;
+
+    // buckets are stored as linked lists in parallel arrays, the heads are indexed by node
+    private final IntIntHashMap bucketHeads = new IntIntHashMap();
+    private final IntArrayList bucketNext = new IntArrayList();
+    private final IntArrayList bucketTargets = new IntArrayList();
+    private final List<Label> bucketLabels = new ArrayList<>();
+
+    // used to accumulate the time and distance of the original edges visited by the shortcut unpacker
+    private long unpackedTime;
+    private double unpackedDistance;
+
+    public ManyToManyCH(RoutingCHGraph graph) {
+        if (graph.isEdgeBased())
+            throw new IllegalArgumentException("Matrix calculation is currently only supported for node-based CH, " +
+                    "but the CH graph for " + graph.getWeighting() + " is edge-based");
+        this.graph = graph;
+        this.weighting = graph.getWeighting();
+        this.inEdgeExplorer = graph.createInEdgeExplorer();
+        this.outEdgeExplorer = graph.createOutEdgeExplorer();
+        this.maxNodes = graph.getBaseGraph().getBaseGraph().getNodes();
+        this.shortcutUnpacker = new ShortcutUnpacker(graph, (edge, reverse, prevOrNextEdgeId) -> {
+            unpackedTime += weighting.calcEdgeMillis(edge, reverse);
+            unpackedDistance += edge.getDistance();
+        }, false);
+    }
+
+    /**
+     * Setting this to false avoids unpacking shortcuts when only the weights are needed. The times and distances of
+     * the result are left at their maximum values in this case.
+     */
+    public ManyToManyCH setCalcTimesAndDistances(boolean calcTimesAndDistances) {
+        this.calcTimesAndDistances = calcTimesAndDistances;
+        return this;
+    }
+
+    /**
+     * @return the total number of nodes settled by all forward and backward searches of the last calculation
+     */
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    public Result calcMatrix(int[] sources, int[] targets) {
+        visitedNodes = 0;
+        bucketHeads.clear();
+        bucketNext.clear();
+        bucketTargets.clear();
+        bucketLabels.clear();
+        for (int t = 0; t < targets.length; t++) {
+            for (Label label : runUpwardSearch(targets[t], true)) {
+                addToBucket(label, t);
+            }
+        }
+
+        Result result = new Result(sources.length, targets.length);
+        Label[] bestFwd = new Label[targets.length];
+        Label[] bestBwd = new Label[targets.length];
+        for (int s = 0; s < sources.length; s++) {
+            double[] weightRow = result.weights[s];
+            Arrays.fill(bestFwd, null);
+            Arrays.fill(bestBwd, null);
+            for (Label fwdLabel : runUpwardSearch(sources[s], false)) {
+                int index = bucketHeads.getOrDefault(fwdLabel.node, -1);
+                while (index >= 0) {
+                    int t = bucketTargets.get(index);
+                    Label bwdLabel = bucketLabels.get(index);
+                    double weight = fwdLabel.weight + bwdLabel.weight;
+                    if (weight < weightRow[t]) {
+                        weightRow[t] = weight;
+                        bestFwd[t] = fwdLabel;
+                        bestBwd[t] = bwdLabel;
+                    }
+                    index = bucketNext.get(index);
+                }
+            }
+            for (int t = 0; t < targets.length; t++) {
+                if (bestFwd[t] == null) {
+                    weightRow[t] = Double.MAX_VALUE;
+                    continue;
+                }
+                if (calcTimesAndDistances) {
+                    calcTimeAndDistance(bestFwd[t], false);
+                    calcTimeAndDistance(bestBwd[t], true);
+                    result.times[s][t] = bestFwd[t].time + bestBwd[t].time;
+                    result.distances[s][t] = bestFwd[t].distance + bestBwd[t].distance;
+                }
+            }
+        }
+        return result;
+    }
+
+    private void addToBucket(Label label, int target) {
+        int index = bucketTargets.size();
+        bucketTargets.add(target);
+        bucketLabels.add(label);
+        bucketNext.add(bucketHeads.getOrDefault(label.node, -1));
+        bucketHeads.put(label.node, index);
+    }
+
+    /**
+     * Runs a Dijkstra search starting at the given node that only follows edges leading to nodes with a higher level
+     * and returns all the settled nodes.
+     */
+    private List<Label> runUpwardSearch(int startNode, boolean reverse) {
+        RoutingCHEdgeExplorer explorer = reverse ? inEdgeExplorer : outEdgeExplorer;
+        IntObjectHashMap<Label> bestWeightMap = new IntObjectHashMap<>();
+        List<Label> settled = new ArrayList<>();
+        PriorityQueue<Label> queue = new PriorityQueue<>();
+        Label start = new Label(startNode, EdgeIterator.NO_EDGE, 0, null);
+        bestWeightMap.put(startNode, start);
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            Label curr = queue.poll();
+            if (curr.deleted)
+                continue;
+            settled.add(curr);
+            visitedNodes++;
+            RoutingCHEdgeIterator iter = explorer.setBaseNode(curr.node);
+            while (iter.next()) {
+                // node-based traversal, so we can exclude u-turns right away
+                if (iter.getEdge() == curr.edge || !acceptLevel(iter.getBaseNode(), iter.getAdjNode()))
+                    continue;
+                double weight = curr.weight + iter.getWeight(reverse);
+                if (Double.isInfinite(weight))
+                    continue;
+                Label label = bestWeightMap.get(iter.getAdjNode());
+                if (label == null || label.weight > weight) {
+                    if (label != null)
+                        label.deleted = true;
+                    label = new Label(iter.getAdjNode(), iter.getEdge(), weight, curr);
+                    bestWeightMap.put(label.node, label);
+                    queue.add(label);
+                }
+            }
+        }
+        return settled;
+    }
+
+    private boolean acceptLevel(int base, int adj) {
+        // always accept virtual edges, see #288
+        if (base >= maxNodes || adj >= maxNodes)
+            return true;
+        return graph.getLevel(base) <= graph.getLevel(adj);
+    }
+
+    /**
+     * Calculates the time and distance from the root of the search tree to the given label. The results are stored in
+     * the labels along the way, so every edge of a search tree is unpacked at most once.
+     */
+    private void calcTimeAndDistance(Label label, boolean reverse) {
+        if (label.time >= 0)
+            return;
+        if (label.parent == null) {
+            label.time = 0;
+            label.distance = 0;
+            return;
+        }
+        calcTimeAndDistance(label.parent, reverse);
+        unpackedTime = 0;
+        unpackedDistance = 0;
+        if (reverse)
+            shortcutUnpacker.visitOriginalEdgesBwd(label.edge, label.node, false, EdgeIterator.NO_EDGE);
+        else
+            shortcutUnpacker.visitOriginalEdgesFwd(label.edge, label.node, false, EdgeIterator.NO_EDGE);
+        label.time = label.parent.time + unpackedTime;
+        label.distance = label.parent.distance + unpackedDistance;
+    }
+
+    private static class Label implements Comparable<Label> {
+        final int node;
+        final int edge;
+        final double weight;
+        final Label parent;
+        boolean deleted;
+        long time = -1;
+        double distance;
+
+        Label(int node, int edge, double weight, Label parent) {
+            this.node = node;
+            this.edge = edge;
+            this.weight = weight;
+            this.parent = parent;
+        }
+
+        @Override
+        public int compareTo(Label o) {
+            return Double.compare(weight, o.weight);
+        }
+
+        @Override
+        public String toString() {
+            return node + " (" + edge + ") weight: " + weight;
+        }
+    }
+
+    /**
+     * The weights, times (in milliseconds) and distances (in meters) between every source (row) and target (column).
+     * Entries for disconnected source/target pairs are set to {@link Double#MAX_VALUE} or {@link Long#MAX_VALUE}.
+     */
+    public static class Result {
+        public final double[][] weights;
+        public final long[][] times;
+        public final double[][] distances;
+
+        Result(int sources, int targets) {
+            weights = new double[sources][targets];
+            times = new long[sources][targets];
+            distances = new double[sources][targets];
+            for (int s = 0; s < sources; s++) {
+                Arrays.fill(weights[s], Double.POSITIVE_INFINITY);
+                Arrays.fill(times[s], Long.MAX_VALUE);
+                Arrays.fill(distances[s], Double.MAX_VALUE);
+            }
+        }
+
+        public boolean isConnected(int source, int target) {
+            return weights[source][target] < Double.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+import java.util.Arrays;
+
+/**
+ * Calculates a metric-independent node ordering using nested dissection: We recursively split the graph into two
+ * halves and a small vertex separator between them. The separator nodes are ranked higher than all the other nodes of
+ * the cell and contracted last. Such an ordering results in a small number of shortcuts regardless of the weighting,
+ * which is what we need for customizable contraction hierarchies.
+ * <p>
+ * To find the separators we use a simple geometric approach that is similar to the first step of 'inertial flow' by
+ * Schild and Sommer: We sort the nodes of a cell along a few directions and cut the cell at the median. The
+ * boundary nodes of the smaller side of the cut form the separator, and we use the direction that yields the smallest
+ * separator. Unlike inertial flow we do not improve the cut with a max-flow computation.
+ */
+class NestedDissectionOrdering {
+    // cells with fewer nodes are not split any further
+    private static final int MAX_LEAF_SIZE = 64;
+    private static final int QUANTIZATION = 1 << 30;
+    private final NodeAccess nodeAccess;
+    private final EdgeExplorer explorer;
+    private final int[] nodes;
+    // we mark the two sides of the current cut with two consecutive stamps, so we do not need to reset any memory
+    private final int[] stamps;
+    private int stamp;
+    private long[] keys;
+
+    NestedDissectionOrdering(BaseGraph graph) {
+        this.nodeAccess = graph.getNodeAccess();
+        this.explorer = graph.createEdgeExplorer();
+        this.nodes = new int[graph.getNodes()];
+        this.stamps = new int[graph.getNodes()];
+        this.keys = new long[0];
+    }
+
+    /**
+     * @return the rank of every node
+     */
+    int[] calcRanks() {
+        for (int i = 0; i < nodes.length; i++)
+            nodes[i] = i;
+        dissect(0, nodes.length);
+        // the ranks are just the positions of the nodes after the dissection
+        int[] ranks = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++)
+            ranks[nodes[i]] = i;
+        return ranks;
+    }
+
+    /**
+     * Re-arranges the nodes in [from, to[ such that the first nodes belong to the lower half of the cell, followed by
+     * the nodes of the upper half and finally the separator.
+     */
+    private void dissect(int from, int to) {
+        if (to - from <= MAX_LEAF_SIZE)
+            return;
+        int bestDirection = -1;
+        int bestSeparatorSize = Integer.MAX_VALUE;
+        boolean bestLower = true;
+        for (int direction = 0; direction < 4; direction++) {
+            sortAlong(direction, from, to);
+            int mid = (from + to) >>> 1;
+            markSides(from, mid, to);
+            int lowerBoundary = countBoundaryNodes(from, mid, stamp + 1);
+            int upperBoundary = countBoundaryNodes(mid, to, stamp);
+            int size = Math.min(lowerBoundary, upperBoundary);
+            if (size < bestSeparatorSize) {
+                bestSeparatorSize = size;
+                bestDirection = direction;
+                bestLower = lowerBoundary <= upperBoundary;
+            }
+        }
+        sortAlong(bestDirection, from, to);
+        int mid = (from + to) >>> 1;
+        markSides(from, mid, to);
+        // move the separator nodes to the end of the cell
+        int separatorStart = bestLower
+                ? moveBoundaryNodesToEnd(from, mid, to, stamp + 1)
+                : moveBoundaryNodesToEnd(mid, to, to, stamp);
+        if (bestLower) {
+            // the remaining lower nodes were moved to the front and the upper nodes directly behind them
+            int lowerEnd = separatorStart - (to - mid);
+            dissect(from, lowerEnd);
+            dissect(lowerEnd, separatorStart);
+        } else {
+            dissect(from, mid);
+            dissect(mid, separatorStart);
+        }
+    }
+
+    /**
+     * Marks the nodes in [from, mid[ and [mid, to[ with two new stamps.
+     */
+    private void markSides(int from, int mid, int to) {
+        stamp += 2;
+        for (int i = from; i < mid; i++)
+            stamps[nodes[i]] = stamp;
+        for (int i = mid; i < to; i++)
+            stamps[nodes[i]] = stamp + 1;
+    }
+
+    private int countBoundaryNodes(int from, int to, int otherSideStamp) {
+        int count = 0;
+        for (int i = from; i < to; i++)
+            if (isBoundaryNode(nodes[i], otherSideStamp))
+                count++;
+        return count;
+    }
+
+    private boolean isBoundaryNode(int node, int otherSideStamp) {
+        EdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next())
+            if (stamps[iter.getAdjNode()] == otherSideStamp)
+                return true;
+        return false;
+    }
+
+    /**
+     * Moves the boundary nodes in [from, mid[ to the end of [from, to[, while keeping the order of the other nodes.
+     *
+     * @return the index of the first boundary node
+     */
+    private int moveBoundaryNodesToEnd(int from, int mid, int to, int otherSideStamp) {
+        int[] separator = new int[mid - from];
+        int separatorSize = 0;
+        int write = from;
+        for (int i = from; i < mid; i++) {
+            int node = nodes[i];
+            if (isBoundaryNode(node, otherSideStamp))
+                separator[separatorSize++] = node;
+            else
+                nodes[write++] = node;
+        }
+        // shift [mid, to[ to the left
+        System.arraycopy(nodes, mid, nodes, write, to - mid);
+        System.arraycopy(separator, 0, nodes, to - separatorSize, separatorSize);
+        return to - separatorSize;
+    }
+
+    /**
+     * Sorts the nodes in [from, to[ by their projection onto one of the four directions: longitude, latitude and the
+     * two diagonals.
+     */
+    private void sortAlong(int direction, int from, int to) {
+        int size = to - from;
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            double p = project(direction, nodes[i]);
+            min = Math.min(min, p);
+            max = Math.max(max, p);
+        }
+        double factor = max > min ? QUANTIZATION / (max - min) : 0;
+        if (keys.length < size)
+            keys = new long[size];
+        for (int i = from; i < to; i++) {
+            long quantized = (long) ((project(direction, nodes[i]) - min) * factor);
+            keys[i - from] = quantized << 32 | nodes[i];
+        }
+        Arrays.sort(keys, 0, size);
+        for (int i = 0; i < size; i++)
+            nodes[from + i] = (int) keys[i];
+    }
+
+    private double project(int direction, int node) {
+        double lat = nodeAccess.getLat(node);
+        double lon = nodeAccess.getLon(node);
+        switch (direction) {
+            case 0:
+                return lon;
+            case 1:
+                return lat;
+            case 2:
+                return lon + lat;
+            default:
+                return lon - lat;
+        }
+    }
+}
@@ -17,7 +17,12 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntContainer;
+import com.graphhopper.apache.commons.collections.IntFloatBinaryHeap;
+import com.graphhopper.coll.IntFloatHeap;
+import com.graphhopper.coll.IntFloatRadixHeap;
 import com.graphhopper.storage.CHStorageBuilder;
 import com.graphhopper.util.PMap;
 import com.graphhopper.util.StopWatch;
@@ -31,7 +36,9 @@ import static com.graphhopper.util.Helper.nf;
 
 class NodeBasedNodeContractor implements NodeContractor {
     private final CHPreparationGraph prepareGraph;
-    private final Params params = new Params();
+    private final Params params;
+    // the contractor this one was forked from, or null
+    private final NodeBasedNodeContractor original;
     // todo: maybe use a set to prevent duplicates instead?
     private List<Shortcut> shortcuts = new ArrayList<>();
     private CHStorageBuilder chBuilder;
@@ -51,15 +58,32 @@ class NodeBasedNodeContractor implements NodeContractor {
 
     NodeBasedNodeContractor(CHPreparationGraph prepareGraph, CHStorageBuilder chBuilder, PMap pMap) {
         this.prepareGraph = prepareGraph;
+        this.params = new Params();
+        this.original = null;
         extractParams(pMap);
         this.chBuilder = chBuilder;
     }
 
+    private NodeBasedNodeContractor(NodeBasedNodeContractor original) {
+        this.prepareGraph = original.prepareGraph;
+        this.params = original.params;
+        this.original = original;
+        inEdgeExplorer = prepareGraph.createInEdgeExplorer();
+        outEdgeExplorer = prepareGraph.createOutEdgeExplorer();
+        existingShortcutExplorer = prepareGraph.createOutEdgeExplorer();
+        witnessPathSearcher = new NodeBasedWitnessPathSearcher(prepareGraph, createHeap());
+    }
+
     private void extractParams(PMap pMap) {
         params.edgeDifferenceWeight = pMap.getFloat(EDGE_DIFFERENCE_WEIGHT, params.edgeDifferenceWeight);
         params.originalEdgesCountWeight = pMap.getFloat(ORIGINAL_EDGE_COUNT_WEIGHT, params.originalEdgesCountWeight);
         params.maxPollFactorHeuristic = pMap.getDouble(MAX_POLL_FACTOR_HEURISTIC_NODE, params.maxPollFactorHeuristic);
         params.maxPollFactorContraction = pMap.getDouble(MAX_POLL_FACTOR_CONTRACTION_NODE, params.maxPollFactorContraction);
+        params.radixHeap = pMap.getBool(RADIX_HEAP, params.radixHeap);
+    }
+
+    private IntFloatHeap createHeap() {
+        return params.radixHeap ? new IntFloatRadixHeap(prepareGraph.getNodes()) : new IntFloatBinaryHeap(1000);
     }
 
     @Override
@@ -67,7 +91,7 @@ class NodeBasedNodeContractor implements NodeContractor {
         inEdgeExplorer = prepareGraph.createInEdgeExplorer();
         outEdgeExplorer = prepareGraph.createOutEdgeExplorer();
         existingShortcutExplorer = prepareGraph.createOutEdgeExplorer();
-        witnessPathSearcher = new NodeBasedWitnessPathSearcher(prepareGraph);
+        witnessPathSearcher = new NodeBasedWitnessPathSearcher(prepareGraph, createHeap());
         meanDegree = prepareGraph.getOriginalEdges() * 1.0 / prepareGraph.getNodes();
     }
 
@@ -97,7 +121,7 @@ class NodeBasedNodeContractor implements NodeContractor {
         // originalEdgesCount = σ(v) := sum_{ (u,w) ∈ shortcuts(v) } of r(u, w)
         shortcutsCount = 0;
         originalEdgesCount = 0;
-        findAndHandleShortcuts(node, this::countShortcuts, (int) (meanDegree * params.maxPollFactorHeuristic));
+        findAndHandleShortcuts(node, this::countShortcuts, (int) (getMeanDegree() * params.maxPollFactorHeuristic), null);
 
         // from shortcuts we can compute the edgeDifference
         // # low influence: with it the shortcut creation is slightly faster
@@ -116,7 +140,37 @@ class NodeBasedNodeContractor implements NodeContractor {
 
     @Override
     public IntContainer contractNode(int node) {
-        long degree = findAndHandleShortcuts(node, this::addOrUpdateShortcut, (int) (meanDegree * params.maxPollFactorContraction));
+        long degree = findAndHandleShortcuts(node, this::addOrUpdateShortcut, (int) (meanDegree * params.maxPollFactorContraction), null);
+        return insertShortcutsAndDisconnect(node, degree);
+    }
+
+    @Override
+    public NodeContractor fork() {
+        return new NodeBasedNodeContractor(this);
+    }
+
+    @Override
+    public PendingShortcuts findShortcuts(int node, boolean[] ignoredNodes) {
+        FoundShortcuts shortcuts = new FoundShortcuts();
+        shortcuts.degree = findAndHandleShortcuts(node, shortcuts, (int) (getMeanDegree() * params.maxPollFactorContraction), ignoredNodes);
+        return shortcuts;
+    }
+
+    @Override
+    public IntContainer contractNode(int node, PendingShortcuts pendingShortcuts) {
+        if (original != null)
+            throw new IllegalStateException("Nodes must be contracted using the original contractor");
+        FoundShortcuts shortcuts = (FoundShortcuts) pendingShortcuts;
+        for (int i = 0; i < shortcuts.weights.size(); i++) {
+            int offset = 6 * i;
+            IntArrayList ints = shortcuts.nodesAndEdges;
+            addOrUpdateShortcut(ints.get(offset), ints.get(offset + 1), shortcuts.weights.get(i),
+                    ints.get(offset + 2), ints.get(offset + 3), ints.get(offset + 4), ints.get(offset + 5));
+        }
+        return insertShortcutsAndDisconnect(node, shortcuts.degree);
+    }
+
+    private IntContainer insertShortcutsAndDisconnect(int node, long degree) {
         insertShortcuts(node);
         // put weight factor on meanDegree instead of taking the average => meanDegree is more stable
         meanDegree = (meanDegree * 2 + degree) / 3;
@@ -206,7 +260,7 @@ class NodeBasedNodeContractor implements NodeContractor {
      * Returns the 'degree' of the given node (disregarding edges from/to already contracted nodes).
      * Note that here the degree is not the total number of adjacent edges, but only the number of incoming edges
      */
-    private long findAndHandleShortcuts(int node, PrepareShortcutHandler handler, int maxVisitedNodes) {
+    private long findAndHandleShortcuts(int node, PrepareShortcutHandler handler, int maxVisitedNodes, boolean[] ignoredNodes) {
         long degree = 0;
         PrepareGraphEdgeIterator incomingEdges = inEdgeExplorer.setBaseNode(node);
         // collect outgoing nodes (goal-nodes) only once
@@ -222,7 +276,7 @@ class NodeBasedNodeContractor implements NodeContractor {
             }
             // collect outgoing nodes (goal-nodes) only once
             PrepareGraphEdgeIterator outgoingEdges = outEdgeExplorer.setBaseNode(node);
-            witnessPathSearcher.init(fromNode, node);
+            witnessPathSearcher.init(fromNode, node, ignoredNodes);
             degree++;
             while (outgoingEdges.next()) {
                 int toNode = outgoingEdges.getAdjNode();
@@ -282,6 +336,11 @@ class NodeBasedNodeContractor implements NodeContractor {
             prepareGraph.addShortcut(fromNode, toNode, -1, -1, incomingEdge, outgoingEdge, weight, inOrigEdgeCount + outOrigEdgeCount);
     }
 
+    private double getMeanDegree() {
+        // forked contractors use the mean degree of the original one, which is updated whenever a node is contracted
+        return original == null ? meanDegree : original.meanDegree;
+    }
+
     @Override
     public long getAddedShortcutsCount() {
         return addedShortcutsCount;
@@ -299,6 +358,25 @@ class NodeBasedNodeContractor implements NodeContractor {
                             int incomingEdge, int inOrigEdgeCount);
     }
 
+    /**
+     * Stores the arguments of all {@link PrepareShortcutHandler#handleShortcut} calls for a node
+     */
+    private static class FoundShortcuts implements PendingShortcuts, PrepareShortcutHandler {
+        // fromNode, toNode, outgoingEdge, outOrigEdgeCount, incomingEdge, inOrigEdgeCount
+        private final IntArrayList nodesAndEdges = new IntArrayList();
+        private final DoubleArrayList weights = new DoubleArrayList();
+        private long degree;
+
+        @Override
+        public void handleShortcut(int fromNode, int toNode, double existingDirectWeight,
+                                   int outgoingEdge, int outOrigEdgeCount,
+                                   int incomingEdge, int inOrigEdgeCount) {
+            nodesAndEdges.add(fromNode, toNode, outgoingEdge, outOrigEdgeCount);
+            nodesAndEdges.add(incomingEdge, inOrigEdgeCount);
+            weights.add(existingDirectWeight);
+        }
+    }
+
     public static class Params {
         // default values were optimized for Unterfranken
         private float edgeDifferenceWeight = 10;
@@ -308,6 +386,7 @@ class NodeBasedNodeContractor implements NodeContractor {
         // cost of a longer preparation (see #2514)
         private double maxPollFactorHeuristic = 5;
         private double maxPollFactorContraction = 200;
+        private boolean radixHeap = false;
     }
 
     private static class Shortcut {
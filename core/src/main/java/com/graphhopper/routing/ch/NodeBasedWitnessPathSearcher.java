@@ -20,6 +20,7 @@ package com.graphhopper.routing.ch;
 import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.graphhopper.apache.commons.collections.IntFloatBinaryHeap;
+import com.graphhopper.coll.IntFloatHeap;
 import com.graphhopper.util.Helper;
 
 import java.util.Arrays;
@@ -32,15 +33,23 @@ public class NodeBasedWitnessPathSearcher {
     private final PrepareGraphEdgeExplorer outEdgeExplorer;
     private final double[] weights;
     private final IntArrayList changedNodes;
-    private final IntFloatBinaryHeap heap;
+    private final IntFloatHeap heap;
     private int ignoreNode = -1;
+    private boolean[] ignoredNodes;
     private int settledNodes = 0;
 
     public NodeBasedWitnessPathSearcher(CHPreparationGraph graph) {
+        this(graph, new IntFloatBinaryHeap(1000));
+    }
+
+    /**
+     * @param heap the (empty) priority queue used for the searches, e.g. an {@link com.graphhopper.coll.IntFloatRadixHeap}
+     */
+    public NodeBasedWitnessPathSearcher(CHPreparationGraph graph, IntFloatHeap heap) {
         outEdgeExplorer = graph.createOutEdgeExplorer();
         weights = new double[graph.getNodes()];
         Arrays.fill(weights, Double.POSITIVE_INFINITY);
-        heap = new IntFloatBinaryHeap(1000);
+        this.heap = heap;
         changedNodes = new IntArrayList();
     }
 
@@ -49,8 +58,16 @@ public class NodeBasedWitnessPathSearcher {
      * target nodes until this method is called again.
      */
     public void init(int startNode, int ignoreNode) {
+        init(startNode, ignoreNode, null);
+    }
+
+    /**
+     * Like {@link #init(int, int)}, but the search also ignores all nodes for which ignoredNodes is set (if not null).
+     */
+    public void init(int startNode, int ignoreNode, boolean[] ignoredNodes) {
         reset();
         this.ignoreNode = ignoreNode;
+        this.ignoredNodes = ignoredNodes;
         weights[startNode] = 0;
         changedNodes.add(startNode);
         heap.insert(0, startNode);
@@ -85,7 +102,7 @@ public class NodeBasedWitnessPathSearcher {
             PrepareGraphEdgeIterator iter = outEdgeExplorer.setBaseNode(node);
             while (iter.next()) {
                 int adjNode = iter.getAdjNode();
-                if (adjNode == ignoreNode)
+                if (adjNode == ignoreNode || (ignoredNodes != null && ignoredNodes[adjNode]))
                     continue;
                 double weight = weights[node] + iter.getWeight();
                 if (Double.isInfinite(weight))
@@ -119,6 +136,7 @@ public class NodeBasedWitnessPathSearcher {
         changedNodes.elementsCount = 0;
         heap.clear();
         ignoreNode = -1;
+        ignoredNodes = null;
         settledNodes = 0;
     }
 
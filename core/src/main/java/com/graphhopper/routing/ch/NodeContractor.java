@@ -37,6 +37,28 @@ public interface NodeContractor {
      */
     IntContainer contractNode(int node);
 
+    /**
+     * Creates a contractor that works on the same graph, but uses its own search data structures. As long as the graph
+     * is not changed it can be used to calculate priorities and find shortcuts concurrently to this and other forked
+     * contractors. Nodes can only be contracted using the original contractor.
+     */
+    NodeContractor fork();
+
+    /**
+     * Runs the witness searches required to contract the given node, but does not change the graph. The searches
+     * ignore all nodes for which ignoredNodes is set. This way the shortcuts for several nodes that are not adjacent
+     * to each other can be found at the same time, using forked contractors.
+     *
+     * @see #contractNode(int, PendingShortcuts)
+     */
+    PendingShortcuts findShortcuts(int node, boolean[] ignoredNodes);
+
+    /**
+     * Like {@link #contractNode(int)}, but adds the shortcuts that were found by {@link #findShortcuts} instead of
+     * running the witness searches again.
+     */
+    IntContainer contractNode(int node, PendingShortcuts shortcuts);
+
     void finishContraction();
 
     long getAddedShortcutsCount();
@@ -45,4 +67,10 @@ public interface NodeContractor {
 
     float getDijkstraSeconds();
 
+    /**
+     * The shortcuts that are needed to contract a node, see {@link #findShortcuts}
+     */
+    interface PendingShortcuts {
+    }
+
 }
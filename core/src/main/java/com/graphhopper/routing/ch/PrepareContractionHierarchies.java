@@ -17,6 +17,8 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.FloatArrayList;
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntContainer;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.graphhopper.coll.MinHeapWithUpdate;
@@ -30,6 +32,9 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Locale;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 import static com.graphhopper.routing.ch.CHParameters.*;
 import static com.graphhopper.util.Helper.getMemInfo;
@@ -61,6 +66,7 @@ public class PrepareContractionHierarchies {
     private final StopWatch contractionSW = new StopWatch();
     private final Params params;
     private final BaseGraph graph;
+    private CHPreparationGraph prepareGraph;
     private NodeContractor nodeContractor;
     private final int nodes;
     private NodeOrderingProvider nodeOrderingProvider;
@@ -100,6 +106,7 @@ public class PrepareContractionHierarchies {
         params.setMaxNeighborUpdates(pMap.getInt(NEIGHBOR_UPDATES_MAX, params.getMaxNeighborUpdates()));
         params.setNodesContractedPercentage(pMap.getInt(CONTRACTED_NODES, params.getNodesContractedPercentage()));
         params.setLogMessagesPercentage(pMap.getInt(LOG_MESSAGES, params.getLogMessagesPercentage()));
+        params.setContractionThreads(pMap.getInt(CONTRACTION_THREADS, params.getContractionThreads()));
         return this;
     }
 
@@ -159,6 +166,8 @@ public class PrepareContractionHierarchies {
         setMaxLevelOnAllNodes();
         if (nodeOrderingProvider != null) {
             contractNodesUsingFixedNodeOrdering();
+        } else if (params.getContractionThreads() > 1) {
+            contractNodesUsingHeuristicNodeOrderingInParallel();
         } else {
             contractNodesUsingHeuristicNodeOrdering();
         }
@@ -170,7 +179,6 @@ public class PrepareContractionHierarchies {
 
     private void initFromGraph() {
         logger.info("Creating CH prepare graph, {}", getMemInfo());
-        CHPreparationGraph prepareGraph;
         if (chConfig.getTraversalMode().isEdgeBased()) {
             TurnCostStorage turnCostStorage = graph.getTurnCostStorage();
             if (turnCostStorage == null)
@@ -316,6 +324,200 @@ public class PrepareContractionHierarchies {
         _close();
     }
 
+    /**
+     * Like {@link #contractNodesUsingHeuristicNodeOrdering()}, but in every round we contract a set of nodes that are
+     * not adjacent to each other. The witness searches for these nodes and the priority updates of their neighbors
+     * are run concurrently, only adding the shortcuts to the graph is done sequentially. A node is only added to the
+     * set if none of its neighbors has a lower priority. Instead of the lazy and (random) neighbor updates we
+     * recalculate the priorities of all neighbors of the contracted nodes after every round.
+     */
+    private void contractNodesUsingHeuristicNodeOrderingInParallel() {
+        final int threads = params.getContractionThreads();
+        NodeContractor[] contractors = new NodeContractor[threads];
+        for (int i = 0; i < threads; i++)
+            contractors[i] = nodeContractor.fork();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            StopWatch sw = new StopWatch().start();
+            logger.info("Building initial queue of nodes to be contracted: {} nodes, threads: {}, {}", nodes, threads, getMemInfo());
+            updatePrioritiesOfRemainingNodes(pool, contractors);
+            logger.info("Finished building queue, took: {}s, {}", sw.stop().getSeconds(), getMemInfo());
+            final int initSize = sortedNodes.size();
+            int level = 0;
+            int rounds = 0;
+            checkCounter = 0;
+            final long logSize = params.getLogMessagesPercentage() == 0
+                    ? Long.MAX_VALUE
+                    : Math.round(Math.max(10, initSize * (params.getLogMessagesPercentage() / 100d)));
+            long nextLog = 0;
+            final long periodicUpdatesCount = params.getPeriodicUpdatesPercentage() == 0
+                    ? Long.MAX_VALUE
+                    : Math.round(Math.max(10, initSize * (params.getPeriodicUpdatesPercentage() / 100d)));
+            long nextPeriodicUpdate = periodicUpdatesCount;
+            int updateCounter = 0;
+            final long nodesToAvoidContract = Math.round(initSize * ((100 - params.getNodesContractedPercentage()) / 100d));
+
+            // the nodes we contract in the current round. they are ignored by the witness searches of each other
+            boolean[] contracting = new boolean[nodes];
+            // the neighbors of all nodes we polled in the current round, later also used to collect the neighbors of the
+            // contracted nodes
+            boolean[] blocked = new boolean[nodes];
+            IntArrayList blockedNodes = new IntArrayList();
+            IntArrayList set = new IntArrayList();
+            IntArrayList rejected = new IntArrayList();
+            FloatArrayList rejectedPriorities = new FloatArrayList();
+            IntArrayList neighborsToUpdate = new IntArrayList();
+            PrepareGraphEdgeExplorer outExplorer = prepareGraph.createOutEdgeExplorer();
+            PrepareGraphEdgeExplorer inExplorer = prepareGraph.createInEdgeExplorer();
+            while (!sortedNodes.isEmpty()) {
+                stopIfInterrupted();
+                if (checkCounter >= nextPeriodicUpdate) {
+                    updatePrioritiesOfRemainingNodes(pool, contractors);
+                    updateCounter++;
+                    nextPeriodicUpdate += periodicUpdatesCount;
+                }
+                if (checkCounter >= nextLog) {
+                    logHeuristicStats(updateCounter);
+                    nextLog += logSize;
+                }
+
+                // find the nodes we contract in this round. we poll the nodes in the order of their priorities and
+                // block the neighbors of every polled node. this way every node of the set has a lower priority than
+                // all its neighbors. the more nodes we poll the bigger the set, but in the beginning priorities change
+                // a lot, so we stop once we have looked at a certain fraction of the remaining nodes.
+                rounds++;
+                final long maxSetSize = sortedNodes.size() - nodesToAvoidContract + 1;
+                final int maxPolls = Math.max(16 * threads, sortedNodes.size() / 20);
+                for (int polls = 0; polls < maxPolls && set.size() < maxSetSize && !sortedNodes.isEmpty(); polls++) {
+                    checkCounter++;
+                    float priority = sortedNodes.peekValue();
+                    int node = sortedNodes.poll();
+                    if (blocked[node]) {
+                        rejected.add(node);
+                        rejectedPriorities.add(priority);
+                    } else {
+                        set.add(node);
+                        contracting[node] = true;
+                    }
+                    blockNeighbors(node, outExplorer, blocked, blockedNodes);
+                    blockNeighbors(node, inExplorer, blocked, blockedNodes);
+                }
+                for (int i = 0; i < rejected.size(); i++)
+                    sortedNodes.push(rejected.get(i), rejectedPriorities.get(i));
+                rejected.clear();
+                rejectedPriorities.clear();
+                for (int i = 0; i < blockedNodes.size(); i++)
+                    blocked[blockedNodes.get(i)] = false;
+                blockedNodes.clear();
+
+                // find the shortcuts for all nodes of the set in parallel, add them sequentially and contract the nodes
+                contractionSW.start();
+                NodeContractor.PendingShortcuts[] shortcuts = new NodeContractor.PendingShortcuts[set.size()];
+                runInParallel(pool, contractors, set.size(), (contractor, i) -> shortcuts[i] = contractor.findShortcuts(set.get(i), contracting));
+                for (int i = 0; i < set.size(); i++) {
+                    int node = set.get(i);
+                    chBuilder.setLevel(node, level);
+                    level++;
+                    IntContainer neighbors = nodeContractor.contractNode(node, shortcuts[i]);
+                    for (IntCursor neighbor : neighbors) {
+                        // there might be multiple edges going to the same neighbor nodes -> only calculate priority once per node
+                        if (!blocked[neighbor.value]) {
+                            blocked[neighbor.value] = true;
+                            neighborsToUpdate.add(neighbor.value);
+                        }
+                    }
+                }
+                for (int i = 0; i < set.size(); i++)
+                    contracting[set.get(i)] = false;
+                set.clear();
+                contractionSW.stop();
+
+                if (sortedNodes.size() < nodesToAvoidContract)
+                    // skipped nodes are already set to maxLevel
+                    break;
+
+                neighborUpdateSW.start();
+                float[] priorities = new float[neighborsToUpdate.size()];
+                runInParallel(pool, contractors, neighborsToUpdate.size(), (contractor, i) -> priorities[i] = contractor.calculatePriority(neighborsToUpdate.get(i)));
+                for (int i = 0; i < neighborsToUpdate.size(); i++) {
+                    int neighbor = neighborsToUpdate.get(i);
+                    blocked[neighbor] = false;
+                    sortedNodes.update(neighbor, priorities[i]);
+                }
+                neighborsToUpdate.clear();
+                neighborUpdateSW.stop();
+            }
+
+            nodeContractor.finishContraction();
+
+            logHeuristicStats(updateCounter);
+
+            logger.info(
+                    "new shortcuts: " + nf(nodeContractor.getAddedShortcutsCount())
+                            + ", initSize:" + nf(initSize)
+                            + ", " + chConfig.getWeighting()
+                            + ", periodic:" + params.getPeriodicUpdatesPercentage()
+                            + ", threads:" + threads
+                            + ", rounds:" + nf(rounds)
+                            + ", " + getTimesAsString()
+                            + ", check-overhead: " + (int) (100 * ((checkCounter / (double) initSize) - 1)) + "%"
+                            + ", " + Helper.getMemInfo());
+        } finally {
+            pool.shutdown();
+        }
+
+        _close();
+    }
+
+    private void blockNeighbors(int node, PrepareGraphEdgeExplorer explorer, boolean[] blocked, IntArrayList blockedNodes) {
+        PrepareGraphEdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next()) {
+            if (!blocked[iter.getAdjNode()]) {
+                blocked[iter.getAdjNode()] = true;
+                blockedNodes.add(iter.getAdjNode());
+            }
+        }
+    }
+
+    private void updatePrioritiesOfRemainingNodes(ForkJoinPool pool, NodeContractor[] contractors) {
+        periodicUpdateSW.start();
+        sortedNodes.clear();
+        IntArrayList remainingNodes = new IntArrayList();
+        for (int node = 0; node < nodes; node++) {
+            if (!isContracted(node))
+                remainingNodes.add(node);
+        }
+        float[] priorities = new float[remainingNodes.size()];
+        runInParallel(pool, contractors, remainingNodes.size(), (contractor, i) -> priorities[i] = contractor.calculatePriority(remainingNodes.get(i)));
+        for (int i = 0; i < remainingNodes.size(); i++)
+            sortedNodes.push(remainingNodes.get(i), priorities[i]);
+        periodicUpdateSW.stop();
+    }
+
+    /**
+     * Runs the given task for all indices in [0, size). Every contractor is only used by one thread.
+     */
+    private void runInParallel(ForkJoinPool pool, NodeContractor[] contractors, int size, ContractorTask task) {
+        if (size <= 1) {
+            for (int i = 0; i < size; i++)
+                task.run(contractors[0], i);
+            return;
+        }
+        int threads = Math.min(contractors.length, size);
+        try {
+            pool.submit(() -> IntStream.range(0, threads).parallel().forEach(t -> {
+                for (int i = t; i < size; i += threads)
+                    task.run(contractors[t], i);
+            })).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private interface ContractorTask {
+        void run(NodeContractor contractor, int index);
+    }
+
     private void contractNodesUsingFixedNodeOrdering() {
         final int nodesToContract = nodeOrderingProvider.getNumNodes();
         final int logSize = Math.max(10, (int) (params.getLogMessagesPercentage() / 100.0 * nodesToContract));
@@ -415,6 +617,7 @@ public class PrepareContractionHierarchies {
 
     private void _close() {
         nodeContractor.close();
+        prepareGraph = null;
         sortedNodes = null;
     }
 
@@ -514,6 +717,14 @@ public class PrepareContractionHierarchies {
          * @see #periodicUpdatesPercentage
          */
         private int logMessagesPercentage;
+        /**
+         * The number of threads used to contract the nodes of a single CH graph. For values larger than one the
+         * nodes are contracted in rounds of independent sets, see {@link #contractNodesUsingHeuristicNodeOrderingInParallel()}.
+         * This is much faster on machines with many cores, but yields slightly different (and typically a few more)
+         * shortcuts, and every thread needs its own memory for the witness searches. Note that this is not used when
+         * a fixed node ordering is used.
+         */
+        private int contractionThreads = 1;
 
         static Params forTraversalMode(TraversalMode traversalMode) {
             // Lower values for the neighbor update percentage (and/or max neighbor updates) yield a slower
@@ -588,6 +799,16 @@ public class PrepareContractionHierarchies {
             this.logMessagesPercentage = logMessagesPercentage;
         }
 
+        int getContractionThreads() {
+            return contractionThreads;
+        }
+
+        void setContractionThreads(int contractionThreads) {
+            if (contractionThreads < 1)
+                throw new IllegalArgumentException(CONTRACTION_THREADS + " has to be at least 1");
+            this.contractionThreads = contractionThreads;
+        }
+
         private void checkPercentage(String name, int value) {
             if (value < 0 || value > 100) {
                 throw new IllegalArgumentException(name + " has to be in [0, 100], to disable it use 0");
@@ -0,0 +1,127 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CCHStorage;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+import static com.graphhopper.util.Helper.getMemInfo;
+import static com.graphhopper.util.Helper.nf;
+
+/**
+ * Prepares the metric-independent part of a customizable contraction hierarchy (CCH) as described in 'Customizable
+ * Contraction Hierarchies' by Dibbelt, Strasser and Wagner: First we determine a node ordering using nested
+ * dissection, then we contract the nodes in this order without any witness searches. The resulting shortcut topology
+ * does not depend on the weighting, so it can be calculated once during the import and later be customized for
+ * arbitrary weightings, see {@link CCHCustomizer}.
+ */
+public class PrepareCustomizableCH {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrepareCustomizableCH.class);
+    private final BaseGraph graph;
+    private final CCHStorage cchStorage;
+    private boolean prepared = false;
+
+    public PrepareCustomizableCH(BaseGraph graph) {
+        if (!graph.isFrozen())
+            throw new IllegalStateException("BaseGraph must be frozen before creating CCHs");
+        this.graph = graph;
+        this.cchStorage = new CCHStorage(graph.getDirectory(), graph.getSegmentSize());
+    }
+
+    public CCHStorage doWork() {
+        if (prepared)
+            throw new IllegalStateException("Call doWork only once!");
+        prepared = true;
+        StopWatch sw = StopWatch.started();
+        int[] ranks = new NestedDissectionOrdering(graph).calcRanks();
+        float orderingSeconds = sw.stop().getCurrentSeconds();
+        sw = StopWatch.started();
+        contract(ranks);
+        LOGGER.info("Finished CCH preparation, arcs: " + nf(cchStorage.getArcs()) + ", edges: " + nf(graph.getEdges()) +
+                ", ordering: " + orderingSeconds + "s, contraction: " + sw.stop().getCurrentSeconds() + "s, " + getMemInfo());
+        return cchStorage;
+    }
+
+    public CCHStorage getCCHStorage() {
+        return cchStorage;
+    }
+
+    /**
+     * Contracts the nodes in the order of the given ranks and stores the resulting arcs. Since we do not run witness
+     * searches this is the 'elimination game': whenever we contract a node all its higher ranked neighbors become
+     * pairwise connected. It is sufficient to connect them to their lowest ranked neighbor though, because this one
+     * is contracted next of all of them and then forwards the remaining arcs.
+     */
+    private void contract(int[] ranks) {
+        int nodes = graph.getNodes();
+        int[] nodesByRank = new int[nodes];
+        for (int node = 0; node < nodes; node++)
+            nodesByRank[ranks[node]] = node;
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        IntArrayList[] pending = new IntArrayList[nodes];
+        IntArrayList heads = new IntArrayList(graph.getEdges());
+        int[] firstUp = new int[nodes + 1];
+        IntArrayList up = new IntArrayList();
+        for (int rank = 0; rank < nodes; rank++) {
+            firstUp[rank] = heads.size();
+            up.clear();
+            EdgeIterator iter = explorer.setBaseNode(nodesByRank[rank]);
+            while (iter.next()) {
+                int adjRank = ranks[iter.getAdjNode()];
+                if (adjRank > rank)
+                    up.add(adjRank);
+            }
+            if (pending[rank] != null) {
+                up.addAll(pending[rank]);
+                pending[rank] = null;
+            }
+            if (up.isEmpty())
+                continue;
+            int[] upRanks = up.toArray();
+            Arrays.sort(upRanks);
+            int lowest = upRanks[0];
+            heads.add(lowest);
+            for (int i = 1; i < upRanks.length; i++) {
+                if (upRanks[i] == upRanks[i - 1])
+                    continue;
+                heads.add(upRanks[i]);
+                if (pending[lowest] == null)
+                    pending[lowest] = new IntArrayList();
+                pending[lowest].add(upRanks[i]);
+            }
+        }
+        firstUp[nodes] = heads.size();
+        cchStorage.create(ranks, firstUp, heads.toArray());
+    }
+
+    public void flush() {
+        cchStorage.flush();
+    }
+
+    public void close() {
+        cchStorage.close();
+    }
+}
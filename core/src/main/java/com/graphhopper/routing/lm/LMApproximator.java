@@ -41,6 +41,9 @@ public class LMApproximator implements WeightApproximator {
     private final int[] activeLandmarkIndices;
     private final int[] weightsFromActiveLandmarksToT;
     private final int[] weightsFromTToActiveLandmarks;
+    // the factors to convert the weights of the active landmarks, which differ only for the compact landmark storage
+    private final double[] fromFactors;
+    private final double[] toFactors;
     private double epsilon = 1;
     private int towerNodeNextToT = -1;
     private double weightFromTToTowerNode;
@@ -50,7 +53,7 @@ public class LMApproximator implements WeightApproximator {
     private final int maxBaseNodes;
     private final Graph graph;
     private final WeightApproximator fallBackApproximation;
-    private final WeightApproximator beelineApproximation;
+    private final BeelineWeightApproximator beelineApproximation;
     private boolean fallback = false;
 
     /**
@@ -74,6 +77,8 @@ public class LMApproximator implements WeightApproximator {
         Arrays.fill(activeLandmarkIndices, -1);
         weightsFromActiveLandmarksToT = new int[activeCount];
         weightsFromTToActiveLandmarks = new int[activeCount];
+        fromFactors = new double[activeCount];
+        toFactors = new double[activeCount];
 
         this.graph = graph;
         this.lmWeighting = lmWeighting;
@@ -112,6 +117,8 @@ public class LMApproximator implements WeightApproximator {
                 for (int i = 0; i < activeLandmarkIndices.length; i++) {
                     weightsFromActiveLandmarksToT[i] = lms.getFromWeight(activeLandmarkIndices[i], towerNodeNextToT);
                     weightsFromTToActiveLandmarks[i] = lms.getToWeight(activeLandmarkIndices[i], towerNodeNextToT);
+                    fromFactors[i] = lms.isCompactWeights() ? lms.getFromFactor(activeLandmarkIndices[i], towerNodeNextToT) : factor;
+                    toFactors[i] = lms.isCompactWeights() ? lms.getToFactor(activeLandmarkIndices[i], towerNodeNextToT) : factor;
                 }
             } else {
                 // note: fallback==true means forever true!
@@ -123,20 +130,18 @@ public class LMApproximator implements WeightApproximator {
         // Since both the LM and the beeline approximations underestimate the real remaining weight the larger one is
         // more accurate. For example when the speed is reduced for all roads the beeline approximation adjusts automatically
         // to the reduced global maximum speed, while the LM approximation becomes worse.
-        return Math.max(lmApproximation, beelineApproximation.approximate(v));
+        return beelineApproximation.approximateMax(v, lmApproximation);
     }
 
     private double getRemainingWeightUnderestimationUpToTowerNode(int v) {
-        int maxWeightInt = 0;
+        double maxWeight = 0;
         for (int i = 0; i < activeLandmarkIndices.length; i++) {
-            int resultInt = approximateForLandmark(i, v);
-            maxWeightInt = Math.max(maxWeightInt, resultInt);
+            maxWeight = Math.max(maxWeight, approximateForLandmark(i, v));
         }
-        // Round down, we need to be an underestimator.
-        return (maxWeightInt - 1) * factor;
+        return maxWeight;
     }
 
-    private int approximateForLandmark(int i, int v) {
+    private double approximateForLandmark(int i, int v) {
         // ---> means shortest path, d means length of shortest path
         // but remember that d(v,t) != d(t,v)
         //
@@ -174,7 +179,8 @@ public class LMApproximator implements WeightApproximator {
             rhs1Int *= -1;
             rhs2Int *= -1;
         }
-        return Math.max(rhs1Int, rhs2Int);
+        // Round down, we need to be an underestimator.
+        return Math.max((rhs1Int - 1) * toFactors[i], (rhs2Int - 1) * fromFactors[i]);
     }
 
     @Override
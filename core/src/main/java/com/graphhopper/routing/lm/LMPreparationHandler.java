@@ -58,7 +58,9 @@ public class LMPreparationHandler {
     private int minNodes = -1;
     private final List<String> lmSuggestionsLocations = new ArrayList<>(5);
     private int preparationThreads;
+    private int landmarkThreads = 1;
     private boolean logDetails = false;
+    private boolean compactWeights = false;
     private AreaIndex<SplitArea> areaIndex;
 
     public LMPreparationHandler() {
@@ -72,10 +74,12 @@ public class LMPreparationHandler {
         }
 
         setPreparationThreads(ghConfig.getInt(Parameters.Landmark.PREPARE + "threads", getPreparationThreads()));
+        setLandmarkThreads(ghConfig.getInt(Parameters.Landmark.PREPARE + "landmark_threads", getLandmarkThreads()));
         setLMProfiles(ghConfig.getLMProfiles());
 
         landmarkCount = ghConfig.getInt(Parameters.Landmark.COUNT, landmarkCount);
         logDetails = ghConfig.getBool(Landmark.PREPARE + "log_details", false);
+        compactWeights = ghConfig.getBool(Landmark.PREPARE + "compact_weights", compactWeights);
         minNodes = ghConfig.getInt(Landmark.PREPARE + "min_network_size", -1);
 
         for (String loc : ghConfig.getString(Landmark.PREPARE + "suggestions_location", "").split(",")) {
@@ -116,6 +120,32 @@ public class LMPreparationHandler {
         this.preparationThreads = preparationThreads;
     }
 
+    public int getLandmarkThreads() {
+        return landmarkThreads;
+    }
+
+    /**
+     * This method changes the number of threads used to calculate the weights of the landmarks within a single
+     * preparation. Default is 1. The total number of threads can be up to preparationThreads * landmarkThreads and
+     * every thread needs memory for its own search.
+     */
+    public void setLandmarkThreads(int landmarkThreads) {
+        this.landmarkThreads = landmarkThreads;
+    }
+
+    public boolean isCompactWeights() {
+        return compactWeights;
+    }
+
+    /**
+     * Stores the landmark weights in one instead of two bytes, see {@link LandmarkStorage#setCompactWeights(boolean)}.
+     * This is only used for new preparations, existing landmarks are loaded the way they were stored.
+     */
+    public LMPreparationHandler setCompactWeights(boolean compactWeights) {
+        this.compactWeights = compactWeights;
+        return this;
+    }
+
     public LMPreparationHandler setLMProfiles(LMProfile... lmProfiles) {
         return setLMProfiles(Arrays.asList(lmProfiles));
     }
@@ -224,7 +254,9 @@ public class LMPreparationHandler {
                     lmConfig, landmarkCount).
                     setLandmarkSuggestions(lmSuggestions).
                     setMaximumWeight(maximumWeight).
-                    setLogDetails(logDetails);
+                    setThreads(landmarkThreads).
+                    setLogDetails(logDetails).
+                    setCompactWeights(compactWeights);
             if (minNodes > 1)
                 prepareLandmarks.setMinimumNodes(minNodes);
             // using the area index we separate certain areas from each other but we do not change the base graph for this
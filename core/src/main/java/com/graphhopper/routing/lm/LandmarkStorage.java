@@ -50,6 +50,8 @@ import org.slf4j.LoggerFactory;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * This class stores the landmark nodes and the weights from and to all other nodes in every
@@ -65,6 +67,9 @@ public class LandmarkStorage {
     private static final int SHORT_INFINITY = Short.MAX_VALUE * 2 + 1;
     // We have large values that do not fit into a short, use a specific maximum value
     static final int SHORT_MAX = SHORT_INFINITY - 1;
+    // the same for the compact storage with one unsigned byte per weight
+    private static final int BYTE_INFINITY = 255;
+    static final int BYTE_MAX = BYTE_INFINITY - 1;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(LandmarkStorage.class);
     // This value is used to identify nodes where no subnetwork is associated
@@ -74,11 +79,15 @@ public class LandmarkStorage {
     // one node has an associated landmark information ('one landmark row'): the forward and backward weight
     private long LM_ROW_LENGTH;
     private int landmarks;
-    private final int FROM_OFFSET;
-    private final int TO_OFFSET;
+    // 2 or 1 for the compact storage
+    private int weightBytes;
+    private int FROM_OFFSET;
+    private int TO_OFFSET;
     private final DataAccess landmarkWeightDA;
     // every subnetwork has its own landmark mapping but the count of landmarks is always the same
     private final List<int[]> landmarkIDs;
+    // only for the compact storage: every subnetwork has its own factors for the 'from' and 'to' weights of every landmark
+    private final List<float[]> landmarkFactors;
     private double factor = -1;
     private final static double DOUBLE_MLTPL = 1e6;
     private final BaseGraph graph;
@@ -94,6 +103,7 @@ public class LandmarkStorage {
     private List<LandmarkSuggestion> landmarkSuggestions = Collections.emptyList();
     private AreaIndex<SplitArea> areaIndex;
     private boolean logDetails = false;
+    private int threads = 1;
     /**
      * 'to' and 'from' fit into 32 bit => 16 bit for each of them => 65536
      */
@@ -135,11 +145,9 @@ public class LandmarkStorage {
         this.landmarkWeightDA = dir.create("landmarks_" + lmConfig.getName());
 
         this.landmarks = landmarks;
-        // one short per landmark and two directions => 2*2 byte
-        this.LM_ROW_LENGTH = landmarks * 4;
-        this.FROM_OFFSET = 0;
-        this.TO_OFFSET = 2;
+        setWeightBytes(2);
         this.landmarkIDs = new ArrayList<>();
+        this.landmarkFactors = new ArrayList<>();
         this.subnetworkStorage = new SubnetworkStorage(dir.create("landmarks_subnetwork_" + lmConfig.getName()));
     }
 
@@ -162,6 +170,31 @@ public class LandmarkStorage {
         return this;
     }
 
+    /**
+     * Stores the weights in a single byte instead of two, which halves the memory of the landmark weights. To keep the
+     * precision acceptable every landmark of every subnetwork gets its own factors for the 'from' and 'to' weights,
+     * which are derived from the maximum weight of the landmark's search, and the maximum weight is ignored. The weights
+     * are still rounded down, so the approximation stays a lower bound, but it becomes weaker.
+     */
+    public LandmarkStorage setCompactWeights(boolean compactWeights) {
+        if (isInitialized())
+            throw new IllegalStateException("Cannot change the storage of already created landmarks");
+        setWeightBytes(compactWeights ? 1 : 2);
+        return this;
+    }
+
+    public boolean isCompactWeights() {
+        return weightBytes == 1;
+    }
+
+    private void setWeightBytes(int weightBytes) {
+        this.weightBytes = weightBytes;
+        // one weight per landmark and two directions
+        this.LM_ROW_LENGTH = (long) landmarks * 2 * weightBytes;
+        this.FROM_OFFSET = 0;
+        this.TO_OFFSET = weightBytes;
+    }
+
     /**
      * By default do not log many details.
      */
@@ -169,6 +202,16 @@ public class LandmarkStorage {
         this.logDetails = logDetails;
     }
 
+    /**
+     * Sets the number of threads used to calculate the weights of the different landmarks of a subnetwork. Every
+     * thread needs memory for its own search.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1, was: " + threads);
+        this.threads = threads;
+    }
+
     /**
      * This method forces the landmark preparation to skip the landmark search and uses the specified landmark list instead.
      * Useful for manual tuning of larger areas to safe import time or improve quality.
@@ -235,6 +278,7 @@ public class LandmarkStorage {
         this.landmarkWeightDA.create(2000);
         this.landmarkWeightDA.ensureCapacity(maxBytes);
 
+        // for the compact storage this sets two weights to BYTE_INFINITY
         for (long pointer = 0; pointer < maxBytes; pointer += 2) {
             landmarkWeightDA.setShort(pointer, (short) SHORT_INFINITY);
         }
@@ -242,6 +286,7 @@ public class LandmarkStorage {
         int[] empty = new int[landmarks];
         Arrays.fill(empty, UNSET_SUBNETWORK);
         landmarkIDs.add(empty);
+        landmarkFactors.add(new float[2 * landmarks]);
 
         byte[] subnetworks = new byte[graph.getNodes()];
         Arrays.fill(subnetworks, (byte) UNSET_SUBNETWORK);
@@ -277,8 +322,8 @@ public class LandmarkStorage {
             LOGGER.info("Calculated " + graphComponents.getComponents().size() + " subnetworks via tarjan in " + sw.stop().getSeconds() + "s, " + Helper.getMemInfo());
 
         String additionalInfo = "";
-        // guess the factor
-        if (factor <= 0) {
+        // guess the factor, the compact storage uses the factors of the landmarks instead
+        if (factor <= 0 && !isCompactWeights()) {
             // A 'factor' is necessary to store the weight in just a short value but without losing too much precision.
             // This factor is rather delicate to pick, we estimate it from an exploration with some "test landmarks",
             // see estimateMaxWeight. If we pick the distance too big for small areas this could lead to (slightly)
@@ -297,7 +342,7 @@ public class LandmarkStorage {
             nodes += subnetworkIds.size();
             if (subnetworkIds.size() < minimumNodes)
                 continue;
-            if (factor <= 0)
+            if (factor <= 0 && !isCompactWeights())
                 throw new IllegalStateException("factor wasn't initialized " + factor + ", subnetworks:"
                         + graphComponents.getComponents().size() + ", minimumNodes:" + minimumNodes + ", current size:" + subnetworkIds.size());
 
@@ -322,7 +367,8 @@ public class LandmarkStorage {
 
         int subnetworkCount = landmarkIDs.size();
         // store all landmark node IDs and one int for the factor itself.
-        this.landmarkWeightDA.ensureCapacity(maxBytes /* landmark weights */ + (long) subnetworkCount * landmarks /* landmark mapping per subnetwork */ + 4);
+        this.landmarkWeightDA.ensureCapacity(maxBytes /* landmark weights */ + (long) subnetworkCount * landmarks /* landmark mapping per subnetwork */ + 4
+                + (isCompactWeights() ? (long) subnetworkCount * landmarks * 2 * 4 /* factors per subnetwork */ : 0));
 
         // calculate offset to point into landmark mapping
         long bytePos = maxBytes;
@@ -332,13 +378,30 @@ public class LandmarkStorage {
                 bytePos += 4L;
             }
         }
+        if (isCompactWeights()) {
+            // the factor is only used for the logs and as slack, so we use the biggest factor
+            factor = 0;
+            for (float[] factors : landmarkFactors) {
+                for (float f : factors) {
+                    landmarkWeightDA.setInt(bytePos, Float.floatToRawIntBits(f));
+                    bytePos += 4L;
+                    factor = Math.max(factor, f);
+                }
+            }
+        }
 
         landmarkWeightDA.setHeader(0 * 4, graph.getNodes());
         landmarkWeightDA.setHeader(1 * 4, landmarks);
         landmarkWeightDA.setHeader(2 * 4, subnetworkCount);
-        if (factor * DOUBLE_MLTPL > Integer.MAX_VALUE)
-            throw new UnsupportedOperationException("landmark weight factor cannot be bigger than Integer.MAX_VALUE " + factor * DOUBLE_MLTPL);
-        landmarkWeightDA.setHeader(3 * 4, (int) Math.round(factor * DOUBLE_MLTPL));
+        if (isCompactWeights()) {
+            // the factors of the compact storage are up to 255 times bigger, so we store the float bits instead
+            landmarkWeightDA.setHeader(3 * 4, Float.floatToRawIntBits((float) factor));
+        } else {
+            if (factor * DOUBLE_MLTPL > Integer.MAX_VALUE)
+                throw new UnsupportedOperationException("landmark weight factor cannot be bigger than Integer.MAX_VALUE " + factor * DOUBLE_MLTPL);
+            landmarkWeightDA.setHeader(3 * 4, (int) Math.round(factor * DOUBLE_MLTPL));
+        }
+        landmarkWeightDA.setHeader(4 * 4, weightBytes);
 
         // serialize fast byte[] into DataAccess
         subnetworkStorage.create(graph.getNodes());
@@ -445,42 +508,72 @@ public class LandmarkStorage {
         }
 
         // 2) calculate weights for all landmarks -> 'from' and 'to' weight
-        for (int lmIdx = 0; lmIdx < tmpLandmarkNodeIds.length; lmIdx++) {
+        // set subnetwork id to all explored nodes, but do this only for the first landmark
+        float[] tmpFactors = new float[2 * landmarks];
+        if (!calcLandmarkWeights(0, tmpLandmarkNodeIds[0], accessFilter, subnetworks, subnetworkId, tmpFactors))
+            return false;
+
+        // the searches for the other landmarks are independent of each other and every landmark only writes its own
+        // weight columns, so they can run concurrently
+        AtomicInteger finishedLandmarks = new AtomicInteger(1);
+        IntConsumer calcWeights = lmIdx -> {
             if (Thread.currentThread().isInterrupted()) {
                 throw new RuntimeException("Thread was interrupted for landmark " + lmIdx);
             }
-            int lmNodeId = tmpLandmarkNodeIds[lmIdx];
-            LandmarkExplorer explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, false);
-            explorer.setStartNode(lmNodeId);
-            explorer.runAlgo();
-            explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, FROM_OFFSET);
-
-            // set subnetwork id to all explored nodes, but do this only for the first landmark
-            if (lmIdx == 0) {
-                if (explorer.setSubnetworks(subnetworks, subnetworkId))
-                    return false;
-            }
-
-            explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, true);
-            explorer.setStartNode(lmNodeId);
-            explorer.runAlgo();
-            explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, TO_OFFSET);
-
-            if (lmIdx == 0) {
-                if (explorer.setSubnetworks(subnetworks, subnetworkId))
-                    return false;
-            }
-
-            if (logDetails && lmIdx % logOffset == 0)
+            calcLandmarkWeights(lmIdx, tmpLandmarkNodeIds[lmIdx], accessFilter, null, subnetworkId, tmpFactors);
+            int finished = finishedLandmarks.incrementAndGet();
+            if (logDetails && finished % logOffset == 0)
                 LOGGER.info("Set landmarks weights [" + weighting + "]. "
-                        + "Progress " + (int) (100.0 * lmIdx / tmpLandmarkNodeIds.length) + "%");
-        }
+                        + "Progress " + (int) (100.0 * finished / tmpLandmarkNodeIds.length) + "%");
+        };
+        if (threads > 1)
+            GHUtility.runConcurrently(IntStream.range(1, tmpLandmarkNodeIds.length).mapToObj(lmIdx -> () -> calcWeights.accept(lmIdx)), threads);
+        else
+            IntStream.range(1, tmpLandmarkNodeIds.length).forEach(calcWeights);
 
         // TODO set weight to SHORT_MAX if entry has either no 'from' or no 'to' entry
         landmarkIDs.add(tmpLandmarkNodeIds);
+        landmarkFactors.add(tmpFactors);
         return true;
     }
 
+    /**
+     * Runs the 'from' and 'to' searches for the given landmark and stores the resulting weights. If subnetworks is not
+     * null the explored nodes are assigned to the given subnetwork. For the compact storage the factors of the 'from'
+     * and 'to' weights are stored in the given array.
+     *
+     * @return false if some of the explored nodes already belong to another subnetwork
+     */
+    private boolean calcLandmarkWeights(int lmIdx, int lmNodeId, EdgeFilter accessFilter, byte[] subnetworks, int subnetworkId, float[] factors) {
+        LandmarkExplorer explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, false);
+        explorer.setStartNode(lmNodeId);
+        explorer.runAlgo();
+        factors[2 * lmIdx] = calcFactor(explorer);
+        explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, FROM_OFFSET, factors[2 * lmIdx]);
+        if (subnetworks != null && explorer.setSubnetworks(subnetworks, subnetworkId))
+            return false;
+
+        explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, true);
+        explorer.setStartNode(lmNodeId);
+        explorer.runAlgo();
+        factors[2 * lmIdx + 1] = calcFactor(explorer);
+        explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, TO_OFFSET, factors[2 * lmIdx + 1]);
+        return subnetworks == null || !explorer.setSubnetworks(subnetworks, subnetworkId);
+    }
+
+    /**
+     * @return the factor for the weights of the given search, which is the global factor unless the weights are compact
+     */
+    private float calcFactor(LandmarkExplorer explorer) {
+        if (!isCompactWeights())
+            return (float) factor;
+        // the last entry has the biggest weight, it should not be maxed out
+        float f = (float) (explorer.getLastEntry().weight / BYTE_MAX);
+        while (f * BYTE_MAX <= explorer.getLastEntry().weight)
+            f = Math.nextUp(f);
+        return f;
+    }
+
     /**
      * This method specifies the polygons which should be used to split the world wide area to improve performance and
      * quality in this scenario.
@@ -518,13 +611,34 @@ public class LandmarkStorage {
         return factor;
     }
 
+    /**
+     * @return the factor to convert the 'from' weights of the given landmark of the subnetwork of the given node into
+     * a weight. This is the same for all landmarks unless the weights are compact.
+     */
+    double getFromFactor(int landmarkIndex, int node) {
+        if (!isCompactWeights())
+            return factor;
+        return landmarkFactors.get(subnetworkStorage.getSubnetwork(node))[2 * landmarkIndex];
+    }
+
+    /**
+     * @see #getFromFactor(int, int)
+     */
+    double getToFactor(int landmarkIndex, int node) {
+        if (!isCompactWeights())
+            return factor;
+        return landmarkFactors.get(subnetworkStorage.getSubnetwork(node))[2 * landmarkIndex + 1];
+    }
+
     /**
      * @return the weight from the landmark to the specified node. Where the landmark integer is not
      * a node ID but the internal index of the landmark array.
      */
     int getFromWeight(int landmarkIndex, int node) {
-        int res = (int) landmarkWeightDA.getShort((long) node * LM_ROW_LENGTH + landmarkIndex * 4L + FROM_OFFSET)
-                & 0x0000FFFF;
+        long pointer = (long) node * LM_ROW_LENGTH + (long) landmarkIndex * 2 * weightBytes + FROM_OFFSET;
+        if (isCompactWeights())
+            return getByteWeight(pointer);
+        int res = (int) landmarkWeightDA.getShort(pointer) & 0x0000FFFF;
         if (res == SHORT_INFINITY)
             // TODO can happen if endstanding oneway
             // we should set a 'from' value to SHORT_MAX if the 'to' value was already set to find real bugs
@@ -540,22 +654,44 @@ public class LandmarkStorage {
      * @return the weight from the specified node to the landmark (specified *as index*)
      */
     int getToWeight(int landmarkIndex, int node) {
-        int res = (int) landmarkWeightDA.getShort((long) node * LM_ROW_LENGTH + landmarkIndex * 4 + TO_OFFSET)
-                & 0x0000FFFF;
+        long pointer = (long) node * LM_ROW_LENGTH + (long) landmarkIndex * 2 * weightBytes + TO_OFFSET;
+        if (isCompactWeights())
+            return getByteWeight(pointer);
+        int res = (int) landmarkWeightDA.getShort(pointer) & 0x0000FFFF;
         if (res == SHORT_INFINITY)
             return SHORT_MAX;
 
         return res;
     }
 
+    private int getByteWeight(long pointer) {
+        int res = (int) landmarkWeightDA.getByte(pointer) & 0xFF;
+        return res == BYTE_INFINITY ? BYTE_MAX : res;
+    }
+
+    final boolean setWeight(long pointer, double value) {
+        return setWeight(pointer, value, factor);
+    }
+
     /**
-     * @return false if the value capacity was reached and instead of the real value the SHORT_MAX was stored.
+     * @return false if the value capacity was reached and instead of the real value the SHORT_MAX (or BYTE_MAX) was
+     * stored.
      */
-    final boolean setWeight(long pointer, double value) {
+    final boolean setWeight(long pointer, double value, double factor) {
+        // rounding down keeps the difference of two weights a lower bound, see LMApproximator
         double tmpVal = value / factor;
         if (tmpVal > Integer.MAX_VALUE)
             throw new UnsupportedOperationException("Cannot store infinity explicitly, pointer=" + pointer + ", value=" + value + ", factor=" + factor);
 
+        if (isCompactWeights()) {
+            if (tmpVal >= BYTE_MAX) {
+                landmarkWeightDA.setByte(pointer, (byte) BYTE_MAX);
+                return false;
+            }
+            landmarkWeightDA.setByte(pointer, (byte) tmpVal);
+            return true;
+        }
+
         if (tmpVal >= SHORT_MAX) {
             landmarkWeightDA.setShort(pointer, (short) SHORT_MAX);
             return false;
@@ -566,6 +702,8 @@ public class LandmarkStorage {
     }
 
     boolean isInfinity(long pointer) {
+        if (isCompactWeights())
+            return ((int) landmarkWeightDA.getByte(pointer) & 0xFF) == BYTE_INFINITY;
         return ((int) landmarkWeightDA.getShort(pointer) & 0x0000FFFF) == SHORT_INFINITY;
     }
 
@@ -585,10 +723,10 @@ public class LandmarkStorage {
         }
 
         // See the similar formula in LMApproximator.approximateForLandmark
-        List<Map.Entry<Integer, Integer>> list = new ArrayList<>(landmarks);
+        List<Map.Entry<Double, Integer>> list = new ArrayList<>(landmarks);
         for (int lmIndex = 0; lmIndex < landmarks; lmIndex++) {
-            int fromWeight = getFromWeight(lmIndex, toNode) - getFromWeight(lmIndex, fromNode);
-            int toWeight = getToWeight(lmIndex, fromNode) - getToWeight(lmIndex, toNode);
+            double fromWeight = (getFromWeight(lmIndex, toNode) - getFromWeight(lmIndex, fromNode)) * getFromFactor(lmIndex, fromNode);
+            double toWeight = (getToWeight(lmIndex, fromNode) - getToWeight(lmIndex, toNode)) * getToFactor(lmIndex, fromNode);
 
             list.add(new MapEntry<>(reverse
                     ? Math.max(-fromWeight, -toWeight)
@@ -688,8 +826,11 @@ public class LandmarkStorage {
                 throw new IllegalArgumentException("Cannot load landmark data as written for different graph storage with " + nodes + " nodes, not " + graph.getNodes());
             landmarks = landmarkWeightDA.getHeader(1 * 4);
             int subnetworks = landmarkWeightDA.getHeader(2 * 4);
-            factor = landmarkWeightDA.getHeader(3 * 4) / DOUBLE_MLTPL;
-            LM_ROW_LENGTH = landmarks * 4;
+            // landmarks stored before the compact storage existed have no entry
+            setWeightBytes(landmarkWeightDA.getHeader(4 * 4) == 1 ? 1 : 2);
+            factor = isCompactWeights()
+                    ? Float.intBitsToFloat(landmarkWeightDA.getHeader(3 * 4))
+                    : landmarkWeightDA.getHeader(3 * 4) / DOUBLE_MLTPL;
             long maxBytes = LM_ROW_LENGTH * nodes;
             long bytePos = maxBytes;
 
@@ -702,6 +843,14 @@ public class LandmarkStorage {
                 }
                 landmarkIDs.add(tmpLandmarks);
             }
+            for (int j = 0; isCompactWeights() && j < subnetworks; j++) {
+                float[] tmpFactors = new float[2 * landmarks];
+                for (int i = 0; i < tmpFactors.length; i++) {
+                    tmpFactors[i] = Float.intBitsToFloat(landmarkWeightDA.getInt(bytePos));
+                    bytePos += 4;
+                }
+                landmarkFactors.add(tmpFactors);
+            }
 
             initialized = true;
             return true;
@@ -858,7 +1007,7 @@ public class LandmarkStorage {
             return failed.get();
         }
 
-        public void initLandmarkWeights(final int lmIdx, int lmNodeId, final long rowSize, final int offset) {
+        public void initLandmarkWeights(final int lmIdx, int lmNodeId, final long rowSize, final int offset, final double factor) {
             IntObjectMap<SPTEntry> map = reverse ? bestWeightMapTo : bestWeightMapFrom;
             final AtomicInteger maxedout = new AtomicInteger(0);
             final Map.Entry<Double, Double> finalMaxWeight = new MapEntry<>(0d, 0d);
@@ -866,7 +1015,7 @@ public class LandmarkStorage {
             map.forEach(new IntObjectProcedure<SPTEntry>() {
                 @Override
                 public void apply(int nodeId, SPTEntry b) {
-                    if (!lms.setWeight(nodeId * rowSize + lmIdx * 4 + offset, b.weight)) {
+                    if (!lms.setWeight(nodeId * rowSize + (long) lmIdx * 2 * lms.weightBytes + offset, b.weight, factor)) {
                         maxedout.incrementAndGet();
                         finalMaxWeight.setValue(Math.max(b.weight, finalMaxWeight.getValue()));
                     }
@@ -875,7 +1024,7 @@ public class LandmarkStorage {
 
             if ((double) maxedout.get() / map.size() > 0.1) {
                 LOGGER.warn("landmark " + lmIdx + " (" + nodeAccess.getLat(lmNodeId) + "," + nodeAccess.getLon(lmNodeId) + "): " +
-                        "too many weights were maxed out (" + maxedout.get() + "/" + map.size() + "). Use a bigger factor than " + lms.factor
+                        "too many weights were maxed out (" + maxedout.get() + "/" + map.size() + "). Use a bigger factor than " + factor
                         + ". For example use maximum_lm_weight: " + finalMaxWeight.getValue() * 1.2 + " in your LM profile definition");
             }
         }
@@ -884,10 +1033,10 @@ public class LandmarkStorage {
     /**
      * Sort landmark by weight and let maximum weight come first, to pick best active landmarks.
      */
-    final static Comparator<Map.Entry<Integer, Integer>> SORT_BY_WEIGHT = new Comparator<Map.Entry<Integer, Integer>>() {
+    final static Comparator<Map.Entry<Double, Integer>> SORT_BY_WEIGHT = new Comparator<Map.Entry<Double, Integer>>() {
         @Override
-        public int compare(Map.Entry<Integer, Integer> o1, Map.Entry<Integer, Integer> o2) {
-            return Integer.compare(o2.getKey(), o1.getKey());
+        public int compare(Map.Entry<Double, Integer> o1, Map.Entry<Double, Integer> o2) {
+            return Double.compare(o2.getKey(), o1.getKey());
         }
     };
 
@@ -91,11 +91,27 @@ public class PrepareLandmarks {
         lms.setMinimumNodes(nodes);
     }
 
+    /**
+     * @see LandmarkStorage#setThreads(int)
+     */
+    public PrepareLandmarks setThreads(int threads) {
+        lms.setThreads(threads);
+        return this;
+    }
+
     public PrepareLandmarks setLogDetails(boolean logDetails) {
         lms.setLogDetails(logDetails);
         return this;
     }
 
+    /**
+     * @see LandmarkStorage#setCompactWeights(boolean)
+     */
+    public PrepareLandmarks setCompactWeights(boolean compactWeights) {
+        lms.setCompactWeights(compactWeights);
+        return this;
+    }
+
     public LandmarkStorage getLandmarkStorage() {
         return lms;
     }
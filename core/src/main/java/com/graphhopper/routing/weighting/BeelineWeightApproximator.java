@@ -71,6 +71,25 @@ public class BeelineWeightApproximator implements WeightApproximator {
         return weight2goal * epsilon;
     }
 
+    /**
+     * @return the maximum of the given weight and {@link #approximate(int)}. This is faster than calculating the
+     * maximum explicitly if the given weight is usually larger, e.g. a landmark approximation, because the beeline
+     * distance is only calculated if an upper bound of it, which is cheaper to calculate, exceeds the given weight.
+     */
+    public double approximateMax(int fromNode, double weight) {
+        if (distanceCalc.getClass() != DistanceCalcEarth.class)
+            return Math.max(weight, approximate(fromNode));
+
+        double fromLat = nodeAccess.getLat(fromNode);
+        double fromLon = nodeAccess.getLon(fromNode);
+        double normedDist = distanceCalc.calcNormalizedDist(toLat, toLon, fromLat, fromLon);
+        // the distance is 2 * R * asin(sqrt(normedDist)) and asin(x) <= x / sqrt(1 - x^2) avoids the slow asin
+        if (normedDist < 1 && minWeightPerDistance * DistanceCalcEarth.R * 2 * Math.sqrt(normedDist / (1 - normedDist)) * epsilon <= weight)
+            return weight;
+        double weight2goal = minWeightPerDistance * distanceCalc.calcDenormalizedDist(normedDist);
+        return Math.max(weight, weight2goal * epsilon);
+    }
+
     public BeelineWeightApproximator setDistanceCalc(DistanceCalc distanceCalc) {
         this.distanceCalc = distanceCalc;
         return this;
@@ -0,0 +1,211 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+
+/**
+ * A weighting that looks up the edge weights of the base graph in an array instead of calculating them, which avoids
+ * decoding the encoded values and evaluating e.g. the custom model statements for every edge the routing algorithms
+ * visit. The weights are stored as floats, which are rounded up, so they are never smaller than the exact weights.
+ * Virtual edges, the turn costs and the times are still calculated by the wrapped weighting.
+ * <p>
+ * Calculating the weights takes a full pass over all edges, so use the {@link Cache} to calculate them only for the
+ * weightings that are requested frequently.
+ */
+public class MaterializedWeighting extends AbstractAdjustedWeighting {
+    private final float[] weights;
+    private final int edges;
+
+    /**
+     * @param weights the edge weights of the given weighting, see {@link #calcWeights}
+     */
+    public MaterializedWeighting(Weighting superWeighting, float[] weights) {
+        super(superWeighting);
+        this.weights = weights;
+        this.edges = weights.length / 2;
+    }
+
+    /**
+     * @return the weights of all edges of the given graph indexed by the edge key
+     */
+    public static float[] calcWeights(BaseGraph graph, Weighting weighting) {
+        float[] weights = new float[2 * graph.getEdges()];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            weights[iter.getEdgeKey()] = roundUp(weighting.calcEdgeWeight(iter, false));
+            weights[iter.getReverseEdgeKey()] = roundUp(weighting.calcEdgeWeight(iter, true));
+        }
+        return weights;
+    }
+
+    private static float roundUp(double weight) {
+        float f = (float) weight;
+        return f < weight ? Math.nextUp(f) : f;
+    }
+
+    @Override
+    public double calcEdgeWeight(EdgeIteratorState edgeState, boolean reverse) {
+        if (edgeState.getEdge() >= edges)
+            // virtual edges are only parts of the original edges, so we need to calculate their weight
+            return superWeighting.calcEdgeWeight(edgeState, reverse);
+        return weights[reverse ? edgeState.getReverseEdgeKey() : edgeState.getEdgeKey()];
+    }
+
+    @Override
+    public String getName() {
+        return superWeighting.getName();
+    }
+
+    /**
+     * Keeps the edge weights of the most recently used weightings within a memory limit. The weights of a weighting
+     * are only calculated once it was requested a minimum number of times, so rarely used weightings do not slow down
+     * the requests or replace the weights of the frequently used ones. The weights are calculated only once per
+     * weighting by the given executor and until they are ready the requests use the given weighting.
+     */
+    public static class Cache {
+        private static final Logger logger = LoggerFactory.getLogger(Cache.class);
+        private static final int MAX_COUNTED_KEYS = 10_000;
+        private final BaseGraph graph;
+        private final long maxBytes;
+        private final int minRequests;
+        private final LinkedHashMap<String, float[]> weights = new LinkedHashMap<>(16, 0.75f, true);
+        private final Map<String, Integer> requestCounts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > MAX_COUNTED_KEYS;
+            }
+        };
+        private final Set<String> pending = new HashSet<>();
+        private final Executor executor;
+        private long bytes;
+        private int generation;
+
+        /**
+         * Creates a cache that calculates the weights in the thread of the request that triggers the calculation.
+         */
+        public Cache(BaseGraph graph, long maxBytes, int minRequests) {
+            this(graph, maxBytes, minRequests, Runnable::run);
+        }
+
+        /**
+         * @param maxBytes    the maximum memory used by the cached weights
+         * @param minRequests the number of requests after which the weights of a weighting are calculated
+         * @param executor    calculates the weights, e.g. a single background thread
+         */
+        public Cache(BaseGraph graph, long maxBytes, int minRequests, Executor executor) {
+            this.graph = graph;
+            this.maxBytes = maxBytes;
+            this.minRequests = minRequests;
+            this.executor = executor;
+        }
+
+        /**
+         * @param cacheKey must be equal for two calls if and only if the two weightings calculate the same edge weights
+         * @return a {@link MaterializedWeighting} wrapping the given weighting if its weights are cached or the given
+         * weighting otherwise
+         */
+        public Weighting get(String cacheKey, Weighting weighting) {
+            int calcGeneration;
+            synchronized (this) {
+                float[] cached = weights.get(cacheKey);
+                if (cached != null)
+                    return new MaterializedWeighting(weighting, cached);
+                if (pending.contains(cacheKey))
+                    return weighting;
+                int count = requestCounts.merge(cacheKey, 1, Integer::sum);
+                if (count < minRequests || getBytes(graph.getEdges()) > maxBytes)
+                    return weighting;
+                pending.add(cacheKey);
+                calcGeneration = generation;
+            }
+            executor.execute(() -> calcAndPut(cacheKey, weighting, calcGeneration));
+            synchronized (this) {
+                // the executor might have already calculated the weights, e.g. if it runs them in the calling thread
+                float[] cached = weights.get(cacheKey);
+                return cached == null ? weighting : new MaterializedWeighting(weighting, cached);
+            }
+        }
+
+        private void calcAndPut(String cacheKey, Weighting weighting, int calcGeneration) {
+            // we do not hold the lock while we calculate the weights so the cached weights remain accessible
+            float[] calculated;
+            try {
+                StopWatch sw = StopWatch.started();
+                calculated = calcWeights(graph, weighting);
+                logger.info("calculated the edge weights for {}, took: {}ms", cacheKey, sw.stop().getMillis());
+            } catch (RuntimeException ex) {
+                logger.error("could not calculate the edge weights for " + cacheKey, ex);
+                synchronized (this) {
+                    if (calcGeneration == generation)
+                        pending.remove(cacheKey);
+                }
+                return;
+            }
+            synchronized (this) {
+                // the cache was cleared in the meantime, so the weights might be outdated
+                if (calcGeneration != generation)
+                    return;
+                pending.remove(cacheKey);
+                requestCounts.remove(cacheKey);
+                float[] prev = weights.put(cacheKey, calculated);
+                if (prev != null)
+                    bytes -= getBytes(prev.length / 2);
+                bytes += getBytes(graph.getEdges());
+                // remove the least recently used weights
+                Iterator<Map.Entry<String, float[]>> iter = weights.entrySet().iterator();
+                while (bytes > maxBytes && iter.hasNext()) {
+                    Map.Entry<String, float[]> entry = iter.next();
+                    bytes -= getBytes(entry.getValue().length / 2);
+                    iter.remove();
+                }
+            }
+        }
+
+        /**
+         * Removes all cached weights, which is necessary when the edges of the graph change.
+         */
+        public synchronized void clear() {
+            weights.clear();
+            requestCounts.clear();
+            pending.clear();
+            bytes = 0;
+            generation++;
+        }
+
+        public synchronized long getBytes() {
+            return bytes;
+        }
+
+        public synchronized int size() {
+            return weights.size();
+        }
+
+        private static long getBytes(int edges) {
+            return 2L * edges * Float.BYTES;
+        }
+    }
+}
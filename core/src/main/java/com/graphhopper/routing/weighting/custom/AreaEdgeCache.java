@@ -0,0 +1,110 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.JsonFeature;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.Polygon;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.geom.prep.PreparedPolygon;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores which edges of the graph are located in the areas of the custom models, so the custom weightings only need to
+ * look up a bit instead of intersecting the edge geometry with the polygon of the area. This makes a big difference for
+ * large or complex polygons. Finding the edges of an area takes a pass over all edges, so only the areas that are used
+ * frequently should be added, e.g. the areas of the profiles, which include the global areas.
+ * <p>
+ * The areas are identified by their geometry, so the edges are also used for an area of a custom model in a request if
+ * it has the same geometry, regardless of its id.
+ */
+public class AreaEdgeCache {
+    private static final Logger logger = LoggerFactory.getLogger(AreaEdgeCache.class);
+    private final BaseGraph graph;
+    private final Map<Geometry, Edges> edgesByGeometry = new ConcurrentHashMap<>();
+
+    public AreaEdgeCache(BaseGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Finds the edges located in the given areas unless they were added before. Areas that are no polygons are ignored.
+     */
+    public void addAreas(Collection<JsonFeature> areas) {
+        for (JsonFeature area : areas) {
+            if (!(area.getGeometry() instanceof Polygonal) || edgesByGeometry.containsKey(area.getGeometry()))
+                continue;
+            StopWatch sw = StopWatch.started();
+            Edges edges = calcEdges(graph, new Polygon(new PreparedPolygon((Polygonal) area.getGeometry())));
+            edgesByGeometry.put(area.getGeometry(), edges);
+            logger.info("found {} edges in area {}, took: {}ms", edges.bits.cardinality(), area.getId(), sw.stop().getMillis());
+        }
+    }
+
+    /**
+     * @return the edges located in the given area or null if the area was not added
+     */
+    public Edges getEdges(JsonFeature area) {
+        return area.getGeometry() == null ? null : edgesByGeometry.get(area.getGeometry());
+    }
+
+    public int size() {
+        return edgesByGeometry.size();
+    }
+
+    static Edges calcEdges(BaseGraph graph, Polygon polygon) {
+        BitSet bits = new BitSet(graph.getEdges());
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            if (CustomWeightingHelper.in(polygon, iter))
+                bits.set(iter.getEdge());
+        }
+        return new Edges(bits, graph.getEdges());
+    }
+
+    public static class Edges {
+        private final BitSet bits;
+        private final int edges;
+
+        Edges(BitSet bits, int edges) {
+            this.bits = bits;
+            this.edges = edges;
+        }
+
+        /**
+         * @return true if it is known whether the given edge is located in the area. This is not the case for the
+         * virtual edges, which are only parts of the original edges.
+         */
+        public boolean isKnown(int edge) {
+            return edge < edges;
+        }
+
+        public boolean contains(int edge) {
+            return bits.get(edge);
+        }
+    }
+}
@@ -65,7 +65,7 @@ class ConditionalExpressionVisitor implements Visitor.AtomVisitor<Boolean, Excep
                 if (arg.startsWith(IN_AREA_PREFIX)) {
                     int start = rv.getLocation().getColumnNumber() - 1;
                     replacements.put(start, new Replacement(start, arg.length(),
-                            CustomWeightingHelper.class.getSimpleName() + ".in(this." + arg + ", edge)"));
+                            CustomWeightingHelper.class.getSimpleName() + ".in(this." + arg + ", this.edges_" + arg + ", edge)"));
                     result.guessedVariables.add(arg);
                     return true;
                 } else {
@@ -0,0 +1,178 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.routing.ev.EncodedValue;
+import com.graphhopper.routing.ev.EncodedValueLookup;
+import com.graphhopper.routing.ev.EnumEncodedValue;
+import com.graphhopper.util.Constants;
+import com.graphhopper.util.CustomModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Stores the classes that {@link CustomModelParser} compiles for the custom models as class files in a directory, e.g.
+ * in the graph folder. Compiling a custom model takes 10-40ms, so with this store every custom model is compiled only
+ * once instead of again after every restart and on every server that uses a copy of the graph folder. The class files
+ * are loaded lazily, i.e. when a custom model is requested the first time, see {@link #warmUp} to load or compile
+ * them in advance.
+ * <p>
+ * The file name is a hash of the custom model, the encoded values, the GraphHopper version and
+ * {@link CustomModelParser#GENERATED_CODE_VERSION}, so a class file is never used for a different graph or for a
+ * different version of the generated code.
+ */
+public class CustomModelClassStore implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(CustomModelClassStore.class);
+    private final File dir;
+    private final ExecutorService executorService;
+    private final Map<String, Future<Class<?>>> compiling = new ConcurrentHashMap<>();
+
+    /**
+     * @param compileThreads the number of threads that load and compile the classes. Concurrent requests of the same
+     *                       custom model then wait for a single compilation. Use 0 to compile on the requesting thread.
+     */
+    public CustomModelClassStore(File dir, int compileThreads) {
+        if (!dir.exists() && !dir.mkdirs())
+            throw new IllegalStateException("Cannot create directory " + dir.getAbsolutePath());
+        this.dir = dir;
+        this.executorService = compileThreads > 0 ? Executors.newFixedThreadPool(compileThreads) : null;
+    }
+
+    /**
+     * Loads or compiles the classes of the given custom models, e.g. the ones of the profiles or the ones that are
+     * requested most frequently. If there are compile threads this method returns immediately.
+     */
+    public void warmUp(Collection<CustomModel> customModels, EncodedValueLookup lookup) {
+        for (CustomModel customModel : customModels) {
+            if (executorService == null)
+                get(customModel, lookup);
+            else
+                submit(createKey(customModel, lookup), customModel, lookup);
+        }
+    }
+
+    Class<?> get(CustomModel customModel, EncodedValueLookup lookup) {
+        String key = createKey(customModel, lookup);
+        if (executorService == null)
+            return loadOrCompile(key, customModel, lookup);
+        try {
+            return submit(key, customModel, lookup).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private Future<Class<?>> submit(String key, CustomModel customModel, EncodedValueLookup lookup) {
+        FutureTask<Class<?>> task = new FutureTask<>(() -> loadOrCompile(key, customModel, lookup)) {
+            @Override
+            protected void done() {
+                // afterwards the class is loaded from its file
+                compiling.remove(key, this);
+            }
+        };
+        Future<Class<?>> existing = compiling.putIfAbsent(key, task);
+        if (existing != null)
+            return existing;
+        executorService.execute(task);
+        return task;
+    }
+
+    private Class<?> loadOrCompile(String key, CustomModel customModel, EncodedValueLookup lookup) {
+        File file = new File(dir, key + ".class");
+        if (file.exists()) {
+            try {
+                return defineClass(Files.readAllBytes(file.toPath()));
+            } catch (IOException | LinkageError ex) {
+                logger.warn("Cannot load " + file.getName() + ", compiling the custom model again", ex);
+            }
+        }
+        return CustomModelParser.compileClazz(customModel, lookup, bytecode -> store(file, bytecode));
+    }
+
+    private static Class<?> defineClass(byte[] bytecode) {
+        BytecodeClassLoader classLoader = new BytecodeClassLoader(CustomWeightingHelper.class.getClassLoader());
+        Class<?> clazz = classLoader.defineClass(bytecode);
+        try {
+            // link the class now so an invalid class file is detected here and not when the class is used
+            return Class.forName(clazz.getName(), true, classLoader);
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void store(File file, byte[] bytecode) {
+        // write a temporary file first so that nobody reads an incomplete class file
+        File tmpFile = new File(dir, file.getName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.write(tmpFile.toPath(), bytecode);
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            tmpFile.delete();
+            logger.warn("Cannot store " + file.getName(), ex);
+        }
+    }
+
+    static String createKey(CustomModel customModel, EncodedValueLookup lookup) {
+        // the generated class depends only on the names and types of the encoded values
+        StringBuilder sb = new StringBuilder(Constants.VERSION).append('|').append(CustomModelParser.GENERATED_CODE_VERSION);
+        for (EncodedValue ev : lookup.getEncodedValues()) {
+            sb.append('|').append(ev.getName()).append(':').append(ev.getClass().getName());
+            if (ev instanceof EnumEncodedValue)
+                sb.append(':').append(((EnumEncodedValue<?>) ev).getEnumType().getName());
+        }
+        sb.append('|').append(customModel);
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executorService != null)
+            executorService.shutdownNow();
+    }
+
+    private static class BytecodeClassLoader extends ClassLoader {
+        BytecodeClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> defineClass(byte[] bytecode) {
+            return defineClass(null, bytecode, 0, bytecode.length);
+        }
+    }
+}
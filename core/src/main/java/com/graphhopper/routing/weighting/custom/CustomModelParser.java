@@ -36,6 +36,7 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import static com.graphhopper.json.Statement.Keyword.IF;
 
@@ -63,6 +64,10 @@ public class CustomModelParser {
     // TODO perf compare with ConcurrentHashMap, but I guess, if there is a difference at all, it is not big for small maps
     private static final Map<String, Class<?>> INTERNAL_CACHE = Collections.synchronizedMap(new HashMap<>());
 
+    // The stored classes of the CustomModelClassStore are only used for the same version of the generated code. So
+    // increase this version whenever the generated code changes, e.g. in createClassTemplate or in the visitors.
+    static final int GENERATED_CODE_VERSION = 2;
+
     private CustomModelParser() {
         // utility class
     }
@@ -73,30 +78,56 @@ public class CustomModelParser {
      * an if-elseif-else group.
      */
     public static CustomWeighting createWeighting(EncodedValueLookup lookup, TurnCostProvider turnCostProvider, CustomModel customModel) {
+        return createWeighting(lookup, turnCostProvider, customModel, null, null);
+    }
+
+    /**
+     * @param areaEdgeCache the precomputed edges of the areas or null
+     * @param classStore    the store of the compiled classes or null
+     */
+    public static CustomWeighting createWeighting(EncodedValueLookup lookup, TurnCostProvider turnCostProvider,
+                                                  CustomModel customModel, AreaEdgeCache areaEdgeCache,
+                                                  CustomModelClassStore classStore) {
         if (customModel == null)
             throw new IllegalStateException("CustomModel cannot be null");
-        CustomWeighting.Parameters parameters = createWeightingParameters(customModel, lookup);
+        CustomWeighting.Parameters parameters = createWeightingParameters(customModel, lookup, areaEdgeCache, classStore);
         return new CustomWeighting(turnCostProvider, parameters);
     }
 
     public static CustomWeighting2 createWeighting2(EncodedValueLookup lookup, TurnCostProvider turnCostProvider, CustomModel customModel) {
+        return createWeighting2(lookup, turnCostProvider, customModel, null, null);
+    }
+
+    public static CustomWeighting2 createWeighting2(EncodedValueLookup lookup, TurnCostProvider turnCostProvider,
+                                                    CustomModel customModel, AreaEdgeCache areaEdgeCache,
+                                                    CustomModelClassStore classStore) {
         if (customModel == null)
             throw new IllegalStateException("CustomModel cannot be null");
-        CustomWeighting.Parameters parameters = createWeightingParameters(customModel, lookup);
+        CustomWeighting.Parameters parameters = createWeightingParameters(customModel, lookup, areaEdgeCache, classStore);
         return new CustomWeighting2(turnCostProvider, parameters);
     }
 
+    public static CustomWeighting.Parameters createWeightingParameters(CustomModel customModel, EncodedValueLookup lookup) {
+        return createWeightingParameters(customModel, lookup, null, null);
+    }
+
     /**
      * This method compiles a new subclass of CustomWeightingHelper composed of the provided CustomModel caches this
      * and returns an instance.
+     *
+     * @param areaEdgeCache the precomputed edges of the areas or null
+     * @param classStore    keeps the compiled classes in a directory and is used when a class is in none of the
+     *                      in-memory caches, can be null
      */
-    public static CustomWeighting.Parameters createWeightingParameters(CustomModel customModel, EncodedValueLookup lookup) {
+    public static CustomWeighting.Parameters createWeightingParameters(CustomModel customModel, EncodedValueLookup lookup,
+                                                                       AreaEdgeCache areaEdgeCache,
+                                                                       CustomModelClassStore classStore) {
         String key = customModel.toString();
         Class<?> clazz = customModel.isInternal() ? INTERNAL_CACHE.get(key) : null;
         if (CACHE_SIZE > 0 && clazz == null)
             clazz = CACHE.get(key);
         if (clazz == null) {
-            clazz = createClazz(customModel, lookup);
+            clazz = createClazz(customModel, lookup, classStore);
             if (customModel.isInternal()) {
                 INTERNAL_CACHE.put(key, clazz);
                 if (INTERNAL_CACHE.size() > 100) {
@@ -113,6 +144,7 @@ public class CustomModelParser {
         try {
             // The class does not need to be thread-safe as we create an instance per request
             CustomWeightingHelper prio = (CustomWeightingHelper) clazz.getDeclaredConstructor().newInstance();
+            prio.setAreaEdgeCache(areaEdgeCache);
             prio.init(customModel, lookup, CustomModel.getAreasAsMap(customModel.getAreas()));
             return new CustomWeighting.Parameters(
                     prio::getSpeed, prio::calcMaxSpeed,
@@ -137,7 +169,16 @@ public class CustomModelParser {
      * </li>
      * </ul>
      */
-    private static Class<?> createClazz(CustomModel customModel, EncodedValueLookup lookup) {
+    private static Class<?> createClazz(CustomModel customModel, EncodedValueLookup lookup, CustomModelClassStore classStore) {
+        return classStore == null ? compileClazz(customModel, lookup, null) : classStore.get(customModel, lookup);
+    }
+
+    /**
+     * Compiles the class for the specified CustomModel, see createClazz.
+     *
+     * @param bytecodeConsumer receives the bytecode of the compiled class, can be null
+     */
+    static Class<?> compileClazz(CustomModel customModel, EncodedValueLookup lookup, Consumer<byte[]> bytecodeConsumer) {
         try {
             Set<String> priorityVariables = ValueExpressionVisitor.findVariables(customModel.getPriority(), lookup);
             List<Java.BlockStatement> priorityStatements = createGetPriorityStatements(priorityVariables, customModel, lookup);
@@ -168,7 +209,10 @@ public class CustomModelParser {
                     parseAbstractCompilationUnit();
             cu = injectStatements(priorityStatements, speedStatements, cu);
             SimpleCompiler sc = createCompiler(counter, cu);
-            return sc.getClassLoader().loadClass("com.graphhopper.routing.weighting.custom.JaninoCustomWeightingHelperSubclass" + counter);
+            String className = "com.graphhopper.routing.weighting.custom.JaninoCustomWeightingHelperSubclass" + counter;
+            if (bytecodeConsumer != null)
+                bytecodeConsumer.accept(sc.getBytecodes().get(className));
+            return sc.getClassLoader().loadClass(className);
         } catch (Exception ex) {
             String errString = "Cannot compile expression";
             throw new IllegalArgumentException(errString + ": " + ex.getMessage(), ex);
@@ -366,8 +410,10 @@ public class CustomModelParser {
                 if (feature.getBBox() != null)
                     throw new IllegalArgumentException("Bounding box of area " + id + " must be empty");
                 classSourceCode.append("protected " + Polygon.class.getSimpleName() + " " + arg + ";\n");
+                classSourceCode.append("protected " + AreaEdgeCache.Edges.class.getCanonicalName() + " edges_" + arg + ";\n");
                 initSourceCode.append("JsonFeature feature_" + id + " = (JsonFeature) areas.get(\"" + id + "\");\n");
                 initSourceCode.append("this." + arg + " = new Polygon(new PreparedPolygon((Polygonal) feature_" + id + ".getGeometry()));\n");
+                initSourceCode.append("this.edges_" + arg + " = areaEdgeCache == null ? null : areaEdgeCache.getEdges(feature_" + id + ");\n");
             } else {
                 if (!arg.startsWith(IN_AREA_PREFIX))
                     throw new IllegalArgumentException("Variable not supported: " + arg);
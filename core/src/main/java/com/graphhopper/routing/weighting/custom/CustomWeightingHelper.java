@@ -37,10 +37,16 @@ public class CustomWeightingHelper {
 
     protected EncodedValueLookup lookup;
     protected CustomModel customModel;
+    // can be null, is set before init is called
+    protected AreaEdgeCache areaEdgeCache;
 
     protected CustomWeightingHelper() {
     }
 
+    void setAreaEdgeCache(AreaEdgeCache areaEdgeCache) {
+        this.areaEdgeCache = areaEdgeCache;
+    }
+
     public void init(CustomModel customModel, EncodedValueLookup lookup, Map<String, JsonFeature> areas) {
         this.lookup = lookup;
         this.customModel = customModel;
@@ -91,6 +97,15 @@ public class CustomWeightingHelper {
         return minMaxPriority.max;
     }
 
+    /**
+     * @param edges the precomputed edges of the area or null, see {@link AreaEdgeCache}
+     */
+    public static boolean in(Polygon p, AreaEdgeCache.Edges edges, EdgeIteratorState edge) {
+        if (edges != null && edges.isKnown(edge.getEdge()))
+            return edges.contains(edge.getEdge());
+        return in(p, edge);
+    }
+
     public static boolean in(Polygon p, EdgeIteratorState edge) {
         BBox edgeBBox = GHUtility.createBBox(edge);
         BBox polyBBOX = p.getBounds();
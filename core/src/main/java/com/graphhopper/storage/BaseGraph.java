@@ -27,7 +27,9 @@ import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
 
 import java.io.Closeable;
+import java.util.ArrayDeque;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.function.Consumer;
 import java.util.function.IntConsumer;
 import java.util.function.IntUnaryOperator;
@@ -54,7 +56,9 @@ public class BaseGraph implements Graph, Closeable {
     // can be null if turn costs are not supported
     final TurnCostStorage turnCostStorage;
     final BitUtil bitUtil;
+    static final int VERSION_GEOMETRY_UNCOMPRESSED = 7;
     // length | nodeA | nextNode | ... | nodeB
+    // or, if the geometry is compressed: length | reserved bytes | delta encoded nodes, see createCompressedWayGeometryBytes
     private final DataAccess wayGeometry;
     private final Directory dir;
     private final int segmentSize;
@@ -62,9 +66,25 @@ public class BaseGraph implements Graph, Closeable {
     private long minGeoRef;
     private long maxGeoRef;
     private final int eleBytesPerCoord;
+    private boolean compressedGeometry;
+    // the compressed geometries that were moved to a bigger slot leave their old slot behind, which can be reused for
+    // other geometries. the slots are grouped by their reserved bytes and are not kept when the graph is flushed
+    private final TreeMap<Integer, ArrayDeque<Long>> unusedGeometrySlots = new TreeMap<>();
+    // optional, only available after freezing, see createCSRAdjacency
+    private volatile CSRAdjacency csrAdjacency;
 
     public BaseGraph(Directory dir, boolean withElevation, boolean withTurnCosts, int segmentSize, int bytesForFlags) {
+        this(dir, withElevation, withTurnCosts, segmentSize, bytesForFlags, false);
+    }
+
+    /**
+     * @param compressedGeometry true if the pillar nodes shall be stored as delta encoded variable length integers
+     *                           instead of fixed width integers. This is only used when the graph is created, when
+     *                           loading an existing graph the encoding of the stored geometry is used.
+     */
+    public BaseGraph(Directory dir, boolean withElevation, boolean withTurnCosts, int segmentSize, int bytesForFlags, boolean compressedGeometry) {
         this.dir = dir;
+        this.compressedGeometry = compressedGeometry;
         this.bitUtil = BitUtil.LITTLE;
         this.wayGeometry = dir.create("geometry", segmentSize);
         this.edgeKVStorage = new KVStorage(dir, true);
@@ -103,6 +123,10 @@ public class BaseGraph implements Graph, Closeable {
         return this;
     }
 
+    public boolean isCompressedGeometry() {
+        return compressedGeometry;
+    }
+
     public boolean isInitialized() {
         return initialized;
     }
@@ -115,7 +139,9 @@ public class BaseGraph implements Graph, Closeable {
 
     private void loadWayGeometryHeader() {
         int geometryVersion = wayGeometry.getHeader(0);
-        GHUtility.checkDAVersion(wayGeometry.getName(), Constants.VERSION_GEOMETRY, geometryVersion);
+        // version 7 only differs in the layout of compressed geometries, so we can still read it if it is uncompressed
+        if (geometryVersion != VERSION_GEOMETRY_UNCOMPRESSED || wayGeometry.getHeader(20) != 0)
+            GHUtility.checkDAVersion(wayGeometry.getName(), Constants.VERSION_GEOMETRY, geometryVersion);
         minGeoRef = bitUtil.toLong(
                 wayGeometry.getHeader(4),
                 wayGeometry.getHeader(8)
@@ -124,6 +150,7 @@ public class BaseGraph implements Graph, Closeable {
                 wayGeometry.getHeader(12),
                 wayGeometry.getHeader(16)
         );
+        compressedGeometry = wayGeometry.getHeader(20) == 1;
     }
 
     private void setWayGeometryHeader() {
@@ -132,6 +159,7 @@ public class BaseGraph implements Graph, Closeable {
         wayGeometry.setHeader(8, bitUtil.getIntHigh(minGeoRef));
         wayGeometry.setHeader(12, bitUtil.getIntLow(maxGeoRef));
         wayGeometry.setHeader(16, bitUtil.getIntHigh(maxGeoRef));
+        wayGeometry.setHeader(20, compressedGeometry ? 1 : 0);
     }
 
     private void setInitialized() {
@@ -166,12 +194,31 @@ public class BaseGraph implements Graph, Closeable {
         if (isFrozen())
             throw new IllegalStateException("base graph already frozen");
         store.setFrozen(true);
+        if (supportsTurnCosts())
+            turnCostStorage.sortAndIndex();
     }
 
     public synchronized boolean isFrozen() {
         return store.getFrozen();
     }
 
+    /**
+     * Creates an immutable copy of the adjacency lists of this graph in compressed sparse row layout. After calling
+     * this method the edge explorers of this graph iterate the edges of a node sequentially instead of following the
+     * linked lists of edges, which leads to fewer cache misses. The graph must be frozen already, because the copy
+     * cannot be updated when edges are added.
+     */
+    public synchronized void createCSRAdjacency() {
+        if (!isFrozen())
+            throw new IllegalStateException("The CSR adjacency can only be created for a frozen graph");
+        if (csrAdjacency == null)
+            csrAdjacency = CSRAdjacency.fromStore(store);
+    }
+
+    public boolean hasCSRAdjacency() {
+        return csrAdjacency != null;
+    }
+
     public BaseGraph create(long initSize) {
         checkNotInitialized();
         dir.create();
@@ -234,6 +281,7 @@ public class BaseGraph implements Graph, Closeable {
         if (supportsTurnCosts()) {
             turnCostStorage.close();
         }
+        csrAdjacency = null;
     }
 
     public long getCapacity() {
@@ -260,8 +308,10 @@ public class BaseGraph implements Graph, Closeable {
         if (supportsTurnCosts() && !turnCostStorage.loadExisting())
             return false;
 
-        setInitialized();
         loadWayGeometryHeader();
+        // all versions are checked now, so we can migrate old edges without leaving a half migrated graph behind
+        store.migrateIfNeeded();
+        setInitialized();
         return true;
     }
 
@@ -408,6 +458,9 @@ public class BaseGraph implements Graph, Closeable {
 
     @Override
     public EdgeExplorer createEdgeExplorer(EdgeFilter filter) {
+        CSRAdjacency adjacency = csrAdjacency;
+        if (adjacency != null)
+            return new CSREdgeIteratorImpl(this, adjacency, filter);
         return new EdgeIteratorImpl(this, filter);
     }
 
@@ -465,6 +518,10 @@ public class BaseGraph implements Graph, Closeable {
                 throw new IllegalStateException("This edge has already been copied so we can no longer change the geometry, pointer=" + edgePointer);
 
             int len = pillarNodes.size();
+            if (compressedGeometry) {
+                setCompressedWayGeometry(pillarNodes, edgePointer, reverse, existingGeoRef);
+                return;
+            }
             if (existingGeoRef > 0) {
                 final int count = getPillarCount(existingGeoRef);
                 if (len <= count) {
@@ -485,6 +542,10 @@ public class BaseGraph implements Graph, Closeable {
         return store;
     }
 
+    public int getBytesForFlags() {
+        return store.getBytesForFlags();
+    }
+
     private void setWayGeometryAtGeoRef(PointList pillarNodes, long edgePointer, boolean reverse, long geoRef) {
         byte[] wayGeometryBytes = createWayGeometryBytes(pillarNodes, reverse);
         wayGeometry.ensureCapacity(geoRef + wayGeometryBytes.length);
@@ -520,6 +581,117 @@ public class BaseGraph implements Graph, Closeable {
         return bytes;
     }
 
+    private void setCompressedWayGeometry(PointList pillarNodes, long edgePointer, boolean reverse, long existingGeoRef) {
+        byte[] wayGeometryBytes = createCompressedWayGeometryBytes(pillarNodes, reverse);
+        int byteCount = wayGeometryBytes.length - 6;
+        long geoRef = existingGeoRef;
+        if (existingGeoRef > 0) {
+            if (pillarNodes.size() > getPillarCount(existingGeoRef))
+                throw new IllegalStateException("This edge already has a way geometry so it cannot be changed to a bigger geometry, pointer=" + edgePointer);
+            // even the same number of points might need more bytes than before, e.g. when the elevation changed
+            int reservedBytes = getCompressedReservedBytes(existingGeoRef);
+            if (byteCount > reservedBytes) {
+                if (existingGeoRef + 6 + reservedBytes == maxGeoRef) {
+                    // the geometry is the last one, so we can simply extend its slot
+                    maxGeoRef += byteCount - reservedBytes;
+                    wayGeometry.ensureCapacity(maxGeoRef);
+                    setCompressedReservedBytes(existingGeoRef, byteCount);
+                } else {
+                    // move the geometry and update the geo ref of this edge and all its copies
+                    geoRef = nextCompressedGeoRef(byteCount);
+                    unusedGeometrySlots.computeIfAbsent(reservedBytes, k -> new ArrayDeque<>()).push(existingGeoRef);
+                    EdgeIterator iter = createEdgeExplorer().setBaseNode(store.getNodeA(edgePointer));
+                    while (iter.next()) {
+                        long iterPointer = ((EdgeIteratorStateImpl) iter).edgePointer;
+                        if (store.getGeoRef(iterPointer) == existingGeoRef)
+                            store.setGeoRef(iterPointer, geoRef);
+                    }
+                }
+            }
+        } else {
+            geoRef = nextCompressedGeoRef(byteCount);
+        }
+        // the slot might be bigger than needed, and we keep its size so it can be reused for bigger geometries later
+        bitUtil.fromUInt3(wayGeometryBytes, getCompressedReservedBytes(geoRef), 3);
+        wayGeometry.setBytes(geoRef, wayGeometryBytes, wayGeometryBytes.length);
+        store.setGeoRef(edgePointer, geoRef);
+    }
+
+    /**
+     * @return the geo ref of a slot with at least the given number of bytes for the pillar nodes (and six bytes for
+     * the header). The reserved bytes of the slot are already set.
+     */
+    private long nextCompressedGeoRef(int byteCount) {
+        Map.Entry<Integer, ArrayDeque<Long>> unused = unusedGeometrySlots.ceilingEntry(byteCount);
+        if (unused != null) {
+            long geoRef = unused.getValue().pop();
+            if (unused.getValue().isEmpty())
+                unusedGeometrySlots.remove(unused.getKey());
+            return geoRef;
+        }
+        long geoRef = nextGeoRef(6 + byteCount);
+        wayGeometry.ensureCapacity(maxGeoRef);
+        setCompressedReservedBytes(geoRef, byteCount);
+        return geoRef;
+    }
+
+    /**
+     * The compressed geometry starts with the number of pillar nodes (3 bytes) and the number of bytes reserved for
+     * the pillar nodes (3 bytes), which is set when the geometry is written into its slot. Then follow the coordinates (and elevations) of the pillar nodes, each stored as zig-zag
+     * encoded difference to the previous pillar node using variable length integers. Neighboring pillar nodes are
+     * usually close to each other, so most values take only one or two bytes instead of four.
+     */
+    private byte[] createCompressedWayGeometryBytes(PointList pillarNodes, boolean reverse) {
+        int len = pillarNodes.size();
+        if ((len & 0xFF00_0000) != 0)
+            throw new IllegalArgumentException("too long way geometry " + len);
+        if (reverse)
+            pillarNodes.reverse();
+
+        boolean is3D = nodeAccess.is3D();
+        VLongStorage vLongs = new VLongStorage(6 + len * (is3D ? 9 : 6));
+        vLongs.seek(6);
+        int prevLat = 0, prevLon = 0, prevEle = 0;
+        for (int i = 0; i < len; i++) {
+            int lat = Helper.degreeToInt(pillarNodes.getLat(i));
+            int lon = Helper.degreeToInt(pillarNodes.getLon(i));
+            vLongs.writeVLong(zigZag((long) lat - prevLat));
+            vLongs.writeVLong(zigZag((long) lon - prevLon));
+            prevLat = lat;
+            prevLon = lon;
+            if (is3D) {
+                int ele = Helper.eleToUInt(pillarNodes.getEle(i));
+                vLongs.writeVLong(zigZag((long) ele - prevEle));
+                prevEle = ele;
+            }
+        }
+        vLongs.trimToSize();
+        byte[] bytes = vLongs.getBytes();
+        int byteCount = bytes.length - 6;
+        if ((byteCount & 0xFF00_0000) != 0)
+            throw new IllegalArgumentException("too long way geometry " + byteCount + ", " + len);
+        bitUtil.fromUInt3(bytes, len, 0);
+        bitUtil.fromUInt3(bytes, byteCount, 3);
+        return bytes;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private int getCompressedReservedBytes(long geoRef) {
+        return (wayGeometry.getByte(geoRef + 5) & 0xFF) << 16 | (wayGeometry.getShort(geoRef + 3) & 0xFFFF);
+    }
+
+    private void setCompressedReservedBytes(long geoRef, int bytes) {
+        wayGeometry.setShort(geoRef + 3, (short) bytes);
+        wayGeometry.setByte(geoRef + 5, (byte) (bytes >>> 16));
+    }
+
     private int getPillarCount(long geoRef) {
         return (wayGeometry.getByte(geoRef + 2) & 0xFF << 16) | wayGeometry.getShort(geoRef);
     }
@@ -537,9 +709,14 @@ public class BaseGraph implements Graph, Closeable {
         byte[] bytes = null;
         if (geoRef > 0) {
             count = getPillarCount(geoRef);
-            geoRef += 3L;
-            bytes = new byte[count * (8 + eleBytesPerCoord)];
-            wayGeometry.getBytes(geoRef, bytes, bytes.length);
+            if (compressedGeometry) {
+                bytes = new byte[getCompressedReservedBytes(geoRef)];
+                wayGeometry.getBytes(geoRef + 6L, bytes, bytes.length);
+            } else {
+                geoRef += 3L;
+                bytes = new byte[count * (8 + eleBytesPerCoord)];
+                wayGeometry.getBytes(geoRef, bytes, bytes.length);
+            }
         } else if (mode == FetchMode.PILLAR_ONLY)
             return PointList.EMPTY;
 
@@ -550,17 +727,44 @@ public class BaseGraph implements Graph, Closeable {
         } else if (mode == FetchMode.ALL || mode == FetchMode.BASE_AND_PILLAR)
             pillarNodes.add(nodeAccess, baseNode);
 
-        int index = 0;
-        for (int i = 0; i < count; i++) {
-            double lat = Helper.intToDegree(bitUtil.toInt(bytes, index));
-            index += 4;
-            double lon = Helper.intToDegree(bitUtil.toInt(bytes, index));
-            index += 4;
-            if (nodeAccess.is3D()) {
-                pillarNodes.add(lat, lon, Helper.uIntToEle(bitUtil.toUInt3(bytes, index)));
-                index += 3;
-            } else {
-                pillarNodes.add(lat, lon);
+        if (compressedGeometry) {
+            // we read the variable length integers (see VLongStorage) directly from the bytes to avoid allocations
+            int valuesPerPoint = nodeAccess.is3D() ? 3 : 2;
+            int index = 0, lat = 0, lon = 0, ele = 0;
+            for (int i = 0; i < count * valuesPerPoint; i++) {
+                long value = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = bytes[index++];
+                    value |= (b & 0x7FL) << shift;
+                    if (b >= 0)
+                        break;
+                }
+                int delta = (int) unZigZag(value);
+                int dim = i % valuesPerPoint;
+                if (dim == 0) {
+                    lat += delta;
+                } else if (dim == 1) {
+                    lon += delta;
+                    if (valuesPerPoint == 2)
+                        pillarNodes.add(Helper.intToDegree(lat), Helper.intToDegree(lon));
+                } else {
+                    ele += delta;
+                    pillarNodes.add(Helper.intToDegree(lat), Helper.intToDegree(lon), Helper.uIntToEle(ele));
+                }
+            }
+        } else {
+            int index = 0;
+            for (int i = 0; i < count; i++) {
+                double lat = Helper.intToDegree(bitUtil.toInt(bytes, index));
+                index += 4;
+                double lon = Helper.intToDegree(bitUtil.toInt(bytes, index));
+                index += 4;
+                if (nodeAccess.is3D()) {
+                    pillarNodes.add(lat, lon, Helper.uIntToEle(bitUtil.toUInt3(bytes, index)));
+                    index += 3;
+                } else {
+                    pillarNodes.add(lat, lon);
+                }
             }
         }
 
@@ -615,6 +819,7 @@ public class BaseGraph implements Graph, Closeable {
         private boolean withTurnCosts = false;
         private long bytes = 100;
         private int segmentSize = -1;
+        private boolean compressedGeometry = false;
 
         public Builder(EncodingManager em) {
             this(em.getBytesForFlags());
@@ -643,6 +848,15 @@ public class BaseGraph implements Graph, Closeable {
             return this;
         }
 
+        /**
+         * Stores the pillar nodes as delta encoded variable length integers, which saves memory but is a bit slower
+         * to decode.
+         */
+        public Builder withCompressedGeometry(boolean compressedGeometry) {
+            this.compressedGeometry = compressedGeometry;
+            return this;
+        }
+
         public Builder setSegmentSize(int segmentSize) {
             this.segmentSize = segmentSize;
             return this;
@@ -654,7 +868,7 @@ public class BaseGraph implements Graph, Closeable {
         }
 
         public BaseGraph build() {
-            return new BaseGraph(directory, withElevation, withTurnCosts, segmentSize, bytesForFlags);
+            return new BaseGraph(directory, withElevation, withTurnCosts, segmentSize, bytesForFlags, compressedGeometry);
         }
 
         public BaseGraph create() {
@@ -714,6 +928,56 @@ public class BaseGraph implements Graph, Closeable {
         }
     }
 
+    /**
+     * Like EdgeIteratorImpl, but it iterates over the edges of a node stored in a {@link CSRAdjacency} instead of
+     * following the linked list of edges.
+     */
+    protected static class CSREdgeIteratorImpl extends EdgeIteratorStateImpl implements EdgeExplorer, EdgeIterator {
+        final CSRAdjacency adjacency;
+        final EdgeFilter filter;
+        int startIndex;
+        int index;
+        int endIndex;
+
+        public CSREdgeIteratorImpl(BaseGraph baseGraph, CSRAdjacency adjacency, EdgeFilter filter) {
+            super(baseGraph);
+            if (filter == null)
+                throw new IllegalArgumentException("Instead null filter use EdgeFilter.ALL_EDGES");
+            this.adjacency = adjacency;
+            this.filter = filter;
+        }
+
+        @Override
+        public EdgeIterator setBaseNode(int baseNode) {
+            startIndex = index = adjacency.getStart(baseNode);
+            endIndex = adjacency.getEnd(baseNode);
+            this.baseNode = baseNode;
+            return this;
+        }
+
+        @Override
+        public final boolean next() {
+            while (index < endIndex) {
+                int edgeKey = adjacency.getEdgeKey(index);
+                adjNode = adjacency.getAdjNode(index);
+                index++;
+                edgeId = GHUtility.getEdgeFromEdgeKey(edgeKey);
+                edgePointer = store.toEdgePointer(edgeId);
+                reverse = (edgeKey & 1) != 0;
+                if (filter.accept(this))
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public EdgeIteratorState detach(boolean reverseArg) {
+            if (index == startIndex)
+                throw new IllegalStateException("call next before detaching (edgeId:" + edgeId + ")");
+            return super.detach(reverseArg);
+        }
+    }
+
     /**
      * Include all edges of this storage in the iterator.
      */
@@ -30,16 +30,27 @@ import static com.graphhopper.util.EdgeIterator.NO_EDGE;
 import static com.graphhopper.util.Helper.nf;
 
 /**
- * Underlying storage for nodes and edges of {@link BaseGraph}. Nodes and edges are stored using two {@link DataAccess}
- * instances. Nodes and edges are simply stored sequentially, see the memory layout in the constructor.
+ * Underlying storage for nodes and edges of {@link BaseGraph}. Nodes and edges are stored using three {@link DataAccess}
+ * instances. Nodes and edges are simply stored sequentially, see the memory layout in the constructor. The edge
+ * records are split into a 'hot' part that is read during the route search and a 'cold' part with the references
+ * to the way geometry and the key-values that are only needed to build the response. This way more of the data that
+ * is read in the routing hot loops fits into the CPU caches.
  */
 class BaseGraphNodesAndEdges implements EdgeIntAccess {
     // Currently distances are stored as 4 byte integers. using a conversion factor of 1000 the minimum distance
     // that is not considered zero is 0.0005m (=0.5mm) and the maximum distance per edge is about 2.147.483m=2147km.
     // See OSMReader.addEdge and #1871.
     private static final double INT_DIST_FACTOR = 1000d;
+    // the last version of the edges before the geometry and key-value references were moved into edge_refs
+    static final int VERSION_EDGE_COMBINED = 24;
+    // the position of the flags in the edge records of version 24
+    private static final int OLD_FLAGS = 24;
+    // the compacted edge records are stored here while the edges are migrated
+    static final String MIGRATED_EDGES = "edges_migrated";
     static double MAX_DIST = Integer.MAX_VALUE / INT_DIST_FACTOR;
 
+    private final Directory dir;
+
     // nodes
     private final DataAccess nodes;
     private final int N_EDGE_REF, N_LAT, N_LON, N_ELE, N_TC;
@@ -48,11 +59,17 @@ class BaseGraphNodesAndEdges implements EdgeIntAccess {
 
     // edges
     private final DataAccess edges;
-    private final int E_NODEA, E_NODEB, E_LINKA, E_LINKB, E_DIST, E_KV, E_FLAGS, E_GEO;
+    private final int E_NODEA, E_NODEB, E_LINKA, E_LINKB, E_DIST, E_FLAGS;
     private final int bytesForFlags;
     private int edgeEntryBytes;
     private int edgeCount;
 
+    // edge references to geometry and key-values, one entry for every edge
+    private final DataAccess edgeRefs;
+    private final int E_KV, E_GEO;
+    private final int edgeRefEntryBytes;
+    private boolean migrationPending;
+
     private final boolean withTurnCosts;
     private final boolean withElevation;
 
@@ -63,8 +80,10 @@ class BaseGraphNodesAndEdges implements EdgeIntAccess {
     private boolean frozen;
 
     public BaseGraphNodesAndEdges(Directory dir, boolean withElevation, boolean withTurnCosts, int segmentSize, int bytesForFlags) {
+        this.dir = dir;
         nodes = dir.create("nodes", dir.getDefaultType("nodes", true), segmentSize);
         edges = dir.create("edges", dir.getDefaultType("edges", false), segmentSize);
+        edgeRefs = dir.create("edge_refs", dir.getDefaultType("edge_refs", false), segmentSize);
         this.bytesForFlags = bytesForFlags;
         this.withTurnCosts = withTurnCosts;
         this.withElevation = withElevation;
@@ -78,23 +97,32 @@ class BaseGraphNodesAndEdges implements EdgeIntAccess {
         N_TC = N_ELE + (withTurnCosts ? 4 : 0);
         nodeEntryBytes = N_TC + 4;
 
-        // memory layout for edges
+        // memory layout for edges. the distance is needed by (almost) all weightings so we keep it with the hot fields
         E_NODEA = 0;
         E_NODEB = 4;
         E_LINKA = 8;
         E_LINKB = 12;
         E_DIST = 16;
-        E_KV = 20;
-        E_FLAGS = 24;
-        E_GEO = E_FLAGS + bytesForFlags;
-        edgeEntryBytes = E_GEO + 5;
+        E_FLAGS = 20;
+        edgeEntryBytes = E_FLAGS + bytesForFlags;
+
+        // memory layout for edge references
+        E_KV = 0;
+        E_GEO = 4;
+        edgeRefEntryBytes = E_GEO + 5;
     }
 
     public void create(long initSize) {
         nodes.create(initSize);
         edges.create(initSize);
+        edgeRefs.create(initSize);
     }
 
+    /**
+     * Loads the nodes and edges and checks their versions. This method never changes the stored data. If the edges
+     * still use the layout of version 24 they need to be migrated with {@link #migrateIfNeeded()}, which should only
+     * be called once the other files of the graph were checked as well.
+     */
     public boolean loadExisting() {
         if (!nodes.loadExisting() || !edges.loadExisting())
             return false;
@@ -120,9 +148,22 @@ class BaseGraphNodesAndEdges implements EdgeIntAccess {
         frozen = nodes.getHeader(10 * 4) == 1;
 
         final int edgesVersion = edges.getHeader(0 * 4);
-        GHUtility.checkDAVersion("edges", Constants.VERSION_EDGE, edgesVersion);
-        edgeEntryBytes = edges.getHeader(1 * 4);
         edgeCount = edges.getHeader(2 * 4);
+        if (edgesVersion == VERSION_EDGE_COMBINED) {
+            // graph folders created before the hot/cold split of the edges can still be loaded, see migrateIfNeeded.
+            // the edges keep this version until a migration is completely finished, even if it was interrupted
+            if (!edges.getType().isAllowWrites())
+                throw new IllegalStateException("Cannot migrate edges of version " + VERSION_EDGE_COMBINED + " with read-only DataAccess " + edges.getType());
+            int oldEdgeEntryBytes = edges.getHeader(1 * 4);
+            if (oldEdgeEntryBytes != OLD_FLAGS + bytesForFlags + 5)
+                throw new IllegalStateException("Unexpected edge entry bytes " + oldEdgeEntryBytes + " for edges with version " + VERSION_EDGE_COMBINED + ", bytes for flags: " + bytesForFlags);
+            migrationPending = true;
+        } else {
+            if (!edgeRefs.loadExisting())
+                throw new IllegalStateException("Missing edge_refs file for edges with version " + edgesVersion);
+            GHUtility.checkDAVersion("edges", Constants.VERSION_EDGE, edgesVersion);
+            edgeEntryBytes = edges.getHeader(1 * 4);
+        }
         return true;
     }
 
@@ -145,12 +186,93 @@ class BaseGraphNodesAndEdges implements EdgeIntAccess {
         edges.setHeader(1 * 4, edgeEntryBytes);
         edges.setHeader(2 * 4, edgeCount);
 
+        edgeRefs.setHeader(0 * 4, Constants.VERSION_EDGE);
+        edgeRefs.setHeader(1 * 4, edgeRefEntryBytes);
+        edgeRefs.setHeader(2 * 4, edgeCount);
+
         edges.flush();
+        edgeRefs.flush();
         nodes.flush();
     }
 
+    /**
+     * Up to version 24 the references to the geometry and the key-values were stored in the edges DataAccess, at
+     * bytes 20-23 and behind the flags. Here we move them into the edge_refs DataAccess and write the compacted edge
+     * records to a separate DataAccess first, so the original records stay untouched until the new ones are stored
+     * completely. Only then the compacted records are copied into the edges and the new version is written as the very
+     * last step. If this is interrupted the migration is either started from scratch or, if the compacted records were
+     * already stored, the copying is repeated. Does nothing if the edges were loaded with the current layout.
+     */
+    public void migrateIfNeeded() {
+        if (!migrationPending)
+            return;
+        migrationPending = false;
+        DataAccess migratedEdges = dir.create(MIGRATED_EDGES, edges.getType(), edges.getSegmentSize());
+        if (loadMigratedEdges(migratedEdges)) {
+            if (!edgeRefs.loadExisting())
+                throw new IllegalStateException("Missing edge_refs file for the migrated edges");
+        } else {
+            dir.remove(MIGRATED_EDGES);
+            migratedEdges = dir.create(MIGRATED_EDGES, edges.getType(), edges.getSegmentSize());
+            compactEdges(migratedEdges);
+        }
+
+        // the edges keep the old version until all compacted records were copied
+        byte[] record = new byte[edgeEntryBytes];
+        for (int edge = 0; edge < edgeCount; edge++) {
+            long pointer = (long) edge * edgeEntryBytes;
+            migratedEdges.getBytes(pointer, record, edgeEntryBytes);
+            edges.setBytes(pointer, record, edgeEntryBytes);
+        }
+        edges.flush();
+        edges.setHeader(0 * 4, Constants.VERSION_EDGE);
+        edges.setHeader(1 * 4, edgeEntryBytes);
+        edges.flush();
+        dir.remove(MIGRATED_EDGES);
+    }
+
+    private boolean loadMigratedEdges(DataAccess migratedEdges) {
+        try {
+            return migratedEdges.loadExisting() && migratedEdges.getHeader(0 * 4) == Constants.VERSION_EDGE;
+        } catch (IllegalStateException ex) {
+            // a crash while the compacted records were flushed for the first time can leave an incomplete file
+            return false;
+        }
+    }
+
+    private void compactEdges(DataAccess migratedEdges) {
+        final int oldEdgeEntryBytes = edges.getHeader(1 * 4), oldKV = 20, oldGeo = OLD_FLAGS + bytesForFlags;
+        migratedEdges.create(Math.max(100, (long) edgeCount * edgeEntryBytes));
+        edgeRefs.create(Math.max(100, (long) edgeCount * edgeRefEntryBytes));
+        byte[] record = new byte[edgeEntryBytes];
+        for (int edge = 0; edge < edgeCount; edge++) {
+            long oldPointer = (long) edge * oldEdgeEntryBytes;
+            long refPointer = (long) edge * edgeRefEntryBytes;
+            // the first 20 bytes (nodes, links and distance) are the same in both layouts, followed by the flags
+            edges.getBytes(oldPointer, record, E_FLAGS);
+            for (int i = 0; i < bytesForFlags; i++)
+                record[E_FLAGS + i] = edges.getByte(oldPointer + OLD_FLAGS + i);
+            migratedEdges.setBytes((long) edge * edgeEntryBytes, record, edgeEntryBytes);
+            edgeRefs.setInt(refPointer + E_KV, edges.getInt(oldPointer + oldKV));
+            edgeRefs.setInt(refPointer + E_GEO, edges.getInt(oldPointer + oldGeo));
+            edgeRefs.setByte(refPointer + E_GEO + 4, edges.getByte(oldPointer + oldGeo + 4));
+        }
+        edgeRefs.setHeader(0 * 4, Constants.VERSION_EDGE);
+        edgeRefs.setHeader(1 * 4, edgeRefEntryBytes);
+        edgeRefs.setHeader(2 * 4, edgeCount);
+        edgeRefs.flush();
+        // the header is written before the records, so the version marks the compacted records as complete only
+        // with the second flush
+        migratedEdges.setHeader(1 * 4, edgeEntryBytes);
+        migratedEdges.setHeader(2 * 4, edgeCount);
+        migratedEdges.flush();
+        migratedEdges.setHeader(0 * 4, Constants.VERSION_EDGE);
+        migratedEdges.flush();
+    }
+
     public void close() {
         edges.close();
+        edgeRefs.close();
         nodes.close();
     }
 
@@ -183,7 +305,7 @@ class BaseGraphNodesAndEdges implements EdgeIntAccess {
     }
 
     public long getCapacity() {
-        return nodes.getCapacity() + edges.getCapacity();
+        return nodes.getCapacity() + edges.getCapacity() + edgeRefs.getCapacity();
     }
 
     public boolean isClosed() {
@@ -201,6 +323,7 @@ class BaseGraphNodesAndEdges implements EdgeIntAccess {
         final long edgePointer = (long) edgeCount * edgeEntryBytes;
         edgeCount++;
         edges.ensureCapacity((long) edgeCount * edgeEntryBytes);
+        edgeRefs.ensureCapacity((long) edgeCount * edgeRefEntryBytes);
 
         setNodeA(edgePointer, nodeA);
         setNodeB(edgePointer, nodeB);
@@ -354,6 +477,10 @@ class BaseGraphNodesAndEdges implements EdgeIntAccess {
         return (long) edge * edgeEntryBytes;
     }
 
+    private long toEdgeRefPointer(long edgePointer) {
+        return edgePointer / edgeEntryBytes * edgeRefEntryBytes;
+    }
+
     public void readFlags(long edgePointer, IntsRef edgeFlags) {
         int size = edgeFlags.ints.length;
         for (int i = 0; i < size; ++i)
@@ -438,12 +565,13 @@ class BaseGraphNodesAndEdges implements EdgeIntAccess {
         if (highest25Bits != 0 && highest25Bits != 0x1_FF_FFFF)
             throw new IllegalArgumentException("geoRef is too " + (geoRef > 0 ? "large " : "small ") + geoRef + ", " + Long.toBinaryString(geoRef));
 
-        edges.setInt(edgePointer + E_GEO, (int) (geoRef));
-        edges.setByte(edgePointer + E_GEO + 4, (byte) (geoRef >> 32));
+        long refPointer = toEdgeRefPointer(edgePointer);
+        edgeRefs.setInt(refPointer + E_GEO, (int) (geoRef));
+        edgeRefs.setByte(refPointer + E_GEO + 4, (byte) (geoRef >> 32));
     }
 
     public void setKeyValuesRef(long edgePointer, int nameRef) {
-        edges.setInt(edgePointer + E_KV, nameRef);
+        edgeRefs.setInt(toEdgeRefPointer(edgePointer) + E_KV, nameRef);
     }
 
     public int getNodeA(long edgePointer) {
@@ -469,14 +597,15 @@ class BaseGraphNodesAndEdges implements EdgeIntAccess {
     }
 
     public long getGeoRef(long edgePointer) {
+        long refPointer = toEdgeRefPointer(edgePointer);
         return BitUtil.LITTLE.toLong(
-                edges.getInt(edgePointer + E_GEO),
+                edgeRefs.getInt(refPointer + E_GEO),
                 // to support negative georefs (#2985) do not mask byte with 0xFF:
-                edges.getByte(edgePointer + E_GEO + 4));
+                edgeRefs.getByte(refPointer + E_GEO + 4));
     }
 
     public int getKeyValuesRef(long edgePointer) {
-        return edges.getInt(edgePointer + E_KV);
+        return edgeRefs.getInt(toEdgeRefPointer(edgePointer) + E_KV);
     }
 
     public void setEdgeRef(long nodePointer, int edgeRef) {
@@ -571,7 +700,7 @@ class BaseGraphNodesAndEdges implements EdgeIntAccess {
     }
 
     public String toDetailsString() {
-        return "edges: " + nf(edgeCount) + "(" + edges.getCapacity() / Helper.MB + "MB), "
+        return "edges: " + nf(edgeCount) + "(" + edges.getCapacity() / Helper.MB + "MB + " + edgeRefs.getCapacity() / Helper.MB + "MB), "
                 + "nodes: " + nf(nodeCount) + "(" + nodes.getCapacity() / Helper.MB + "MB), "
                 + "bounds: " + bounds;
     }
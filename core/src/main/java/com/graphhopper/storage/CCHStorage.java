@@ -0,0 +1,251 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.storage;
+
+import com.graphhopper.util.Constants;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+
+import static com.graphhopper.util.Helper.nf;
+
+/**
+ * DataAccess-based storage for the metric-independent part of a customizable contraction hierarchy (CCH). Unlike
+ * {@link CHStorage} it does not depend on a weighting: it stores a rank for every node and the 'arcs' of the
+ * chordal supergraph of the base graph that results from contracting the nodes in this order. The weights of the arcs
+ * are calculated later, for a specific weighting, see the CCHCustomizer.
+ * <p>
+ * All arcs point from a lower to a higher rank. They are stored sorted by their tail rank and within the same tail
+ * rank by their head rank, so the arcs leaving a rank can be found via {@link #getFirstUpArc}. Additionally, we store
+ * the 'down' entries, i.e. for every rank the arcs entering it sorted by their tail rank.
+ *
+ * @see com.graphhopper.routing.ch.PrepareCustomizableCH to build this storage
+ */
+public class CCHStorage {
+    // nodes
+    private final DataAccess nodes;
+    private final int N_NODE_OF_RANK, N_RANK_OF_NODE, N_FIRST_UP, N_FIRST_DOWN;
+    private int nodeEntryBytes;
+    private int nodeCount = -1;
+
+    // arcs
+    private final DataAccess arcs;
+    private final int A_HEAD;
+    private int arcEntryBytes;
+    private int arcCount;
+
+    // down entries
+    private final DataAccess downs;
+    private final int D_TAIL, D_ARC;
+    private int downEntryBytes;
+
+    public CCHStorage(Directory dir, int segmentSize) {
+        this.nodes = dir.create("cch_nodes", dir.getDefaultType("cch_nodes", true), segmentSize);
+        this.arcs = dir.create("cch_arcs", dir.getDefaultType("cch_arcs", true), segmentSize);
+        this.downs = dir.create("cch_downs", dir.getDefaultType("cch_downs", true), segmentSize);
+        // nodes are stored using this layout. the node and rank columns are independent of each other: at index i we
+        // store the node that has rank i and the rank of node i. there is one additional entry so we can look up the
+        // arc ranges of the last rank.
+        // NODE_OF_RANK | RANK_OF_NODE | FIRST_UP | FIRST_DOWN
+        N_NODE_OF_RANK = 0;
+        N_RANK_OF_NODE = N_NODE_OF_RANK + 4;
+        N_FIRST_UP = N_RANK_OF_NODE + 4;
+        N_FIRST_DOWN = N_FIRST_UP + 4;
+        nodeEntryBytes = N_FIRST_DOWN + 4;
+
+        // HEAD
+        A_HEAD = 0;
+        arcEntryBytes = A_HEAD + 4;
+
+        // TAIL | ARC
+        D_TAIL = 0;
+        D_ARC = D_TAIL + 4;
+        downEntryBytes = D_ARC + 4;
+    }
+
+    /**
+     * Creates a new storage. Alternatively we could load an existing one using {@link #loadExisting()}.
+     *
+     * @param rankOfNode the rank for every node, this must be a permutation of 0..nodes-1
+     * @param firstUp    the index of the first arc leaving each rank, followed by the total number of arcs
+     * @param heads      the head ranks of all arcs
+     */
+    public void create(int[] rankOfNode, int[] firstUp, int[] heads) {
+        if (nodeCount >= 0)
+            throw new IllegalStateException("CCHStorage can only be created once");
+        if (firstUp.length != rankOfNode.length + 1)
+            throw new IllegalArgumentException("firstUp must contain one entry more than there are nodes, " + firstUp.length + " vs. " + rankOfNode.length);
+        nodeCount = rankOfNode.length;
+        arcCount = firstUp[nodeCount];
+        nodes.create((long) (nodeCount + 1) * nodeEntryBytes);
+        arcs.create((long) arcCount * arcEntryBytes);
+        downs.create((long) arcCount * downEntryBytes);
+        for (int node = 0; node < nodeCount; node++) {
+            nodes.setInt(toNodePointer(node) + N_RANK_OF_NODE, rankOfNode[node]);
+            nodes.setInt(toNodePointer(rankOfNode[node]) + N_NODE_OF_RANK, node);
+        }
+        int[] inDegrees = new int[nodeCount];
+        for (int rank = 0; rank <= nodeCount; rank++)
+            nodes.setInt(toNodePointer(rank) + N_FIRST_UP, firstUp[rank]);
+        for (int arc = 0; arc < arcCount; arc++) {
+            arcs.setInt((long) arc * arcEntryBytes + A_HEAD, heads[arc]);
+            inDegrees[heads[arc]]++;
+        }
+        int[] nextDown = new int[nodeCount];
+        int firstDown = 0;
+        for (int rank = 0; rank < nodeCount; rank++) {
+            nodes.setInt(toNodePointer(rank) + N_FIRST_DOWN, firstDown);
+            nextDown[rank] = firstDown;
+            firstDown += inDegrees[rank];
+        }
+        nodes.setInt(toNodePointer(nodeCount) + N_FIRST_DOWN, firstDown);
+        // we iterate the tails in ascending order, so the down entries of each rank end up sorted by their tails
+        for (int tail = 0; tail < nodeCount; tail++) {
+            for (int arc = firstUp[tail]; arc < firstUp[tail + 1]; arc++) {
+                long downPointer = (long) nextDown[heads[arc]]++ * downEntryBytes;
+                downs.setInt(downPointer + D_TAIL, tail);
+                downs.setInt(downPointer + D_ARC, arc);
+            }
+        }
+    }
+
+    public void flush() {
+        nodes.setHeader(0, Constants.VERSION_CCH);
+        nodes.setHeader(4, nodeCount);
+        nodes.setHeader(8, nodeEntryBytes);
+        nodes.flush();
+
+        arcs.setHeader(0, Constants.VERSION_CCH);
+        arcs.setHeader(4, arcCount);
+        arcs.setHeader(8, arcEntryBytes);
+        arcs.flush();
+
+        downs.setHeader(0, Constants.VERSION_CCH);
+        downs.setHeader(4, arcCount);
+        downs.setHeader(8, downEntryBytes);
+        downs.flush();
+    }
+
+    public boolean loadExisting() {
+        if (!nodes.loadExisting() || !arcs.loadExisting() || !downs.loadExisting())
+            return false;
+
+        GHUtility.checkDAVersion(nodes.getName(), Constants.VERSION_CCH, nodes.getHeader(0));
+        nodeCount = nodes.getHeader(4);
+        nodeEntryBytes = nodes.getHeader(8);
+
+        GHUtility.checkDAVersion(arcs.getName(), Constants.VERSION_CCH, arcs.getHeader(0));
+        arcCount = arcs.getHeader(4);
+        arcEntryBytes = arcs.getHeader(8);
+
+        GHUtility.checkDAVersion(downs.getName(), Constants.VERSION_CCH, downs.getHeader(0));
+        downEntryBytes = downs.getHeader(8);
+        return true;
+    }
+
+    public void close() {
+        nodes.close();
+        arcs.close();
+        downs.close();
+    }
+
+    public boolean isClosed() {
+        return nodes.isClosed();
+    }
+
+    /**
+     * The number of nodes (and ranks) of this storage.
+     */
+    public int getNodes() {
+        return nodeCount;
+    }
+
+    /**
+     * The number of arcs of this storage, i.e. the number of edges of the chordal supergraph
+     */
+    public int getArcs() {
+        return arcCount;
+    }
+
+    private long toNodePointer(int nodeOrRank) {
+        assert nodeOrRank >= 0 && nodeOrRank <= nodeCount : "node or rank not in bounds: [0, " + nodeCount + "]";
+        return (long) nodeOrRank * nodeEntryBytes;
+    }
+
+    public int getRank(int node) {
+        return nodes.getInt(toNodePointer(node) + N_RANK_OF_NODE);
+    }
+
+    public int getNode(int rank) {
+        return nodes.getInt(toNodePointer(rank) + N_NODE_OF_RANK);
+    }
+
+    /**
+     * @return the first arc leaving the given rank. the arcs of rank r are [getFirstUpArc(r), getFirstUpArc(r+1)[
+     */
+    public int getFirstUpArc(int rank) {
+        return nodes.getInt(toNodePointer(rank) + N_FIRST_UP);
+    }
+
+    public int getHead(int arc) {
+        return arcs.getInt((long) arc * arcEntryBytes + A_HEAD);
+    }
+
+    /**
+     * @return the first down entry of the given rank. the down entries of rank r are [getFirstDown(r), getFirstDown(r+1)[
+     */
+    public int getFirstDown(int rank) {
+        return nodes.getInt(toNodePointer(rank) + N_FIRST_DOWN);
+    }
+
+    public int getDownTail(int down) {
+        return downs.getInt((long) down * downEntryBytes + D_TAIL);
+    }
+
+    public int getDownArc(int down) {
+        return downs.getInt((long) down * downEntryBytes + D_ARC);
+    }
+
+    /**
+     * @return the arc from tail to head or -1 if there is no such arc. tail must be smaller than head.
+     */
+    public int findArc(int tail, int head) {
+        int low = getFirstUpArc(tail);
+        int high = getFirstUpArc(tail + 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midHead = getHead(mid);
+            if (midHead < head)
+                low = mid + 1;
+            else if (midHead > head)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    public long getCapacity() {
+        return nodes.getCapacity() + arcs.getCapacity() + downs.getCapacity();
+    }
+
+    public String toDetailsString() {
+        return "cch arcs:" + nf(arcCount) + " (" + nf((arcs.getCapacity() + downs.getCapacity()) / Helper.MB) + "MB)" +
+                ", cch nodes:" + nf(nodeCount) + " (" + nf(nodes.getCapacity() / Helper.MB) + "MB)";
+    }
+}
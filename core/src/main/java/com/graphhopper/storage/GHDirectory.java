@@ -139,6 +139,10 @@ public class GHDirectory implements Directory {
                 da = new RAMDataAccess(name, location, false, segmentSize);
         } else if (type.isMMap()) {
             da = new MMapDataAccess(name, location, type.isAllowWrites(), segmentSize);
+        } else if (type.isOffHeap()) {
+            if (type.isInteg())
+                throw new IllegalArgumentException("DAType not supported " + type);
+            da = new OffHeapDataAccess(name, location, type.isStoring(), segmentSize);
         } else {
             throw new IllegalArgumentException("DAType not supported " + type);
         }
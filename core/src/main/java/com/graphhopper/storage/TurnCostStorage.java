@@ -22,10 +22,12 @@ import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.DecimalEncodedValue;
 import com.graphhopper.routing.ev.EdgeIntAccess;
 import com.graphhopper.routing.ev.IntsRefEdgeIntAccess;
+import com.graphhopper.util.ArrayUtil;
 import com.graphhopper.util.Constants;
 import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.GHUtility;
 
+import java.util.Arrays;
 import java.util.function.IntUnaryOperator;
 
 /**
@@ -49,6 +51,10 @@ public class TurnCostStorage {
     private final DataAccess turnCosts;
     private final EdgeIntAccess edgeIntAccess = createEdgeIntAccess();
     private int turnCostsCount;
+    // true if the entries of every node are stored consecutively and sorted by (from_edge, to_edge), see sortAndIndex
+    private boolean sorted;
+    // optional, only available if the entries are sorted
+    private volatile Index index;
 
     public TurnCostStorage(BaseGraph baseGraph, DataAccess turnCosts) {
         this.baseGraph = baseGraph;
@@ -64,10 +70,12 @@ public class TurnCostStorage {
         turnCosts.setHeader(0, Constants.VERSION_TURN_COSTS);
         turnCosts.setHeader(4, BYTES_PER_ENTRY);
         turnCosts.setHeader(2 * 4, turnCostsCount);
+        turnCosts.setHeader(3 * 4, sorted ? 1 : 0);
         turnCosts.flush();
     }
 
     public void close() {
+        index = null;
         turnCosts.close();
     }
 
@@ -84,6 +92,9 @@ public class TurnCostStorage {
             throw new IllegalStateException("Number of bytes per turn cost entry does not match the current configuration: " + turnCosts.getHeader(0) + " vs. " + BYTES_PER_ENTRY);
         }
         turnCostsCount = turnCosts.getHeader(8);
+        sorted = turnCosts.getHeader(12) == 1;
+        if (sorted)
+            index = Index.fromStorage(this);
         return true;
     }
 
@@ -110,6 +121,9 @@ public class TurnCostStorage {
             // create a new entry
             index = turnCostsCount;
             ensureTurnCostIndex(index);
+            // the new entry is only added to the linked list of the via node
+            sorted = false;
+            this.index = null;
             int prevIndex = baseGraph.getNodeAccess().getTurnCostIndex(viaNode);
             baseGraph.getNodeAccess().setTurnCostIndex(viaNode, index);
             long pointer = toPointer(index);
@@ -159,8 +173,15 @@ public class TurnCostStorage {
         if (viaNode < 0)
             throw new IllegalArgumentException("via node cannot be negative");
 
-        final int maxEntries = 1000;
         int index = baseGraph.getNodeAccess().getTurnCostIndex(viaNode);
+        Index sortedIndex = this.index;
+        if (sortedIndex != null) {
+            if (index == NO_TURN_ENTRY) return -1;
+            int result = Arrays.binarySearch(sortedIndex.keys, index, sortedIndex.ends[index], toKey(fromEdge, toEdge));
+            return result < 0 ? -1 : result;
+        }
+
+        final int maxEntries = 1000;
         for (int i = 0; i < maxEntries; ++i) {
             if (index == NO_TURN_ENTRY) return -1;
             long pointer = toPointer(index);
@@ -172,6 +193,8 @@ public class TurnCostStorage {
     }
 
     public void sortEdges(IntUnaryOperator getNewEdgeForOldEdge) {
+        sorted = false;
+        index = null;
         for (int i = 0; i < turnCostsCount; i++) {
             long pointer = toPointer(i);
             turnCosts.setInt(pointer + TC_FROM, getNewEdgeForOldEdge.applyAsInt(turnCosts.getInt(pointer + TC_FROM)));
@@ -179,6 +202,10 @@ public class TurnCostStorage {
         }
     }
 
+    private static long toKey(int fromEdge, int toEdge) {
+        return ((long) fromEdge << 32) | toEdge;
+    }
+
     private long toPointer(int index) {
         return (long) index * BYTES_PER_ENTRY;
     }
@@ -220,6 +247,26 @@ public class TurnCostStorage {
     }
 
     public void sortNodes() {
+        rewriteEntries(false);
+    }
+
+    /**
+     * Stores the entries of every node consecutively and sorted by (from_edge, to_edge) and creates an in-memory
+     * index of 12 bytes per entry. Afterwards lookups are a binary search over the entries of the via node instead of
+     * a walk through its linked list. The linked lists stay valid, so adding an entry later is still possible, but
+     * it drops the index.
+     */
+    public void sortAndIndex() {
+        if (!sorted)
+            rewriteEntries(true);
+        index = Index.fromStorage(this);
+    }
+
+    boolean hasIndex() {
+        return index != null;
+    }
+
+    private void rewriteEntries(boolean sortByEdges) {
         IntArrayList tcFroms = new IntArrayList();
         IntArrayList tcTos = new IntArrayList();
         IntArrayList tcFlags = new IntArrayList();
@@ -233,28 +280,67 @@ public class TurnCostStorage {
         }
         long turnCostsCountBefore = turnCostsCount;
         turnCostsCount = 0;
+        IntArrayList nodeEntries = new IntArrayList();
         for (int node = 0; node < baseGraph.getNodes(); node++) {
-            boolean firstForNode = true;
+            nodeEntries.elementsCount = 0;
             int turnCostIndex = baseGraph.getNodeAccess().getTurnCostIndex(node);
             while (turnCostIndex != NO_TURN_ENTRY) {
-                if (firstForNode) {
-                    baseGraph.getNodeAccess().setTurnCostIndex(node, turnCostsCount);
-                } else {
-                    long prevPointer = toPointer(turnCostsCount - 1);
-                    turnCosts.setInt(prevPointer + TC_NEXT, turnCostsCount);
-                }
+                nodeEntries.add(turnCostIndex);
+                turnCostIndex = tcNexts.get(turnCostIndex);
+            }
+            if (nodeEntries.isEmpty())
+                continue;
+            int[] entries = nodeEntries.toArray();
+            if (sortByEdges)
+                entries = ArrayUtil.applyOrder(entries, ArrayUtil.calcSortOrder(
+                        ArrayUtil.applyOrder(tcFroms.buffer, entries), ArrayUtil.applyOrder(tcTos.buffer, entries), entries.length));
+            baseGraph.getNodeAccess().setTurnCostIndex(node, turnCostsCount);
+            for (int i = 0; i < entries.length; i++) {
+                int oldIndex = entries[i];
                 long pointer = toPointer(turnCostsCount);
-                turnCosts.setInt(pointer + TC_FROM, tcFroms.get(turnCostIndex));
-                turnCosts.setInt(pointer + TC_TO, tcTos.get(turnCostIndex));
-                turnCosts.setInt(pointer + TC_FLAGS, tcFlags.get(turnCostIndex));
-                turnCosts.setInt(pointer + TC_NEXT, NO_TURN_ENTRY);
+                turnCosts.setInt(pointer + TC_FROM, tcFroms.get(oldIndex));
+                turnCosts.setInt(pointer + TC_TO, tcTos.get(oldIndex));
+                turnCosts.setInt(pointer + TC_FLAGS, tcFlags.get(oldIndex));
+                turnCosts.setInt(pointer + TC_NEXT, i == entries.length - 1 ? NO_TURN_ENTRY : turnCostsCount + 1);
                 turnCostsCount++;
-                firstForNode = false;
-                turnCostIndex = tcNexts.get(turnCostIndex);
             }
         }
         if (turnCostsCountBefore != turnCostsCount)
             throw new IllegalStateException("Turn cost count changed unexpectedly: " + turnCostsCountBefore + " -> " + turnCostsCount);
+        // keeping the order of the entries of every node keeps them sorted as well
+        if (sortByEdges)
+            sorted = true;
+        index = null;
+    }
+
+    /**
+     * The (from_edge, to_edge) keys of all entries in the order of the storage and, at the first entry of every via
+     * node, the end of the entries of this node.
+     */
+    private static class Index {
+        final long[] keys;
+        final int[] ends;
+
+        private Index(long[] keys, int[] ends) {
+            this.keys = keys;
+            this.ends = ends;
+        }
+
+        static Index fromStorage(TurnCostStorage storage) {
+            long[] keys = new long[storage.turnCostsCount];
+            int[] ends = new int[storage.turnCostsCount];
+            for (int i = 0; i < keys.length; i++) {
+                long pointer = storage.toPointer(i);
+                keys[i] = toKey(storage.turnCosts.getInt(pointer + TC_FROM), storage.turnCosts.getInt(pointer + TC_TO));
+            }
+            for (int node = 0; node < storage.baseGraph.getNodes(); node++) {
+                int start = storage.baseGraph.getNodeAccess().getTurnCostIndex(node);
+                if (start == NO_TURN_ENTRY)
+                    continue;
+                ends[start] = start + storage.getTurnCostsCount(node);
+            }
+            return new Index(keys, ends);
+        }
     }
 
     public interface Iterator {
@@ -59,12 +59,13 @@ public class Constants {
     private static final int JVM_MINOR_VERSION;
 
     public static final int VERSION_NODE = 9;
-    public static final int VERSION_EDGE = 24;
+    public static final int VERSION_EDGE = 25;
     // this should be increased whenever the format of the serialized EncodingManager is changed
     public static final int VERSION_EM = 4;
     public static final int VERSION_SHORTCUT = 9;
     public static final int VERSION_NODE_CH = 0;
-    public static final int VERSION_GEOMETRY = 7;
+    public static final int VERSION_CCH = 0;
+    public static final int VERSION_GEOMETRY = 8;
     public static final int VERSION_TURN_COSTS = 0;
     public static final int VERSION_LOCATION_IDX = 5;
     public static final int VERSION_KV_STORAGE = 2;
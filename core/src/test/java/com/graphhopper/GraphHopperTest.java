@@ -23,6 +23,7 @@ import com.graphhopper.config.Profile;
 import com.graphhopper.reader.ReaderWay;
 import com.graphhopper.reader.dem.SRTMProvider;
 import com.graphhopper.reader.dem.SkadiProvider;
+import com.graphhopper.routing.SnapCache;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.util.AllEdgesIterator;
@@ -30,6 +31,7 @@ import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.countryrules.CountryRuleFactory;
 import com.graphhopper.routing.util.parsers.OSMRoadEnvironmentParser;
+import com.graphhopper.routing.weighting.MaterializedWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.IntsRef;
 import com.graphhopper.storage.index.LocationIndexTree;
@@ -56,8 +58,13 @@ import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static com.graphhopper.json.Statement.If;
 import static com.graphhopper.json.Statement.Op.LIMIT;
@@ -141,6 +148,76 @@ public class GraphHopperTest {
         assertTrue(rsp.getErrors().toString().contains("ConnectionNotFoundException"), rsp.getErrors().toString());
     }
 
+    @Test
+    public void testRouteWithSnapCache() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                importOrLoad();
+        SnapCache snapCache = new SnapCache(100);
+        List<GHRequest> requests = List.of(
+                new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile"),
+                new GHRequest(43.74958, 7.436566, 43.727687, 7.418737).setProfile("profile"),
+                new GHRequest(43.727687, 7.418737, 43.73, 7.42).setProfile("profile"),
+                new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile"));
+        for (GHRequest request : requests) {
+            GHResponse rsp = hopper.route(request);
+            GHResponse cachedRsp = hopper.route(request, snapCache);
+            assertFalse(cachedRsp.hasErrors(), cachedRsp.getErrors().toString());
+            assertEquals(rsp.getBest().getDistance(), cachedRsp.getBest().getDistance(), 1.e-6);
+            assertEquals(rsp.getBest().getPoints(), cachedRsp.getBest().getPoints());
+        }
+        assertEquals(3, snapCache.size());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ch", "lm", "flex"})
+    public void testConcurrentLegs(String mode) {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car"));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("profile"));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile("profile"));
+        hopper.importOrLoad();
+        GHRequest request = new GHRequest().setProfile("profile").
+                addPoint(new GHPoint(43.727687, 7.418737)).
+                addPoint(new GHPoint(43.74958, 7.436566)).
+                addPoint(new GHPoint(43.73, 7.42)).
+                addPoint(new GHPoint(43.739213, 7.427806)).
+                addPoint(new GHPoint(43.727687, 7.418737));
+        request.putHint(CH.DISABLE, !mode.equals("ch"));
+        request.putHint(Landmark.DISABLE, !mode.equals("lm"));
+        GHResponse rsp = hopper.route(request);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+
+        ExecutorService legExecutor = Executors.newFixedThreadPool(4);
+        try {
+            hopper.getRouterConfig().setLegExecutor(legExecutor);
+            GHResponse concurrentRsp = hopper.route(request);
+            assertFalse(concurrentRsp.hasErrors(), concurrentRsp.getErrors().toString());
+            assertEquals(rsp.getBest().getDistance(), concurrentRsp.getBest().getDistance(), 1.e-6);
+            assertEquals(rsp.getBest().getTime(), concurrentRsp.getBest().getTime());
+            assertEquals(rsp.getBest().getPoints(), concurrentRsp.getBest().getPoints());
+            assertEquals(rsp.getBest().getWaypoints(), concurrentRsp.getBest().getWaypoints());
+            assertEquals(rsp.getHints().getLong("visited_nodes.sum", -1), concurrentRsp.getHints().getLong("visited_nodes.sum", -2));
+
+            // pass_through requires the previous leg, so the legs are calculated one after another
+            if (!mode.equals("ch")) {
+                request.putHint(Routing.PASS_THROUGH, true);
+                rsp = hopper.route(request);
+                assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+                hopper.getRouterConfig().setLegExecutor(null);
+                assertEquals(rsp.getBest().getPoints(), hopper.route(request).getBest().getPoints());
+            }
+        } finally {
+            legExecutor.shutdownNow();
+        }
+    }
+
     @Test
     public void testMonacoWithInstructions() {
         final String profile = "profile";
@@ -729,6 +806,62 @@ public class GraphHopperTest {
         assertDistance(hopper, customCar, new CustomModel(customModelWithUnclassifiedRule).setDistanceInfluence(100d), 14475);
     }
 
+    @Test
+    public void testCustomModelWithCCH() {
+        final String customCar = "custom_car";
+        final String emptyCar = "empty_car";
+        Profile p1 = TestProfiles.accessAndSpeed(customCar, "car");
+        p1.getCustomModel().addToSpeed(If("road_class == TERTIARY || road_class == TRACK", MULTIPLY, "0.1"));
+        Profile p2 = TestProfiles.accessAndSpeed(emptyCar, "car");
+        GraphHopper hopper = new GraphHopper().
+                setEncodedValuesString("car_average_speed,car_access,road_class").
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(BAYREUTH).
+                setProfiles(p1, p2).
+                setCCHEnabled(true).
+                importOrLoad();
+        assertNotNull(hopper.getCustomizableCH());
+
+        // the same routes as in testCustomModel, but this time the requests with a custom model use the CCH
+        CustomModel strictCustomModel = new CustomModel().addToSpeed(
+                If("road_class == TERTIARY || road_class == TRACK || road_class == UNCLASSIFIED", MULTIPLY, "0.1"));
+        assertDistance(hopper, emptyCar, strictCustomModel, 19289);
+        assertDistance(hopper, emptyCar, new CustomModel(p1.getCustomModel()), 13223);
+        CustomModel customModelWithUnclassifiedRule = new CustomModel().addToSpeed(
+                If("road_class == UNCLASSIFIED", MULTIPLY, "0.1")
+        );
+        assertDistance(hopper, customCar, customModelWithUnclassifiedRule, 19289);
+        assertDistance(hopper, customCar, new CustomModel(customModelWithUnclassifiedRule).setDistanceInfluence(200d), 8725);
+        assertDistance(hopper, customCar, new CustomModel(customModelWithUnclassifiedRule).setDistanceInfluence(100d), 14475);
+        // requests without custom model are not affected
+        assertDistance(hopper, emptyCar, null, 8725);
+
+        // the CCH search explores far fewer nodes than the flexible mode
+        GHRequest req = new GHRequest(50.008732, 11.596413, 49.974361, 11.514509).
+                setProfile(emptyCar).
+                setCustomModel(strictCustomModel);
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        req.putHint(CH.DISABLE, true);
+        GHResponse flexRsp = hopper.route(req);
+        assertFalse(flexRsp.hasErrors(), flexRsp.getErrors().toString());
+        assertEquals(flexRsp.getBest().getDistance(), rsp.getBest().getDistance(), 1);
+        assertTrue(rsp.getHints().getLong("visited_nodes.sum", 0) < flexRsp.getHints().getLong("visited_nodes.sum", 0) / 2,
+                rsp.getHints().getLong("visited_nodes.sum", 0) + " vs. " + flexRsp.getHints().getLong("visited_nodes.sum", 0));
+        hopper.close();
+
+        // the CCH is loaded from disk
+        hopper = new GraphHopper().
+                setEncodedValuesString("car_average_speed,car_access,road_class").
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(p1, p2).
+                setCCHEnabled(true);
+        assertTrue(hopper.load());
+        assertNotNull(hopper.getCustomizableCH());
+        assertDistance(hopper, emptyCar, strictCustomModel, 19289);
+        hopper.close();
+    }
+
     private void assertDistance(GraphHopper hopper, String profile, CustomModel customModel, double expectedDistance) {
         GHRequest req = new GHRequest(50.008732, 11.596413, 49.974361, 11.514509);
         req.setProfile(profile);
@@ -2877,4 +3010,222 @@ public class GraphHopperTest {
         assertEquals(0.0, (double) p.get(1).getValue(), 1.e-3);
     }
 
+    @Test
+    public void testApplyOSMChange() throws IOException {
+        Supplier<GraphHopper> createHopper = () -> new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed, osm_way_id, road_class, max_speed").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                setStoreOnFlush(true);
+        GraphHopper hopper = createHopper.get();
+        hopper.importOrLoad();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).
+                setProfile("profile").
+                setPathDetails(Collections.singletonList(OSMWayID.KEY));
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3587.6, rsp.getBest().getDistance(), .1);
+        List<PathDetail> wayIds = rsp.getBest().getPathDetails().get(OSMWayID.KEY);
+        long deletedWay = ((Number) wayIds.get(wayIds.size() / 2).getValue()).longValue();
+        long modifiedWay = ((Number) wayIds.get(0).getValue()).longValue();
+        hopper.close();
+
+        File changeFile = new File(GH_LOCATION + "-change.osc");
+        try {
+            Files.writeString(changeFile.toPath(), "<osmChange version=\"0.6\">\n" +
+                    " <modify>\n" +
+                    "  <way id=\"" + modifiedWay + "\" version=\"2\">\n" +
+                    "   <nd ref=\"1\"/>\n" +
+                    "   <nd ref=\"2\"/>\n" +
+                    "   <tag k=\"highway\" v=\"residential\"/>\n" +
+                    "   <tag k=\"maxspeed\" v=\"20\"/>\n" +
+                    "  </way>\n" +
+                    " </modify>\n" +
+                    " <delete>\n" +
+                    "  <way id=\"" + deletedWay + "\" version=\"3\"/>\n" +
+                    " </delete>\n" +
+                    " <create>\n" +
+                    "  <way id=\"9999999999\" version=\"1\">\n" +
+                    "   <nd ref=\"1\"/>\n" +
+                    "   <nd ref=\"2\"/>\n" +
+                    "   <tag k=\"highway\" v=\"residential\"/>\n" +
+                    "  </way>\n" +
+                    " </create>\n" +
+                    "</osmChange>\n");
+            hopper = createHopper.get();
+            assertTrue(hopper.load());
+            // the created way cannot be added, so it has to be ignored explicitly
+            GraphHopper finalHopper = hopper;
+            IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> finalHopper.applyOSMChange(changeFile));
+            assertTrue(ex.getMessage().contains("creates 1 ways"), ex.getMessage());
+            assertEquals(3587.6, hopper.route(req).getBest().getDistance(), .1);
+            hopper.applyOSMChange(changeFile, true);
+        } finally {
+            changeFile.delete();
+        }
+
+        IntEncodedValue osmWayIdEnc = hopper.getEncodingManager().getIntEncodedValue(OSMWayID.KEY);
+        EnumEncodedValue<RoadClass> roadClassEnc = hopper.getEncodingManager().getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
+        DecimalEncodedValue maxSpeedEnc = hopper.getEncodingManager().getDecimalEncodedValue(MaxSpeed.KEY);
+        BooleanEncodedValue accessEnc = hopper.getEncodingManager().getBooleanEncodedValue(VehicleAccess.key("car"));
+        int modifiedEdges = 0, deletedEdges = 0;
+        AllEdgesIterator iter = hopper.getBaseGraph().getAllEdges();
+        while (iter.next()) {
+            if (iter.get(osmWayIdEnc) == modifiedWay) {
+                assertEquals(RoadClass.RESIDENTIAL, iter.get(roadClassEnc));
+                assertEquals(20, iter.get(maxSpeedEnc));
+                assertTrue(iter.get(accessEnc));
+                modifiedEdges++;
+            } else if (iter.get(osmWayIdEnc) == deletedWay) {
+                assertFalse(iter.get(accessEnc));
+                assertFalse(iter.getReverse(accessEnc));
+                deletedEdges++;
+            }
+        }
+        assertTrue(modifiedEdges > 0);
+        assertTrue(deletedEdges > 0);
+
+        // the deleted way cannot be used anymore
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertTrue(rsp.getBest().getDistance() > 3587.6, "distance: " + rsp.getBest().getDistance());
+        assertTrue(rsp.getBest().getPathDetails().get(OSMWayID.KEY).stream().noneMatch(d -> ((Number) d.getValue()).longValue() == deletedWay));
+        hopper.close();
+
+        // the changes were flushed
+        hopper = createHopper.get();
+        assertTrue(hopper.load());
+        assertEquals(rsp.getBest().getDistance(), hopper.route(req).getBest().getDistance(), 1.e-6);
+        hopper.close();
+    }
+
+    @Test
+    public void testApplyOSMChangeWithCCH() throws IOException {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed, osm_way_id, road_class").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                setCCHEnabled(true);
+        hopper.importOrLoad();
+        // requests with a custom model use the CCH
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).
+                setProfile("profile").
+                setCustomModel(new CustomModel().addToSpeed(If("road_class == TRACK", MULTIPLY, "0.5"))).
+                setPathDetails(Collections.singletonList(OSMWayID.KEY));
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        double distance = rsp.getBest().getDistance();
+        List<PathDetail> wayIds = rsp.getBest().getPathDetails().get(OSMWayID.KEY);
+        long deletedWay = ((Number) wayIds.get(wayIds.size() / 2).getValue()).longValue();
+
+        File changeFile = new File(GH_LOCATION + "-change.osc");
+        try {
+            Files.writeString(changeFile.toPath(), "<osmChange version=\"0.6\">\n" +
+                    " <delete>\n" +
+                    "  <way id=\"" + deletedWay + "\" version=\"3\"/>\n" +
+                    " </delete>\n" +
+                    "</osmChange>\n");
+            hopper.applyOSMChange(changeFile);
+        } finally {
+            changeFile.delete();
+        }
+
+        // the customized CH graph of the custom model is not used anymore, so the deleted way is avoided
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertTrue(rsp.getBest().getDistance() > distance, "distance: " + rsp.getBest().getDistance());
+        assertTrue(rsp.getBest().getPathDetails().get(OSMWayID.KEY).stream().noneMatch(d -> ((Number) d.getValue()).longValue() == deletedWay));
+        GHResponse flexRsp = hopper.route(new GHRequest(req.getPoints()).setProfile("profile").
+                setCustomModel(req.getCustomModel()).putHint(CH.DISABLE, true));
+        assertFalse(flexRsp.hasErrors(), flexRsp.getErrors().toString());
+        assertEquals(flexRsp.getBest().getDistance(), rsp.getBest().getDistance(), 1);
+        hopper.close();
+    }
+
+    @Test
+    public void testWeightCache() throws InterruptedException {
+        GraphHopper hopper = new GraphHopper().init(new GraphHopperConfig().
+                putObject("datareader.file", MONACO).
+                putObject("graph.location", GH_LOCATION).
+                putObject("graph.encoded_values", "car_access, car_average_speed, road_class").
+                putObject("import.osm.ignored_highways", "").
+                putObject("routing.weight_cache.size_mb", 10).
+                putObject("routing.weight_cache.min_requests", 2).
+                setProfiles(List.of(TestProfiles.accessAndSpeed("profile", "car"))));
+        hopper.importOrLoad();
+        MaterializedWeighting.Cache weightCache = hopper.getRouterConfig().getWeightCache();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        GHRequest customReq = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile").
+                setCustomModel(new CustomModel().addToPriority(If("road_class == PRIMARY", MULTIPLY, "0.1")));
+        List<ResponsePath> paths = new ArrayList<>();
+        List<ResponsePath> customPaths = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            paths.add(hopper.route(req).getBest());
+            customPaths.add(hopper.route(customReq).getBest());
+        }
+        // the weights of both weightings are calculated in the background after the second request
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (weightCache.size() < 2 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(2, weightCache.size());
+        paths.add(hopper.route(req).getBest());
+        customPaths.add(hopper.route(customReq).getBest());
+        for (List<ResponsePath> p : List.of(paths, customPaths)) {
+            assertEquals(p.get(0).getDistance(), p.get(2).getDistance(), 1.e-6);
+            assertEquals(p.get(0).getTime(), p.get(2).getTime());
+            assertEquals(p.get(0).getRouteWeight(), p.get(2).getRouteWeight(), p.get(0).getRouteWeight() * 1.e-6);
+        }
+        assertNotEquals(paths.get(2).getDistance(), customPaths.get(2).getDistance(), 1);
+        hopper.close();
+    }
+
+    @Test
+    public void testCustomModelClassStore() {
+        GraphHopper hopper = new GraphHopper().init(new GraphHopperConfig().
+                putObject("datareader.file", MONACO).
+                putObject("graph.location", GH_LOCATION).
+                putObject("graph.encoded_values", "car_access, car_average_speed, road_class").
+                putObject("import.osm.ignored_highways", "").
+                putObject("routing.custom_model_classes.store", true).
+                setProfiles(List.of(TestProfiles.accessAndSpeed("profile", "car"))));
+        hopper.importOrLoad();
+        File dir = new File(GH_LOCATION, "custom_model_classes");
+        // the class of the profile is compiled at startup
+        assertEquals(1, dir.listFiles((d, name) -> name.endsWith(".class")).length);
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile").
+                setCustomModel(new CustomModel().addToPriority(If("road_class == PRIMARY", MULTIPLY, "0.123")));
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(2, dir.listFiles((d, name) -> name.endsWith(".class")).length);
+        hopper.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testAreaEdgeCache(boolean areaEdgeCache) {
+        Profile profile = TestProfiles.accessAndSpeed("profile", "car");
+        profile.getCustomModel().addToPriority(If("in_area51", MULTIPLY, "0.1")).getAreas().getFeatures().add(
+                createRectangle("area51", 43.7312, 7.4190, 43.7320, 7.4210));
+        GraphHopper hopper = new GraphHopper().init(new GraphHopperConfig().
+                putObject("datareader.file", MONACO).
+                putObject("graph.location", GH_LOCATION).
+                putObject("graph.encoded_values", "car_access, car_average_speed").
+                putObject("import.osm.ignored_highways", "").
+                putObject("routing.area_edge_cache.enabled", areaEdgeCache).
+                setProfiles(List.of(profile)));
+        hopper.importOrLoad();
+        GHRequest req = new GHRequest(43.730729, 7.42135, 43.727697, 7.419199).setProfile("profile");
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        // without the area the route is 1505m long
+        assertEquals(3693, rsp.getBest().getDistance(), 1);
+        // a request with the same area uses the precomputed edges, too
+        req.setCustomModel(new CustomModel().addToPriority(If("in_area51", MULTIPLY, "0.01")));
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3693, rsp.getBest().getDistance(), 1);
+        hopper.close();
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.RAMDirectory;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GHSortedLongLongMapTest {
+
+    private GHSortedLongLongMap createMap() {
+        return new GHSortedLongLongMap(new RAMDirectory().create("sorted_map").create(100), -1);
+    }
+
+    @Test
+    public void testAppendAndUpdate() {
+        GHSortedLongLongMap map = createMap();
+        assertEquals(-1, map.get(5));
+        assertEquals(-1, map.put(5, 50));
+        assertEquals(-1, map.put(9485854858458484L, 21));
+        assertEquals(50, map.get(5));
+        assertEquals(21, map.get(9485854858458484L));
+        assertEquals(-1, map.get(6));
+        assertEquals(50, map.put(5, 51));
+        assertEquals(51, map.get(5));
+        assertEquals(2, map.getSize());
+        assertEquals(0, map.getUnsortedSize());
+    }
+
+    @Test
+    public void testReserve() {
+        GHSortedLongLongMap map = createMap();
+        assertTrue(map.reserve(3));
+        assertTrue(map.reserve(7));
+        assertFalse(map.reserve(7));
+        assertFalse(map.reserve(4));
+        // reserved keys do not count until they get a value
+        assertEquals(0, map.getSize());
+        assertEquals(-1, map.get(7));
+        assertEquals(-1, map.put(7, 70));
+        assertEquals(1, map.getSize());
+        // 4 could not be reserved, so it ends up in the unsorted entries
+        assertEquals(-1, map.put(4, 40));
+        assertEquals(40, map.get(4));
+        assertEquals(2, map.getSize());
+        assertEquals(1, map.getUnsortedSize());
+        // negative keys work as well
+        map.put(-Long.MAX_VALUE, 1);
+        assertEquals(1, map.get(-Long.MAX_VALUE));
+        assertEquals(3, map.getSize());
+
+        map.clear();
+        assertEquals(0, map.getSize());
+        assertEquals(-1, map.get(7));
+        assertTrue(map.reserve(1));
+    }
+
+    @Test
+    public void testRemoveReserved() {
+        GHSortedLongLongMap map = createMap();
+        for (int key = 0; key < 3 * GHSortedLongLongMap.BLOCK_SIZE; key++)
+            map.reserve(key);
+        for (int key = 0; key < 3 * GHSortedLongLongMap.BLOCK_SIZE; key += 3)
+            map.put(key, 10 * key);
+        // not sorted, so it goes into the b-tree
+        map.put(-5, 1);
+        // the last key is only reserved
+        long lastKey = 3 * GHSortedLongLongMap.BLOCK_SIZE - 1;
+        assertEquals(GHSortedLongLongMap.BLOCK_SIZE + 1, map.getSize());
+
+        GHSortedLongLongMap used = map.removeReserved(new RAMDirectory().create("used").create(100));
+        assertEquals(GHSortedLongLongMap.BLOCK_SIZE + 1, used.getSize());
+        assertEquals(1, used.getUnsortedSize());
+        assertEquals(1, used.get(-5));
+        for (int key = 0; key <= lastKey; key++)
+            assertEquals(key % 3 == 0 ? 10 * key : -1, used.get(key), "key: " + key);
+        assertTrue(used.getMemoryUsage() <= map.getMemoryUsage());
+
+        // keys that were only reserved can still be added, but they are no longer sorted
+        assertEquals(-1, used.put(lastKey, 7));
+        assertEquals(7, used.get(lastKey));
+        assertEquals(2, used.getUnsortedSize());
+        assertEquals(-1, used.put(lastKey + 1, 8));
+        assertEquals(8, used.get(lastKey + 1));
+        assertEquals(2, used.getUnsortedSize());
+    }
+
+    @Test
+    public void testRemoveReservedKeepsUnsortedKeys() {
+        GHSortedLongLongMap map = createMap();
+        map.reserve(10);
+        map.put(5, 50);
+        GHSortedLongLongMap used = map.removeReserved(new RAMDirectory().create("used").create(100));
+        // no sorted keys are left, but 5 must not be appended as it is in the b-tree already
+        assertEquals(50, used.put(5, 51));
+        assertEquals(51, used.get(5));
+        assertEquals(1, used.getSize());
+    }
+
+    @Test
+    public void testRandom() {
+        long seed = System.nanoTime();
+        Random rand = new Random(seed);
+        GHSortedLongLongMap map = createMap();
+        Map<Long, Long> expected = new HashMap<>();
+        long key = 0;
+        // enough keys to get several blocks
+        for (int i = 0; i < 5 * GHSortedLongLongMap.BLOCK_SIZE; i++) {
+            key += 1 + rand.nextInt(100);
+            if (rand.nextBoolean()) {
+                map.reserve(key);
+            } else {
+                map.put(key, i);
+                expected.put(key, (long) i);
+            }
+        }
+        for (int i = 0; i < 1000; i++) {
+            long k = rand.nextInt((int) key + 10);
+            long value = rand.nextInt(1000);
+            map.put(k, value);
+            expected.put(k, value);
+        }
+        for (long k = -1; k <= key + 10; k++)
+            assertEquals(expected.getOrDefault(k, -1L), map.get(k), "seed: " + seed + ", key: " + k);
+        assertEquals(expected.size(), map.getSize(), "seed: " + seed);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.coll;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntFloatRadixHeapTest implements BinaryHeapTestInterface {
+
+    private IntFloatRadixHeap heap;
+
+    @Override
+    public void create(int capacity) {
+        heap = new IntFloatRadixHeap(capacity);
+    }
+
+    @Override
+    public int size() {
+        return heap.getSize();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return heap.isEmpty();
+    }
+
+    @Override
+    public void push(int id, float val) {
+        heap.insert(val, id);
+    }
+
+    @Override
+    public int peekId() {
+        return heap.peekElement();
+    }
+
+    @Override
+    public float peekVal() {
+        return heap.peekKey();
+    }
+
+    @Override
+    public void update(int id, float val) {
+        heap.update(val, id);
+    }
+
+    @Override
+    public int poll() {
+        return heap.poll();
+    }
+
+    @Override
+    public void clear() {
+        heap.clear();
+    }
+
+    // the radix heap does not support negative keys, so we override the tests that use them
+
+    @Test
+    @Override
+    public void testPeek() {
+        create(5);
+        push(4, 1.6f);
+        push(2, 3.3f);
+        push(1, 0.1f);
+        push(3, 2.4f);
+        assertEquals(1, peekId());
+        assertEquals(0.1f, peekVal(), 1.e-6);
+    }
+
+    @Test
+    @Override
+    public void update() {
+        create(10);
+        push(9, 3.6f);
+        push(5, 2.1f);
+        push(3, 2.3f);
+        update(3, 0.1f);
+        assertEquals(3, peekId());
+        update(3, 10.f);
+        assertEquals(5, peekId());
+        // the keys cannot be smaller than the key we just peeked
+        update(9, 2.2f);
+        assertEquals(5, peekId());
+        assertEquals(2.1f, peekVal(), 1.e-6);
+        IntArrayList polled = new IntArrayList();
+        while (!isEmpty()) {
+            polled.add(poll());
+        }
+        assertEquals(IntArrayList.from(5, 9, 3), polled);
+    }
+
+    // ... and the keys must not be smaller than the last polled key
+    @Test
+    @Override
+    public void randomPushsAndPolls() {
+        final long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        int size = 1 + rnd.nextInt(100);
+        PriorityQueue<Entry> pq = new PriorityQueue<>(size);
+        create(size);
+        IntSet set = new IntHashSet();
+        float lastPolled = 0;
+        int pushCount = 0;
+        for (int i = 0; i < 1000; i++) {
+            boolean push = pq.isEmpty() || (rnd.nextBoolean());
+            if (push) {
+                int id = rnd.nextInt(size);
+                if (!set.add(id))
+                    continue;
+                float val = lastPolled + 100 * rnd.nextFloat();
+                pq.add(new Entry(id, val));
+                push(id, val);
+                pushCount++;
+            } else {
+                Entry entry = pq.poll();
+                assertEquals(entry.val, peekVal(), "seed: " + seed);
+                assertEquals(entry.id, poll(), "seed: " + seed);
+                assertEquals(pq.size(), size());
+                set.removeAll(entry.id);
+                lastPolled = entry.val;
+            }
+        }
+        assertTrue(pushCount > 0);
+    }
+
+    @Test
+    public void monotoneKeys() {
+        create(10);
+        push(3, 1.5f);
+        push(4, 2.5f);
+        assertEquals(3, poll());
+        // the key of the polled element is the lower bound for new keys
+        assertThrows(IllegalArgumentException.class, () -> push(5, 1.4f));
+        assertThrows(IllegalArgumentException.class, () -> update(4, 1.4f));
+        push(5, 1.5f);
+        update(4, 1.6f);
+        assertEquals(5, poll());
+        assertEquals(4, poll());
+        assertThrows(IllegalArgumentException.class, () -> push(6, -1));
+        // after clearing the heap we can start over
+        clear();
+        push(6, 0);
+        push(7, -0.0f);
+        assertEquals(2, size());
+        assertEquals(0, peekVal());
+    }
+
+    @Test
+    public void growAndIgnoreUnknownElements() {
+        create(3);
+        push(100, 1.6f);
+        push(8, 1.8f);
+        push(2, 0.7f);
+        // updating an element that is not in the heap does nothing, like for IntFloatBinaryHeap
+        update(5, 0.1f);
+        update(1000, 0.1f);
+        assertEquals(3, size());
+        assertThrows(IllegalArgumentException.class, () -> push(8, 2.0f));
+        IntArrayList elements = new IntArrayList();
+        while (!isEmpty()) {
+            elements.add(poll());
+        }
+        assertEquals(IntArrayList.from(2, 100, 8), elements);
+        // polled elements can be inserted again
+        push(8, 2.0f);
+        assertEquals(8, poll());
+    }
+
+    @Test
+    public void largeKeys() {
+        create(10);
+        push(0, Float.MAX_VALUE);
+        push(1, Float.POSITIVE_INFINITY);
+        push(2, 1.e30f);
+        push(3, 1.e-30f);
+        assertEquals(IntArrayList.from(3, 2, 0, 1), IntArrayList.from(poll(), poll(), poll(), poll()));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.util.GHUtility.createRandomSnaps;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CHShortestPathTreeTest {
+    private final DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+    private final DecimalEncodedValue prioritySpeedEnc = new DecimalEncodedValueImpl("priority_speed", 5, 5, true);
+    private final EncodingManager encodingManager = EncodingManager.start().add(speedEnc).add(prioritySpeedEnc).build();
+    private final BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+
+    @Test
+    void simpleGraph() {
+        // 0-1-2-3
+        //     |
+        //     4
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 60, 60);
+        graph.edge(1, 2).setDistance(200).set(speedEnc, 60, 60);
+        graph.edge(2, 3).setDistance(300).set(speedEnc, 60, 0);
+        graph.edge(2, 4).setDistance(400).set(speedEnc, 60, 60);
+        RoutingCHGraph chGraph = prepareCH(new SpeedWeighting(speedEnc));
+
+        List<ShortestPathTree.IsoLabel> labels = new ArrayList<>();
+        CHShortestPathTree tree = new CHShortestPathTree(chGraph, false);
+        tree.setDistanceLimit(550);
+        tree.search(1, labels::add);
+        assertEquals(4, labels.size());
+        IntObjectHashMap<ShortestPathTree.IsoLabel> labelsByNode = new IntObjectHashMap<>();
+        labels.forEach(l -> labelsByNode.put(l.node, l));
+        assertEquals(100, labelsByNode.get(0).distance, 1.e-6);
+        assertEquals(500, labelsByNode.get(3).distance, 1.e-6);
+        assertEquals(2, labelsByNode.get(3).parent.node);
+        assertEquals(1, labelsByNode.get(3).parent.parent.node);
+        assertFalse(labelsByNode.containsKey(4));
+
+        labels.clear();
+        tree = new CHShortestPathTree(chGraph, true);
+        tree.setDistanceLimit(Double.MAX_VALUE);
+        tree.search(3, labels::add);
+        // edge 2-3 is one-way, so in the reverse direction we can reach all nodes from node 3
+        assertEquals(5, labels.size());
+        // every node is counted once, even though the nodes of the upward search are visited again in the sweep
+        assertEquals(5, tree.getVisitedNodes());
+    }
+
+    @RepeatedTest(10)
+    void randomGraph() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.5, true, speedEnc, null, 0.9, 0);
+        compareWithShortestPathTree(rnd, seed, new SpeedWeighting(speedEnc));
+    }
+
+    @RepeatedTest(10)
+    void randomGraphWeightNotProportionalToTime() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.5, true, speedEnc, null, 0.9, 0);
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next())
+            iter.set(prioritySpeedEnc, iter.get(speedEnc) == 0 ? 0 : 5 + rnd.nextInt(25), iter.getReverse(speedEnc) == 0 ? 0 : 5 + rnd.nextInt(25));
+        // the weight is derived from the priority speed, but the time limit applies to the time calculated from the speed
+        Weighting weighting = new SpeedWeighting(prioritySpeedEnc) {
+            @Override
+            public long calcEdgeMillis(EdgeIteratorState edgeState, boolean reverse) {
+                double speed = reverse ? edgeState.getReverse(speedEnc) : edgeState.get(speedEnc);
+                return (long) (1000 * edgeState.getDistance() / speed);
+            }
+        };
+        compareWithShortestPathTree(rnd, seed, weighting);
+    }
+
+    private void compareWithShortestPathTree(Random rnd, long seed, Weighting weighting) {
+        LocationIndexTree locationIndex = new LocationIndexTree(graph, graph.getDirectory());
+        locationIndex.prepareIndex();
+        RoutingCHGraph chGraph = prepareCH(weighting);
+
+        Snap snap = createRandomSnaps(graph.getBounds(), locationIndex, rnd, 1, false, EdgeFilter.ALL_EDGES).get(0);
+        QueryGraph queryGraph = QueryGraph.create(graph, snap);
+        boolean reverseFlow = rnd.nextBoolean();
+        double limit = rnd.nextDouble() * 1_000_000;
+
+        IntObjectHashMap<ShortestPathTree.IsoLabel> expected = new IntObjectHashMap<>();
+        ShortestPathTree refTree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(chGraph.getWeighting()), reverseFlow, TraversalMode.NODE_BASED);
+        refTree.setTimeLimit(limit);
+        refTree.search(snap.getClosestNode(), l -> expected.put(l.node, l));
+
+        IntObjectHashMap<ShortestPathTree.IsoLabel> actual = new IntObjectHashMap<>();
+        // the level order is calculated for the CH graph without the query graph, like in IsochroneResource
+        int[] levelOrder = CHShortestPathTree.sortNodesByLevel(chGraph);
+        CHShortestPathTree tree = new CHShortestPathTree(new QueryRoutingCHGraph(chGraph, queryGraph), levelOrder, reverseFlow);
+        tree.setTimeLimit(limit);
+        tree.search(snap.getClosestNode(), l -> actual.put(l.node, l));
+
+        String msg = "seed: " + seed + ", reverseFlow: " + reverseFlow + ", limit: " + limit;
+        assertEquals(graph.getNodes(), levelOrder.length, msg);
+        for (int i = 1; i < levelOrder.length; i++)
+            assertTrue(chGraph.getLevel(levelOrder[i - 1]) >= chGraph.getLevel(levelOrder[i]), msg);
+        for (int node = 0; node < queryGraph.getNodes(); node++) {
+            ShortestPathTree.IsoLabel expectedLabel = expected.get(node);
+            ShortestPathTree.IsoLabel label = actual.get(node);
+            // there can be multiple paths with the same weight and the limit applies to the time, so we skip the
+            // nodes close to the limit
+            if (expectedLabel == null ? label != null && label.time < 0.95 * limit : label == null && expectedLabel.time < 0.95 * limit)
+                fail(msg + ", node: " + node + ", expected: " + expectedLabel + ", actual: " + label);
+            if (expectedLabel == null || label == null)
+                continue;
+            assertEquals(expectedLabel.weight, label.weight, 1.e-2, msg);
+            // the labels must describe a path in the base graph
+            if (label.parent != null) {
+                EdgeIteratorState edge = queryGraph.getEdgeIteratorState(label.edge, label.node);
+                assertEquals(label.parent.node, edge.getBaseNode(), msg);
+                assertEquals(label.parent.distance + edge.getDistance(), label.distance, 1.e-6, msg);
+            }
+        }
+    }
+
+    private RoutingCHGraph prepareCH(Weighting weighting) {
+        graph.freeze();
+        CHConfig chConfig = CHConfig.nodeBased("p", weighting);
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        return RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+    }
+}
@@ -20,6 +20,7 @@ package com.graphhopper.reader.osm;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.GraphHopperTest;
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderRelation;
@@ -43,6 +44,8 @@ import com.graphhopper.util.details.PathDetail;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 
 import java.io.File;
 import java.io.IOException;
@@ -994,6 +997,100 @@ public class OSMReaderTest {
         return new AreaIndex<>(readCountries());
     }
 
+    @ParameterizedTest
+    @CsvSource({
+            "test-osm.xml,false",
+            "test-osm2.xml,false",
+            "test-osm6.pbf,false",
+            "test-osm6.pbf,true",
+            "test-barriers.xml,false",
+            "test-restrictions.xml,true",
+            "test-osm9.xml,false"
+    })
+    public void testSinglePass(String file, boolean storeOnFlush) {
+        GraphHopper hopper = new GraphHopperFacade(file).setMinNetworkSize(0).setStoreOnFlush(storeOnFlush);
+        hopper.importOrLoad();
+        GraphHopper singlePassHopper = new GraphHopperFacade(file).setMinNetworkSize(0).setStoreOnFlush(storeOnFlush)
+                .setGraphHopperLocation(dir + "/single_pass");
+        singlePassHopper.getReaderConfig().setSinglePass(true);
+        singlePassHopper.importOrLoad();
+
+        BaseGraph graph = hopper.getBaseGraph();
+        BaseGraph singlePassGraph = singlePassHopper.getBaseGraph();
+        assertEquals(graph.getNodes(), singlePassGraph.getNodes());
+        assertEquals(graph.getEdges(), singlePassGraph.getEdges());
+        assertEquals(hopper.getProperties().get("datareader.data.date"),
+                singlePassHopper.getProperties().get("datareader.data.date"));
+        for (int node = 0; node < graph.getNodes(); node++) {
+            assertEquals(graph.getNodeAccess().getLat(node), singlePassGraph.getNodeAccess().getLat(node));
+            assertEquals(graph.getNodeAccess().getLon(node), singlePassGraph.getNodeAccess().getLon(node));
+        }
+        for (int edge = 0; edge < graph.getEdges(); edge++) {
+            EdgeIteratorState state = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            EdgeIteratorState singlePassState = singlePassGraph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            assertEquals(state.getBaseNode(), singlePassState.getBaseNode());
+            assertEquals(state.getAdjNode(), singlePassState.getAdjNode());
+            assertEquals(state.getDistance(), singlePassState.getDistance());
+            assertEquals(state.fetchWayGeometry(FetchMode.ALL), singlePassState.fetchWayGeometry(FetchMode.ALL));
+            assertEquals(state.getFlags(), singlePassState.getFlags());
+            assertEquals(state.getKeyValues(), singlePassState.getKeyValues());
+        }
+        BooleanEncodedValue carTCEnc = hopper.getEncodingManager().getTurnBooleanEncodedValue(TurnRestriction.key("car"));
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        for (int node = 0; node < graph.getNodes(); node++) {
+            EdgeIterator from = explorer.setBaseNode(node);
+            while (from.next()) {
+                EdgeIterator to = graph.createEdgeExplorer().setBaseNode(node);
+                while (to.next())
+                    assertEquals(graph.getTurnCostStorage().get(carTCEnc, from.getEdge(), node, to.getEdge()),
+                            singlePassGraph.getTurnCostStorage().get(carTCEnc, from.getEdge(), node, to.getEdge()));
+            }
+        }
+        hopper.close();
+        singlePassHopper.close();
+    }
+
+    @Test
+    public void testTagParserThreads() {
+        GraphHopper hopper = createAndorraHopper(dir + "/one_thread", 1);
+        GraphHopper concurrentHopper = createAndorraHopper(dir + "/four_threads", 4);
+        BaseGraph graph = hopper.getBaseGraph();
+        BaseGraph concurrentGraph = concurrentHopper.getBaseGraph();
+        // more edges than fit into a single batch
+        assertTrue(graph.getEdges() > 2_000, "edges: " + graph.getEdges());
+        assertEquals(graph.getEdges(), concurrentGraph.getEdges());
+        DecimalEncodedValue maxSpeedEnc = hopper.getEncodingManager().getDecimalEncodedValue(MaxSpeed.KEY);
+        for (int edge = 0; edge < graph.getEdges(); edge++) {
+            EdgeIteratorState state = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            EdgeIteratorState concurrentState = concurrentGraph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            assertEquals(state.getBaseNode(), concurrentState.getBaseNode());
+            assertEquals(state.getAdjNode(), concurrentState.getAdjNode());
+            assertEquals(state.getFlags(), concurrentState.getFlags(), "edge: " + edge);
+            assertEquals(state.get(maxSpeedEnc), concurrentState.get(maxSpeedEnc));
+            assertEquals(state.getKeyValues(), concurrentState.getKeyValues());
+        }
+        hopper.close();
+        concurrentHopper.close();
+    }
+
+    private GraphHopper createAndorraHopper(String location, int tagParserThreads) {
+        GraphHopperConfig config = new GraphHopperConfig().
+                putObject("datareader.file", "../core/files/andorra.osm.pbf").
+                putObject("graph.location", location).
+                putObject("graph.encoded_values", "car_access, car_average_speed, bike_access, bike_priority, " +
+                        "bike_average_speed, foot_access, foot_priority, foot_average_speed, road_class, surface, " +
+                        "max_speed, country, toll, hgv, mtb_rating, hike_rating, bike_network, foot_network").
+                putObject("max_speed_calculator.enabled", true).
+                putObject("graph.urban_density.threads", 1).
+                putObject("import.osm.ignored_highways", "").
+                putObject("datareader.tag_parser_threads", tagParserThreads).
+                setProfiles(List.of(
+                        TestProfiles.accessAndSpeed("car"),
+                        TestProfiles.accessSpeedAndPriority("bike"),
+                        TestProfiles.accessSpeedAndPriority("foot")));
+        return new GraphHopper().init(config).importOrLoad();
+    }
+
     class GraphHopperFacade extends GraphHopper {
         public GraphHopperFacade(String osmFile) {
             this(osmFile, "");
@@ -0,0 +1,59 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.ReaderRelation;
+import com.graphhopper.storage.RAMDirectory;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OSMSpillTest {
+
+    @Test
+    void relationMembers() {
+        OSMSpill spill = new OSMSpill(new RAMDirectory());
+        ReaderRelation relation = new ReaderRelation(1);
+        relation.setTag("type", "route");
+        relation.add(new ReaderRelation.Member(ReaderElement.Type.WAY, 2, "forward"));
+        relation.add(new ReaderRelation.Member(ReaderElement.Type.NODE, 3, null));
+        relation.add(new ReaderRelation.Member(ReaderElement.Type.RELATION, 4, ""));
+        spill.addRelation(relation);
+
+        List<ReaderRelation> relations = new ArrayList<>();
+        spill.replayRelations(relations::add);
+        assertEquals(1, relations.size());
+        ReaderRelation replayed = relations.get(0);
+        assertEquals(1, replayed.getId());
+        assertEquals("route", replayed.getTag("type"));
+        assertEquals(3, replayed.getMembers().size());
+        assertEquals(ReaderElement.Type.WAY, replayed.getMembers().get(0).getType());
+        assertEquals(2, replayed.getMembers().get(0).getRef());
+        assertEquals("forward", replayed.getMembers().get(0).getRole());
+        assertEquals(ReaderElement.Type.NODE, replayed.getMembers().get(1).getType());
+        assertEquals(3, replayed.getMembers().get(1).getRef());
+        assertNull(replayed.getMembers().get(1).getRole());
+        assertEquals(ReaderElement.Type.RELATION, replayed.getMembers().get(2).getType());
+        assertEquals("", replayed.getMembers().get(2).getRole());
+        spill.release();
+    }
+}
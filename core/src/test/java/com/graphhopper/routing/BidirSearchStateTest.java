@@ -0,0 +1,114 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.ch.CHRoutingAlgorithmFactory;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static com.graphhopper.util.Parameters.Algorithms.ASTAR_BI;
+import static com.graphhopper.util.Parameters.Algorithms.DIJKSTRA_BI;
+import static com.graphhopper.util.Parameters.Routing.ALGORITHM;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BidirSearchStateTest {
+
+    @Test
+    void reuseSearchState() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 200, 2.2, true, speedEnc, null, 0.8, 0.8);
+        graph.freeze();
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        CHConfig chConfig = CHConfig.nodeBased("p", weighting);
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+
+        // a single search state is used for all the queries and algorithms
+        BidirSearchState.Pool pool = new BidirSearchState.Pool(1);
+        for (int i = 0; i < 100; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            int to = rnd.nextInt(graph.getNodes());
+            Path refPath = new DijkstraBidirectionRef(graph, weighting, TraversalMode.NODE_BASED).calcPath(from, to);
+            AbstractBidirAlgo[] algos = {
+                    new DijkstraBidirectionRef(graph, weighting, TraversalMode.NODE_BASED),
+                    new AStarBidirection(graph, weighting, TraversalMode.NODE_BASED),
+                    (AbstractBidirAlgo) new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap().putObject(ALGORITHM, DIJKSTRA_BI)),
+                    (AbstractBidirAlgo) new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap().putObject(ALGORITHM, ASTAR_BI))
+            };
+            for (AbstractBidirAlgo algo : algos) {
+                BidirSearchState searchState = pool.acquire();
+                algo.setSearchState(searchState);
+                Path path = algo.calcPath(from, to);
+                pool.release(searchState);
+                String msg = "seed: " + seed + ", " + algo.getName() + ", from: " + from + ", to: " + to;
+                assertEquals(refPath.isFound(), path.isFound(), msg);
+                // the CH shortcut weights are rounded
+                assertEquals(refPath.getWeight(), path.getWeight(), 1.e-2, msg);
+            }
+        }
+    }
+
+    @Test
+    void dropQueueAfterBigSearch() {
+        BidirSearchState state = new BidirSearchState();
+        state.clear(100);
+        BidirSearchState.SearchQueue queue = state.pqOpenSetFrom;
+        for (int i = 0; i < 500; i++)
+            queue.add(new SPTEntry(i, i));
+        queue.clear();
+        state.clear(100);
+        assertSame(queue, state.pqOpenSetFrom);
+
+        // the queue is empty when the search finishes, but its array is as big as it was at the peak of the search
+        for (int i = 0; i < 10_000; i++)
+            queue.add(new SPTEntry(i, i));
+        while (!queue.isEmpty())
+            queue.poll();
+        state.clear(100);
+        assertNotSame(queue, state.pqOpenSetFrom);
+        assertEquals(0, state.pqOpenSetFrom.peakSize);
+    }
+
+    @Test
+    void setSearchStateAfterStart() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        BaseGraph graph = new BaseGraph.Builder(EncodingManager.start().add(speedEnc).build()).create();
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 60, 60);
+        DijkstraBidirectionRef algo = new DijkstraBidirectionRef(graph, new SpeedWeighting(speedEnc), TraversalMode.NODE_BASED);
+        algo.calcPath(0, 1);
+        assertThrows(IllegalStateException.class, () -> algo.setSearchState(new BidirSearchState.Pool(1).acquire()));
+    }
+}
@@ -18,6 +18,7 @@
 package com.graphhopper.routing;
 
 import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.coll.IntFloatRadixHeap;
 import com.graphhopper.routing.ev.DecimalEncodedValue;
 import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
 import com.graphhopper.routing.util.EncodingManager;
@@ -26,8 +27,11 @@ import com.graphhopper.routing.weighting.SpeedWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.Graph;
+import com.graphhopper.util.GHUtility;
 import org.junit.jupiter.api.Test;
 
+import java.util.Random;
+
 import static com.graphhopper.routing.RoutingAlgorithmTest.initTestStorage;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -116,6 +120,12 @@ public class DijkstraOneToManyTest {
         // use SPT
         p = algo.calcPath(0, 2);
         assertEquals(IntArrayList.from(0, 1, 2), p.calcNodes());
+
+        // use SPT for the start node
+        p = algo.calcPath(0, 0);
+        assertTrue(p.isFound());
+        assertEquals(IntArrayList.from(0), p.calcNodes());
+        assertEquals(0, p.getWeight(), 1e-6);
     }
 
     private void initGraph(Graph graph) {
@@ -169,6 +179,35 @@ public class DijkstraOneToManyTest {
         // use SPT
         p = algo.calcPath(0, 2);
         assertEquals(IntArrayList.from(0, 1, 2), p.calcNodes());
+
+        // use SPT for the start node
+        p = algo.calcPath(0, 0);
+        assertTrue(p.isFound());
+        assertEquals(IntArrayList.from(0), p.calcNodes());
+        assertEquals(0, p.getWeight(), 1e-6);
+    }
+
+    @Test
+    public void testRadixHeap() {
+        BaseGraph graph = createGHStorage();
+        long seed = 499450022872L;
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 500, 2.2, true, speedEnc, null, 0.9, 0.8);
+        DijkstraOneToMany algo = new DijkstraOneToMany(graph, defaultWeighting, TraversalMode.NODE_BASED, new IntFloatRadixHeap());
+        int from = 0;
+        for (int i = 0; i < 100; i++) {
+            // use the same start node for a few queries, so we also test the cached shortest path tree
+            if (i % 5 == 0) {
+                from = rnd.nextInt(graph.getNodes());
+                algo.clear();
+            }
+            int to = rnd.nextInt(graph.getNodes());
+            Path refPath = new Dijkstra(graph, defaultWeighting, TraversalMode.NODE_BASED).calcPath(from, to);
+            Path path = algo.calcPath(from, to);
+            assertEquals(refPath.isFound(), path.isFound(), "seed: " + seed);
+            if (refPath.isFound())
+                assertEquals(refPath.getWeight(), path.getWeight(), 1.e-6, "seed: " + seed);
+        }
     }
 
     private BaseGraph createGHStorage() {
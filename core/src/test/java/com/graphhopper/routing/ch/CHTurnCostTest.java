@@ -76,6 +76,8 @@ public class CHTurnCostTest {
     private CHConfig chConfig;
     private RoutingCHGraph chGraph;
     private boolean checkStrict;
+    private int contractionThreads;
+    private boolean radixHeap;
 
     @BeforeEach
     public void init() {
@@ -90,6 +92,8 @@ public class CHTurnCostTest {
         // costs
         chConfig = chConfigs.get(0);
         checkStrict = true;
+        contractionThreads = 1;
+        radixHeap = false;
     }
 
     /**
@@ -1107,8 +1111,34 @@ public class CHTurnCostTest {
         compareWithDijkstraOnRandomGraph_heuristic(seed);
     }
 
+    /**
+     * same as {@link #testFindPath_heuristic_compareWithDijkstra()}, but contracting independent sets of nodes in parallel
+     */
+    @RepeatedTest(10)
+    public void testFindPath_heuristic_compareWithDijkstra_parallelContraction() {
+        long seed = System.nanoTime();
+        LOGGER.info("Seed for testFindPath_heuristic_compareWithDijkstra_parallelContraction: {}", seed);
+        contractionThreads = 4;
+        compareWithDijkstraOnRandomGraph_heuristic(seed, 100);
+    }
+
+    /**
+     * same as {@link #testFindPath_heuristic_compareWithDijkstra()}, but using a radix heap for the witness searches
+     */
+    @RepeatedTest(10)
+    public void testFindPath_heuristic_compareWithDijkstra_radixHeap() {
+        long seed = System.nanoTime();
+        LOGGER.info("Seed for testFindPath_heuristic_compareWithDijkstra_radixHeap: {}", seed);
+        radixHeap = true;
+        compareWithDijkstraOnRandomGraph_heuristic(seed, 100);
+    }
+
     private void compareWithDijkstraOnRandomGraph_heuristic(long seed) {
-        GHUtility.buildRandomGraph(graph, new Random(seed), 20, 3.0, true, speedEnc, null, 0.9, 0.8);
+        compareWithDijkstraOnRandomGraph_heuristic(seed, 20);
+    }
+
+    private void compareWithDijkstraOnRandomGraph_heuristic(long seed, int numNodes) {
+        GHUtility.buildRandomGraph(graph, new Random(seed), numNodes, 3.0, true, speedEnc, null, 0.9, 0.8);
         GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, maxCost, turnCostStorage);
         graph.freeze();
         checkStrict = false;
@@ -1185,6 +1215,8 @@ public class CHTurnCostTest {
         pMap.putObject(LAST_LAZY_NODES_UPDATES, 100);
         pMap.putObject(NEIGHBOR_UPDATES, 4);
         pMap.putObject(LOG_MESSAGES, 10);
+        pMap.putObject(CONTRACTION_THREADS, contractionThreads);
+        pMap.putObject(RADIX_HEAP, radixHeap);
         PrepareContractionHierarchies ch = PrepareContractionHierarchies.fromGraph(graph, chConfig);
         ch.setParams(pMap);
         PrepareContractionHierarchies.Result res = ch.doWork();
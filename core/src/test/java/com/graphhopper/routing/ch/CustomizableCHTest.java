@@ -0,0 +1,202 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CCHStorage;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomizableCHTest {
+    private final DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+    private final DecimalEncodedValue otherSpeedEnc = new DecimalEncodedValueImpl("other_speed", 5, 5, true);
+    private final EncodingManager encodingManager = EncodingManager.start().add(speedEnc).add(otherSpeedEnc).build();
+    private final BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+
+    @Test
+    void simpleGraph() {
+        // 0-1-2-3
+        //   |   |
+        //   4---5
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 60, 60).set(otherSpeedEnc, 60, 60);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 60, 60).set(otherSpeedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(100).set(speedEnc, 60, 60).set(otherSpeedEnc, 10, 10);
+        graph.edge(1, 4).setDistance(100).set(speedEnc, 60, 60).set(otherSpeedEnc, 60, 60);
+        graph.edge(4, 5).setDistance(100).set(speedEnc, 60, 60).set(otherSpeedEnc, 60, 60);
+        graph.edge(5, 3).setDistance(100).set(speedEnc, 60, 0).set(otherSpeedEnc, 60, 0);
+        graph.freeze();
+        CCHStorage cchStorage = new PrepareCustomizableCH(graph).doWork();
+        // every node has a unique rank
+        boolean[] ranks = new boolean[graph.getNodes()];
+        for (int node = 0; node < graph.getNodes(); node++)
+            ranks[cchStorage.getRank(node)] = true;
+        for (boolean rank : ranks)
+            assertTrue(rank);
+        // the arcs contain at least all the edges of the graph
+        assertTrue(cchStorage.getArcs() >= graph.getEdges());
+
+        CustomizableCH customizableCH = new CustomizableCH(graph, cchStorage, 1, 10);
+        RoutingCHGraph chGraph = customizableCH.getRoutingCHGraph("speed", CHConfig.nodeBased("speed", new SpeedWeighting(speedEnc)));
+        Path path = new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap()).calcPath(0, 3);
+        assertEquals(300, path.getDistance(), 1.e-6);
+        assertEquals(GHUtility.getEdge(graph, 2, 3).getEdge(), path.getEdges().get(path.getEdges().size() - 1));
+
+        RoutingCHGraph otherCHGraph = customizableCH.getRoutingCHGraph("other_speed", CHConfig.nodeBased("other_speed", new SpeedWeighting(otherSpeedEnc)));
+        path = new CHRoutingAlgorithmFactory(otherCHGraph).createAlgo(new PMap()).calcPath(0, 3);
+        assertEquals(400, path.getDistance(), 1.e-6);
+        // edge 5-3 is one-way
+        path = new CHRoutingAlgorithmFactory(otherCHGraph).createAlgo(new PMap()).calcPath(3, 0);
+        assertEquals(300, path.getDistance(), 1.e-6);
+
+        // customized graphs are cached
+        assertSame(chGraph, customizableCH.getRoutingCHGraph("speed", CHConfig.nodeBased("speed", new SpeedWeighting(speedEnc))));
+    }
+
+    @RepeatedTest(10)
+    void randomGraph() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 500, 2.5, true, speedEnc, null, 0.9, 0.8);
+        // the second weighting uses completely different speeds on the same topology
+        AllEdgesIterator edge = graph.getAllEdges();
+        while (edge.next())
+            edge.set(otherSpeedEnc, rnd.nextInt(30) * 5, rnd.nextInt(30) * 5);
+        graph.freeze();
+        CCHStorage cchStorage = new PrepareCustomizableCH(graph).doWork();
+        CustomizableCH customizableCH = new CustomizableCH(graph, cchStorage, 2, 10);
+        for (DecimalEncodedValue enc : new DecimalEncodedValue[]{speedEnc, otherSpeedEnc}) {
+            Weighting weighting = new SpeedWeighting(enc);
+            RoutingCHGraph chGraph = customizableCH.getRoutingCHGraph(enc.getName(), CHConfig.nodeBased(enc.getName(), weighting));
+            for (int i = 0; i < 50; i++) {
+                int from = rnd.nextInt(graph.getNodes());
+                int to = rnd.nextInt(graph.getNodes());
+                Path refPath = new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(from, to);
+                Path path = new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap()).calcPath(from, to);
+                String msg = "seed: " + seed + ", " + enc.getName() + ", from: " + from + ", to: " + to;
+                assertEquals(refPath.isFound(), path.isFound(), msg);
+                if (!refPath.isFound())
+                    continue;
+                assertEquals(refPath.getWeight(), path.getWeight(), 1.e-2, msg);
+                // the unpacked path must be a valid path in the base graph
+                assertEquals(from, path.calcNodes().get(0), msg);
+                assertEquals(to, path.calcNodes().get(path.calcNodes().size() - 1), msg);
+                double weight = 0;
+                for (EdgeIteratorState e : path.calcEdges())
+                    weight += weighting.calcEdgeWeight(e, false);
+                assertEquals(path.getWeight(), weight, 1.e-2, msg);
+            }
+        }
+    }
+
+    @RepeatedTest(5)
+    void parallelCustomization() {
+        long seed = System.nanoTime();
+        GHUtility.buildRandomGraph(graph, new Random(seed), 500, 2.5, true, speedEnc, null, 0.9, 0.8);
+        graph.freeze();
+        CCHStorage cchStorage = new PrepareCustomizableCH(graph).doWork();
+        CHConfig chConfig = CHConfig.nodeBased("speed", new SpeedWeighting(speedEnc));
+        RoutingCHGraph sequential = new CCHCustomizer(graph, cchStorage, 1).customize(chConfig);
+        // the graph is too small for the default thresholds, so we make sure the levels are split into many chunks
+        CCHCustomizer customizer = new CCHCustomizer(graph, cchStorage, 4, 1, 4);
+        RoutingCHGraph parallel = customizer.customize(chConfig);
+        customizer.close();
+        assertEquals(sequential.getShortcuts(), parallel.getShortcuts(), "seed: " + seed);
+        assertEquals(getCHEdges(sequential), getCHEdges(parallel), "seed: " + seed);
+    }
+
+    @Test
+    void concurrentRequestsShareCustomization() throws Exception {
+        GHUtility.buildRandomGraph(graph, new Random(123), 500, 2.5, true, speedEnc, null, 0.9, 0.8);
+        graph.freeze();
+        CCHStorage cchStorage = new PrepareCustomizableCH(graph).doWork();
+        AtomicInteger weightCalls = new AtomicInteger();
+        Weighting weighting = new SpeedWeighting(speedEnc) {
+            @Override
+            public double calcEdgeWeight(EdgeIteratorState edgeState, boolean reverse) {
+                // the first customization is slow, so the other requests come in while it is running
+                if (weightCalls.incrementAndGet() == 1) {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return super.calcEdgeWeight(edgeState, reverse);
+            }
+        };
+        CHConfig chConfig = CHConfig.nodeBased("speed", weighting);
+        new CCHCustomizer(graph, cchStorage, 1).customize(chConfig);
+        int callsPerCustomization = weightCalls.getAndSet(0);
+
+        CustomizableCH customizableCH = new CustomizableCH(graph, cchStorage, 2, 10);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<RoutingCHGraph>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            futures.add(executor.submit(() -> customizableCH.getRoutingCHGraph("speed", chConfig)));
+        RoutingCHGraph chGraph = futures.get(0).get();
+        for (Future<RoutingCHGraph> future : futures)
+            assertSame(chGraph, future.get());
+        executor.shutdown();
+        assertEquals(callsPerCustomization, weightCalls.get());
+
+        // after clearing the cache the weighting is customized again
+        customizableCH.clear();
+        assertNotSame(chGraph, customizableCH.getRoutingCHGraph("speed", chConfig));
+        assertEquals(2 * callsPerCustomization, weightCalls.get());
+        customizableCH.close();
+    }
+
+    private static List<String> getCHEdges(RoutingCHGraph chGraph) {
+        List<String> edges = new ArrayList<>();
+        RoutingCHEdgeExplorer explorer = chGraph.createOutEdgeExplorer();
+        for (int node = 0; node < chGraph.getNodes(); node++) {
+            RoutingCHEdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next())
+                edges.add(node + "-" + iter.getAdjNode() + ", edge: " + iter.getEdge()
+                        + (iter.isShortcut() ? ", skipped: " + iter.getSkippedEdge1() + "/" + iter.getSkippedEdge2() : "")
+                        + ", weight: " + iter.getWeight(false) + "/" + iter.getWeight(true));
+        }
+        return edges;
+    }
+}
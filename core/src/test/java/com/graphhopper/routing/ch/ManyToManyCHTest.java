@@ -0,0 +1,119 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.util.GHUtility.createRandomSnaps;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManyToManyCHTest {
+    private final DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+    private final EncodingManager encodingManager = EncodingManager.start().add(speedEnc).build();
+    private final BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+
+    @Test
+    void simpleGraph() {
+        // 0-1-2-3
+        //     |
+        // 4   5
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 60, 60);
+        graph.edge(1, 2).setDistance(200).set(speedEnc, 60, 60);
+        graph.edge(2, 3).setDistance(300).set(speedEnc, 60, 0);
+        graph.edge(2, 5).setDistance(400).set(speedEnc, 60, 60);
+        graph.getNodeAccess().setNode(4, 0, 0);
+        RoutingCHGraph chGraph = prepareCH();
+
+        ManyToManyCH.Result result = new ManyToManyCH(chGraph).calcMatrix(new int[]{0, 3, 5}, new int[]{3, 5, 4});
+        assertEquals(600, result.distances[0][0], 1.e-6);
+        assertEquals(700, result.distances[0][1], 1.e-6);
+        assertEquals(10_000, result.times[0][0], 1);
+        // 3 can only be reached from 2 and 4 is not connected at all
+        assertEquals(0, result.distances[1][0], 1.e-6);
+        assertEquals(0, result.weights[1][0], 1.e-6);
+        assertFalse(result.isConnected(1, 1));
+        assertFalse(result.isConnected(0, 2));
+        assertEquals(Long.MAX_VALUE, result.times[0][2]);
+        assertEquals(700, result.distances[2][0], 1.e-6);
+    }
+
+    @RepeatedTest(10)
+    void randomGraph() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        // no offset, because traveling via virtual edges must be the same as taking the direct edge
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.5, true, speedEnc, null, 0.9, 0);
+        LocationIndexTree locationIndex = new LocationIndexTree(graph, graph.getDirectory());
+        locationIndex.prepareIndex();
+        RoutingCHGraph chGraph = prepareCH();
+        Weighting weighting = chGraph.getWeighting();
+
+        List<Snap> snaps = createRandomSnaps(graph.getBounds(), locationIndex, rnd, 20, false, EdgeFilter.ALL_EDGES);
+        QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+        int[] sources = new int[15];
+        int[] targets = new int[10];
+        for (int i = 0; i < sources.length; i++)
+            sources[i] = rnd.nextInt(queryGraph.getNodes());
+        for (int i = 0; i < targets.length; i++)
+            targets[i] = rnd.nextInt(queryGraph.getNodes());
+
+        ManyToManyCH.Result result = new ManyToManyCH(new QueryRoutingCHGraph(chGraph, queryGraph)).calcMatrix(sources, targets);
+        for (int s = 0; s < sources.length; s++) {
+            for (int t = 0; t < targets.length; t++) {
+                Path refPath = new Dijkstra(queryGraph, queryGraph.wrapWeighting(weighting), TraversalMode.NODE_BASED).calcPath(sources[s], targets[t]);
+                String msg = "seed: " + seed + ", " + sources[s] + "->" + targets[t];
+                assertEquals(refPath.isFound(), result.isConnected(s, t), msg);
+                if (!refPath.isFound())
+                    continue;
+                assertEquals(refPath.getWeight(), result.weights[s][t], 1.e-2, msg);
+                // there can be multiple paths with the same weight, so we only compare times and distances loosely
+                assertEquals(refPath.getTime(), result.times[s][t], 0.05 * refPath.getTime() + 50, msg);
+                assertEquals(refPath.getDistance(), result.distances[s][t], 0.05 * refPath.getDistance() + 1, msg);
+            }
+        }
+    }
+
+    private RoutingCHGraph prepareCH() {
+        graph.freeze();
+        CHConfig chConfig = CHConfig.nodeBased("p", new SpeedWeighting(speedEnc));
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        return RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+    }
+}
@@ -31,6 +31,7 @@ import com.graphhopper.storage.*;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.RepeatedTest;
 import org.junit.jupiter.api.Test;
 
 import java.util.Random;
@@ -576,6 +577,56 @@ public class PrepareContractionHierarchiesTest {
         }
     }
 
+    @RepeatedTest(5)
+    public void testParallelContraction() {
+        int numNodes = 5_000;
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(g, rnd, numNodes, 2.2, true, speedEnc, null, 0.9, 0.8);
+        g.freeze();
+        PrepareContractionHierarchies pch = createPrepareContractionHierarchies(g)
+                .setParams(new PMap().putObject(CHParameters.CONTRACTION_THREADS, 4));
+        PrepareContractionHierarchies.Result res = pch.doWork();
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(g, res.getCHStorage(), res.getCHConfig());
+        assertTrue(res.getShortcuts() > 0);
+        // every node got its own level
+        boolean[] levels = new boolean[numNodes];
+        for (int node = 0; node < numNodes; node++)
+            levels[chGraph.getLevel(node)] = true;
+        for (boolean level : levels)
+            assertTrue(level);
+
+        for (int i = 0; i < 100; ++i) {
+            int from = rnd.nextInt(numNodes);
+            int to = rnd.nextInt(numNodes);
+            double dijkstraWeight = new Dijkstra(g, weighting, TraversalMode.NODE_BASED).calcPath(from, to).getWeight();
+            double chWeight = new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap()).calcPath(from, to).getWeight();
+            assertEquals(dijkstraWeight, chWeight, 1.e-1, "seed: " + seed + ", from: " + from + ", to: " + to);
+        }
+    }
+
+    @RepeatedTest(5)
+    public void testRadixHeap() {
+        int numNodes = 5_000;
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(g, rnd, numNodes, 2.2, true, speedEnc, null, 0.9, 0.8);
+        g.freeze();
+        PrepareContractionHierarchies pch = createPrepareContractionHierarchies(g)
+                .setParams(new PMap().putObject(CHParameters.RADIX_HEAP, true));
+        PrepareContractionHierarchies.Result res = pch.doWork();
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(g, res.getCHStorage(), res.getCHConfig());
+        assertTrue(res.getShortcuts() > 0);
+
+        for (int i = 0; i < 100; ++i) {
+            int from = rnd.nextInt(numNodes);
+            int to = rnd.nextInt(numNodes);
+            double dijkstraWeight = new Dijkstra(g, weighting, TraversalMode.NODE_BASED).calcPath(from, to).getWeight();
+            double chWeight = new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap()).calcPath(from, to).getWeight();
+            assertEquals(dijkstraWeight, chWeight, 1.e-1, "seed: " + seed + ", from: " + from + ", to: " + to);
+        }
+    }
+
     private void checkPath(BaseGraph g, CHConfig c, int expShortcuts, double expDistance, IntIndexedContainer expNodes, int[] nodeOrdering) {
         PrepareContractionHierarchies prepare = createPrepareContractionHierarchies(g, c);
         useNodeOrdering(prepare, nodeOrdering);
@@ -43,10 +43,16 @@ public class LMApproximatorTest {
     @RepeatedTest(value = 10)
     public void randomGraph() {
         final long seed = System.nanoTime();
-        run(seed);
+        run(seed, false);
     }
 
-    private void run(long seed) {
+    @RepeatedTest(value = 10)
+    public void randomGraphCompactWeights() {
+        final long seed = System.nanoTime();
+        run(seed, true);
+    }
+
+    private void run(long seed, boolean compactWeights) {
         Directory dir = new RAMDirectory();
         DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
         DecimalEncodedValue turnCostEnc = TurnCost.create("car", 1);
@@ -60,6 +66,7 @@ public class LMApproximatorTest {
 
         PrepareLandmarks lm = new PrepareLandmarks(dir, graph, encodingManager, new LMConfig("car", weighting), 16);
         lm.setMaximumWeight(10000);
+        lm.setCompactWeights(compactWeights);
         lm.doWork();
         LandmarkStorage landmarkStorage = lm.getLandmarkStorage();
 
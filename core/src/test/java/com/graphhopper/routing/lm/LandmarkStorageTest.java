@@ -30,13 +30,17 @@ import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import static java.util.Collections.emptyList;
 import static org.junit.jupiter.api.Assertions.*;
@@ -108,6 +112,85 @@ public class LandmarkStorageTest {
         assertEquals(65534, lms.getFromWeight(0, 0));
     }
 
+    @Test
+    public void testSetGetCompactWeight() {
+        graph.edge(0, 1).set(speedEnc, 60, 60).setDistance(40.1);
+        LandmarkStorage lms = new LandmarkStorage(graph, encodingManager, new RAMDirectory(),
+                new LMConfig("c1", new SpeedWeighting(speedEnc)), 4).setCompactWeights(true);
+        lms._getInternalDA().create(2000);
+        lms.setWeight(0, 10.9, 0.5);
+        // rounded down
+        assertEquals(21, lms.getFromWeight(0, 0));
+        assertEquals(0, lms.getToWeight(0, 0));
+        // 2^8=256, use -1 for infinity and -2 for maximum
+        assertFalse(lms.setWeight(0, 255, 1));
+        assertEquals(254, lms.getFromWeight(0, 0));
+        assertFalse(lms.isInfinity(0));
+    }
+
+    @Test
+    public void testCompactWeights() {
+        GHUtility.buildRandomGraph(graph, new Random(123), 500, 2.2, true, speedEnc, null, 0.8, 0.8);
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        subnetworkRemoval(weighting, 10);
+
+        LandmarkStorage lms = new LandmarkStorage(graph, encodingManager, new RAMDirectory(), new LMConfig("car", weighting), 8);
+        lms.setMinimumNodes(10);
+        lms.createLandmarks();
+        LandmarkStorage compact = new LandmarkStorage(graph, encodingManager, new RAMDirectory(), new LMConfig("car", weighting), 8);
+        compact.setMinimumNodes(10);
+        compact.setCompactWeights(true);
+        compact.createLandmarks();
+        assertTrue(compact.isCompactWeights());
+        assertThrows(IllegalStateException.class, () -> compact.setCompactWeights(false));
+
+        assertEquals(lms.getSubnetworksWithLandmarks(), compact.getSubnetworksWithLandmarks());
+        for (int subnetwork = 1; subnetwork < lms.getSubnetworksWithLandmarks(); subnetwork++)
+            assertArrayEquals(lms.getLandmarks(subnetwork), compact.getLandmarks(subnetwork));
+        for (int node = 0; node < graph.getNodes(); node++) {
+            for (int lm = 0; lm < 8; lm++) {
+                if (lms.getFromWeight(lm, node) == LandmarkStorage.SHORT_MAX) {
+                    assertEquals(LandmarkStorage.BYTE_MAX, compact.getFromWeight(lm, node));
+                    continue;
+                }
+                // the weights are rounded down, so they differ by less than one factor
+                double weight = lms.getFromWeight(lm, node) * lms.getFactor();
+                double compactWeight = compact.getFromWeight(lm, node) * compact.getFromFactor(lm, node);
+                assertTrue(compactWeight <= weight + lms.getFactor(), "node: " + node + ", landmark: " + lm);
+                assertEquals(weight, compactWeight, lms.getFactor() + compact.getFromFactor(lm, node), "node: " + node + ", landmark: " + lm);
+            }
+        }
+    }
+
+    @Test
+    public void testCompactWeightsWithBigWeights() {
+        // the weights of a long and slow path are too big for the int header of the 16-bit factor
+        for (int node = 0; node < 60; node++)
+            graph.edge(node, node + 1).setDistance(100_000).set(speedEnc, 5, 5);
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        subnetworkRemoval(weighting, 1);
+
+        String location = "./target/landmark-storage-test-gh";
+        Helper.removeDir(new File(location));
+        LandmarkStorage compact = new LandmarkStorage(graph, encodingManager, new RAMDirectory(location, true).create(), new LMConfig("car", weighting), 2);
+        compact.setMinimumNodes(2);
+        compact.setCompactWeights(true);
+        compact.createLandmarks();
+        assertTrue(compact.getFactor() * 1e6 > Integer.MAX_VALUE, "factor: " + compact.getFactor());
+        int node = 30, lm = 0;
+        double fromWeight = compact.getFromWeight(lm, node) * compact.getFromFactor(lm, node);
+        compact.flush();
+        compact.close();
+
+        LandmarkStorage loaded = new LandmarkStorage(graph, encodingManager, new RAMDirectory(location, true), new LMConfig("car", weighting), 2);
+        loaded.setCompactWeights(true);
+        assertTrue(loaded.loadExisting());
+        assertEquals(compact.getFactor(), loaded.getFactor(), 1e-6);
+        assertEquals(fromWeight, loaded.getFromWeight(lm, node) * loaded.getFromFactor(lm, node), 1e-6);
+        loaded.close();
+        Helper.removeDir(new File(location));
+    }
+
     @Test
     public void testWithSubnetworks() {
         // 0-1-2..4-5->6
@@ -131,6 +214,32 @@ public class LandmarkStorageTest {
         assertEquals("[5, 4]", Arrays.toString(storage.getLandmarks(2)));
     }
 
+    @Test
+    public void testParallelLandmarkWeights() {
+        GHUtility.buildRandomGraph(graph, new Random(123), 500, 2.2, true, speedEnc, null, 0.8, 0.8);
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        subnetworkRemoval(weighting, 10);
+
+        LandmarkStorage sequential = new LandmarkStorage(graph, encodingManager, new RAMDirectory(), new LMConfig("car", weighting), 8);
+        sequential.setMinimumNodes(10);
+        sequential.createLandmarks();
+        LandmarkStorage parallel = new LandmarkStorage(graph, encodingManager, new RAMDirectory(), new LMConfig("car", weighting), 8);
+        parallel.setMinimumNodes(10);
+        parallel.setThreads(4);
+        parallel.createLandmarks();
+
+        assertTrue(sequential.getSubnetworksWithLandmarks() > 1);
+        assertEquals(sequential.getSubnetworksWithLandmarks(), parallel.getSubnetworksWithLandmarks());
+        for (int subnetwork = 1; subnetwork < sequential.getSubnetworksWithLandmarks(); subnetwork++)
+            assertArrayEquals(sequential.getLandmarks(subnetwork), parallel.getLandmarks(subnetwork));
+        for (int node = 0; node < graph.getNodes(); node++) {
+            for (int lm = 0; lm < 8; lm++) {
+                assertEquals(sequential.getFromWeight(lm, node), parallel.getFromWeight(lm, node));
+                assertEquals(sequential.getToWeight(lm, node), parallel.getToWeight(lm, node));
+            }
+        }
+    }
+
     @Test
     public void testWithStronglyConnectedComponent() {
         // 0 - 1 - 2 = 3 - 4
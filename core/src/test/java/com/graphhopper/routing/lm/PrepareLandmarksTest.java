@@ -212,4 +212,41 @@ public class PrepareLandmarksTest {
 
         Helper.removeDir(new File(fileStr));
     }
+
+    @Test
+    public void testStoreAndLoadCompactWeights() {
+        graph.edge(0, 1).setDistance(80_000).set(speedEnc, 60);
+        graph.edge(1, 2).setDistance(80_000).set(speedEnc, 60);
+        String fileStr = "./target/tmp-lm-compact";
+        Helper.removeDir(new File(fileStr));
+
+        Directory dir = new RAMDirectory(fileStr, true).create();
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        LMConfig lmConfig = new LMConfig("car", weighting);
+        PrepareLandmarks plm = new PrepareLandmarks(dir, graph, encodingManager, lmConfig, 2);
+        plm.setMinimumNodes(2);
+        plm.setCompactWeights(true);
+        plm.doWork();
+
+        LandmarkStorage lms = plm.getLandmarkStorage();
+        assertEquals("[2, 0]", Arrays.toString(lms.getLandmarks(1)));
+        double fromFactor = lms.getFromFactor(0, 1);
+        double toFactor = lms.getToFactor(0, 1);
+        // the factors are derived from the maximum weight of the landmark, i.e. the weight between 0 and 2
+        assertEquals(2666.7 / LandmarkStorage.BYTE_MAX, fromFactor, 0.1);
+        assertEquals(1333, lms.getFromWeight(0, 1) * fromFactor, fromFactor);
+
+        // the compact storage is recognized without setting it
+        dir = new RAMDirectory(fileStr, true);
+        plm = new PrepareLandmarks(dir, graph, encodingManager, lmConfig, 2);
+        assertTrue(plm.loadExisting());
+        lms = plm.getLandmarkStorage();
+        assertTrue(lms.isCompactWeights());
+        assertEquals("[2, 0]", Arrays.toString(lms.getLandmarks(1)));
+        assertEquals(fromFactor, lms.getFromFactor(0, 1));
+        assertEquals(toFactor, lms.getToFactor(0, 1));
+        assertEquals(1333, lms.getFromWeight(0, 1) * fromFactor, fromFactor);
+
+        Helper.removeDir(new File(fileStr));
+    }
 }
@@ -0,0 +1,60 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.DistancePlaneProjection;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BeelineWeightApproximatorTest {
+
+    @Test
+    void approximateMax() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        BaseGraph graph = new BaseGraph.Builder(EncodingManager.start().add(speedEnc).build()).create();
+        NodeAccess na = graph.getNodeAccess();
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        for (int node = 0; node < 100; node++)
+            // the distances range from a few meters to thousands of kilometers
+            na.setNode(node, 50 + rnd.nextDouble() * Math.pow(10, -4 + rnd.nextInt(6)), 10 + rnd.nextDouble() * Math.pow(10, -4 + rnd.nextInt(6)));
+        Weighting weighting = new SpeedWeighting(speedEnc);
+
+        for (BeelineWeightApproximator approximator : new BeelineWeightApproximator[]{
+                new BeelineWeightApproximator(na, weighting),
+                (BeelineWeightApproximator) new BeelineWeightApproximator(na, weighting).setEpsilon(1.5),
+                new BeelineWeightApproximator(na, weighting).setDistanceCalc(DistancePlaneProjection.DIST_PLANE)}) {
+            approximator.setTo(0);
+            for (int node = 0; node < 100; node++) {
+                double beeline = approximator.approximate(node);
+                for (double weight : new double[]{0, beeline * 0.5, beeline * 0.999, beeline, beeline * 1.001, beeline * 2}) {
+                    String msg = "seed: " + seed + ", node: " + node + ", weight: " + weight;
+                    assertEquals(Math.max(weight, beeline), approximator.approximateMax(node, weight), msg);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MaterializedWeightingTest {
+    private DecimalEncodedValue speedEnc;
+    private BaseGraph graph;
+    private long seed;
+    private Random rnd;
+
+    @BeforeEach
+    void setup() {
+        speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        graph = new BaseGraph.Builder(EncodingManager.start().add(speedEnc).build()).create();
+        seed = System.nanoTime();
+        rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.2, true, speedEnc, null, 0.8, 0.8);
+    }
+
+    @Test
+    void sameWeights() {
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        Weighting materialized = new MaterializedWeighting(weighting, MaterializedWeighting.calcWeights(graph, weighting));
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        for (int node = 0; node < graph.getNodes(); node++) {
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                for (boolean reverse : new boolean[]{false, true}) {
+                    double expected = weighting.calcEdgeWeight(iter, reverse);
+                    double weight = materialized.calcEdgeWeight(iter, reverse);
+                    String msg = "seed: " + seed + ", edge: " + iter.getEdge() + ", reverse: " + reverse;
+                    if (Double.isInfinite(expected)) {
+                        assertEquals(expected, weight, msg);
+                    } else {
+                        // the weights are rounded up to floats
+                        assertTrue(weight >= expected, msg);
+                        assertEquals(expected, weight, expected * 1.e-6, msg);
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < 50; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            int to = rnd.nextInt(graph.getNodes());
+            Path refPath = new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(from, to);
+            Path path = new Dijkstra(graph, materialized, TraversalMode.NODE_BASED).calcPath(from, to);
+            String msg = "seed: " + seed + ", from: " + from + ", to: " + to;
+            assertEquals(refPath.isFound(), path.isFound(), msg);
+            assertEquals(refPath.getWeight(), path.getWeight(), refPath.getWeight() * 1.e-6, msg);
+        }
+    }
+
+    @Test
+    void virtualEdges() {
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        Weighting materialized = new MaterializedWeighting(weighting, MaterializedWeighting.calcWeights(graph, weighting));
+        LocationIndexTree index = new LocationIndexTree(graph, new RAMDirectory());
+        index.prepareIndex();
+        // snap to the middle of the first edge
+        NodeAccess na = graph.getNodeAccess();
+        EdgeIteratorState edge = graph.getEdgeIteratorState(0, Integer.MIN_VALUE);
+        Snap snap = index.findClosest((na.getLat(edge.getBaseNode()) + na.getLat(edge.getAdjNode())) / 2,
+                (na.getLon(edge.getBaseNode()) + na.getLon(edge.getAdjNode())) / 2, EdgeFilter.ALL_EDGES);
+        assertTrue(snap.isValid());
+        QueryGraph queryGraph = QueryGraph.create(graph, snap);
+        int virtualEdges = 0;
+        EdgeExplorer explorer = queryGraph.createEdgeExplorer();
+        for (int node = 0; node < queryGraph.getNodes(); node++) {
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                if (iter.getEdge() < graph.getEdges())
+                    continue;
+                // virtual edges are only parts of the original edges, so their weights must not be taken from the array
+                assertEquals(weighting.calcEdgeWeight(iter, false), materialized.calcEdgeWeight(iter, false));
+                assertEquals(weighting.calcEdgeWeight(iter, true), materialized.calcEdgeWeight(iter, true));
+                virtualEdges++;
+            }
+        }
+        if (snap.getSnappedPosition() == Snap.Position.EDGE)
+            assertTrue(virtualEdges > 0, "seed: " + seed);
+    }
+
+    @Test
+    void cache() {
+        long bytesPerWeighting = 2L * graph.getEdges() * Float.BYTES;
+        MaterializedWeighting.Cache cache = new MaterializedWeighting.Cache(graph, bytesPerWeighting, 2);
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        // the first request only counts
+        assertSame(weighting, cache.get("a", weighting));
+        assertEquals(0, cache.size());
+        assertTrue(cache.get("a", weighting) instanceof MaterializedWeighting);
+        assertEquals(1, cache.size());
+        assertEquals(bytesPerWeighting, cache.getBytes());
+        assertTrue(cache.get("a", weighting) instanceof MaterializedWeighting);
+
+        // there is only space for one weighting, so the weights of b replace the ones of a
+        assertSame(weighting, cache.get("b", weighting));
+        assertTrue(cache.get("b", weighting) instanceof MaterializedWeighting);
+        assertEquals(1, cache.size());
+        assertEquals(bytesPerWeighting, cache.getBytes());
+        assertSame(weighting, cache.get("a", weighting));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+        assertSame(weighting, cache.get("b", weighting));
+
+        // the weights do not fit into the cache at all
+        MaterializedWeighting.Cache smallCache = new MaterializedWeighting.Cache(graph, bytesPerWeighting - 1, 1);
+        assertSame(weighting, smallCache.get("a", weighting));
+        assertEquals(0, smallCache.size());
+    }
+
+    @Test
+    void cacheWithExecutor() {
+        List<Runnable> tasks = new ArrayList<>();
+        MaterializedWeighting.Cache cache = new MaterializedWeighting.Cache(graph, Long.MAX_VALUE, 2, tasks::add);
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        assertSame(weighting, cache.get("a", weighting));
+        // the second request triggers the calculation, but until it is done the requests use the given weighting
+        assertSame(weighting, cache.get("a", weighting));
+        assertSame(weighting, cache.get("a", weighting));
+        assertSame(weighting, cache.get("a", weighting));
+        assertEquals(1, tasks.size());
+        assertEquals(0, cache.size());
+        tasks.remove(0).run();
+        assertEquals(1, cache.size());
+        assertTrue(cache.get("a", weighting) instanceof MaterializedWeighting);
+        assertTrue(tasks.isEmpty());
+
+        // weights that are calculated while the cache is cleared are not used
+        assertSame(weighting, cache.get("b", weighting));
+        assertSame(weighting, cache.get("b", weighting));
+        assertEquals(1, tasks.size());
+        cache.clear();
+        tasks.remove(0).run();
+        assertEquals(0, cache.size());
+        assertSame(weighting, cache.get("b", weighting));
+        assertSame(weighting, cache.get("b", weighting));
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        assertTrue(cache.get("b", weighting) instanceof MaterializedWeighting);
+    }
+}
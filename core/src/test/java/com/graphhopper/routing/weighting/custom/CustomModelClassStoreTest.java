@@ -0,0 +1,136 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.EdgeIteratorState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.graphhopper.json.Statement.If;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.json.Statement.Op.MULTIPLY;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomModelClassStoreTest {
+    @TempDir
+    File dir;
+    EncodingManager encodingManager;
+    EnumEncodedValue<RoadClass> roadClassEnc;
+    DecimalEncodedValue avgSpeedEnc;
+    BaseGraph graph;
+
+    @BeforeEach
+    void setup() {
+        avgSpeedEnc = VehicleSpeed.create("car", 5, 5, false);
+        encodingManager = new EncodingManager.Builder().add(avgSpeedEnc).add(RoadClass.create()).build();
+        roadClassEnc = encodingManager.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
+        graph = new BaseGraph.Builder(encodingManager).create();
+    }
+
+    private static CustomModel createCustomModel() {
+        CustomModel customModel = new CustomModel();
+        customModel.addToPriority(If("road_class == PRIMARY", MULTIPLY, "0.5"));
+        customModel.addToSpeed(If("true", LIMIT, "car_average_speed"));
+        return customModel;
+    }
+
+    private void assertHelper(Class<?> clazz, CustomModel customModel) throws Exception {
+        CustomWeightingHelper helper = (CustomWeightingHelper) clazz.getDeclaredConstructor().newInstance();
+        helper.init(customModel, encodingManager, CustomModel.getAreasAsMap(customModel.getAreas()));
+        EdgeIteratorState edge = graph.edge(0, 1).setDistance(100).set(roadClassEnc, RoadClass.PRIMARY).set(avgSpeedEnc, 60);
+        assertEquals(0.5, helper.getPriority(edge, false), 1.e-6);
+        assertEquals(60, helper.getSpeed(edge, false), 1.e-6);
+    }
+
+    private File[] classFiles() {
+        return dir.listFiles((d, name) -> name.endsWith(".class"));
+    }
+
+    @Test
+    void storeAndLoad() throws Exception {
+        CustomModel customModel = createCustomModel();
+        Class<?> compiled;
+        try (CustomModelClassStore store = new CustomModelClassStore(dir, 0)) {
+            compiled = store.get(customModel, encodingManager);
+            assertHelper(compiled, customModel);
+        }
+        assertEquals(1, classFiles().length);
+
+        try (CustomModelClassStore store = new CustomModelClassStore(dir, 0)) {
+            Class<?> loaded = store.get(createCustomModel(), encodingManager);
+            assertNotSame(compiled, loaded);
+            // every compilation creates a new class name, so the class was not compiled again
+            assertEquals(compiled.getName(), loaded.getName());
+            assertHelper(loaded, customModel);
+        }
+        assertEquals(1, classFiles().length);
+    }
+
+    @Test
+    void createKey() {
+        String key = CustomModelClassStore.createKey(createCustomModel(), encodingManager);
+        assertEquals(key, CustomModelClassStore.createKey(createCustomModel(), encodingManager));
+        assertNotEquals(key, CustomModelClassStore.createKey(createCustomModel().setDistanceInfluence(10d), encodingManager));
+        EncodingManager otherEncodingManager = new EncodingManager.Builder().add(VehicleSpeed.create("car", 5, 5, false))
+                .add(RoadClass.create()).add(Surface.create()).build();
+        assertNotEquals(key, CustomModelClassStore.createKey(createCustomModel(), otherEncodingManager));
+    }
+
+    @Test
+    void invalidClassFile() throws Exception {
+        CustomModel customModel = createCustomModel();
+        File file = new File(dir, CustomModelClassStore.createKey(customModel, encodingManager) + ".class");
+        Files.write(file.toPath(), new byte[]{1, 2, 3});
+        try (CustomModelClassStore store = new CustomModelClassStore(dir, 0)) {
+            assertHelper(store.get(customModel, encodingManager), customModel);
+        }
+        // the class file was replaced
+        assertTrue(file.length() > 3);
+    }
+
+    @Test
+    void compileThreads() throws Exception {
+        CustomModel customModel = createCustomModel();
+        ExecutorService requests = Executors.newFixedThreadPool(4);
+        try (CustomModelClassStore store = new CustomModelClassStore(dir, 2)) {
+            store.warmUp(List.of(customModel), encodingManager);
+            List<Future<Class<?>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+                futures.add(requests.submit(() -> store.get(createCustomModel(), encodingManager)));
+            for (Future<Class<?>> future : futures)
+                assertHelper(future.get(), customModel);
+        } finally {
+            requests.shutdown();
+        }
+        assertEquals(1, classFiles().length);
+        assertEquals(0, dir.listFiles((d, name) -> name.endsWith(".tmp")).length);
+    }
+}
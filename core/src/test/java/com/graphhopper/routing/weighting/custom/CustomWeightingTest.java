@@ -15,6 +15,8 @@ import com.graphhopper.util.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static com.graphhopper.json.Statement.*;
 import static com.graphhopper.json.Statement.Op.LIMIT;
 import static com.graphhopper.json.Statement.Op.MULTIPLY;
@@ -271,6 +273,45 @@ class CustomWeightingTest {
         assertEquals(1.15, weighting.calcEdgeWeight(edge2, false), 0.01);
     }
 
+    @Test
+    public void testAreaEdgeCache() throws Exception {
+        EdgeIteratorState edge1 = graph.edge(0, 1).setDistance(10).
+                set(roadClassEnc, PRIMARY).set(avSpeedEnc, 80);
+        EdgeIteratorState edge2 = graph.edge(2, 3).setDistance(10).
+                set(roadClassEnc, PRIMARY).set(avSpeedEnc, 80);
+        graph.getNodeAccess().setNode(0, 50.0120, 11.582);
+        graph.getNodeAccess().setNode(1, 50.0125, 11.585);
+        graph.getNodeAccess().setNode(2, 40.0, 8.0);
+        graph.getNodeAccess().setNode(3, 40.1, 8.1);
+
+        ObjectMapper om = new ObjectMapper().registerModule(new JtsModule());
+        String geometry = "{ \"geometry\":{ \"type\": \"Polygon\", \"coordinates\": " +
+                "[[[11.5818,50.0126], [11.5818,50.0119], [11.5861,50.0119], [11.5861,50.0126], [11.5818,50.0126]]] }}";
+        JsonFeature cachedArea = om.readValue(geometry, JsonFeature.class);
+        cachedArea.setId("cached");
+        AreaEdgeCache areaEdgeCache = new AreaEdgeCache(graph);
+        areaEdgeCache.addAreas(List.of(cachedArea));
+        assertEquals(1, areaEdgeCache.size());
+
+        // move edge1 out of the area, so we can see that the weighting uses the precomputed edges
+        graph.getNodeAccess().setNode(0, 40.0120, 11.582);
+        graph.getNodeAccess().setNode(1, 40.0125, 11.585);
+
+        // the area is found via its geometry, the id can be different
+        JsonFeature area = om.readValue(geometry, JsonFeature.class);
+        area.setId("custom1");
+        CustomModel customModel = createSpeedCustomModel(avSpeedEnc).setDistanceInfluence(70d).
+                addToPriority(If("in_custom1", MULTIPLY, "0.5"));
+        customModel.getAreas().getFeatures().add(area);
+        Weighting weighting = CustomModelParser.createWeighting(encodingManager, NO_TURN_COST_PROVIDER, customModel, areaEdgeCache, null);
+        assertEquals(1.6, weighting.calcEdgeWeight(edge1, false), 0.01);
+        assertEquals(1.15, weighting.calcEdgeWeight(edge2, false), 0.01);
+
+        // without the cache the polygon is used
+        weighting = createWeighting(customModel);
+        assertEquals(1.15, weighting.calcEdgeWeight(edge1, false), 0.01);
+    }
+
     @Test
     public void testMaxSpeed() {
         assertEquals(155, avSpeedEnc.getMaxOrMaxStorableDecimal(), 0.1);
@@ -18,8 +18,8 @@
 package com.graphhopper.storage;
 
 import com.carrotsearch.hppc.IntArrayList;
-import com.graphhopper.routing.ev.EnumEncodedValue;
-import com.graphhopper.routing.ev.RoadClass;
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.search.KVStorage.KValue;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
@@ -27,13 +27,18 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Random;
 
 import static com.graphhopper.util.EdgeIteratorState.REVERSE_STATE;
 import static com.graphhopper.util.FetchMode.*;
 import static com.graphhopper.util.Parameters.Details.STREET_NAME;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
 
 /**
  * @author Peter Karich
@@ -407,4 +412,208 @@ public class BaseGraphTest extends AbstractGraphStorageTester {
         assertThrows(IllegalArgumentException.class, () -> ne.setGeoRef(0, 1L << 39));
         graph.close();
     }
+
+    @Test
+    public void testCSRAdjacency() {
+        BaseGraph graph = createGHStorage();
+        GHUtility.buildRandomGraph(graph, new Random(123), 100, 2.5, true, carSpeedEnc, 60d, 0.8, 0.5);
+        EdgeExplorer linkedListExplorer = graph.createEdgeExplorer();
+        assertThrows(IllegalStateException.class, graph::createCSRAdjacency);
+        graph.freeze();
+        graph.createCSRAdjacency();
+        assertTrue(graph.hasCSRAdjacency());
+        EdgeExplorer csrExplorer = graph.createEdgeExplorer();
+        assertNotSame(linkedListExplorer.getClass(), csrExplorer.getClass());
+        for (int node = 0; node < graph.getNodes(); node++) {
+            EdgeIterator expected = linkedListExplorer.setBaseNode(node);
+            EdgeIterator iter = csrExplorer.setBaseNode(node);
+            while (expected.next()) {
+                assertTrue(iter.next());
+                assertEquals(expected.getEdge(), iter.getEdge());
+                assertEquals(expected.getEdgeKey(), iter.getEdgeKey());
+                assertEquals(expected.getBaseNode(), iter.getBaseNode());
+                assertEquals(expected.getAdjNode(), iter.getAdjNode());
+                assertEquals(expected.get(carSpeedEnc), iter.get(carSpeedEnc));
+                assertEquals(expected.getReverse(carSpeedEnc), iter.getReverse(carSpeedEnc));
+                assertEquals(expected.fetchWayGeometry(ALL), iter.fetchWayGeometry(ALL));
+                assertEquals(expected.detach(true).getEdgeKey(), iter.detach(true).getEdgeKey());
+            }
+            assertFalse(iter.next());
+        }
+
+        // the edge filter is applied as well
+        EdgeExplorer filteredExplorer = graph.createEdgeExplorer(edge -> edge.getAdjNode() % 2 == 0);
+        for (int node = 0; node < graph.getNodes(); node++) {
+            EdgeIterator iter = filteredExplorer.setBaseNode(node);
+            assertThrows(IllegalStateException.class, () -> iter.detach(false));
+            while (iter.next())
+                assertEquals(0, iter.getAdjNode() % 2);
+        }
+        graph.close();
+    }
+
+    @Test
+    public void testLoadUncompressedGeometryOfVersion7() {
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false).create(defaultSize);
+        assumeFalse(graph.isCompressedGeometry());
+        graph.getNodeAccess().setNode(0, 10, 10);
+        graph.getNodeAccess().setNode(1, 11, 20);
+        graph.edge(0, 1).setDistance(100).setWayGeometry(Helper.createPointList(10.5, 15));
+        graph.flush();
+        graph.close();
+        setGeometryHeader(BaseGraph.VERSION_GEOMETRY_UNCOMPRESSED, 0);
+
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false);
+        assertTrue(graph.loadExisting());
+        assertEquals(Helper.createPointList(10, 10, 10.5, 15, 11, 20), graph.getEdgeIteratorState(0, 1).fetchWayGeometry(ALL));
+        graph.close();
+
+        // compressed geometries of version 7 used a different layout
+        setGeometryHeader(BaseGraph.VERSION_GEOMETRY_UNCOMPRESSED, 1);
+        BaseGraph compressed = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false);
+        IllegalStateException e = assertThrows(IllegalStateException.class, compressed::loadExisting);
+        assertTrue(e.getMessage().contains("Unexpected version for 'geometry'"), e.getMessage());
+    }
+
+    private void setGeometryHeader(int version, int compressed) {
+        Directory dir = new RAMDirectory(defaultGraphLoc, true);
+        DataAccess geometry = dir.create("geometry");
+        assertTrue(geometry.loadExisting());
+        geometry.setHeader(0, version);
+        geometry.setHeader(20, compressed);
+        geometry.flush();
+        dir.close();
+    }
+
+    @Test
+    public void testMigrateCombinedEdges() throws IOException {
+        // graph-v24.zip was created before the edge references were moved into a separate file. it contains edges of
+        // version 24 and geometry of version 7
+        unzipGraphV24();
+        for (int i = 0; i < 2; i++) {
+            assertGraphV24();
+            // the migration is persisted right away
+            assertTrue(new File(defaultGraphLoc, "edge_refs").exists());
+            assertFalse(new File(defaultGraphLoc, BaseGraphNodesAndEdges.MIGRATED_EDGES).exists());
+        }
+    }
+
+    @Test
+    public void testMigrationInterruptedBeforeRecordsWereCompacted() throws IOException {
+        unzipGraphV24();
+        // a crash while the compacted records were written leaves incomplete files behind, but the edges are untouched
+        Directory dir = new RAMDirectory(defaultGraphLoc, true);
+        for (String name : new String[]{"edge_refs", BaseGraphNodesAndEdges.MIGRATED_EDGES}) {
+            DataAccess da = dir.create(name);
+            da.create(100);
+            da.setInt(0, 123);
+            da.setInt(4, 456);
+            da.flush();
+        }
+        dir.close();
+        assertGraphV24();
+        assertFalse(new File(defaultGraphLoc, BaseGraphNodesAndEdges.MIGRATED_EDGES).exists());
+    }
+
+    @Test
+    public void testMigrationInterruptedWhileRecordsWereCopied() throws IOException {
+        unzipGraphV24();
+        Directory dir = new RAMDirectory(defaultGraphLoc, true);
+        DataAccess edges = dir.create("edges");
+        assertTrue(edges.loadExisting());
+        int oldEdgeEntryBytes = edges.getHeader(1 * 4);
+        dir.close();
+        assertGraphV24();
+
+        // a crash while the compacted records were copied into the edges leaves partially overwritten edges with the
+        // old version behind, but the compacted records and the edge_refs were already stored completely
+        dir = new RAMDirectory(defaultGraphLoc, true);
+        edges = dir.create("edges");
+        assertTrue(edges.loadExisting());
+        DataAccess migratedEdges = dir.create(BaseGraphNodesAndEdges.MIGRATED_EDGES);
+        migratedEdges.create(edges.getCapacity());
+        byte[] bytes = new byte[(int) edges.getCapacity()];
+        edges.getBytes(0, bytes, bytes.length);
+        migratedEdges.setBytes(0, bytes, bytes.length);
+        for (int i = 0; i < 3; i++)
+            migratedEdges.setHeader(i * 4, edges.getHeader(i * 4));
+        migratedEdges.flush();
+        edges.setHeader(0 * 4, BaseGraphNodesAndEdges.VERSION_EDGE_COMBINED);
+        edges.setHeader(1 * 4, oldEdgeEntryBytes);
+        edges.setInt(bytes.length / 2, 123);
+        edges.flush();
+        dir.close();
+
+        assertGraphV24();
+        assertFalse(new File(defaultGraphLoc, BaseGraphNodesAndEdges.MIGRATED_EDGES).exists());
+        assertGraphV24();
+    }
+
+    private void assertGraphV24() {
+        BaseGraph graph = createGraphV24();
+        assertTrue(graph.loadExisting());
+        assertEquals(4, graph.getNodes());
+        assertEquals(3, graph.getEdges());
+        EdgeIteratorState e = graph.getEdgeIteratorState(0, 1);
+        assertEquals(100, e.getDistance(), 1.e-6);
+        assertTrue(e.get(accessEncV24));
+        assertFalse(e.getReverse(accessEncV24));
+        assertEquals(30, e.get(speedEncV24), 1.e-6);
+        assertEquals(Helper.createPointList(10, 10, 10.5, 15, 10.8, 18, 11, 20), e.fetchWayGeometry(ALL));
+        assertEquals("street 01", e.getName());
+        e = graph.getEdgeIteratorState(1, 2);
+        assertEquals(120, e.getDistance(), 1.e-6);
+        assertFalse(e.get(accessEncV24));
+        assertTrue(e.getReverse(accessEncV24));
+        assertEquals(60, e.get(speedEncV24), 1.e-6);
+        assertEquals(Helper.createPointList(11, 20, 12, 12), e.fetchWayGeometry(ALL));
+        assertEquals("street 12", e.getName());
+        e = graph.getEdgeIteratorState(2, 3);
+        assertEquals(80, e.getDistance(), 1.e-6);
+        assertEquals(45, e.get(speedEncV24), 1.e-6);
+        assertEquals(Helper.createPointList(12, 12, 12.5, 13, 13, 14), e.fetchWayGeometry(ALL));
+        assertEquals(2, graph.getTurnCostStorage().get(turnCostEncV24, 1, 2, 2), 1.e-6);
+        assertEquals(0, graph.getTurnCostStorage().get(turnCostEncV24, 2, 2, 1), 1.e-6);
+        assertEquals(2, GHUtility.count(graph.createEdgeExplorer().setBaseNode(2)));
+        graph.close();
+    }
+
+    @Test
+    public void testNoMigrationIfOtherVersionDoesNotMatch() throws IOException {
+        unzipGraphV24();
+        Directory dir = new RAMDirectory(defaultGraphLoc, true);
+        DataAccess geometry = dir.create("geometry");
+        assertTrue(geometry.loadExisting());
+        geometry.setHeader(0, 6);
+        geometry.flush();
+        dir.close();
+
+        BaseGraph graph = createGraphV24();
+        IllegalStateException e = assertThrows(IllegalStateException.class, graph::loadExisting);
+        assertTrue(e.getMessage().contains("Unexpected version for 'geometry'"), e.getMessage());
+        // the edges were not touched
+        assertFalse(new File(defaultGraphLoc, "edge_refs").exists());
+        dir = new RAMDirectory(defaultGraphLoc, true);
+        DataAccess edges = dir.create("edges");
+        assertTrue(edges.loadExisting());
+        assertEquals(BaseGraphNodesAndEdges.VERSION_EDGE_COMBINED, edges.getHeader(0));
+        dir.close();
+    }
+
+    private final BooleanEncodedValue accessEncV24 = new SimpleBooleanEncodedValue("car_access", true);
+    private final DecimalEncodedValue speedEncV24 = new DecimalEncodedValueImpl("car_speed", 5, 5, false);
+    private final DecimalEncodedValue turnCostEncV24 = TurnCost.create("car", 3);
+    private final EncodingManager emV24 = EncodingManager.start().add(accessEncV24).add(speedEncV24).addTurnCostEncodedValue(turnCostEncV24).build();
+
+    private BaseGraph createGraphV24() {
+        return new BaseGraph.Builder(emV24).setDir(new RAMDirectory(defaultGraphLoc, true)).withTurnCosts(true).build();
+    }
+
+    private void unzipGraphV24() throws IOException {
+        Helper.removeDir(new File(defaultGraphLoc));
+        try (InputStream is = getClass().getResourceAsStream("graph-v24.zip")) {
+            new Unzipper().unzip(is, new File(defaultGraphLoc), progress -> {
+            });
+        }
+    }
 }
@@ -0,0 +1,156 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs all the tests of BaseGraphTest with the delta encoded way geometry.
+ */
+public class BaseGraphWithCompressedGeometryTest extends BaseGraphTest {
+
+    @Override
+    protected BaseGraph newGHStorage(Directory dir, boolean enabled3D, int segmentSize) {
+        return new BaseGraph.Builder(encodingManager).setDir(dir).set3D(enabled3D).setSegmentSize(segmentSize).withCompressedGeometry(true).build();
+    }
+
+    @Test
+    public void testCompressedGeometryIsSmaller() {
+        BaseGraph plain = new BaseGraph.Builder(encodingManager).set3D(true).create();
+        BaseGraph compressed = new BaseGraph.Builder(encodingManager).set3D(true).withCompressedGeometry(true).create();
+        for (BaseGraph g : new BaseGraph[]{plain, compressed}) {
+            g.getNodeAccess().setNode(0, 50, 10, 100);
+            g.getNodeAccess().setNode(1, 50.01, 10.01, 110);
+            PointList pillars = new PointList(100, true);
+            for (int i = 0; i < 100; i++)
+                pillars.add(50 + i * 1e-4, 10 + i * 1e-4, 100 + i * 0.1);
+            g.edge(0, 1).setWayGeometry(pillars);
+        }
+        assertTrue(compressed.isCompressedGeometry());
+        assertEquals(plain.getEdgeIteratorState(0, 1).fetchWayGeometry(FetchMode.ALL),
+                compressed.getEdgeIteratorState(0, 1).fetchWayGeometry(FetchMode.ALL));
+        // pillar nodes around 15m apart need two bytes per value instead of four (and three for the elevation)
+        assertTrue(compressed.getMaxGeoRef() * 1.5 < plain.getMaxGeoRef(), compressed.getMaxGeoRef() + " vs. " + plain.getMaxGeoRef());
+    }
+
+    @Override
+    @Test
+    public void testDontGrowOnUpdate() {
+        // same as in AbstractGraphStorageTester, but the byte counts depend on the values of the coordinates
+        graph = createGHStorage(defaultGraphLoc, true);
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 10, 10, 0);
+        na.setNode(1, 11, 20, 1);
+        na.setNode(2, 12, 12, 0.4);
+
+        EdgeIteratorState iter2 = graph.edge(0, 1).setDistance(100).set(carAccessEnc, true, true);
+        BaseGraph baseGraph = graph.getBaseGraph();
+        assertEquals(1, baseGraph.getMaxGeoRef());
+        iter2.setWayGeometry(Helper.createPointList3D(1, 2, 3, 3, 4, 5, 5, 6, 7, 7, 8, 9));
+        long maxGeoRef = baseGraph.getMaxGeoRef();
+        iter2.setWayGeometry(Helper.createPointList3D(1, 2, 3, 3, 4, 5, 5, 6, 7));
+        assertEquals(maxGeoRef, baseGraph.getMaxGeoRef());
+        iter2.setWayGeometry(Helper.createPointList3D(1, 2, 3));
+        assertEquals(maxGeoRef, baseGraph.getMaxGeoRef());
+        assertThrows(IllegalStateException.class, () -> iter2.setWayGeometry(Helper.createPointList3D(1.5, 1, 0, 2, 3, 0)));
+        assertEquals(maxGeoRef, baseGraph.getMaxGeoRef());
+        assertEquals(Helper.createPointList3D(1, 2, 3), iter2.fetchWayGeometry(FetchMode.PILLAR_ONLY));
+    }
+
+    @Test
+    public void testEncodingIsKeptWhenLoading() {
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false).create(defaultSize);
+        graph.getNodeAccess().setNode(0, 10, 10);
+        graph.getNodeAccess().setNode(1, 11, 11);
+        graph.edge(0, 1).setWayGeometry(Helper.createPointList(10.5, 10.4, 10.7, 10.9));
+        graph.flush();
+        graph.close();
+
+        // the encoding is read from the stored geometry and not from the builder
+        graph = new BaseGraph.Builder(encodingManager).setDir(new RAMDirectory(defaultGraphLoc, true)).build();
+        graph.loadExisting();
+        assertTrue(graph.isCompressedGeometry());
+        assertEquals(Helper.createPointList(10.5, 10.4, 10.7, 10.9), graph.getEdgeIteratorState(0, 1).fetchWayGeometry(FetchMode.PILLAR_ONLY));
+    }
+
+    @Test
+    public void testChangeGeometryThatNeedsMoreBytes() {
+        graph = createGHStorage();
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 10, 10);
+        na.setNode(1, 11, 11);
+        EdgeIteratorState edge = graph.edge(0, 1).setWayGeometry(Helper.createPointList(10.1, 10.1, 10.2, 10.2));
+        EdgeIteratorState copy = graph.copyEdge(edge.getEdge(), true);
+        long geoRef = graph.getMaxGeoRef();
+
+        // the same number of points, but far away from each other and thus the deltas need more bytes
+        PointList far = Helper.createPointList(-70, -170, 70, 170);
+        edge.setWayGeometry(far);
+        assertTrue(graph.getMaxGeoRef() > geoRef);
+        assertEquals(far, graph.getEdgeIteratorState(edge.getEdge(), 1).fetchWayGeometry(FetchMode.PILLAR_ONLY));
+        // the copy uses the new geometry as well
+        assertEquals(far, graph.getEdgeIteratorState(copy.getEdge(), 1).fetchWayGeometry(FetchMode.PILLAR_ONLY));
+
+        // fewer bytes are written into the existing slot
+        geoRef = graph.getMaxGeoRef();
+        edge.setWayGeometry(Helper.createPointList(10.3, 10.3));
+        assertEquals(geoRef, graph.getMaxGeoRef());
+        assertEquals(Helper.createPointList(10.3, 10.3), graph.getEdgeIteratorState(copy.getEdge(), 1).fetchWayGeometry(FetchMode.PILLAR_ONLY));
+    }
+
+    @Test
+    public void testSlotOfMovedGeometryIsReused() {
+        graph = createGHStorage();
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 10, 10);
+        na.setNode(1, 11, 11);
+        na.setNode(2, 12, 12);
+        PointList near = Helper.createPointList(10.1, 10.1, 10.2, 10.2);
+        EdgeIteratorState edge = graph.edge(0, 1).setWayGeometry(near);
+        graph.edge(1, 2).setWayGeometry(Helper.createPointList(11.1, 11.1));
+
+        // the geometry of the first edge is not the last one, so it has to be moved when it needs more bytes
+        long maxGeoRef = graph.getMaxGeoRef();
+        PointList far = Helper.createPointList(-70, -170, 70, 170);
+        edge.setWayGeometry(far);
+        assertTrue(graph.getMaxGeoRef() > maxGeoRef);
+        assertEquals(far, edge.fetchWayGeometry(FetchMode.PILLAR_ONLY));
+
+        // the old slot is used for the next geometry that fits into it
+        maxGeoRef = graph.getMaxGeoRef();
+        EdgeIteratorState other = graph.edge(0, 2).setWayGeometry(near);
+        assertEquals(maxGeoRef, graph.getMaxGeoRef());
+        assertEquals(near, other.fetchWayGeometry(FetchMode.PILLAR_ONLY));
+        assertEquals(far, edge.fetchWayGeometry(FetchMode.PILLAR_ONLY));
+        assertEquals(Helper.createPointList(11.1, 11.1), graph.getEdgeIteratorState(1, 2).fetchWayGeometry(FetchMode.PILLAR_ONLY));
+
+        // the last geometry grows within the storage without leaving its old slot behind
+        EdgeIteratorState last = graph.edge(1, 0).setWayGeometry(near);
+        maxGeoRef = graph.getMaxGeoRef();
+        last.setWayGeometry(far);
+        assertEquals(far, last.fetchWayGeometry(FetchMode.PILLAR_ONLY));
+        assertTrue(graph.getMaxGeoRef() > maxGeoRef);
+        assertTrue(graph.getMaxGeoRef() < maxGeoRef + 10, "maxGeoRef: " + graph.getMaxGeoRef() + " vs. " + maxGeoRef);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapDataAccessTest extends DataAccessTest {
+    @Override
+    public DataAccess createDataAccess(String name, int segmentSize) {
+        return new OffHeapDataAccess(name, directory, true, segmentSize);
+    }
+
+    @Test
+    public void testMixOffHeap2MMAP() {
+        DataAccess da = createDataAccess(name);
+        assertFalse(da.loadExisting());
+        da.create(100);
+        da.setInt(7 * 4, 123);
+        da.flush();
+        da.close();
+        da = new MMapDataAccess(name, directory, true, -1);
+        assertTrue(da.loadExisting());
+        assertEquals(123, da.getInt(7 * 4));
+        da.close();
+
+        da = new RAMDataAccess(name, directory, true, -1);
+        assertTrue(da.loadExisting());
+        assertEquals(123, da.getInt(7 * 4));
+        da.close();
+    }
+
+    @Test
+    public void testDAType() {
+        assertEquals(DAType.OFF_HEAP_STORE, DAType.fromString("off_heap_store"));
+        assertEquals(DAType.OFF_HEAP, DAType.fromString("OFF_HEAP"));
+        assertEquals("OFF_HEAP_STORE", DAType.OFF_HEAP_STORE.toString());
+        GHDirectory dir = new GHDirectory(directory, DAType.OFF_HEAP_STORE);
+        DataAccess da = dir.create(name);
+        assertTrue(da instanceof OffHeapDataAccess);
+        assertEquals(DAType.OFF_HEAP_STORE, da.getType());
+        // ints are not specially optimized off-heap
+        assertEquals(DAType.OFF_HEAP_STORE, dir.getDefaultType(name, true));
+        dir.close();
+    }
+}
@@ -18,21 +18,22 @@
 
 package com.graphhopper.storage;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.io.File;
+import java.util.*;
 import java.util.stream.IntStream;
 
 import static com.graphhopper.util.GHUtility.getEdge;
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class TurnCostStorageTest {
 
@@ -185,4 +186,88 @@ public class TurnCostStorageTest {
         assertFalse(iterator.next());
     }
 
+    @Test
+    public void testSortAndIndex() {
+        BaseGraph g = new BaseGraph.Builder(manager).withTurnCosts(true).create();
+        Random rnd = new Random(42);
+        GHUtility.buildRandomGraph(g, rnd, 100, 2.5, true, speedEnc, null, 0.8, 0.8);
+        TurnCostStorage turnCostStorage = g.getTurnCostStorage();
+        Map<List<Integer>, Double> expected = new HashMap<>();
+        EdgeExplorer explorer = g.createEdgeExplorer();
+        for (int node = 0; node < g.getNodes(); node++) {
+            IntArrayList edges = new IntArrayList();
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next())
+                edges.add(iter.getEdge());
+            for (int i = 0; i < edges.size(); i++)
+                for (int j = 0; j < edges.size(); j++)
+                    if (rnd.nextBoolean()) {
+                        double cost = rnd.nextInt(3);
+                        turnCostStorage.set(carTurnCostEnc, edges.get(i), node, edges.get(j), cost);
+                        expected.put(Arrays.asList(edges.get(i), node, edges.get(j)), cost);
+                    }
+        }
+        assertFalse(turnCostStorage.hasIndex());
+        checkTurnCosts(turnCostStorage, expected);
+
+        // the entries get sorted and indexed when the graph is frozen
+        g.freeze();
+        assertTrue(turnCostStorage.hasIndex());
+        assertEquals(expected.size(), turnCostStorage.getTurnCostsCount());
+        checkTurnCosts(turnCostStorage, expected);
+        assertEquals(0, turnCostStorage.get(carTurnCostEnc, 0, g.getNodes() - 1, 1));
+
+        // existing entries can be changed without dropping the index, new entries go into the linked list
+        List<Integer> existing = expected.keySet().iterator().next();
+        double newCost = expected.get(existing) == 0 ? 1 : 0;
+        turnCostStorage.set(carTurnCostEnc, existing.get(0), existing.get(1), existing.get(2), newCost);
+        expected.put(existing, newCost);
+        assertTrue(turnCostStorage.hasIndex());
+        checkTurnCosts(turnCostStorage, expected);
+        turnCostStorage.set(carTurnCostEnc, 0, g.getNodes() - 1, 1, 2);
+        expected.put(Arrays.asList(0, g.getNodes() - 1, 1), 2.0);
+        assertFalse(turnCostStorage.hasIndex());
+        checkTurnCosts(turnCostStorage, expected);
+        turnCostStorage.sortAndIndex();
+        assertTrue(turnCostStorage.hasIndex());
+        checkTurnCosts(turnCostStorage, expected);
+    }
+
+    @Test
+    public void testIndexIsAvailableAfterLoading() {
+        String location = "./target/turn-cost-storage-test";
+        Helper.removeDir(new File(location));
+        BaseGraph g = new BaseGraph.Builder(manager).setDir(new RAMDirectory(location, true)).withTurnCosts(true).create();
+        initGraph(g, accessEnc, speedEnc);
+        int edge02 = getEdge(g, 0, 2).getEdge();
+        int edge23 = getEdge(g, 2, 3).getEdge();
+        int edge24 = getEdge(g, 2, 4).getEdge();
+        g.getTurnCostStorage().set(carTurnCostEnc, edge02, 2, edge24, 2);
+        g.getTurnCostStorage().set(carTurnCostEnc, edge02, 2, edge23, 1);
+        g.freeze();
+        g.flush();
+        g.close();
+
+        g = new BaseGraph.Builder(manager).setDir(new RAMDirectory(location, true)).withTurnCosts(true).build();
+        assertTrue(g.loadExisting());
+        assertTrue(g.getTurnCostStorage().hasIndex());
+        assertEquals(2, g.getTurnCostStorage().get(carTurnCostEnc, edge02, 2, edge24));
+        assertEquals(1, g.getTurnCostStorage().get(carTurnCostEnc, edge02, 2, edge23));
+        assertEquals(0, g.getTurnCostStorage().get(carTurnCostEnc, edge23, 2, edge24));
+        g.close();
+        Helper.removeDir(new File(location));
+    }
+
+    private void checkTurnCosts(TurnCostStorage turnCostStorage, Map<List<Integer>, Double> expected) {
+        for (Map.Entry<List<Integer>, Double> e : expected.entrySet())
+            assertEquals(e.getValue(), turnCostStorage.get(carTurnCostEnc, e.getKey().get(0), e.getKey().get(1), e.getKey().get(2)), e.getKey().toString());
+        TurnCostStorage.Iterator iterator = turnCostStorage.getAllTurnCosts();
+        int count = 0;
+        while (iterator.next()) {
+            assertEquals(expected.get(Arrays.asList(iterator.getFromEdge(), iterator.getViaNode(), iterator.getToEdge())), iterator.getCost(carTurnCostEnc));
+            count++;
+        }
+        assertEquals(expected.size(), count);
+    }
+
 }
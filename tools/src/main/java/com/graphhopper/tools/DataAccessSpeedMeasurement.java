@@ -0,0 +1,92 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.tools;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.MiniPerfTest;
+import com.graphhopper.util.PMap;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the read and write speed of the different DataAccess implementations, e.g. run it via:
+ * java -cp tools/target/graphhopper-tools-*-jar-with-dependencies.jar com.graphhopper.tools.DataAccessSpeedMeasurement mb=512
+ */
+public class DataAccessSpeedMeasurement {
+
+    public static void main(String[] strs) {
+        PMap args = PMap.read(strs);
+        String location = args.getString("location", "dataaccess-speed-measurement");
+        long bytes = args.getLong("mb", 256) * (1 << 20);
+        int iterations = args.getInt("iters", 10_000_000);
+        List<String> result = new ArrayList<>();
+        for (DAType type : new DAType[]{DAType.RAM_STORE, DAType.MMAP, DAType.OFF_HEAP_STORE}) {
+            System.out.println("Running measurement for " + type);
+            Helper.removeDir(new File(location));
+            GHDirectory dir = new GHDirectory(location, type);
+            dir.create();
+            DataAccess da = dir.create("measurement");
+            da.create(bytes);
+            long ints = bytes / 4;
+
+            long start = System.nanoTime();
+            for (long i = 0; i < ints; i++)
+                da.setInt(i * 4, (int) i);
+            result.add(String.format("%s, sequential write: %.2fms", type, (System.nanoTime() - start) / 1.e6));
+
+            MiniPerfTest sequentialRead = new MiniPerfTest().setIterations(iterations).start((warmup, run) -> {
+                long pos = ((long) run * 4) % bytes;
+                return da.getInt(pos);
+            });
+            result.add(String.format("%s, sequential read: %.2fms, checksum: %d", type, sequentialRead.getSum(), sequentialRead.getDummySum()));
+
+            Random rnd = new Random(123);
+            MiniPerfTest randomRead = new MiniPerfTest().setIterations(iterations).start((warmup, run) -> {
+                long pos = (long) rnd.nextInt((int) Math.min(Integer.MAX_VALUE, ints)) * 4;
+                return da.getInt(pos);
+            });
+            result.add(String.format("%s, random read: %.2fms, checksum: %d", type, randomRead.getSum(), randomRead.getDummySum()));
+
+            start = System.nanoTime();
+            da.flush();
+            result.add(String.format("%s, flush: %.2fms", type, (System.nanoTime() - start) / 1.e6));
+            dir.close();
+
+            if (type.isStoring()) {
+                dir = new GHDirectory(location, type);
+                DataAccess loaded = dir.create("measurement");
+                start = System.nanoTime();
+                loaded.loadExisting();
+                result.add(String.format("%s, load: %.2fms", type, (System.nanoTime() - start) / 1.e6));
+                dir.close();
+            }
+            System.out.println(result.get(result.size() - 1));
+        }
+        Helper.removeDir(new File(location));
+        System.out.println();
+        System.out.println("### RESULT ###");
+        for (String res : result)
+            System.out.println(res);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.tools;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.apache.commons.collections.IntFloatBinaryHeap;
+import com.graphhopper.coll.IntFloatHeap;
+import com.graphhopper.coll.IntFloatRadixHeap;
+import com.graphhopper.config.Profile;
+import com.graphhopper.routing.DijkstraOneToMany;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.routing.ch.CHParameters;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.util.MiniPerfTest;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.TurnCostsConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares the binary heap and the radix heap for the Dijkstra searches that use an {@link IntFloatHeap}: full one-to-many
+ * searches and the witness searches of the node- and edge-based CH preparation.
+ * <p>
+ * example args: map=berlin.pbf iters=200 ch_runs=1
+ */
+public class HeapMeasurement {
+
+    public static void main(String[] strs) {
+        PMap args = PMap.read(strs);
+        Profile profile = TestProfiles.accessAndSpeed("car")
+                .setTurnCostsConfig(new TurnCostsConfig(List.of("motorcar", "motor_vehicle")));
+        GraphHopperConfig ghConfig = new GraphHopperConfig()
+                .putObject("datareader.file", args.getString("map", "map-matching/files/leipzig_germany.osm.pbf"))
+                .putObject("graph.location", args.getString("location", "heap-measurement-gh"))
+                .putObject("import.osm.ignored_highways", "")
+                .putObject("graph.encoded_values", "car_access,car_average_speed")
+                .setProfiles(List.of(profile));
+        GraphHopper hopper = new GraphHopper()
+                .init(ghConfig)
+                .importOrLoad();
+        BaseGraph baseGraph = hopper.getBaseGraph();
+        // there are no CH profiles, so we need to freeze the graph ourselves
+        if (!baseGraph.isFrozen())
+            baseGraph.freeze();
+        Weighting nodeBasedWeighting = hopper.createWeighting(profile, new PMap(), true);
+        Weighting edgeBasedWeighting = hopper.createWeighting(profile, new PMap());
+        System.out.println("Running measurement on graph with " + baseGraph.getNodes() + " nodes and " + baseGraph.getEdges() + " edges");
+
+        final int iterations = args.getInt("iters", 200);
+        final int chRuns = args.getInt("ch_runs", 1);
+        List<String> result = new ArrayList<>();
+        for (boolean radix : new boolean[]{false, true}) {
+            String heap = radix ? "radix" : "binary";
+            Supplier<IntFloatHeap> heapSupplier = radix ? IntFloatRadixHeap::new : IntFloatBinaryHeap::new;
+            result.add(measureOneToMany(heap, baseGraph, nodeBasedWeighting, heapSupplier, iterations));
+            for (int run = 0; run < chRuns; run++) {
+                // every preparation needs its own CH storage name
+                String suffix = "_" + heap + "_" + run;
+                result.add(measureCHPreparation(heap, baseGraph, CHConfig.nodeBased("node" + suffix, nodeBasedWeighting), radix));
+                result.add(measureCHPreparation(heap, baseGraph, CHConfig.edgeBased("edge" + suffix, edgeBasedWeighting), radix));
+            }
+        }
+        System.out.println();
+        System.out.println("### RESULT ###");
+        for (String res : result)
+            System.out.println(res);
+    }
+
+    private static String measureOneToMany(String heap, BaseGraph baseGraph, Weighting weighting, Supplier<IntFloatHeap> heapSupplier, int iterations) {
+        System.out.println("Running one-to-many measurement for heap=" + heap);
+        Random rnd = new Random(123);
+        DijkstraOneToMany algo = new DijkstraOneToMany(baseGraph, weighting, TraversalMode.NODE_BASED, heapSupplier.get());
+        MiniPerfTest t = new MiniPerfTest().setIterations(iterations)
+                .start((warmup, run) -> {
+                    // there is no path to the target node, so we explore the entire graph
+                    algo.clear();
+                    algo.calcPath(rnd.nextInt(baseGraph.getNodes()), baseGraph.getNodes());
+                    return algo.getVisitedNodes();
+                });
+        String res = String.format("heap: %s, one-to-many, took: %.2fms, mean: %.2fms, checksum: %d", heap, t.getSum(), t.getMean(), t.getDummySum());
+        System.out.println(res);
+        return res;
+    }
+
+    private static String measureCHPreparation(String heap, BaseGraph baseGraph, CHConfig chConfig, boolean radix) {
+        System.out.println("Running CH preparation for heap=" + heap + ", " + chConfig.getTraversalMode());
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(baseGraph, chConfig)
+                .setParams(new PMap().putObject(CHParameters.RADIX_HEAP, radix))
+                .doWork();
+        res.getCHStorage().close();
+        String str = String.format("heap: %s, ch, %s, took: %dms, shortcuts: %d", heap, chConfig.getTraversalMode(), res.getTotalPrepareTime(), res.getShortcuts());
+        System.out.println(str);
+        return str;
+    }
+}
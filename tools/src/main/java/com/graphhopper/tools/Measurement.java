@@ -26,10 +26,15 @@ import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.config.Profile;
 import com.graphhopper.jackson.Jackson;
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithm;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.lm.LMConfig;
+import com.graphhopper.routing.lm.LMRoutingAlgorithmFactory;
+import com.graphhopper.routing.lm.LandmarkStorage;
 import com.graphhopper.routing.lm.PrepareLandmarks;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.routing.weighting.Weighting;
@@ -170,6 +175,8 @@ public class Measurement {
         }
 
         hopper.importOrLoad();
+        put("graph.sort", args.getBool("graph.sort", true));
+        put("graph.csr_adjacency", args.getBool("graph.csr_adjacency", false));
 
         BaseGraph g = hopper.getBaseGraph();
         EncodingManager encodingManager = hopper.getEncodingManager();
@@ -219,6 +226,8 @@ public class Measurement {
                                         activeLandmarks(activeLMCount).edgeBased().alternative());
                             }
                         });
+                if (args.getBool("measurement.lm.compact_weights", false))
+                    measureCompactLandmarks(hopper, count / 20);
             }
 
             if (hopper.getCHPreparationHandler().isEnabled()) {
@@ -409,6 +418,26 @@ public class Measurement {
 
         final GHBitSet validEdges = getValidEdges(g);
         put("graph.valid_edges", validEdges.getCardinality());
+
+        // the memory locality of the graph depends on the node and edge ordering, see graph.sort. the smaller the
+        // id differences between adjacent nodes and the edges of a node the fewer cache misses we can expect.
+        long nodeIdDiffSum = 0;
+        long edgeIdDiffSum = 0;
+        long edgeCount = 0;
+        EdgeExplorer explorer = g.createEdgeExplorer();
+        for (int node = 0; node < g.getNodes(); node++) {
+            EdgeIterator iter = explorer.setBaseNode(node);
+            int prevEdge = -1;
+            while (iter.next()) {
+                nodeIdDiffSum += Math.abs(iter.getAdjNode() - node);
+                if (prevEdge >= 0)
+                    edgeIdDiffSum += Math.abs(iter.getEdge() - prevEdge);
+                prevEdge = iter.getEdge();
+                edgeCount++;
+            }
+        }
+        put("graph.locality.mean_adj_node_id_diff", edgeCount == 0 ? 0 : nodeIdDiffSum / edgeCount);
+        put("graph.locality.mean_adj_edge_id_diff", edgeCount == 0 ? 0 : edgeIdDiffSum / edgeCount);
     }
 
     private void measureLocationIndex(Graph g, final LocationIndex idx, int count) {
@@ -454,6 +483,32 @@ public class Measurement {
             }
         });
         print("unit_tests.get_edge_state", miniPerf);
+
+        // unlike the measurements above this explores a local neighbourhood like the routing algorithms do, so it
+        // shows the effect of the node and edge ordering
+        final int maxExplored = 1000;
+        final GHBitSetImpl explored = new GHBitSetImpl(maxNode);
+        final IntArrayList queue = new IntArrayList(maxExplored);
+        miniPerf = new MiniPerfTest().setIterations(count / maxExplored).start((warmup, run) -> {
+            explored.clear();
+            queue.clear();
+            int start = rand.nextInt(maxNode);
+            queue.add(start);
+            explored.add(start);
+            int sum = 0;
+            for (int i = 0; i < queue.size() && queue.size() < maxExplored; i++) {
+                EdgeIterator iter = allExplorer.setBaseNode(queue.get(i));
+                while (iter.next()) {
+                    sum += iter.getEdge();
+                    if (!explored.contains(iter.getAdjNode())) {
+                        explored.add(iter.getAdjNode());
+                        queue.add(iter.getAdjNode());
+                    }
+                }
+            }
+            return sum;
+        });
+        print("unit_tests.bfs_" + maxExplored, miniPerf);
     }
 
     private void measureGraphTraversalCH(final RoutingCHGraph lg, int count) {
@@ -516,6 +571,50 @@ public class Measurement {
         print("area_index.query", lookupPerfTest);
     }
 
+    /**
+     * Compares the landmarks of the import with landmarks that store their weights in a single byte, see
+     * {@link LandmarkStorage#setCompactWeights(boolean)}. The compact landmarks need half of the memory, but their
+     * approximations are weaker, so the queries visit more nodes.
+     */
+    private void measureCompactLandmarks(GraphHopper hopper, int count) {
+        LandmarkStorage lms = hopper.getLandmarks().get("profile_no_tc");
+        PrepareLandmarks compactPrepare = new PrepareLandmarks(new RAMDirectory(), hopper.getBaseGraph(),
+                hopper.getEncodingManager(), lms.getLMConfig(), lms.getLandmarkCount()).setCompactWeights(true);
+        compactPrepare.doWork();
+        LandmarkStorage compactLms = compactPrepare.getLandmarkStorage();
+        put(Landmark.PREPARE + "compact.time", compactPrepare.getTotalPrepareTime());
+        put(Landmark.PREPARE + "size_in_MB", lms.getCapacity() / MB);
+        put(Landmark.PREPARE + "compact.size_in_MB", compactLms.getCapacity() / MB);
+
+        gcAndWait();
+        Weighting weighting = hopper.createWeighting(hopper.getProfile("profile_no_tc"), new PMap());
+        measureLandmarkRouting("routingLM_direct", hopper.getBaseGraph(), weighting, lms, count);
+        measureLandmarkRouting("routingLM_direct_compact", hopper.getBaseGraph(), weighting, compactLms, count);
+        compactLms.close();
+    }
+
+    private void measureLandmarkRouting(String prefix, Graph g, Weighting weighting, LandmarkStorage lms, int count) {
+        // the same seed for both landmark storages, so they are compared for the same queries
+        final Random rand = new Random(seed);
+        final AtomicLong visitedNodesSum = new AtomicLong(0);
+        final AtomicLong maxVisitedNodes = new AtomicLong(0);
+        LMRoutingAlgorithmFactory algoFactory = new LMRoutingAlgorithmFactory(lms);
+        AlgorithmOptions opts = new AlgorithmOptions().setAlgorithm(Algorithms.ASTAR_BI).
+                setTraversalMode(TraversalMode.NODE_BASED).setHints(new PMap().putObject(Landmark.ACTIVE_COUNT, 8));
+        MiniPerfTest miniPerf = new MiniPerfTest().setIterations(count).start((warmup, run) -> {
+            RoutingAlgorithm algo = algoFactory.createAlgo(g, weighting, opts);
+            Path path = algo.calcPath(rand.nextInt(maxNode), rand.nextInt(maxNode));
+            if (!warmup) {
+                visitedNodesSum.addAndGet(algo.getVisitedNodes());
+                maxVisitedNodes.accumulateAndGet(algo.getVisitedNodes(), Math::max);
+            }
+            return path.getEdgeCount();
+        });
+        put(prefix + ".visited_nodes_mean", (float) visitedNodesSum.get() / count);
+        put(prefix + ".visited_nodes_max", (float) maxVisitedNodes.get());
+        print(prefix, miniPerf);
+    }
+
     private void measureRouting(final GraphHopper hopper, final QuerySettings querySettings) {
         final Graph g = hopper.getBaseGraph();
         final AtomicLong maxDistance = new AtomicLong(0);
@@ -0,0 +1,166 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Request object to calculate a matrix of weights, times and/or distances between many points. Either specify
+ * the points, in which case the matrix is symmetric in its points (but not necessarily in its values), or the
+ * from and to points separately.
+ */
+public class GHMatrixRequest {
+    private String profile = "";
+    private List<GHPoint> points;
+    private List<GHPoint> fromPoints;
+    private List<GHPoint> toPoints;
+    private List<String> pointHints = new ArrayList<>();
+    private List<String> fromPointHints = new ArrayList<>();
+    private List<String> toPointHints = new ArrayList<>();
+    private List<String> snapPreventions;
+    private List<String> outArrays = Collections.singletonList("weights");
+    private boolean failFast = true;
+    private final PMap hints = new PMap();
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public GHMatrixRequest setProfile(String profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    public List<GHPoint> getPoints() {
+        return points;
+    }
+
+    public GHMatrixRequest setPoints(List<GHPoint> points) {
+        this.points = points;
+        return this;
+    }
+
+    public List<GHPoint> getFromPoints() {
+        return fromPoints;
+    }
+
+    public GHMatrixRequest setFromPoints(List<GHPoint> fromPoints) {
+        this.fromPoints = fromPoints;
+        return this;
+    }
+
+    public List<GHPoint> getToPoints() {
+        return toPoints;
+    }
+
+    public GHMatrixRequest setToPoints(List<GHPoint> toPoints) {
+        this.toPoints = toPoints;
+        return this;
+    }
+
+    public List<String> getPointHints() {
+        return pointHints;
+    }
+
+    public GHMatrixRequest setPointHints(List<String> pointHints) {
+        this.pointHints = pointHints;
+        return this;
+    }
+
+    public List<String> getFromPointHints() {
+        return fromPointHints;
+    }
+
+    public GHMatrixRequest setFromPointHints(List<String> fromPointHints) {
+        this.fromPointHints = fromPointHints;
+        return this;
+    }
+
+    public List<String> getToPointHints() {
+        return toPointHints;
+    }
+
+    public GHMatrixRequest setToPointHints(List<String> toPointHints) {
+        this.toPointHints = toPointHints;
+        return this;
+    }
+
+    public boolean hasSnapPreventions() {
+        return snapPreventions != null;
+    }
+
+    public List<String> getSnapPreventions() {
+        if (snapPreventions == null) return Collections.emptyList();
+        return snapPreventions;
+    }
+
+    public GHMatrixRequest setSnapPreventions(List<String> snapPreventions) {
+        this.snapPreventions = snapPreventions;
+        return this;
+    }
+
+    /**
+     * Possible values are 'weights', 'times' and 'distances'
+     */
+    public List<String> getOutArrays() {
+        return outArrays;
+    }
+
+    public GHMatrixRequest setOutArrays(List<String> outArrays) {
+        this.outArrays = outArrays;
+        return this;
+    }
+
+    public boolean getFailFast() {
+        return failFast;
+    }
+
+    /**
+     * @param failFast if false the matrix calculation will be continued even when some points are not connected or
+     *                 cannot be found. The corresponding entries of the matrix will be null in this case.
+     */
+    public GHMatrixRequest setFailFast(boolean failFast) {
+        this.failFast = failFast;
+        return this;
+    }
+
+    // a good trick to serialize unknown properties into the HintsMap
+    @JsonAnySetter
+    public GHMatrixRequest putHint(String fieldName, Object value) {
+        this.hints.putObject(fieldName, value);
+        return this;
+    }
+
+    public PMap getHints() {
+        return hints;
+    }
+
+    @Override
+    public String toString() {
+        return "profile: " + profile + ", points: " + (points == null ? null : points.size())
+                + ", from_points: " + (fromPoints == null ? null : fromPoints.size())
+                + ", to_points: " + (toPoints == null ? null : toPoints.size())
+                + ", out_arrays: " + outArrays;
+    }
+}
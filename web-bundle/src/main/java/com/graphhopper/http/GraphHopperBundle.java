@@ -45,6 +45,8 @@ import org.apache.hc.client5.http.classic.HttpClient;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 
+import java.util.concurrent.ExecutorService;
+
 public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConfiguration> {
 
     static class TranslationMapFactory implements Factory<TranslationMap> {
@@ -275,6 +277,10 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         final GraphHopperManaged graphHopperManaged = new GraphHopperManaged(configuration.getGraphHopperConfiguration());
         environment.lifecycle().manage(graphHopperManaged);
         final GraphHopper graphHopper = graphHopperManaged.getGraphHopper();
+        // the routes of the /route/batch requests are calculated by a bounded number of threads
+        int batchThreads = configuration.getGraphHopperConfiguration().getInt("routing.batch.threads", Runtime.getRuntime().availableProcessors());
+        final ExecutorService routeBatchExecutor = environment.lifecycle().executorService("route-batch-%d")
+                .minThreads(batchThreads).maxThreads(batchThreads).build();
         environment.jersey().register(new AbstractBinder() {
             @Override
             protected void configure() {
@@ -287,6 +293,7 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
                 bindFactory(ProfileResolverFactory.class).to(ProfileResolver.class);
                 bindFactory(GHRequestTransformerFactory.class).to(GHRequestTransformer.class);
                 bindFactory(HasElevation.class).to(Boolean.class).named("hasElevation");
+                bind(routeBatchExecutor).to(ExecutorService.class).named("routeBatchExecutor");
                 bindFactory(LocationIndexFactory.class).to(LocationIndex.class);
                 bindFactory(TranslationMapFactory.class).to(TranslationMap.class);
                 bindFactory(EncodingManagerFactory.class).to(EncodingManager.class);
@@ -298,6 +305,7 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.jersey().register(MVTResource.class);
         environment.jersey().register(NearestResource.class);
         environment.jersey().register(RouteResource.class);
+        environment.jersey().register(MatrixResource.class);
         environment.jersey().register(IsochroneResource.class);
         environment.jersey().register(MapMatchingResource.class);
 
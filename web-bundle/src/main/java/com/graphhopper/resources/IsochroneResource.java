@@ -7,16 +7,19 @@ import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.config.Profile;
 import com.graphhopper.http.GHPointParam;
 import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.isochrone.algorithm.CHShortestPathTree;
 import com.graphhopper.isochrone.algorithm.ContourBuilder;
 import com.graphhopper.isochrone.algorithm.ShortestPathTree;
 import com.graphhopper.isochrone.algorithm.Triangulator;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.Subnetwork;
 import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
 import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
@@ -82,7 +85,9 @@ public class IsochroneResource {
         StopWatch sw = new StopWatch().start();
         PMap hintsMap = new PMap();
         RouteResource.initHints(hintsMap, uriInfo.getQueryParameters());
-        hintsMap.putObject(Parameters.CH.DISABLE, true);
+        // the CH-based tree is only faster for large limits, so it has to be enabled explicitly
+        if (!hintsMap.has(Parameters.CH.DISABLE))
+            hintsMap.putObject(Parameters.CH.DISABLE, true);
         hintsMap.putObject(Parameters.Landmark.DISABLE, true);
 
         PMap profileResolverHints = new PMap(hintsMap);
@@ -101,8 +106,7 @@ public class IsochroneResource {
         if (!snap.isValid())
             throw new IllegalArgumentException("Point not found:" + point);
         QueryGraph queryGraph = QueryGraph.create(graph, snap);
-        TraversalMode traversalMode = profile.hasTurnCosts() ? EDGE_BASED : NODE_BASED;
-        ShortestPathTree shortestPathTree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
+        ShortestPathTree shortestPathTree = createShortestPathTree(graphHopper, profile, queryGraph, weighting, reverseFlow, hintsMap);
 
         double limit;
         ToDoubleFunction<ShortestPathTree.IsoLabel> fz;
@@ -173,6 +177,20 @@ public class IsochroneResource {
                 build();
     }
 
+    /**
+     * Uses the CH graph of the given profile to build the shortest path tree if CH was enabled with ch.disable=false
+     * and the CH graph is node-based. Otherwise, e.g. for profiles with turn costs or if the weighting was modified
+     * with a custom model, the Dijkstra-based tree is used, which is also faster for small limits.
+     */
+    static ShortestPathTree createShortestPathTree(GraphHopper graphHopper, Profile profile, QueryGraph queryGraph,
+                                                   Weighting weighting, boolean reverseFlow, PMap hints) {
+        RoutingCHGraph chGraph = graphHopper.getCHGraphs().get(profile.getName());
+        if (chGraph != null && !chGraph.isEdgeBased() && !hints.getBool(Parameters.CH.DISABLE, true) && !hints.has(CustomModel.KEY))
+            return new CHShortestPathTree(new QueryRoutingCHGraph(chGraph, queryGraph), graphHopper.getCHLevelOrder(profile.getName()), reverseFlow);
+        TraversalMode traversalMode = profile.hasTurnCosts() ? EDGE_BASED : NODE_BASED;
+        return new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
+    }
+
     private Polygon heuristicallyFindMainConnectedComponent(MultiPolygon multiPolygon, Point point) {
         int maxPoints = 0;
         Polygon maxPolygon = null;
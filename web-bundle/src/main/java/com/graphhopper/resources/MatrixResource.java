@@ -0,0 +1,282 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphhopper.GHMatrixRequest;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.jackson.MultiException;
+import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.routing.ch.ManyToManyCH;
+import com.graphhopper.routing.ev.BooleanEncodedValue;
+import com.graphhopper.routing.ev.RoadClass;
+import com.graphhopper.routing.ev.RoadEnvironment;
+import com.graphhopper.routing.ev.Subnetwork;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.DefaultSnapFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.NameSimilarityEdgeFilter;
+import com.graphhopper.routing.util.SnapPreventionEdgeFilter;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.exceptions.ConnectionNotFoundException;
+import com.graphhopper.util.exceptions.PointNotFoundException;
+import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.inject.Inject;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.constraints.NotNull;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import java.util.*;
+
+import static com.graphhopper.resources.RouteResource.removeLegacyParameters;
+
+/**
+ * Resource to calculate the weights, times and/or distances between many points at once. It uses the bucket-based
+ * many-to-many algorithm on top of the CH preparation of the requested profile (see {@link ManyToManyCH}) and returns
+ * the same JSON format as the GraphHopper Matrix API.
+ */
+@Path("matrix")
+public class MatrixResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatrixResource.class);
+
+    private final GraphHopperConfig config;
+    private final GraphHopper graphHopper;
+    private final ProfileResolver profileResolver;
+    private final String osmDate;
+    private final List<String> snapPreventionsDefault;
+    private final int maxLocations;
+
+    @Inject
+    public MatrixResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver) {
+        this.config = config;
+        this.graphHopper = graphHopper;
+        this.profileResolver = profileResolver;
+        this.osmDate = graphHopper.getProperties().getAll().get("datareader.data.date");
+        this.snapPreventionsDefault = Arrays.stream(config.getString("routing.snap_preventions_default", "")
+                .split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+        this.maxLocations = config.getInt("routing.matrix.max_locations", 1000);
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doPost(@NotNull GHMatrixRequest request, @Context HttpServletRequest httpReq) {
+        StopWatch sw = new StopWatch().start();
+        if (!request.hasSnapPreventions())
+            request.setSnapPreventions(snapPreventionsDefault);
+        if (request.getHints().has("curbsides") || request.getHints().has("from_curbsides") || request.getHints().has("to_curbsides"))
+            throw new IllegalArgumentException("The matrix endpoint does not support curbsides, because it only works with node-based CH");
+
+        List<GHPoint> fromPoints, toPoints;
+        List<String> fromPointHints, toPointHints;
+        if (request.getPoints() != null) {
+            if (request.getFromPoints() != null || request.getToPoints() != null)
+                throw new IllegalArgumentException("Do not use from_points or to_points when points are specified");
+            fromPoints = toPoints = request.getPoints();
+            fromPointHints = toPointHints = emptyIfNull(request.getPointHints());
+        } else {
+            if (request.getFromPoints() == null || request.getToPoints() == null)
+                throw new IllegalArgumentException("Either specify points or from_points and to_points");
+            fromPoints = request.getFromPoints();
+            toPoints = request.getToPoints();
+            fromPointHints = emptyIfNull(request.getFromPointHints());
+            toPointHints = emptyIfNull(request.getToPointHints());
+        }
+        checkPoints("from_points", fromPoints, fromPointHints);
+        checkPoints("to_points", toPoints, toPointHints);
+
+        List<String> outArrays = request.getOutArrays() == null || request.getOutArrays().isEmpty()
+                ? List.of("weights") : request.getOutArrays();
+        boolean withWeights = outArrays.contains("weights");
+        boolean withTimes = outArrays.contains("times");
+        boolean withDistances = outArrays.contains("distances");
+        if (!withWeights && !withTimes && !withDistances)
+            throw new IllegalArgumentException("Please specify times, distances or weights in out_arrays");
+
+        PMap profileResolverHints = new PMap(request.getHints());
+        profileResolverHints.putObject("profile", request.getProfile());
+        String profileName = profileResolver.resolveProfile(profileResolverHints);
+        removeLegacyParameters(request.getHints());
+        // the matrix is always calculated with the CH preparation of the profile, so we reject everything that would
+        // change the weighting or the algorithm, like ch.disable or custom_model, instead of silently ignoring it
+        if (!request.getHints().isEmpty())
+            throw new IllegalArgumentException("The matrix endpoint does not support the parameters: " + request.getHints().toMap().keySet());
+        RoutingCHGraph chGraph = graphHopper.getCHGraphs().get(profileName);
+        if (chGraph == null)
+            throw new IllegalArgumentException("Cannot find CH preparation for the requested profile: '" + profileName + "'" +
+                    "\nThe matrix endpoint requires a CH profile, available CH profiles: " + graphHopper.getCHGraphs().keySet());
+
+        Weighting weighting = chGraph.getWeighting();
+        BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileName));
+        EdgeFilter snapFilter = new DefaultSnapFilter(weighting, inSubnetworkEnc);
+        List<Snap> fromSnaps = lookup(fromPoints, fromPointHints, request.getSnapPreventions(), snapFilter);
+        List<Snap> toSnaps = fromPoints == toPoints ? fromSnaps : lookup(toPoints, toPointHints, request.getSnapPreventions(), snapFilter);
+        List<Integer> invalidFromPoints = findInvalid(fromSnaps);
+        List<Integer> invalidToPoints = findInvalid(toSnaps);
+        if (request.getFailFast() && (!invalidFromPoints.isEmpty() || !invalidToPoints.isEmpty())) {
+            List<Throwable> errors = new ArrayList<>();
+            for (int i : invalidFromPoints)
+                errors.add(new PointNotFoundException("Cannot find from_point " + i + ": " + fromPoints.get(i), i));
+            for (int i : invalidToPoints)
+                errors.add(new PointNotFoundException("Cannot find to_point " + i + ": " + toPoints.get(i), i));
+            throw new MultiException(errors);
+        }
+
+        List<Snap> validSnaps = new ArrayList<>();
+        fromSnaps.stream().filter(Snap::isValid).forEach(validSnaps::add);
+        if (toSnaps != fromSnaps)
+            toSnaps.stream().filter(Snap::isValid).forEach(validSnaps::add);
+        QueryGraph queryGraph = QueryGraph.create(graphHopper.getBaseGraph(), validSnaps);
+        int[] fromNodes = fromSnaps.stream().filter(Snap::isValid).mapToInt(Snap::getClosestNode).toArray();
+        int[] toNodes = toSnaps.stream().filter(Snap::isValid).mapToInt(Snap::getClosestNode).toArray();
+        ManyToManyCH manyToManyCH = new ManyToManyCH(new QueryRoutingCHGraph(chGraph, queryGraph))
+                .setCalcTimesAndDistances(withTimes || withDistances);
+        ManyToManyCH.Result result = manyToManyCH.calcMatrix(fromNodes, toNodes);
+
+        ArrayNode weights = JsonNodeFactory.instance.arrayNode(fromPoints.size());
+        ArrayNode times = JsonNodeFactory.instance.arrayNode(fromPoints.size());
+        ArrayNode distances = JsonNodeFactory.instance.arrayNode(fromPoints.size());
+        List<List<Integer>> disconnectedPairs = new ArrayList<>();
+        for (int i = 0, s = 0; i < fromPoints.size(); i++) {
+            ArrayNode weightRow = weights.addArray();
+            ArrayNode timeRow = times.addArray();
+            ArrayNode distanceRow = distances.addArray();
+            boolean validFrom = fromSnaps.get(i).isValid();
+            for (int j = 0, t = 0; j < toPoints.size(); j++) {
+                if (!validFrom || !toSnaps.get(j).isValid()) {
+                    weightRow.addNull();
+                    timeRow.addNull();
+                    distanceRow.addNull();
+                } else {
+                    if (result.isConnected(s, t)) {
+                        weightRow.add(Helper.round(result.weights[s][t], 3));
+                        timeRow.add(Math.round(result.times[s][t] / 1000.0));
+                        distanceRow.add(Math.round(result.distances[s][t]));
+                    } else {
+                        weightRow.addNull();
+                        timeRow.addNull();
+                        distanceRow.addNull();
+                        disconnectedPairs.add(List.of(i, j));
+                    }
+                    t++;
+                }
+            }
+            if (validFrom)
+                s++;
+        }
+        if (request.getFailFast() && !disconnectedPairs.isEmpty())
+            throw new ConnectionNotFoundException("Connection between locations not found", Map.of("point_pairs", disconnectedPairs));
+
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        if (withWeights)
+            json.set("weights", weights);
+        if (withTimes)
+            json.set("times", times);
+        if (withDistances)
+            json.set("distances", distances);
+        ArrayNode hints = json.putArray("hints");
+        if (!disconnectedPairs.isEmpty()) {
+            ObjectNode hint = hints.addObject();
+            hint.put("message", "Connection between locations not found");
+            hint.putPOJO("point_pairs", disconnectedPairs);
+        }
+        if (!invalidFromPoints.isEmpty() || !invalidToPoints.isEmpty()) {
+            ObjectNode hint = hints.addObject();
+            hint.put("message", "Cannot find from_points or to_points");
+            hint.putPOJO("invalid_from_points", invalidFromPoints);
+            hint.putPOJO("invalid_to_points", invalidToPoints);
+        }
+        long took = Math.round(sw.stop().getMillisDouble());
+        json.putPOJO("info", new ResponsePathSerializer.Info(config.getCopyrights(), took, osmDate));
+        logger.info(httpReq.getRemoteAddr() + " " + httpReq.getLocale() + " " + httpReq.getHeader("User-Agent")
+                + " " + fromPoints.size() + "x" + toPoints.size() + ", took: " + took + " ms, profile: " + profileName
+                + ", visited nodes: " + manyToManyCH.getVisitedNodes() + ", disconnected: " + disconnectedPairs.size());
+        return Response.ok(json).header("X-GH-Took", "" + took).type(MediaType.APPLICATION_JSON).build();
+    }
+
+    private void checkPoints(String name, List<GHPoint> points, List<String> pointHints) {
+        if (points.isEmpty())
+            throw new IllegalArgumentException("You have to pass at least one point for " + name);
+        if (points.size() > maxLocations)
+            throw new IllegalArgumentException("Too many " + name + ": " + points.size() + ", the maximum is " + maxLocations);
+        for (int i = 0; i < points.size(); i++)
+            if (points.get(i) == null)
+                throw new IllegalArgumentException("Point " + i + " of " + name + " is null");
+        if (!pointHints.isEmpty() && pointHints.size() != points.size())
+            throw new IllegalArgumentException("If you pass point hints for " + name + " you need to pass exactly one hint for every point, empty hints will be ignored");
+    }
+
+    private List<Snap> lookup(List<GHPoint> points, List<String> pointHints, List<String> snapPreventions, EdgeFilter snapFilter) {
+        EncodingManager em = graphHopper.getEncodingManager();
+        EdgeFilter strictEdgeFilter = snapPreventions.isEmpty()
+                ? snapFilter
+                : new SnapPreventionEdgeFilter(snapFilter, em.getEnumEncodedValue(RoadClass.KEY, RoadClass.class),
+                em.getEnumEncodedValue(RoadEnvironment.KEY, RoadEnvironment.class), snapPreventions);
+        LocationIndex locationIndex = graphHopper.getLocationIndex();
+        BBox bounds = graphHopper.getBaseGraph().getBounds();
+        List<Snap> snaps = new ArrayList<>(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            GHPoint point = points.get(i);
+            if (!bounds.contains(point.lat, point.lon)) {
+                // points outside the graph bounds are reported just like points that cannot be found
+                snaps.add(new Snap(point.lat, point.lon));
+                continue;
+            }
+            Snap snap = null;
+            if (!pointHints.isEmpty() && !Helper.isEmpty(pointHints.get(i)))
+                snap = locationIndex.findClosest(point.lat, point.lon, new NameSimilarityEdgeFilter(strictEdgeFilter, pointHints.get(i), point, 170));
+            else if (!snapPreventions.isEmpty())
+                snap = locationIndex.findClosest(point.lat, point.lon, strictEdgeFilter);
+            if (snap == null || !snap.isValid())
+                snap = locationIndex.findClosest(point.lat, point.lon, snapFilter);
+            snaps.add(snap);
+        }
+        return snaps;
+    }
+
+    private static List<String> emptyIfNull(List<String> list) {
+        return list == null ? Collections.emptyList() : list;
+    }
+
+    private static List<Integer> findInvalid(List<Snap> snaps) {
+        List<Integer> invalid = new ArrayList<>();
+        for (int i = 0; i < snaps.size(); i++)
+            if (!snaps.get(i).isValid())
+                invalid.add(i);
+        return invalid;
+    }
+}
@@ -17,6 +17,9 @@
  */
 package com.graphhopper.resources;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
@@ -25,8 +28,10 @@ import com.graphhopper.gpx.GpxConversions;
 import com.graphhopper.http.GHPointParam;
 import com.graphhopper.http.GHRequestTransformer;
 import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.jackson.Jackson;
 import com.graphhopper.jackson.MultiException;
 import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.routing.SnapCache;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.GHPoint;
 import io.dropwizard.jersey.params.AbstractParam;
@@ -39,9 +44,13 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.constraints.NotNull;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.*;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static com.graphhopper.util.Parameters.Details.PATH_DETAILS;
 import static com.graphhopper.util.Parameters.Routing.*;
@@ -58,6 +67,7 @@ import static java.util.stream.Collectors.toList;
 public class RouteResource {
 
     private static final Logger logger = LoggerFactory.getLogger(RouteResource.class);
+    private static final ObjectMapper objectMapper = Jackson.newObjectMapper();
 
     private final GraphHopperConfig config;
     private final GraphHopper graphHopper;
@@ -66,9 +76,12 @@ public class RouteResource {
     private final Boolean hasElevation;
     private final String osmDate;
     private final List<String> snapPreventionsDefault;
+    private final ExecutorService batchExecutor;
+    private final int maxBatchRequests;
 
     @Inject
-    public RouteResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, GHRequestTransformer ghRequestTransformer, @Named("hasElevation") Boolean hasElevation) {
+    public RouteResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, GHRequestTransformer ghRequestTransformer,
+                         @Named("hasElevation") Boolean hasElevation, @Named("routeBatchExecutor") ExecutorService batchExecutor) {
         this.config = config;
         this.graphHopper = graphHopper;
         this.profileResolver = profileResolver;
@@ -77,6 +90,8 @@ public class RouteResource {
         this.osmDate = graphHopper.getProperties().getAll().get("datareader.data.date");
         this.snapPreventionsDefault = Arrays.stream(config.getString("routing.snap_preventions_default", "")
                 .split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+        this.batchExecutor = batchExecutor;
+        this.maxBatchRequests = config.getInt("routing.batch.max_requests", 1000);
     }
 
     @GET
@@ -185,21 +200,8 @@ public class RouteResource {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     public Response doPost(@NotNull GHRequest request, @Context HttpServletRequest httpReq) {
-        if (!request.hasSnapPreventions())
-            request.setSnapPreventions(snapPreventionsDefault);
-
         StopWatch sw = new StopWatch().start();
-        request = ghRequestTransformer.transformRequest(request);
-
-        if (Helper.isEmpty(request.getProfile()) && request.getCustomModel() != null)
-            // throw a dedicated exception here, otherwise a missing profile is still caught in Router
-            throw new IllegalArgumentException("The 'profile' parameter is required when you use the `custom_model` parameter");
-
-        PMap profileResolverHints = new PMap(request.getHints());
-        profileResolverHints.putObject("profile", request.getProfile());
-        profileResolverHints.putObject("has_curbsides", !request.getCurbsides().isEmpty());
-        request.setProfile(profileResolver.resolveProfile(profileResolverHints));
-        removeLegacyParameters(request.getHints());
+        request = prepareRequest(request);
 
         GHResponse ghResponse = graphHopper.route(request);
         boolean instructions = request.getHints().getBool(INSTRUCTIONS, true);
@@ -230,6 +232,103 @@ public class RouteResource {
         }
     }
 
+    /**
+     * Calculates many independent routes with a single HTTP request. The requests use the same format as the POST
+     * requests to /route and are calculated in parallel by a bounded pool of worker threads, which is shared by all
+     * batch requests. The points of the requests are snapped only once per profile (unless there is a heading, point
+     * hint or custom model). The results are written in the order of the requests as soon as they are available, and
+     * a request that fails does not make the other requests fail, its entry contains the error message instead.
+     */
+    @POST
+    @Path("batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doPostBatch(@NotNull List<GHRequest> requests, @Context HttpServletRequest httpReq) {
+        if (requests.isEmpty())
+            throw new IllegalArgumentException("At least one request has to be specified");
+        if (requests.size() > maxBatchRequests)
+            throw new IllegalArgumentException("Too many requests: " + requests.size() + ", the maximum is: " + maxBatchRequests);
+        StopWatch sw = new StopWatch().start();
+        SnapCache snapCache = new SnapCache(requests.stream().mapToInt(r -> r.getPoints().size()).sum());
+        List<Future<ObjectNode>> futures = new ArrayList<>(requests.size());
+        for (GHRequest request : requests)
+            futures.add(batchExecutor.submit(() -> routeBatchEntry(request, snapCache)));
+
+        String infoStr = httpReq.getRemoteAddr() + " " + httpReq.getLocale() + " " + httpReq.getHeader("User-Agent");
+        StreamingOutput output = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("responses");
+                for (Future<ObjectNode> future : futures) {
+                    generator.writeTree(getBatchEntry(future));
+                    // send the result to the client right away
+                    generator.flush();
+                }
+                generator.writeEndArray();
+                long took = Math.round(sw.stop().getMillisDouble());
+                generator.writeObjectFieldStart("info");
+                generator.writeNumberField("took", took);
+                generator.writeNumberField("snapped_points", snapCache.size());
+                generator.writeEndObject();
+                generator.writeEndObject();
+                logger.info(infoStr + " batch of " + requests.size() + " requests, took: " + took + "ms, snapped points: " + snapCache.size());
+            } finally {
+                // if the client went away there is no need to calculate the remaining routes
+                futures.forEach(f -> f.cancel(false));
+            }
+        };
+        return Response.ok(output).type(MediaType.APPLICATION_JSON).build();
+    }
+
+    private ObjectNode routeBatchEntry(GHRequest request, SnapCache snapCache) {
+        StopWatch sw = new StopWatch().start();
+        GHResponse ghResponse;
+        try {
+            request = prepareRequest(request);
+            ghResponse = graphHopper.route(request, snapCache);
+        } catch (IllegalArgumentException e) {
+            ghResponse = new GHResponse();
+            ghResponse.addError(e);
+        }
+        if (ghResponse.hasErrors())
+            return objectMapper.valueToTree(new MultiException(ghResponse.getErrors()));
+        boolean instructions = request.getHints().getBool(INSTRUCTIONS, true);
+        boolean enableElevation = request.getHints().getBool("elevation", false);
+        boolean calcPoints = request.getHints().getBool(CALC_POINTS, true);
+        boolean pointsEncoded = request.getHints().getBool("points_encoded", true);
+        double pointsEncodedMultiplier = request.getHints().getDouble("points_encoded_multiplier", 1e5);
+        return ResponsePathSerializer.jsonObject(ghResponse, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(sw.stop().getMillisDouble()), osmDate), instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier);
+    }
+
+    private static ObjectNode getBatchEntry(Future<ObjectNode> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            return objectMapper.valueToTree(new MultiException(List.of(e.getCause())));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private GHRequest prepareRequest(GHRequest request) {
+        if (!request.hasSnapPreventions())
+            request.setSnapPreventions(snapPreventionsDefault);
+
+        request = ghRequestTransformer.transformRequest(request);
+
+        if (Helper.isEmpty(request.getProfile()) && request.getCustomModel() != null)
+            // throw a dedicated exception here, otherwise a missing profile is still caught in Router
+            throw new IllegalArgumentException("The 'profile' parameter is required when you use the `custom_model` parameter");
+
+        PMap profileResolverHints = new PMap(request.getHints());
+        profileResolverHints.putObject("profile", request.getProfile());
+        profileResolverHints.putObject("has_curbsides", !request.getCurbsides().isEmpty());
+        request.setProfile(profileResolver.resolveProfile(profileResolverHints));
+        removeLegacyParameters(request.getHints());
+        return request;
+    }
+
     public static void removeLegacyParameters(PMap hints) {
         // these parameters should only be used to resolve the profile, but should not be passed to GraphHopper
         hints.remove("weighting");
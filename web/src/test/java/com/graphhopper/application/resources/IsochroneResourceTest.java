@@ -22,6 +22,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.graphhopper.application.GraphHopperApplication;
 import com.graphhopper.application.GraphHopperServerConfiguration;
 import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.config.CHProfile;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.BodyAndStatus;
 import com.graphhopper.util.Helper;
@@ -42,6 +43,7 @@ import org.locationtech.jts.geom.Polygon;
 import jakarta.ws.rs.client.WebTarget;
 import java.io.File;
 import java.util.Arrays;
+import java.util.List;
 
 import static com.graphhopper.application.resources.Util.getWithStatus;
 import static com.graphhopper.application.util.TestUtils.clientTarget;
@@ -62,8 +64,10 @@ public class IsochroneResourceTest {
                 setProfiles(Arrays.asList(
                         TestProfiles.accessAndSpeed("fast_car", "car").setTurnCostsConfig(TurnCostsConfig.car()),
                         TestProfiles.constantSpeed("short_car", 35).setTurnCostsConfig(TurnCostsConfig.car()),
-                        TestProfiles.accessAndSpeed("fast_car_no_turn_restrictions", "car")
-                ));
+                        TestProfiles.accessAndSpeed("fast_car_no_turn_restrictions", "car"),
+                        TestProfiles.accessAndSpeed("fast_car_ch", "car")
+                )).
+                setCHProfiles(List.of(new CHProfile("fast_car_ch")));
         return config;
     }
 
@@ -117,6 +121,39 @@ public class IsochroneResourceTest {
         assertFalse(polygon1.contains(geometryFactory.createPoint(new Coordinate(1.635246, 42.53841))));
     }
 
+    @Test
+    public void requestByTimeLimitWithCH() {
+        for (boolean reverseFlow : new boolean[]{false, true}) {
+            JsonFeatureCollection featureCollection = clientTarget(app, "/isochrone")
+                    .queryParam("profile", "fast_car_ch")
+                    .queryParam("ch.disable", false)
+                    .queryParam("point", "42.531073,1.573792")
+                    .queryParam("time_limit", 5 * 60)
+                    .queryParam("buckets", 2)
+                    .queryParam("reverse_flow", reverseFlow)
+                    .queryParam("type", "geojson")
+                    .request().get(JsonFeatureCollection.class);
+            JsonFeatureCollection expected = clientTarget(app, "/isochrone")
+                    .queryParam("profile", "fast_car_no_turn_restrictions")
+                    .queryParam("point", "42.531073,1.573792")
+                    .queryParam("time_limit", 5 * 60)
+                    .queryParam("buckets", 2)
+                    .queryParam("reverse_flow", reverseFlow)
+                    .queryParam("type", "geojson")
+                    .request().get(JsonFeatureCollection.class);
+
+            assertEquals(2, featureCollection.getFeatures().size());
+            for (int i = 0; i < 2; i++) {
+                Geometry polygon = featureCollection.getFeatures().get(i).getGeometry();
+                Geometry expectedPolygon = expected.getFeatures().get(i).getGeometry();
+                assertEquals(expectedPolygon.getArea(), polygon.getArea(), expectedPolygon.getArea() * 0.01);
+            }
+            Geometry polygon0 = featureCollection.getFeatures().get(0).getGeometry();
+            assertTrue(polygon0.contains(geometryFactory.createPoint(new Coordinate(1.587224, 42.5386))));
+            assertFalse(polygon0.contains(geometryFactory.createPoint(new Coordinate(1.589756, 42.558012))));
+        }
+    }
+
     @Test
     public void requestByDistanceLimit() {
         JsonFeatureCollection featureCollection = clientTarget(app, "/isochrone")
@@ -0,0 +1,156 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.api.GHMRequest;
+import com.graphhopper.api.GraphHopperMatrixWeb;
+import com.graphhopper.api.MatrixResponse;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.application.util.TestUtils;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.shapes.GHPoint;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class MatrixResourceTest {
+    private static final String DIR = "./target/matrix-gh/";
+    private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("datareader.file", "../core/files/andorra.osm.pbf").
+                putObject("import.osm.ignored_highways", "").
+                putObject("graph.location", DIR).
+                putObject("graph.encoded_values", "car_access, car_average_speed").
+                setProfiles(List.of(
+                        TestProfiles.accessAndSpeed("car"),
+                        TestProfiles.accessAndSpeed("car_no_ch", "car")
+                )).
+                setCHProfiles(List.of(new CHProfile("car")));
+        return config;
+    }
+
+    @BeforeAll
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @Test
+    public void testMatrixMatchesRoutes() {
+        List<GHPoint> points = Arrays.asList(new GHPoint(42.510071, 1.548128), new GHPoint(42.531073, 1.573792),
+                new GHPoint(42.556948, 1.532393));
+        String jsonStr = "{ \"points\": [[1.548128, 42.510071], [1.573792, 42.531073], [1.532393, 42.556948]]," +
+                " \"profile\": \"car\", \"out_arrays\": [\"weights\", \"times\", \"distances\"] }";
+        JsonNode json = clientTarget(app, "/matrix").request().post(Entity.json(jsonStr), JsonNode.class);
+        assertTrue(json.has("info"));
+        assertEquals(3, json.get("distances").size());
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(0, json.get("distances").get(i).get(i).asDouble(), 1.e-3);
+            for (int j = 0; j < points.size(); j++) {
+                if (i == j)
+                    continue;
+                String routeStr = "{ \"points\": [[" + points.get(i).lon + "," + points.get(i).lat + "], [" +
+                        points.get(j).lon + "," + points.get(j).lat + "]], \"profile\": \"car\", \"calc_points\": false, \"instructions\": false }";
+                JsonNode path = clientTarget(app, "/route").request().post(Entity.json(routeStr), JsonNode.class).get("paths").get(0);
+                assertEquals(path.get("distance").asDouble(), json.get("distances").get(i).get(j).asDouble(), 1);
+                assertEquals(path.get("time").asLong() / 1000.0, json.get("times").get(i).get(j).asDouble(), 1);
+            }
+        }
+    }
+
+    @Test
+    public void testClient() {
+        GraphHopperMatrixWeb client = new GraphHopperMatrixWeb(TestUtils.clientUrl(app, "/matrix"));
+        GHMRequest request = new GHMRequest().setProfile("car").
+                setFromPoints(Arrays.asList(new GHPoint(42.510071, 1.548128), new GHPoint(42.531073, 1.573792))).
+                setToPoints(Arrays.asList(new GHPoint(42.556948, 1.532393), new GHPoint(42.510071, 1.548128), new GHPoint(42.531073, 1.573792))).
+                setOutArrays(Arrays.asList("distances", "times"));
+        MatrixResponse rsp = client.route(request);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(0, rsp.getDistance(0, 1), 1.e-3);
+        assertEquals(0, rsp.getDistance(1, 2), 1.e-3);
+        assertTrue(rsp.getDistance(0, 2) > 1000, "unexpected distance: " + rsp.getDistance(0, 2));
+        assertTrue(rsp.getTime(0, 2) > 60_000, "unexpected time: " + rsp.getTime(0, 2));
+    }
+
+    @Test
+    public void testPointNotFound() {
+        String jsonStr = "{ \"from_points\": [[1.548128, 42.510071]], \"to_points\": [[1.573792, 42.531073], [1.5, 41.0]]," +
+                " \"profile\": \"car\", \"out_arrays\": [\"distances\"], \"fail_fast\": false }";
+        JsonNode json = clientTarget(app, "/matrix").request().post(Entity.json(jsonStr), JsonNode.class);
+        assertTrue(json.get("distances").get(0).get(0).asDouble() > 1000);
+        assertTrue(json.get("distances").get(0).get(1).isNull());
+        assertEquals("[1]", json.get("hints").get(0).get("invalid_to_points").toString());
+
+        jsonStr = jsonStr.replace("\"fail_fast\": false", "\"fail_fast\": true");
+        Response response = clientTarget(app, "/matrix").request().post(Entity.json(jsonStr));
+        assertEquals(400, response.getStatus());
+        assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("Cannot find to_point 1"));
+    }
+
+    @Test
+    public void testProfileWithoutCH() {
+        String jsonStr = "{ \"points\": [[1.548128, 42.510071], [1.573792, 42.531073]], \"profile\": \"car_no_ch\" }";
+        Response response = clientTarget(app, "/matrix").request().post(Entity.json(jsonStr));
+        assertEquals(400, response.getStatus());
+        assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("requires a CH profile"));
+    }
+
+    @Test
+    public void testOutArraysDefault() {
+        String jsonStr = "{ \"points\": [[1.548128, 42.510071], [1.573792, 42.531073]], \"profile\": \"car\", \"out_arrays\": null }";
+        JsonNode json = clientTarget(app, "/matrix").request().post(Entity.json(jsonStr), JsonNode.class);
+        assertEquals(2, json.get("weights").size());
+        assertFalse(json.has("times"));
+        assertFalse(json.has("distances"));
+    }
+
+    @Test
+    public void testUnsupportedParameters() {
+        String pointsStr = "\"points\": [[1.548128, 42.510071], [1.573792, 42.531073]], \"profile\": \"car\"";
+        for (String param : List.of("\"ch.disable\": true", "\"custom_model\": { \"distance_influence\": 100 }")) {
+            Response response = clientTarget(app, "/matrix").request().post(Entity.json("{ " + pointsStr + ", " + param + " }"));
+            assertEquals(400, response.getStatus());
+            assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("does not support the parameters"), param);
+        }
+        Response response = clientTarget(app, "/matrix").request().post(Entity.json("{ " + pointsStr + ", \"curbsides\": [\"right\", \"right\"] }"));
+        assertEquals(400, response.getStatus());
+        assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("does not support curbsides"));
+    }
+}
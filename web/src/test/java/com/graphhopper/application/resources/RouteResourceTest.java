@@ -148,6 +148,38 @@ public class RouteResourceTest {
         assertFalse(json.get("info").has("errors"));
     }
 
+    @Test
+    public void testBatchPostQuery() {
+        String jsonStr = "[" +
+                "{ \"profile\": \"my_car\", \"points\": [[1.536198,42.554851], [1.548128, 42.510071]] }," +
+                "{ \"profile\": \"my_car\", \"points\": [[1.548128, 42.510071], [1.536198,42.554851]], \"points_encoded\": false }," +
+                "{ \"profile\": \"unknown\", \"points\": [[1.536198,42.554851], [1.548128, 42.510071]] }," +
+                "{ \"profile\": \"foot\", \"points\": [[1.536198,42.554851], [1.548128, 42.510071]] }" +
+                "]";
+        JsonNode json = clientTarget(app, "/route/batch").request().post(Entity.json(jsonStr), JsonNode.class);
+        JsonNode responses = json.get("responses");
+        assertEquals(4, responses.size());
+        // the results are in the same order as the requests
+        JsonNode single = clientTarget(app, "/route").request().post(Entity.json(
+                "{ \"profile\": \"my_car\", \"points\": [[1.536198,42.554851], [1.548128, 42.510071]] }"), JsonNode.class);
+        assertEquals(single.at("/paths/0/distance").asDouble(), responses.at("/0/paths/0/distance").asDouble(), 1.e-6);
+        assertEquals(single.at("/paths/0/points").asText(), responses.at("/0/paths/0/points").asText());
+        assertTrue(responses.at("/1/paths/0/points").has("coordinates"));
+        assertTrue(responses.at("/1/paths/0/distance").asDouble() > 9000);
+        // a failing request does not make the others fail
+        assertTrue(responses.get(2).get("message").asText().contains("The requested profile 'unknown' does not exist"), responses.get(2).toString());
+        assertTrue(responses.at("/3/paths/0/distance").asDouble() > 8000);
+        // the points are snapped once for each profile
+        assertEquals(4, json.at("/info/snapped_points").asInt());
+    }
+
+    @Test
+    public void testBatchPostQueryErrors() {
+        Response response = clientTarget(app, "/route/batch").request().post(Entity.json("[]"));
+        assertEquals(400, response.getStatus());
+        assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("At least one request has to be specified"));
+    }
+
     @Test
     public void testBasicNavigationQuery() {
         JsonNode json = clientTarget(app, "/navigate/directions/v5/gh/driving/1.537174,42.507145;1.539116,42.511368?" +
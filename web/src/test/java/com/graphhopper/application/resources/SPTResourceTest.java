@@ -22,6 +22,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.graphhopper.application.GraphHopperApplication;
 import com.graphhopper.application.GraphHopperServerConfiguration;
 import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.config.CHProfile;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.BodyAndStatus;
 import com.graphhopper.util.Helper;
@@ -35,7 +36,9 @@ import org.junit.jupiter.api.extension.ExtendWith;
 
 import java.io.File;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.graphhopper.application.resources.Util.getWithStatus;
 import static com.graphhopper.application.util.TestUtils.clientTarget;
@@ -56,8 +59,10 @@ public class SPTResourceTest {
                 putObject("graph.encoded_values", "car_access, car_average_speed").
                 setProfiles(List.of(
                         TestProfiles.accessAndSpeed("car_without_turncosts", "car"),
-                        TestProfiles.accessAndSpeed("car_with_turncosts", "car").setTurnCostsConfig(TurnCostsConfig.car())
-                ));
+                        TestProfiles.accessAndSpeed("car_with_turncosts", "car").setTurnCostsConfig(TurnCostsConfig.car()),
+                        TestProfiles.accessAndSpeed("car_with_ch", "car")
+                )).
+                setCHProfiles(List.of(new CHProfile("car_with_ch")));
         return config;
     }
 
@@ -90,6 +95,32 @@ public class SPTResourceTest {
         assertEquals(48, Integer.parseInt(row[prevTimeIndex]) / 1000);
     }
 
+    @Test
+    public void requestSPTWithCH() {
+        Map<Integer, Integer> times = new HashMap<>();
+        String rspCsvString = clientTarget(app, "/spt?profile=car_without_turncosts&point=42.531073,1.573792&time_limit=300&columns=node_id,time").request().get(String.class);
+        String[] lines = rspCsvString.split("\n");
+        for (int i = 1; i < lines.length; i++)
+            times.put(Integer.parseInt(lines[i].split(",")[0]), Integer.parseInt(lines[i].split(",")[1]));
+
+        // the CH-based tree is not sorted by time, but it must contain the same nodes
+        rspCsvString = clientTarget(app, "/spt?profile=car_with_ch&point=42.531073,1.573792&time_limit=300&columns=node_id,time&ch.disable=false").request().get(String.class);
+        lines = rspCsvString.split("\n");
+        assertEquals("node_id,time", lines[0]);
+        assertEquals(times.size(), lines.length - 1);
+        for (int i = 1; i < lines.length; i++) {
+            int node = Integer.parseInt(lines[i].split(",")[0]);
+            assertTrue(times.containsKey(node), "unexpected node: " + node);
+            assertEquals(times.get(node), Integer.parseInt(lines[i].split(",")[1]), 1000);
+        }
+
+        // without ch.disable=false the Dijkstra-based tree is used, which is sorted by time
+        rspCsvString = clientTarget(app, "/spt?profile=car_with_ch&point=42.531073,1.573792&time_limit=300&columns=node_id,time").request().get(String.class);
+        lines = rspCsvString.split("\n");
+        assertEquals(times.size(), lines.length - 1);
+        assertEquals(0, Integer.parseInt(lines[1].split(",")[1]));
+    }
+
     @Test
     public void requestSPTEdgeBased() {
         String rspCsvString = clientTarget(app, "/spt?profile=car_with_turncosts&point=42.531073,1.573792&time_limit=300&columns=prev_node_id,edge_id,node_id,time,distance").request().get(String.class);